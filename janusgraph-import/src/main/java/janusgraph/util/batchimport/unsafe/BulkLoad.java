@@ -2,10 +2,14 @@ package janusgraph.util.batchimport.unsafe;
 
 import janusgraph.util.batchimport.unsafe.graph.GraphUtil;
 import janusgraph.util.batchimport.unsafe.graph.store.StoreManager;
+import janusgraph.util.batchimport.unsafe.graph.store.cassandra.TokenRanges;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.RegionBoundaries;
 import janusgraph.util.batchimport.unsafe.graph.store.proxy.ProxyManager;
 import janusgraph.util.batchimport.unsafe.helps.*;
 import janusgraph.util.batchimport.unsafe.helps.collection.IterableWrapper;
 import janusgraph.util.batchimport.unsafe.helps.collection.RawIterator;
+import janusgraph.util.batchimport.unsafe.idassigner.PartitionPolicy;
+import janusgraph.util.batchimport.unsafe.idmapper.IdEncoder;
 import janusgraph.util.batchimport.unsafe.input.*;
 import janusgraph.util.batchimport.unsafe.input.csv.*;
 import janusgraph.util.batchimport.unsafe.input.reader.CharReadable;
@@ -190,6 +194,9 @@ public class BulkLoad {
      */
     static final String MULTI_FILE_DELIMITER = ",";
     private static final Function<String,IdType> TO_ID_TYPE = from -> IdType.valueOf( from.toUpperCase() );
+    private static final Function<String,IdEncoder> TO_ID_ENCODER = from -> IdEncoder.valueOf( from.toUpperCase() );
+    private static final Function<String,PartitionPolicy> TO_PARTITION_POLICY =
+            from -> PartitionPolicy.valueOf( from.toUpperCase() );
     private static final Function<String,Character> CHARACTER_CONVERTER = new CharacterConverter();
     public static <T> Function<String,T> withDefault( final T defaultValue )
     {
@@ -256,7 +263,21 @@ public class BulkLoad {
             String maxMemoryString = args.get( Options.MAX_MEMORY.key(), null );
             maxMemory = parseMaxMemory( maxMemoryString );
 
-            validateInputFiles( nodesFiles, edgesFiles );
+            File savedIdMapper = args.interpretOption( Options.ID_MAPPER.key(), Converters.optional(),
+                    Converters.toFile(), file ->
+                    {
+                        if ( !file.isFile() )
+                        {
+                            throw new IllegalArgumentException( "Saved id mapper '" + file + "' doesn't exist" );
+                        }
+                    } );
+            boolean existingNodes = args.has( Options.EXISTING_NODES.key() );
+            if ( existingNodes && args.getBoolean( RECREATE_DATABASE_IF_EXISTS.key() ) )
+            {
+                throw new IllegalArgumentException( "--" + Options.EXISTING_NODES.key() + " imports into a graph with "
+                        + "data, it can't be dropped with --" + RECREATE_DATABASE_IF_EXISTS.key() );
+            }
+            validateInputFiles( nodesFiles, edgesFiles, savedIdMapper != null || existingNodes && nodesFiles.isEmpty() );
             enableStacktrace = args.getBoolean( Options.STACKTRACE.key(), Boolean.FALSE, Boolean.TRUE );
             bulkLoading = args.getBoolean(Options.BULK_LOADING.key(), Boolean.FALSE, Boolean.TRUE );
             processors = args.getNumber( Options.PROCESSORS.key(), null );
@@ -279,7 +300,7 @@ public class BulkLoad {
 
             boolean allowCacheOnHeap = args.getBoolean( Options.CACHE_ON_HEAP.key(),
                     (Boolean) Options.CACHE_ON_HEAP.defaultValue() );
-            configuration = importConfiguration(bulkLoading,
+            configuration = importConfiguration(args, bulkLoading,
                     processors, maxMemory, storeDir,
                     allowCacheOnHeap, defaultHighIO );
 
@@ -619,11 +640,112 @@ public class BulkLoad {
                         + IdType.INTEGER + ": arbitrary integer values for identifying nodes.\n"
                         + IdType.ACTUAL + ": (advanced) actual node ids. The default option is `" + IdType.STRING  +
                         "`.", true ),
+        ID_ENCODER( "id-encoder", IdEncoder.STRING,
+                "<id-encoder>",
+                "(advanced) One out of " + Arrays.toString( IdEncoder.values() ) + " and specifies how "
+                        + IdType.STRING + " ids are encoded into 64 bits by the id mapper. Ids encoded the same "
+                        + "are told apart by reading them again, which is slow when there are many.\n"
+                        + IdEncoder.STRING + ": keeps short ids as they are, collides often on long ones.\n"
+                        + IdEncoder.XXHASH64 + ": xxhash of the id and its length.\n"
+                        + IdEncoder.WYHASH + ": wyhash-like hash of the id and its length. "
+                        + "A saved id mapper must be used with the encoder it was saved with. "
+                        + "The default option is `" + IdEncoder.STRING + "`." ),
+        DEDUPLICATE_NODES( "deduplicate-nodes", Boolean.FALSE,
+                "<true/false>",
+                "(advanced) Whether or not to read the node input once before importing it, keeping only hashes "
+                        + "of the ids, to find the ones which occur more than once. Only the first node of every "
+                        + "such id is imported, the others take no vertex id and no space in the store. They are "
+                        + "bad entries, so the import only goes on past them with --skip-duplicate-nodes. "
+                        + "Without this they are written and left in the store." ),
+        ID_LOOKUP_CACHE( "id-lookup-cache", 65_536,
+                "<number of ids, 0 to disable>",
+                "(advanced) Number of node ids every edge importer thread caches by input id, in front of "
+                        + "the id mapper. Edges of real graphs mostly connect a few hot nodes, which are then "
+                        + "looked up once per thread instead of once per edge. 0 doesn't cache." ),
+        PARTITION_POLICY( "partition-policy", PartitionPolicy.ROUND_ROBIN,
+                "<partition-policy>",
+                "(advanced) One out of " + Arrays.toString( PartitionPolicy.values() ) + " and specifies which "
+                        + "of the cluster.max-partitions partitions of the graph every node gets its vertex id in.\n"
+                        + PartitionPolicy.ROUND_ROBIN + ": every importer thread takes the partitions in turn.\n"
+                        + PartitionPolicy.HASH + ": by a hash of the input id.\n"
+                        + PartitionPolicy.LABEL + ": by the label, nodes of a label are kept together. "
+                        + "The id mapper grows with the largest partition times the number of partitions. "
+                        + "The default option is `" + PartitionPolicy.ROUND_ROBIN + "`." ),
+        DETERMINISTIC_IDS( "deterministic-ids", Boolean.FALSE,
+                "<true/false>",
+                "(advanced) Whether or not to read the node input once before importing it, counting the nodes "
+                        + "of every chunk, and give every node the vertex id of its position in the input. Imports "
+                        + "of the same input into an empty graph then get the same vertex ids, whatever the number "
+                        + "of processors. Positions take the partitions in turn, --partition-policy is ignored." ),
+        STAGED_IMPORT( "staged-import", Boolean.FALSE,
+                "<true/false>",
+                "(advanced) Whether or not to import nodes and edges in steps which read, parse, serialize, sort "
+                        + "and write the input, each given as many processors as it needs while the import runs, "
+                        + "instead of letting every importer thread do all of it for a chunk at a time." ),
         BULK_LOADING( "bulk-loading", Boolean.FALSE,
                 "<true/false>",
                 "Whether or not to use bulk-loading."
-                        + "if true, will generator SSTable(cassandra) or HFile(Hbase) instead of insert one by one"
+                        + "if true, will generator SSTable(cassandra), HFile(Hbase) or sorted runs written straight into BerkeleyJE instead of insert one by one"
                         + "if false, vertices and edges will be inserted into DB one by one through transaction" ),
+        DIRECT_SERIALIZATION( "direct-serialization", Boolean.FALSE,
+                "<true/false>",
+                "(advanced) Whether or not to serialize vertices, properties and edges straight into entries "
+                        + "from the input, skipping the creation of janusgraph vertices and edges. "
+                        + "The bytes written are the same as the ones written by janusgraph." ),
+        SORT_BUFFER_SIZE( "sort-buffer-size", "32M",
+                "<bytes, e.g. 32M, 0 to disable>",
+                "(advanced) Off-heap memory every importer thread uses to sort cells by token before writing "
+                        + "SSTables in sorted mode. Full buffers are spilled to run files and merged. "
+                        + "0 writes SSTables unsorted." ),
+        TOKEN_RANGES( "token-ranges", null,
+                "<number of ranges, or path/to/ring-file>",
+                "(advanced) Aligns the generated SSTables to ranges of the token ring, every range gets its own "
+                        + "SSTables so that streaming a file only touches the replicas owning it. A number splits "
+                        + "the ring evenly, otherwise the file is read as a ring description, e.g. the output of "
+                        + "'nodetool ring', where the last column of every line is a token." ),
+        MERGE_SSTABLES( "merge-sstables", Boolean.FALSE,
+                "<true/false>",
+                "(advanced) Whether or not to merge the cells of all importer threads, nodes and edges alike, "
+                        + "into one set of non-overlapping SSTables after the edges are imported. Saves the "
+                        + "compaction Cassandra would otherwise do after loading, at the cost of an extra pass." ),
+        REGION_SPLITS( "region-splits", null,
+                "<number of regions, or path/to/splits-file>",
+                "(advanced) Splits the generated HFiles(Hbase) on the region boundaries of the table, every "
+                        + "region gets its own HFile so that loading doesn't have to split them. A number splits "
+                        + "the key space evenly like storage.hbase.region-count does, otherwise the file is read "
+                        + "as one region start key per line, escaped like the hbase shell prints them." ),
+        HFILE_STAGING_DIR( "hfile-staging-dir", null,
+                "<uri, e.g. hdfs://namenode:8020/tmp>",
+                "(advanced) Directory the generated HFiles(Hbase) are copied to before they are bulk loaded, on a "
+                        + "file system the region servers can read. By default they are staged on the file system "
+                        + "of hbase.rootdir (set it by storage.hbase.ext.hbase.rootdir)." ),
+        ES_BULK_SIZE( "es-bulk-size", "10M",
+                "<bytes, e.g. 10M, 0 to disable>",
+                "(advanced) Max size of the Elasticsearch _bulk files the documents of mixed indexes are written "
+                        + "to, next to the imported data under 'elasticsearch'. Every importer thread writes its "
+                        + "own files, they can be posted to _bulk in parallel instead of reindexing. "
+                        + "0 doesn't write them." ),
+        EXPORT_ID_MAPPING( "export-id-mapping", Boolean.FALSE,
+                "<true/false>",
+                "Whether or not to write the input id and the vertex id of every imported node to gzipped csv "
+                        + "files under 'id-mapping', one per importer thread, with the header group,id,vertexId. "
+                        + "Other systems can join them with their ids instead of looking up every vertex." ),
+        ID_MAPPER( "id-mapper", null,
+                "<path/to/saved-id-mapper>",
+                "(advanced) Imports edges only, looking up their start and end nodes in an id mapper saved by "
+                        + "an earlier import of the nodes with --save-id-mapper. --id-type and the groups "
+                        + "must be the ones of that import. Node files are ignored." ),
+        EXISTING_NODES( "existing-nodes", null,
+                "\"<file1>" + MULTI_FILE_DELIMITER + "<file2>" + MULTI_FILE_DELIMITER + "...\"",
+                "(advanced) Imports into a graph which has data already. Edges whose start or end node isn't "
+                        + "in the node files are connected to the nodes in these id mapping files, "
+                        + "`group,id,vertexId` like the ones --export-id-mapping writes, plain or gzipped. "
+                        + "New vertices and edges get ids leased from the id authority of the graph, they never "
+                        + "clash with ids in use. Can't be used with --" + RECREATE_DATABASE_IF_EXISTS.key() + "." ),
+        SAVE_ID_MAPPER( "save-id-mapper", null,
+                "<path/to/saved-id-mapper>",
+                "(advanced) Saves the id mapper to this file once the nodes are imported, so that later imports "
+                        + "can add edges to these nodes with --id-mapper without reading the nodes again." ),
         PROCESSORS( "processors", null,
                 "<max processor count>",
                 "(advanced) Max number of processors used by the importer. Defaults to the number of "
@@ -1055,6 +1177,24 @@ public class BulkLoad {
     public static void validateInputFiles( Collection<Args.Option<File[]>> nodesFiles,
                                            Collection<Args.Option<File[]>> edgesFiles )
     {
+        validateInputFiles( nodesFiles, edgesFiles, false );
+    }
+
+    /**
+     * @param savedIdMapper whether only edges are imported, to nodes looked up in a saved id mapper or among
+     * existing nodes.
+     */
+    public static void validateInputFiles( Collection<Args.Option<File[]>> nodesFiles,
+                                           Collection<Args.Option<File[]>> edgesFiles, boolean savedIdMapper )
+    {
+        if ( savedIdMapper )
+        {
+            if ( edgesFiles.isEmpty() )
+            {
+                throw new IllegalArgumentException( "No edge input specified, nothing to import without nodes" );
+            }
+            return;
+        }
         if ( nodesFiles.isEmpty() )
         {
             if ( edgesFiles.isEmpty() )
@@ -1071,10 +1211,79 @@ public class BulkLoad {
         return UNLIMITED.equals( value ) ? BadCollector.UNLIMITED_TOLERANCE : Long.parseLong( value );
     }
 
-    public static Configuration importConfiguration(boolean bulkLoading,
+    private static TokenRanges parseTokenRanges( String value )
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+        try
+        {
+            return TokenRanges.parse( value );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalArgumentException( "Unable to read token ranges from " + value, e );
+        }
+    }
+
+    private static RegionBoundaries parseRegionBoundaries( String value )
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+        try
+        {
+            return RegionBoundaries.parse( value );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalArgumentException( "Unable to read region boundaries from " + value, e );
+        }
+    }
+
+    public static Configuration importConfiguration(Args args, boolean bulkLoading,
             Number processors, Long maxMemory, File storeDir,
             boolean allowCacheOnHeap, Boolean defaultHighIO )
     {
+        final boolean directSerialization = args.getBoolean( Options.DIRECT_SERIALIZATION.key(),
+                (Boolean) Options.DIRECT_SERIALIZATION.defaultValue(), true );
+        final Long sortBufferSize = args.has( Options.SORT_BUFFER_SIZE.key() )
+                ? parseLongWithUnit( args.get( Options.SORT_BUFFER_SIZE.key(), null ) )
+                : null;
+        final TokenRanges tokenRanges = parseTokenRanges( args.get( Options.TOKEN_RANGES.key(), null ) );
+        final boolean mergeSSTables = args.getBoolean( Options.MERGE_SSTABLES.key(),
+                (Boolean) Options.MERGE_SSTABLES.defaultValue(), true );
+        final RegionBoundaries regionBoundaries = parseRegionBoundaries( args.get( Options.REGION_SPLITS.key(), null ) );
+        final String hfileStagingDir = args.get( Options.HFILE_STAGING_DIR.key(), null );
+        final Long mixedIndexBulkSize = args.has( Options.ES_BULK_SIZE.key() )
+                ? parseLongWithUnit( args.get( Options.ES_BULK_SIZE.key(), null ) )
+                : null;
+        final boolean exportIdMapping = args.getBoolean( Options.EXPORT_ID_MAPPING.key(),
+                (Boolean) Options.EXPORT_ID_MAPPING.defaultValue(), true );
+        final File savedIdMapper = args.has( Options.ID_MAPPER.key() )
+                ? new File( args.get( Options.ID_MAPPER.key(), null ) )
+                : null;
+        final File[] existingNodes = args.has( Options.EXISTING_NODES.key() )
+                ? Converters.toFiles( MULTI_FILE_DELIMITER, Converters.regexFiles( true ) )
+                        .apply( args.get( Options.EXISTING_NODES.key(), null ) )
+                : null;
+        final File saveIdMapperTo = args.has( Options.SAVE_ID_MAPPER.key() )
+                ? new File( args.get( Options.SAVE_ID_MAPPER.key(), null ) )
+                : null;
+        final IdEncoder idEncoder = args.interpretOption( Options.ID_ENCODER.key(),
+                withDefault( (IdEncoder) Options.ID_ENCODER.defaultValue() ), TO_ID_ENCODER );
+        final boolean deduplicateNodes = args.getBoolean( Options.DEDUPLICATE_NODES.key(),
+                (Boolean) Options.DEDUPLICATE_NODES.defaultValue(), true );
+        final int idLookupCacheSize = args.getNumber( Options.ID_LOOKUP_CACHE.key(),
+                (Number) Options.ID_LOOKUP_CACHE.defaultValue() ).intValue();
+        final PartitionPolicy partitionPolicy = args.interpretOption( Options.PARTITION_POLICY.key(),
+                withDefault( (PartitionPolicy) Options.PARTITION_POLICY.defaultValue() ), TO_PARTITION_POLICY );
+        final boolean deterministicIds = args.getBoolean( Options.DETERMINISTIC_IDS.key(),
+                (Boolean) Options.DETERMINISTIC_IDS.defaultValue(), true );
+        final boolean stagedImport = args.getBoolean( Options.STAGED_IMPORT.key(),
+                (Boolean) Options.STAGED_IMPORT.defaultValue(), true );
         return new Configuration()
         {
             @Override
@@ -1083,6 +1292,108 @@ public class BulkLoad {
                 return bulkLoading ;
             }
 
+            @Override
+            public boolean directSerialization()
+            {
+                return directSerialization;
+            }
+
+            @Override
+            public long sortBufferSize()
+            {
+                return sortBufferSize != null ? sortBufferSize : Configuration.super.sortBufferSize();
+            }
+
+            @Override
+            public TokenRanges tokenRanges()
+            {
+                return tokenRanges;
+            }
+
+            @Override
+            public boolean mergeSSTables()
+            {
+                return mergeSSTables;
+            }
+
+            @Override
+            public RegionBoundaries regionBoundaries()
+            {
+                return regionBoundaries;
+            }
+
+            @Override
+            public String hfileStagingDir()
+            {
+                return hfileStagingDir;
+            }
+
+            @Override
+            public long mixedIndexBulkSize()
+            {
+                return mixedIndexBulkSize != null ? mixedIndexBulkSize : Configuration.super.mixedIndexBulkSize();
+            }
+
+            @Override
+            public boolean exportIdMapping()
+            {
+                return exportIdMapping;
+            }
+
+            @Override
+            public IdEncoder idEncoder()
+            {
+                return idEncoder;
+            }
+
+            @Override
+            public boolean deduplicateNodes()
+            {
+                return deduplicateNodes;
+            }
+
+            @Override
+            public int idLookupCacheSize()
+            {
+                return idLookupCacheSize;
+            }
+
+            @Override
+            public PartitionPolicy partitionPolicy()
+            {
+                return partitionPolicy;
+            }
+
+            @Override
+            public boolean deterministicIds()
+            {
+                return deterministicIds;
+            }
+
+            @Override
+            public boolean stagedImport()
+            {
+                return stagedImport;
+            }
+
+            @Override
+            public File savedIdMapper()
+            {
+                return savedIdMapper;
+            }
+
+            @Override
+            public File[] existingNodes()
+            {
+                return existingNodes;
+            }
+
+            @Override
+            public File saveIdMapperTo()
+            {
+                return saveIdMapperTo;
+            }
+
             @Override
             public long pageCacheMemory()
             {
@@ -1174,6 +1485,14 @@ public class BulkLoad {
         out.println( "Importing the contents of these files into " + storeDir + ":" );
         printInputFiles( "Nodes", nodesFiles, out );
         printInputFiles( "Edges", edgesFiles, out );
+        if ( configuration.savedIdMapper() != null )
+        {
+            out.println( "Nodes looked up in saved id mapper: " + configuration.savedIdMapper() );
+        }
+        if ( configuration.existingNodes() != null )
+        {
+            out.println( "Existing nodes looked up in: " + Arrays.toString( configuration.existingNodes() ) );
+        }
         out.println();
         out.println( "Available resources:" );
         printIndented( "Total machine memory: " + ByteUnit.bytes( OsBeanUtil.getTotalPhysicalMemory() ), out );
@@ -1,9 +1,15 @@
 package janusgraph.util.batchimport.unsafe;
 
+import janusgraph.util.batchimport.unsafe.graph.store.cassandra.TokenRanges;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.RegionBoundaries;
+import janusgraph.util.batchimport.unsafe.idassigner.PartitionPolicy;
+import janusgraph.util.batchimport.unsafe.idmapper.IdEncoder;
 import janusgraph.util.batchimport.unsafe.stage.Stage;
 import janusgraph.util.batchimport.unsafe.stage.Step;
 import janusgraph.util.batchimport.unsafe.helps.ByteUnit;
 
+import java.io.File;
+
 import static java.lang.Math.min;
 import static java.lang.Math.round;
 
@@ -29,6 +35,164 @@ public interface Configuration
         return false;
     }
 
+    /**
+     * whether importers serialize vertices, properties and edges straight into entries from the parsed ids and
+     * values, instead of building janusgraph elements and serializing them with the EdgeSerializer.
+     */
+    default boolean directSerialization()
+    {
+        return false;
+    }
+
+    /**
+     * off-heap bytes every bulk-loading writer sorts cells in before writing them in token order, full buffers
+     * are spilled to run files and merged. 0 leaves the sorting to the unsorted sstable writer.
+     */
+    default long sortBufferSize()
+    {
+        return ByteUnit.mebiBytes( 32 );
+    }
+
+    /**
+     * split of the token ring the sstables are aligned to, every range gets its own sstables so that streaming one
+     * only touches the replicas of its range. {@code null} writes sstables covering the whole ring.
+     */
+    default TokenRanges tokenRanges()
+    {
+        return null;
+    }
+
+    /**
+     * regions of the hbase table the hfiles are split on, every region gets its own hfile so that loading only
+     * moves files. {@code null} writes one hfile per importer thread, which is split when it is loaded.
+     */
+    default RegionBoundaries regionBoundaries()
+    {
+        return null;
+    }
+
+    /**
+     * directory the hfiles are copied to before they're bulk loaded, on a file system the region servers can read,
+     * e.g. {@code hdfs://namenode:8020/tmp}. {@code null} stages them on the file system of {@code hbase.rootdir}.
+     */
+    default String hfileStagingDir()
+    {
+        return null;
+    }
+
+    /**
+     * whether importers leave their sorted cells in run files which are merged into one set of non overlapping
+     * sstables once all edges are imported, instead of every importer thread writing its own sstables.
+     */
+    default boolean mergeSSTables()
+    {
+        return false;
+    }
+
+    /**
+     * whether node importers write the input id and vertex id of every node they import to gzipped csv files, see
+     * {@link janusgraph.util.batchimport.unsafe.idmapper.IdMappingWriter}.
+     */
+    default boolean exportIdMapping()
+    {
+        return false;
+    }
+
+    /**
+     * encoder of string input ids in the id mapper, the hash encoders collide less on long ids like uuids. A
+     * {@link #savedIdMapper() saved id mapper} must be loaded with the encoder it was created with.
+     */
+    default IdEncoder idEncoder()
+    {
+        return IdEncoder.STRING;
+    }
+
+    /**
+     * whether to read the node input once before importing it, to find the ids which occur more than once. Only the
+     * first node of such an id is imported then, instead of all of them being written and left in the store.
+     */
+    default boolean deduplicateNodes()
+    {
+        return false;
+    }
+
+    /**
+     * number of input ids every edge importer thread caches the node ids of, see
+     * {@link janusgraph.util.batchimport.unsafe.idmapper.IdLookupCache}. Saves looking up the same few hot nodes in
+     * the id mapper over and over. 0 doesn't cache.
+     */
+    default int idLookupCacheSize()
+    {
+        return 65_536;
+    }
+
+    /**
+     * which partition of {@code cluster.max-partitions} every node gets its vertex id in. Ids are spread over all of
+     * them round robin by default.
+     */
+    default PartitionPolicy partitionPolicy()
+    {
+        return PartitionPolicy.ROUND_ROBIN;
+    }
+
+    /**
+     * whether to count the nodes of every input chunk before importing them and give every node the vertex id of its
+     * position in the input, see {@link janusgraph.util.batchimport.unsafe.idassigner.PositionalIds}. Imports of the
+     * same input into an empty graph then get the same vertex ids, whatever the number of threads. Edges and
+     * properties don't, their ids are leased by every thread as it goes.
+     */
+    default boolean deterministicIds()
+    {
+        return false;
+    }
+
+    /**
+     * whether to import nodes and edges in a stage of steps which read, parse, serialize, sort and write the input,
+     * see {@link janusgraph.util.batchimport.unsafe.stage.EntityImportStage}, every step getting the processors it
+     * needs while the import runs. Otherwise every importer thread does all of it for a chunk at a time.
+     */
+    default boolean stagedImport()
+    {
+        return false;
+    }
+
+    /**
+     * id mapper {@link #saveIdMapperTo() saved} by an earlier import of the nodes. If set, only edges are imported
+     * and their endpoints are looked up in it. {@code null} imports nodes and prepares an id mapper as usual.
+     */
+    default File savedIdMapper()
+    {
+        return null;
+    }
+
+    /**
+     * id mapping files of nodes which are in the graph already, see
+     * {@link janusgraph.util.batchimport.unsafe.idmapper.ExistingNodes}. Edges whose endpoints aren't nodes of this
+     * import are looked up in them. {@code null} if the graph has no nodes edges of this import connect to.
+     */
+    default File[] existingNodes()
+    {
+        return null;
+    }
+
+    /**
+     * where to save the id mapper once it's prepared, for later imports of edges only. {@code null} doesn't save it.
+     */
+    default File saveIdMapperTo()
+    {
+        return null;
+    }
+
+    /**
+     * max bytes of the elasticsearch {@code _bulk} files every importer thread writes the documents of the mixed
+     * indexes to, see {@link janusgraph.util.batchimport.unsafe.graph.store.elasticsearch.ElasticsearchBulkWriter}.
+     * 0 doesn't write them.
+     */
+    default long mixedIndexBulkSize()
+    {
+        return ByteUnit.mebiBytes( 10 );
+    }
+
     /**
      * A {@link Stage} works with batches going through one or more {@link Step steps} where one or more threads
      * process batches at each {@link Step}. This setting dictates how big the batches that are passed around are.
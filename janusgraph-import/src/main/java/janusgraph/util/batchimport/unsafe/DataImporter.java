@@ -2,15 +2,24 @@ package janusgraph.util.batchimport.unsafe;
 
 
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
+import janusgraph.util.batchimport.unsafe.helps.ArrayUtil;
 import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
+import janusgraph.util.batchimport.unsafe.idassigner.PositionalIds;
+import janusgraph.util.batchimport.unsafe.idmapper.DuplicateInputIds;
+import janusgraph.util.batchimport.unsafe.idmapper.ExistingNodes;
+import janusgraph.util.batchimport.unsafe.idmapper.IdLookupCache;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.InputIdStore;
 import janusgraph.util.batchimport.unsafe.input.*;
 import janusgraph.util.batchimport.unsafe.input.Input;
 import janusgraph.util.batchimport.unsafe.io.IoMonitor;
 import janusgraph.util.batchimport.unsafe.io.IoTracer;
+import janusgraph.util.batchimport.unsafe.output.EdgeIdResolver;
 import janusgraph.util.batchimport.unsafe.output.EntityImporter;
 import janusgraph.util.batchimport.unsafe.output.NodeImporter;
 import janusgraph.util.batchimport.unsafe.output.EdgeImporter;
+import janusgraph.util.batchimport.unsafe.stage.EntityImportStage;
 import janusgraph.util.batchimport.unsafe.stage.ExecutionMonitor;
 import janusgraph.util.batchimport.unsafe.stage.StageExecution;
 import janusgraph.util.batchimport.unsafe.stage.Step;
@@ -28,7 +37,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 
+import static janusgraph.util.batchimport.unsafe.stage.ExecutionSupervisors.superviseDynamicExecution;
 import static janusgraph.util.batchimport.unsafe.stats.Stats.longStat;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
@@ -45,17 +56,22 @@ import static java.lang.System.currentTimeMillis;
  * <li>Write record(s)</li>
  * <li>Repeat until no more chunks from input.</li>
  * </ol>
+ * With {@link Configuration#stagedImport()} these are steps of an {@link EntityImportStage} instead, each with threads
+ * of its own.
  */
 public class DataImporter
 {
     public static final String NODE_IMPORT_NAME = "Nodes";
     public static final String EDGE_IMPORT_NAME = "Edges";
+    public static final String DUPLICATES_NAME = "Duplicates";
+    public static final String POSITIONS_NAME = "Positions";
 
     public static class Monitor
     {
         private final LongAdder nodes = new LongAdder();
         private final LongAdder edges = new LongAdder();
         private final LongAdder properties = new LongAdder();
+        private final IdLookupCache.HitRate lookupCacheHitRate = new IdLookupCache.HitRate();
 
         public void nodesImported( long nodes )
         {
@@ -97,6 +113,14 @@ public class DataImporter
             return this.edges.sum();
         }
 
+        /**
+         * @return hits and lookups of the {@link IdLookupCache id lookup caches} of the edge importers.
+         */
+        public IdLookupCache.HitRate lookupCacheHitRate()
+        {
+            return lookupCacheHitRate;
+        }
+
         @Override
         public String toString()
         {
@@ -106,7 +130,7 @@ public class DataImporter
     }
 
     private static long importData(String title, int numRunners, InputIterable data,
-                                   Function<Integer,EntityImporter> visitors, ExecutionMonitor executionMonitor, StatsProvider memoryStatsProvider )
+                                   Function<Integer,? extends InputEntityVisitor> visitors, ExecutionMonitor executionMonitor, StatsProvider... statsProviders )
             throws IOException
     {
         LongAdder roughEntityCountProgress = new LongAdder();
@@ -114,7 +138,7 @@ public class DataImporter
                 new NamedThreadFactory( title + "Importer" ) );
         IoMonitor writeMonitor = new IoMonitor(IoTracer.NONE);
         ControllableStep step = new ControllableStep( title, roughEntityCountProgress, Configuration.DEFAULT,
-                writeMonitor, memoryStatsProvider );
+                ArrayUtil.concat( writeMonitor, statsProviders ) );
         StageExecution execution = new StageExecution( title, null, Configuration.DEFAULT, Collections.singletonList( step ), 0 );
         long startTime = currentTimeMillis();
         try ( InputIterator dataIterator = data.iterator() )
@@ -152,21 +176,67 @@ public class DataImporter
         return roughEntityCountProgress.sum();
     }
 
-    public static void importNodes(boolean bulkLoading,int numRunners, Input input, IdMapper<String> idMapper,
+    /**
+     * Reads the node input once, only keeping hashes of the ids, to find the duplicate ones before any node is
+     * imported.
+     *
+     * @return number of ids which may be duplicates, see {@link DuplicateInputIds#detect()}.
+     */
+    public static long findDuplicateNodes( Configuration config, Input input, DuplicateInputIds duplicates,
+                                           ExecutionMonitor executionMonitor ) throws IOException
+    {
+        importData( DUPLICATES_NAME, config.maxNumberOfProcessors(), input.nodes(), i -> duplicates.newVisitor(),
+                executionMonitor, new MemoryUsageStatsProvider( duplicates ) );
+        try
+        {
+            return duplicates.detect();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( e );
+        }
+    }
+
+    /**
+     * Reads the node input once, counting the nodes of every chunk, then reserves vertex ids for all of them.
+     *
+     * @return number of nodes counted.
+     */
+    public static long countNodes( Configuration config, Input input, PositionalIds positions,
+                                   BulkIdAssigner idAssigner, ExecutionMonitor executionMonitor ) throws IOException
+    {
+        importData( POSITIONS_NAME, config.maxNumberOfProcessors(), input.nodes(), i -> positions.newCounter(),
+                executionMonitor );
+        return positions.reserve( idAssigner );
+    }
+
+    public static void importNodes(Configuration config, Input input, IdMapper<Object> idMapper, InputIdStore inputIds,
+                                   DuplicateInputIds duplicates, PositionalIds positions, Collector badCollector,
                                    ExecutionMonitor executionMonitor, Monitor monitor ,
                                    StandardJanusGraph graph ,BulkIdAssigner idAssigner,
                                    ImportStore janusStore
                                    )
                     throws IOException
     {
-        Function<Integer,EntityImporter> importers = (i) -> new NodeImporter(bulkLoading,numRunners,i,NODE_IMPORT_NAME, idMapper, monitor,
-                graph,idAssigner,janusStore);
+        int numRunners = config.maxNumberOfProcessors();
+        boolean staged = config.stagedImport();
+        Function<Integer,EntityImporter> importers = (i) -> new NodeImporter(config,numRunners,i,NODE_IMPORT_NAME, idMapper, inputIds,
+                duplicates, positions, badCollector, monitor,
+                graph,idAssigner,janusStore,staged);
+        if ( staged )
+        {   // vertex ids are given while serializing, by the id block of the importer
+            superviseDynamicExecution( executionMonitor, config, new EntityImportStage( NODE_IMPORT_NAME, config,
+                    input.nodes(), null, importers::apply, graph, janusStore, new MemoryUsageStatsProvider( idMapper ) ) );
+            return;
+        }
         importData( NODE_IMPORT_NAME, numRunners, input.nodes(), importers, executionMonitor,
                 new MemoryUsageStatsProvider( idMapper ) );
     }
 
-    public static DataStatistics importEdges(boolean bulkLoading,int numRunners, Input input,
-                                             IdMapper<String> idMapper, Collector badCollector, ExecutionMonitor executionMonitor,
+    public static DataStatistics importEdges(Configuration config, Input input,
+                                             IdMapper<Object> idMapper, ExistingNodes existingNodes,
+                                             Collector badCollector, ExecutionMonitor executionMonitor,
                                              Monitor monitor,
                                              StandardJanusGraph graph ,
                                              BulkIdAssigner idAssigner,
@@ -175,10 +245,36 @@ public class DataImporter
     {
         DataStatistics typeDistribution = new DataStatistics( monitor.nodes.sum(), monitor.properties.sum(),
                 new DataStatistics.EdgeTypeCount[0] );
-        Function<Integer,EntityImporter> importers = (i) -> new EdgeImporter(bulkLoading,numRunners,i, EDGE_IMPORT_NAME, idMapper, monitor,
-                badCollector , graph , idAssigner,janusStore);
+        int numRunners = config.maxNumberOfProcessors();
+        int lookupCacheSize = config.idLookupCacheSize();
+        boolean staged = config.stagedImport();
+        // staged, the ids are looked up by the resolvers of a step of their own, which get the caches
+        Function<Integer,EntityImporter> importers = (i) -> new EdgeImporter(config,numRunners,i, EDGE_IMPORT_NAME, idMapper,
+                lookupCacheSize > 0 && !staged ? new IdLookupCache( lookupCacheSize, monitor.lookupCacheHitRate ) : null,
+                existingNodes, monitor,
+                badCollector , graph , idAssigner,janusStore,staged);
+        GenericStatsProvider idMapperStats = new GenericStatsProvider();
+        idMapper.addStats( idMapperStats );
+        if ( lookupCacheSize > 0 )
+        {
+            idMapperStats.add( Keys.lookup_cache, monitor.lookupCacheHitRate );
+        }
+        MemoryStatsVisitor.Visitable lookupCaches = visitor -> visitor.heapUsage( lookupCacheSize > 0
+                ? numRunners * IdLookupCache.calculateMemoryUsage( lookupCacheSize ) : 0 );
+        MemoryUsageStatsProvider memoryUsageStats = existingNodes != null
+                ? new MemoryUsageStatsProvider( idMapper, lookupCaches, existingNodes )
+                : new MemoryUsageStatsProvider( idMapper, lookupCaches );
+        if ( staged )
+        {
+            IntFunction<EdgeIdResolver> resolvers = i -> new EdgeIdResolver( idMapper,
+                    lookupCacheSize > 0 ? new IdLookupCache( lookupCacheSize, monitor.lookupCacheHitRate ) : null,
+                    existingNodes, idAssigner );
+            superviseDynamicExecution( executionMonitor, config, new EntityImportStage( EDGE_IMPORT_NAME, config,
+                    input.edges(), resolvers, importers::apply, graph, janusStore, memoryUsageStats, idMapperStats ) );
+            return typeDistribution;
+        }
         importData(EDGE_IMPORT_NAME, numRunners, input.edges(), importers, executionMonitor,
-                new MemoryUsageStatsProvider( idMapper ) );
+                memoryUsageStats, idMapperStats );
         return typeDistribution;
     }
 
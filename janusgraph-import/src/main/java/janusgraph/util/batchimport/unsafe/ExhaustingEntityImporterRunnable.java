@@ -3,10 +3,12 @@ package janusgraph.util.batchimport.unsafe;
 
 
 import janusgraph.util.batchimport.unsafe.input.InputChunk;
+import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
 import janusgraph.util.batchimport.unsafe.input.InputIterator;
-import janusgraph.util.batchimport.unsafe.output.EntityImporter;
 import janusgraph.util.batchimport.unsafe.stage.StageControl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.concurrent.atomic.LongAdder;
 
 import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
@@ -19,12 +21,12 @@ import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedExcep
 class ExhaustingEntityImporterRunnable implements Runnable
 {
     private final InputIterator data;
-    private final EntityImporter visitor;
+    private final InputEntityVisitor visitor;
     private final LongAdder roughEntityCountProgress;
     private final StageControl control;
 
     ExhaustingEntityImporterRunnable(StageControl control,
-                                     InputIterator data, EntityImporter visitor, LongAdder roughEntityCountProgress )
+                                     InputIterator data, InputEntityVisitor visitor, LongAdder roughEntityCountProgress )
     {
         this.control = control;
         this.data = data;
@@ -42,10 +44,12 @@ class ExhaustingEntityImporterRunnable implements Runnable
             {
                 control.assertHealthy();
                 int count = 0;
+                visitor.startOfChunk( chunk.ordinal() );
                 while ( chunk.next( visitor ) )
                 {
                     count++;
                 }
+                visitor.endOfChunk();
                 roughEntityCountProgress.add( count );
             }
         }
@@ -56,7 +60,14 @@ class ExhaustingEntityImporterRunnable implements Runnable
         }
         finally
         {
-            visitor.close();
+            try
+            {
+                visitor.close();
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
         }
     }
 }
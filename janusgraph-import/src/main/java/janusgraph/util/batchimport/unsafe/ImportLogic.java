@@ -2,25 +2,40 @@ package janusgraph.util.batchimport.unsafe;
 
 
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
+import janusgraph.util.batchimport.unsafe.graph.store.berkeleyje.BerkeleyJEBulkWriter;
+import janusgraph.util.batchimport.unsafe.graph.store.cassandra.CassandraSSTableMerger;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.HbaseHFileWriter;
 import janusgraph.util.batchimport.unsafe.helps.Dependencies;
 import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongIterator;
 import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
+import janusgraph.util.batchimport.unsafe.idassigner.PositionalIds;
+import janusgraph.util.batchimport.unsafe.idmapper.DuplicateInputIds;
+import janusgraph.util.batchimport.unsafe.idmapper.ExistingNodes;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.InputIdStore;
 import janusgraph.util.batchimport.unsafe.input.Collector;
 import janusgraph.util.batchimport.unsafe.input.Input;
 import janusgraph.util.batchimport.unsafe.io.fs.FileSystem;
 import janusgraph.util.batchimport.unsafe.log.Log;
 import janusgraph.util.batchimport.unsafe.log.LogService;
+import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
 import janusgraph.util.batchimport.unsafe.stage.*;
 import janusgraph.util.batchimport.unsafe.stats.DataStatistics;
+import janusgraph.util.batchimport.unsafe.stats.GenericStatsProvider;
+import janusgraph.util.batchimport.unsafe.stats.Keys;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static janusgraph.util.batchimport.unsafe.helps.ByteUnit.bytes;
@@ -49,6 +64,9 @@ public class ImportLogic implements Closeable
         void mayExceedEdgeIdCapacity(long capacity, long estimatedCount);
     }
 
+    // under the store dir, for caches which don't fit in memory
+    private static final String CACHE_DIRECTORY_NAME = "id-cache";
+
     public static final Monitor NO_MONITOR = new Monitor()
     {
         @Override
@@ -88,12 +106,15 @@ public class ImportLogic implements Closeable
     private long startTime;
     private NumberArrayFactory numberArrayFactory;
     private Collector badCollector;
-    private IdMapper<String> idMapper;
+    private IdMapper<Object> idMapper;
+    private InputIdStore inputIds;
     private long peakMemoryUsage;
+    private long peakFileUsage;
     private long availableMemoryForLinking;
     private StandardJanusGraph graph;
     private BulkIdAssigner idAssigner;
     private ImportStore janusStore;
+    private final List<CassandraSSTableMerger.Result> mergeResults = new ArrayList<>();
 
 
     /**
@@ -127,14 +148,33 @@ public class ImportLogic implements Closeable
         log.info( "Import starting" );
         startTime = currentTimeMillis();
         this.input = input;
-        numberArrayFactory = NumberArrayFactory.OFF_HEAP;
-
-//        numberArrayFactory = auto( null, storeDir, config.allowCacheAllocationOnHeap() );
+        // caches bigger than max memory continue in files rather than running out of memory
+        numberArrayFactory = NumberArrayFactory.auto( maxMemory, new File( storeDir, CACHE_DIRECTORY_NAME ) );
+        log.info( "Caches are placed " + numberArrayFactory );
         badCollector = input.badCollector();
         // Some temporary caches and indexes in the import
-        idMapper = input.idMapper( numberArrayFactory );
+        if ( config.savedIdMapper() != null )
+        {   // the nodes were imported before, together with the id mapper
+            // the saved indexes are vertex ids only with the partitions, conflict avoidance and counts they were saved with
+            idAssigner.useLayout( IdMapperFile.layout( config.savedIdMapper() ) );
+            idMapper = input.idMapper( config.savedIdMapper(), config.idEncoder() );
+            inputIds = null;
+            log.info( "Edges only, looking up their nodes in " + config.savedIdMapper() );
+        }
+        else
+        {
+            idMapper = input.idMapper( numberArrayFactory, config.idEncoder() );
+            inputIds = idMapper.needsInputIdLookup() ? new InputIdStore( numberArrayFactory ) : null;
+        }
 
         Input.Estimates inputEstimates = input.calculateEstimates( (value) -> 0 );
+        String blockSizeWarning = idAssigner.blockSizeWarning( inputEstimates.numberOfNodes(),
+                inputEstimates.numberOfEdges() + inputEstimates.numberOfNodeProperties() +
+                inputEstimates.numberOfEdgeProperties() );
+        if ( blockSizeWarning != null )
+        {
+            log.warn( blockSizeWarning );
+        }
 
         dependencies.satisfyDependencies( inputEstimates, idMapper );
 
@@ -177,11 +217,31 @@ public class ImportLogic implements Closeable
      */
     public void importNodes() throws IOException
     {
+        DuplicateInputIds duplicates = null;
+        if ( config.deduplicateNodes() )
+        {
+            duplicates = new DuplicateInputIds( numberArrayFactory );
+            long suspects = DataImporter.findDuplicateNodes( config, input, duplicates, executionMonitor );
+            log.info( "Found " + suspects + " node ids which may occur more than once" );
+            updatePeakMemoryUsage();
+        }
+        PositionalIds positions = null;
+        if ( config.deterministicIds() )
+        {
+            positions = new PositionalIds();
+            long nodes = DataImporter.countNodes( config, input, positions, idAssigner, executionMonitor );
+            log.info( "Reserved vertex ids for " + nodes + " nodes" );
+        }
         // Import nodes, properties
-        DataImporter.importNodes(config.bulkLoading(), config.maxNumberOfProcessors(), input, idMapper, // config.outputDir()
-              executionMonitor, storeUpdateMonitor, graph, idAssigner,
+        DataImporter.importNodes(config, input, idMapper, inputIds, // config.outputDir()
+              duplicates, positions, badCollector, executionMonitor, storeUpdateMonitor, graph, idAssigner,
                 janusStore);
-        updatePeakMemoryUsage();
+        updatePeakMemoryUsage( duplicates );
+        if ( duplicates != null )
+        {
+            log.info( "Skipped " + duplicates.duplicates() + " duplicate nodes" );
+            duplicates.close();
+        }
     }
 
     /**
@@ -191,13 +251,17 @@ public class ImportLogic implements Closeable
     {
         if ( idMapper.needsPreparation() )
         {
-            MemoryUsageStatsProvider memoryUsageStats = new MemoryUsageStatsProvider( idMapper );
+            MemoryUsageStatsProvider memoryUsageStats = inputIds != null
+                    ? new MemoryUsageStatsProvider( idMapper, inputIds ) : new MemoryUsageStatsProvider( idMapper );
 
-            executeStage( new IdMapperPreparationStage( config, idMapper, badCollector, memoryUsageStats ) );
+            executeStage( new IdMapperPreparationStage( config, idMapper, inputIds, badCollector, memoryUsageStats ) );
+            // the mapper kept the few input ids it needs for collisions, let the rest go
+            closeInputIds();
 
             PrimitiveLongIterator duplicateNodeIds = idMapper.leftOverDuplicateNodesIds();
             if ( duplicateNodeIds.hasNext() )
             {
+                // only without Configuration#deduplicateNodes(), these nodes are written already
                 // TODO delete duplicate data
                 //executeStage( new DeleteDuplicateNodesStage( config, duplicateNodeIds, janusStore, storeUpdateMonitor ) );
             }
@@ -205,6 +269,23 @@ public class ImportLogic implements Closeable
         }
     }
 
+    /**
+     * Saves the prepared {@link IdMapper} to {@link Configuration#saveIdMapperTo()}, if set, so that later imports
+     * can import edges to the nodes of this one.
+     *
+     * @throws IOException on I/O error.
+     */
+    public void saveIdMapper() throws IOException
+    {
+        File file = config.saveIdMapperTo();
+        if ( file != null )
+        {
+            long start = currentTimeMillis();
+            idMapper.save( file, idAssigner.layout() );
+            log.info( "Saved id mapper to " + file + ", took " + duration( currentTimeMillis() - start ) );
+        }
+    }
+
     /**
      * Uses {@link IdMapper} as lookup for ID --> nodeId and imports all edges from {@link Input#edges()}
      * and writes them into the  cassandra .
@@ -214,43 +295,164 @@ public class ImportLogic implements Closeable
     public void importEdges() throws IOException
     {
         // Import edges (unlinked), properties
-        DataStatistics typeDistribution = DataImporter.importEdges(config.bulkLoading(),
-                config.maxNumberOfProcessors(),
-                input, idMapper, badCollector, executionMonitor, storeUpdateMonitor,
-                graph, idAssigner,
-                janusStore);
+        DataStatistics typeDistribution;
+        try ( ExistingNodes existingNodes = readExistingNodes() )
+        {
+            typeDistribution = DataImporter.importEdges(config,
+                    input, idMapper, existingNodes, badCollector, executionMonitor, storeUpdateMonitor,
+                    graph, idAssigner,
+                    janusStore);
+        }
 
         updatePeakMemoryUsage();
+        GenericStatsProvider idMapperStats = new GenericStatsProvider();
+        idMapper.addStats( idMapperStats );
+        if ( storeUpdateMonitor.lookupCacheHitRate().lookups() > 0 )
+        {
+            idMapperStats.add( Keys.lookup_cache, storeUpdateMonitor.lookupCacheHitRate() );
+        }
+        if ( idMapperStats.keys().length > 0 )
+        {   // e.g. how many lookups of missing nodes the bloom filter saved, and how many hit the lookup caches
+            log.info( "Id mapper lookups " + idMapperStats );
+        }
         idMapper.close();
         idMapper = null;
         putState( typeDistribution );
     }
 
 
+    /**
+     * Reads the {@link Configuration#existingNodes() nodes which are in the graph already}, if any, so that edges of
+     * this import can connect to them too.
+     *
+     * @return the existing nodes, ready for lookups, or {@code null} if there are none.
+     * @throws IOException on I/O error.
+     */
+    private ExistingNodes readExistingNodes() throws IOException
+    {
+        File[] files = config.existingNodes();
+        if ( files == null )
+        {
+            return null;
+        }
+        long start = currentTimeMillis();
+        ExistingNodes existingNodes = input.existingNodes( files, numberArrayFactory, config.idEncoder() );
+        try
+        {
+            existingNodes.prepare( ProgressListener.NONE );
+        }
+        catch ( Exception e )
+        {
+            existingNodes.close();
+            throw new IOException( "Couldn't prepare the existing nodes", e );
+        }
+        log.info( "Read " + existingNodes.count() + " existing nodes from " + files.length + " files, took " +
+                duration( currentTimeMillis() - start ) );
+        return existingNodes;
+    }
+
+    /**
+     * Merges the sorted runs every node and edge importer left behind into one set of sstables where every partition
+     * key is in one place, only if {@link Configuration#mergeSSTables()} and the graph is on cassandra.
+     *
+     * @throws IOException on I/O error.
+     */
+    public void mergeSSTables() throws IOException
+    {
+        if ( !config.bulkLoading() || !config.mergeSSTables() || HbaseHFileWriter.isHbase( graph )
+                || BerkeleyJEBulkWriter.isBerkeleyJE( graph ) )
+        {
+            return;
+        }
+        // composite index entries are merged into graphindex sstables of their own
+        for ( String table : new String[]{janusStore.getTable(), Backend.INDEXSTORE_NAME} )
+        {
+            CassandraSSTableMerger merger = new CassandraSSTableMerger( graph, janusStore.getKeySpace(),
+                    table, config.tokenRanges() );
+            CassandraSSTableMerger.Result mergeResult;
+            try
+            {
+                mergeResult = merger.merge( storeDir, new File( storeDir, DataImporter.NODE_IMPORT_NAME ),
+                        new File( storeDir, DataImporter.EDGE_IMPORT_NAME ) );
+            }
+            catch ( BackendException e )
+            {
+                throw new IOException( e );
+            }
+            if ( mergeResult.cells() > 0 )
+            {
+                mergeResults.add( mergeResult );
+                log.info( mergeResult.toString() );
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException
     {
         // We're done, do some final logging about it
         long totalTimeMillis = currentTimeMillis() - startTime;
-        executionMonitor.done( totalTimeMillis, format( "%n%s%nPeak memory usage: %s", storeUpdateMonitor, bytes( peakMemoryUsage ) ) );
+        executionMonitor.done( totalTimeMillis, format( "%n%s%nPeak memory usage: %s%s%s", storeUpdateMonitor, bytes( peakMemoryUsage ),
+                peakFileUsage > 0 ? format( ", mapped files: %s", bytes( peakFileUsage ) ) : "", mergeSummary() ) );
         log.info( "<Generate SSTable Files> completed successfully, took " + duration( totalTimeMillis ) + ". " + storeUpdateMonitor );
 
         if ( idMapper != null )
         {
             idMapper.close();
         }
+        closeInputIds();
+        deleteCacheDirectory();
     }
 
+    private void deleteCacheDirectory()
+    {
+        File[] files = new File( storeDir, CACHE_DIRECTORY_NAME ).listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                file.delete();
+            }
+            new File( storeDir, CACHE_DIRECTORY_NAME ).delete();
+        }
+    }
+
+    private void closeInputIds()
+    {
+        if ( inputIds != null )
+        {
+            inputIds.close();
+            inputIds = null;
+        }
+    }
+
+
 
+    private String mergeSummary()
+    {
+        StringBuilder summary = new StringBuilder();
+        for ( CassandraSSTableMerger.Result mergeResult : mergeResults )
+        {
+            summary.append( format( "%n%s", mergeResult ) );
+        }
+        return summary.toString();
+    }
 
     private void updatePeakMemoryUsage()
     {
-        peakMemoryUsage = max( peakMemoryUsage, totalMemoryUsageOf(idMapper ) );
+        updatePeakMemoryUsage( null );
+    }
+
+    private void updatePeakMemoryUsage( MemoryStatsVisitor.Visitable other )
+    {
+        GatheringMemoryStatsVisitor total = memoryUsageOf( idMapper, inputIds, other );
+        peakMemoryUsage = max( peakMemoryUsage, total.getTotalUsage() );
+        peakFileUsage = max( peakFileUsage, total.getFileUsage() );
     }
 
 
 
-    private static long totalMemoryUsageOf( MemoryStatsVisitor.Visitable... users )
+    private static GatheringMemoryStatsVisitor memoryUsageOf( MemoryStatsVisitor.Visitable... users )
     {
         GatheringMemoryStatsVisitor total = new GatheringMemoryStatsVisitor();
         for ( MemoryStatsVisitor.Visitable user : users )
@@ -260,7 +462,7 @@ public class ImportLogic implements Closeable
                 user.acceptMemoryStatsVisitor( total );
             }
         }
-        return total.getHeapUsage() + total.getOffHeapUsage();
+        return total;
     }
 
 
@@ -3,6 +3,7 @@ package janusgraph.util.batchimport.unsafe;
 
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStores;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.HbaseHFileWriter;
 import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
 import janusgraph.util.batchimport.unsafe.input.Input;
 import janusgraph.util.batchimport.unsafe.io.fs.FileSystem;
@@ -15,6 +16,7 @@ import org.janusgraph.graphdb.database.StandardJanusGraph;
 import java.io.File;
 
 import static org.janusgraph.diskstorage.cassandra.AbstractCassandraStoreManager.CASSANDRA_KEYSPACE;
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.HBASE_TABLE;
 
 
 /**
@@ -56,20 +58,33 @@ public class ParallelBatchImporter extends LifecycleAdapter implements BatchImpo
     public void doImport( Input input ) throws Exception
     {
 
+        // the hbase table plays the part of the keyspace
+        String keySpace = HbaseHFileWriter.isHbase(graph) ?
+                graph.getConfiguration().getConfiguration().get(HBASE_TABLE) :
+                graph.getConfiguration().getConfiguration().get(CASSANDRA_KEYSPACE); //FIXME user determin Keyspace
         try (ImportStore janusStore = new ImportStores.BulkImportStoreImpl(graph,
                         storeDir.getPath(),
-                        graph.getConfiguration().getConfiguration().get(CASSANDRA_KEYSPACE), //FIXME user determin Keyspace
-                        Backend.EDGESTORE_NAME);
+                        keySpace,
+                        Backend.EDGESTORE_NAME,
+                        config);
              ImportLogic logic = new ImportLogic( storeDir, fileSystem, config, logService,
                       executionMonitor, monitor,graph,idAssigner ,janusStore ) )
         {
             logic.initialize( input );
             long time1 = System.currentTimeMillis();
-            logic.importNodes();
+            if ( config.savedIdMapper() == null )
+            {
+                logic.importNodes();
+            }
             long time2 = System.currentTimeMillis();
-            logic.prepareIdMapper();
+            if ( config.savedIdMapper() == null )
+            {
+                logic.prepareIdMapper();
+                logic.saveIdMapper();
+            }
             long time3 = System.currentTimeMillis();
             logic.importEdges();
+            logic.mergeSSTables();
             long time4 = System.currentTimeMillis();
             System.out.println("[node]" + (time2 - time1) + "[map]" + (time3 - time2) + "[edge]" + (time4 - time3)) ;
             /*logic.calculateNodeDegrees();
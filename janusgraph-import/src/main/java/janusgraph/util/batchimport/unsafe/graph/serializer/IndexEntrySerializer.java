@@ -0,0 +1,202 @@
+package janusgraph.util.batchimport.unsafe.graph.serializer;
+
+import com.google.common.base.Preconditions;
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreFeatures;
+import org.janusgraph.diskstorage.util.HashingUtil;
+import org.janusgraph.diskstorage.util.StaticArrayEntry;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.database.idhandling.VariableLong;
+import org.janusgraph.graphdb.database.serialize.AttributeUtil;
+import org.janusgraph.graphdb.database.serialize.DataOutput;
+import org.janusgraph.graphdb.database.serialize.Serializer;
+import org.janusgraph.graphdb.internal.ElementCategory;
+import org.janusgraph.graphdb.internal.InternalRelationType;
+import org.janusgraph.graphdb.types.CompositeIndexType;
+import org.janusgraph.graphdb.types.IndexField;
+import org.janusgraph.graphdb.types.IndexType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ * serializes the composite graph index entries of imported vertices, the {@code graphindex} counterpart of
+ * {@link RelationSerializer}.
+ *
+ * {@link #getIndexKey} and {@link #getIndexEntry} are copies of the private methods of the same name in
+ * {@code IndexSerializer}, which can only produce index updates for vertices whose properties it can query in a
+ * transaction. the properties of a vertex are collected with {@link #property} and {@link #endVertex} writes an entry
+ * for every record of every composite vertex index all of whose keys the vertex has, like
+ * {@code IndexSerializer#getIndexUpdates} does.
+ *
+ * not thread safe, every importer holds its own instance.
+ */
+public class IndexEntrySerializer {
+
+    private static final int DEFAULT_OBJECT_BYTELEN = 30;
+    private static final byte FIRST_INDEX_COLUMN_BYTE = 0;
+    private static final HashingUtil.HashLength HASH_LENGTH = HashingUtil.HashLength.SHORT;
+
+    private final Serializer serializer;
+    private final boolean hashKeys;
+
+    // properties of the current vertex which are part of a composite index
+    private PropertyKey[] keys = new PropertyKey[8];
+    private Object[] values = new Object[8];
+    private long[] relationIds = new long[8];
+    private int count;
+    private final List<CompositeIndexType> indexes = new ArrayList<>();
+
+    public IndexEntrySerializer(StandardJanusGraph graph) {
+        this.serializer = graph.getDataSerializer();
+        // the same condition StandardJanusGraph creates its IndexSerializer with
+        StoreFeatures features = graph.getBackend().getStoreFeatures();
+        this.hashKeys = features.isDistributed() && features.isKeyOrdered();
+    }
+
+    /**
+     * whether the schema has a composite index on vertices, without one there is nothing to write
+     */
+    public static boolean hasCompositeVertexIndex(JanusGraphManagement mgmt) {
+        for (JanusGraphIndex index : mgmt.getGraphIndexes(Vertex.class)) {
+            if (index.isCompositeIndex()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * remembers a property of the current vertex if its key is part of a composite vertex index
+     */
+    public void property(PropertyKey key, long relationId, Object value) {
+
+        boolean indexed = false;
+        for (IndexType index : ((InternalRelationType) key).getKeyIndexes()) {
+            if (!index.isCompositeIndex() || index.getElement() != ElementCategory.VERTEX) continue;
+            CompositeIndexType composite = (CompositeIndexType) index;
+            if (composite.getStatus() == SchemaStatus.DISABLED) continue;
+            if (!contains(indexes, composite)) {
+                indexes.add(composite);
+            }
+            indexed = true;
+        }
+        if (!indexed) return;
+
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+            relationIds = Arrays.copyOf(relationIds, count * 2);
+        }
+        keys[count] = key;
+        values[count] = value;
+        relationIds[count] = relationId;
+        count++;
+    }
+
+    /**
+     * adds the index entries of the current vertex to {@code out}, every entry in a group of its own, and forgets
+     * its properties
+     *
+     * @return number of entries added
+     */
+    public int endVertex(long vertexId, VertexLabel label, GroupedMutations out) {
+
+        int entries = 0;
+        for (CompositeIndexType index : indexes) {
+            if (index.hasSchemaTypeConstraint() && (label == null ||
+                    index.getSchemaTypeConstraint().longId() != label.longId())) {
+                continue;
+            }
+            IndexField[] fields = index.getFieldKeys();
+            entries += writeRecords(index, fields, 0, new Object[fields.length], new long[fields.length],
+                    vertexId, out);
+        }
+
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+        indexes.clear();
+        return entries;
+    }
+
+    private static boolean contains(List<CompositeIndexType> indexes, CompositeIndexType index) {
+        for (CompositeIndexType other : indexes) {
+            if (other.getID() == index.getID()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * one record for every combination of the values of the fields, multi valued keys give several
+     */
+    private int writeRecords(CompositeIndexType index, IndexField[] fields, int field, Object[] record,
+                             long[] recordIds, long vertexId, GroupedMutations out) {
+        if (field == fields.length) {
+            out.newGroup(getIndexKey(index, record));
+            out.add(getIndexEntry(index, recordIds, vertexId));
+            return 1;
+        }
+        int entries = 0;
+        PropertyKey key = fields[field].getFieldKey();
+        for (int i = 0; i < count; i++) {
+            if (keys[i].longId() != key.longId()) continue;
+            record[field] = values[i];
+            recordIds[field] = relationIds[i];
+            entries += writeRecords(index, fields, field + 1, record, recordIds, vertexId, out);
+        }
+        return entries;
+    }
+
+    public StaticBuffer getIndexKey(CompositeIndexType index, Object[] values) {
+        DataOutput out = serializer.getDataOutput(8 * DEFAULT_OBJECT_BYTELEN + 8);
+        VariableLong.writePositive(out, index.getID());
+        IndexField[] fields = index.getFieldKeys();
+        Preconditions.checkArgument(fields.length > 0 && fields.length == values.length);
+        for (int i = 0; i < fields.length; i++) {
+            IndexField f = fields[i];
+            Object value = values[i];
+            Preconditions.checkNotNull(value);
+            if (AttributeUtil.hasGenericDataType(f.getFieldKey())) {
+                out.writeClassAndObject(value);
+            } else {
+                assert value.getClass().equals(f.getFieldKey().dataType()) : value.getClass() + " - " + f.getFieldKey().dataType();
+                out.writeObjectNotNull(value);
+            }
+        }
+        StaticBuffer key = out.getStaticBuffer();
+        if (hashKeys) key = HashingUtil.hashPrefixKey(HASH_LENGTH, key);
+        return key;
+    }
+
+    /**
+     * @param relationIds ids of the properties the record is made of, in the order of the fields
+     */
+    public Entry getIndexEntry(CompositeIndexType index, long[] relationIds, long vertexId) {
+        DataOutput out = serializer.getDataOutput(1 + 8 + 8 * relationIds.length + 4 * 8);
+        out.putByte(FIRST_INDEX_COLUMN_BYTE);
+        if (index.getCardinality() != Cardinality.SINGLE) {
+            VariableLong.writePositive(out, vertexId);
+            if (index.getCardinality() != Cardinality.SET) {
+                for (long relationId : relationIds) {
+                    VariableLong.writePositive(out, relationId);
+                }
+            }
+        }
+        int valuePosition = out.getPosition();
+        VariableLong.writePositive(out, vertexId);
+        return new StaticArrayEntry(out.getStaticBuffer(), valuePosition);
+    }
+}
@@ -9,6 +9,8 @@ import org.janusgraph.core.Cardinality;
 import org.janusgraph.core.JanusGraphVertexProperty;
 import org.janusgraph.core.Multiplicity;
 import org.janusgraph.core.PropertyKey;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
 import org.janusgraph.diskstorage.util.StaticArrayEntry;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.database.idhandling.IDHandler;
@@ -17,6 +19,7 @@ import org.janusgraph.graphdb.database.serialize.AttributeUtil;
 import org.janusgraph.graphdb.database.serialize.DataOutput;
 import org.janusgraph.graphdb.internal.InternalRelation;
 import org.janusgraph.graphdb.internal.InternalRelationType;
+import org.janusgraph.graphdb.internal.Order;
 import org.janusgraph.graphdb.internal.RelationCategory;
 import org.janusgraph.graphdb.relations.EdgeDirection;
 import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
@@ -29,25 +32,37 @@ import java.util.Arrays;
  * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
  * serialize {@link org.janusgraph.core.PropertyKey propertykey} and {@link org.janusgraph.core.EdgeLabel edgeLabel} to
  * {@link org.janusgraph.diskstorage.Entry Entry} to be persist to database
+ *
+ * {@link #writeRelation} is a copy of {@code EdgeSerializer#writeRelation} and works on janusgraph elements.
+ * {@link #writeProperty} and {@link #writeEdge} write the very same bytes straight from the ids and values parsed
+ * out of the input, without a StandardVertex/StandardEdge per row. The entries they return are sliced out of a
+ * shared slab instead of each one owning a buffer of {@link #DEFAULT_CAPACITY} bytes.
+ *
+ * not thread safe, every importer holds its own instance.
  */
-@Deprecated
 public class RelationSerializer {
 
-    private StandardJanusGraph graph;
     private static final int DEFAULT_CAPACITY = 128;
+    private static final int SLAB_CAPACITY = 1 << 16;
 
-
+    private final StandardJanusGraph graph;
+    private final TypeInspector types;
+    private DataOutput slab;
 
     public RelationSerializer(StandardJanusGraph graph) {
-        this.graph = graph;
+        this(graph, null);
     }
 
-
+    /**
+     * @param types used to look up the keys of signatures when writing from primitives
+     */
+    public RelationSerializer(StandardJanusGraph graph, TypeInspector types) {
+        this.graph = graph;
+        this.types = types;
+    }
 
     public StaticArrayEntry writeRelation(InternalRelation relation, InternalRelationType type, int position, StandardJanusGraphTx tx){
 
-
-        long time1 = System.currentTimeMillis();
         assert type==relation.getType() || (type.getBaseType() != null && type.getBaseType().equals(relation.getType()));
 
         Direction dir = EdgeDirection.fromPosition(position);
@@ -61,14 +76,18 @@ public class RelationSerializer {
         IDHandler.writeRelationType(out, typeid, dirID, type.isInvisibleType());
         Multiplicity multiplicity = type.multiplicity();
 
+        long[] sortKey = type.getSortKey();
+        assert !multiplicity.isConstrained() || sortKey.length==0: type.name();
+        int keyStartPos = out.getPosition();
+        if (!multiplicity.isConstrained()) {
+            writeInlineTypes(sortKey, relation, out, tx, InlineType.KEY);
+        }
+        int keyEndPos = out.getPosition();
 
         long relationId = relation.longId();
 
-        long time2 = System.currentTimeMillis();
-
         //How multiplicity is handled for edges and properties is slightly different
         if (relation.isEdge()) {
-            long start = System.currentTimeMillis();
             long otherVertexId = relation.getVertex((position + 1) % 2).longId();
             if (multiplicity.isConstrained()) {
                 if (multiplicity.isUnique(dir)) {
@@ -84,9 +103,7 @@ public class RelationSerializer {
                 VariableLong.writePositiveBackward(out, relationId);
                 valuePosition = out.getPosition();
             }
-            long end = System.currentTimeMillis();
         } else {
-            long start = System.currentTimeMillis();
             assert relation.isProperty();
             Preconditions.checkArgument(relation.isProperty());
             Object value = ((JanusGraphVertexProperty) relation).value();
@@ -109,17 +126,16 @@ public class RelationSerializer {
                 valuePosition = out.getPosition();
                 writePropertyValue(out,key,value);
             }
-            long end = System.currentTimeMillis();
         }
 
-        long time3 = System.currentTimeMillis();
         //Write signature
         long[] signature = type.getSignature();
         writeInlineTypes(signature, relation, out, tx, InlineType.SIGNATURE);
 
         //Write remaining properties
-        LongSet writtenTypes = new LongHashSet(signature.length);
-        if (signature.length > 0) {
+        LongSet writtenTypes = new LongHashSet(sortKey.length + signature.length);
+        if (sortKey.length > 0 || signature.length > 0) {
+            for (long id : sortKey) writtenTypes.add(id);
             for (long id : signature) writtenTypes.add(id);
         }
         LongArrayList remainingTypes = new LongArrayList(8);
@@ -136,10 +152,149 @@ public class RelationSerializer {
             writeInline(out, t, relation.getValueDirect(t), InlineType.NORMAL);
         }
         assert valuePosition>0;
-        long time4 = System.currentTimeMillis();
 
+        return new StaticArrayEntry(type.getSortOrder()== Order.DESC?
+                out.getStaticBufferFlipBytes(keyStartPos,keyEndPos):
+                out.getStaticBuffer(),valuePosition);
+    }
+
+    /**
+     * Writes the entry of a vertex property, the same bytes {@link #writeRelation} writes for a
+     * {@link org.janusgraph.graphdb.relations.StandardVertexProperty} with this id and value.
+     */
+    public Entry writeProperty(PropertyKey key, long relationId, Object value) {
+
+        Preconditions.checkNotNull(value);
+        InternalRelationType type = (InternalRelationType) key;
+        assert key.dataType().isInstance(value);
+
+        DataOutput out = slab();
+        int start = out.getPosition();
+        IDHandler.writeRelationType(out, type.longId(), IDHandler.DirectionID.PROPERTY_DIR, type.isInvisibleType());
+        Multiplicity multiplicity = type.multiplicity();
+
+        int valuePosition;
+        if (multiplicity.isConstrained()) {
+            if (multiplicity.isUnique(Direction.OUT)) { //Cardinality=SINGLE
+                valuePosition = out.getPosition();
+                writePropertyValue(out,key,value);
+            } else { //Cardinality=SET
+                writePropertyValue(out,key,value);
+                valuePosition = out.getPosition();
+            }
+            VariableLong.writePositive(out, relationId);
+        } else {
+            assert multiplicity.getCardinality()== Cardinality.LIST;
+            VariableLong.writePositiveBackward(out, relationId);
+            valuePosition = out.getPosition();
+            writePropertyValue(out,key,value);
+        }
 
-        return new StaticArrayEntry(out.getStaticBuffer(),valuePosition);
+        // vertex properties are imported without meta properties, only the signature has to be written
+        writeInlineProperties(type, InlineProperties.NONE, out);
+        return slice(out, start, valuePosition, 0, 0);
+    }
+
+    /**
+     * Writes the entry of an edge as seen from the vertex at {@code position}, the same bytes {@link #writeRelation}
+     * writes for a {@link org.janusgraph.graphdb.relations.StandardEdge} with this id and these properties.
+     *
+     * @param otherVertexId id of the vertex at the other end of the edge
+     * @param properties properties of the edge, may be reordered by this call
+     */
+    public Entry writeEdge(InternalRelationType type, int position, long otherVertexId, long relationId,
+                           InlineProperties properties) {
+
+        Direction dir = EdgeDirection.fromPosition(position);
+        Preconditions.checkArgument(type.isUnidirected(Direction.BOTH) || type.isUnidirected(dir));
+
+        DataOutput out = slab();
+        int start = out.getPosition();
+        IDHandler.writeRelationType(out, type.longId(), getDirID(dir, RelationCategory.EDGE), type.isInvisibleType());
+        Multiplicity multiplicity = type.multiplicity();
+
+        long[] sortKey = type.getSortKey();
+        assert !multiplicity.isConstrained() || sortKey.length==0: type.name();
+        int keyStartPos = out.getPosition();
+        if (!multiplicity.isConstrained()) {
+            for (long keyId : sortKey) {
+                writeInline(out, types.getExistingPropertyKey(keyId), properties.get(keyId), InlineType.KEY);
+            }
+        }
+        int keyEndPos = out.getPosition();
+
+        int valuePosition;
+        if (multiplicity.isConstrained()) {
+            if (multiplicity.isUnique(dir)) {
+                valuePosition = out.getPosition();
+                VariableLong.writePositive(out, otherVertexId);
+            } else {
+                VariableLong.writePositiveBackward(out, otherVertexId);
+                valuePosition = out.getPosition();
+            }
+            VariableLong.writePositive(out, relationId);
+        } else {
+            VariableLong.writePositiveBackward(out, otherVertexId);
+            VariableLong.writePositiveBackward(out, relationId);
+            valuePosition = out.getPosition();
+        }
+
+        writeInlineProperties(type, properties, out);
+        return type.getSortOrder() == Order.DESC ?
+                slice(out, start, valuePosition, keyStartPos, keyEndPos) :
+                slice(out, start, valuePosition, 0, 0);
+    }
+
+    /**
+     * Signature first, then all other properties sorted by key id, just like {@link #writeRelation}.
+     */
+    private void writeInlineProperties(InternalRelationType type, InlineProperties properties, DataOutput out) {
+
+        long[] sortKey = type.getSortKey();
+        long[] signature = type.getSignature();
+        for (long keyId : signature) {
+            writeInline(out, types.getExistingPropertyKey(keyId), properties.get(keyId), InlineType.SIGNATURE);
+        }
+
+        properties.sortByKeyId();
+        for (int i = 0; i < properties.size; i++) {
+            PropertyKey key = properties.keys[i];
+            if (key instanceof ImplicitKey || contains(sortKey, key.longId()) || contains(signature, key.longId())) {
+                continue;
+            }
+            writeInline(out, key, properties.values[i], InlineType.NORMAL);
+        }
+    }
+
+    private static boolean contains(long[] keyIds, long keyId) {
+        for (long id : keyIds) {
+            if (id == keyId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private DataOutput slab() {
+        if (slab == null) {
+            slab = graph.getDataSerializer().getDataOutput(SLAB_CAPACITY);
+        }
+        return slab;
+    }
+
+    /**
+     * Cuts the entry written from {@code start} out of the slab, the slab is given up once it's full so that
+     * the entries handed out never see their bytes change.
+     */
+    private Entry slice(DataOutput out, int start, int valuePosition, int flipFrom, int flipTo) {
+
+        StaticBuffer buffer = out.getStaticBufferFlipBytes(flipFrom, flipTo);
+        int end = out.getPosition();
+        if (end >= SLAB_CAPACITY - DEFAULT_CAPACITY) {
+            slab = null;
+        }
+        assert valuePosition > start;
+        return new StaticArrayEntry(buffer.subrange(start, end - start), valuePosition - start);
     }
 
     private IDHandler.DirectionID getDirID(Direction dir, RelationCategory rt) {
@@ -200,7 +355,74 @@ public class RelationSerializer {
             else out.writeObject(value, key.dataType());
         }
     }
-    
+
+    /**
+     * properties of an edge which is written by {@link #writeEdge}, meant to be cleared and reused for every edge.
+     */
+    public static class InlineProperties {
+
+        static final InlineProperties NONE = new InlineProperties();
+
+        private PropertyKey[] keys = new PropertyKey[4];
+        private Object[] values = new Object[4];
+        private int size;
+
+        /**
+         * sets the value of {@code key}, a later value for the same key replaces the former one.
+         */
+        public void set(PropertyKey key, Object value) {
+            assert this != NONE;
+            for (int i = 0; i < size; i++) {
+                if (keys[i].longId() == key.longId()) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+
+        public Object get(long keyId) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].longId() == keyId) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+
+        // insertion sort, an edge rarely has more than a handful of properties
+        private void sortByKeyId() {
+            for (int i = 1; i < size; i++) {
+                PropertyKey key = keys[i];
+                Object value = values[i];
+                int j = i - 1;
+                while (j >= 0 && keys[j].longId() > key.longId()) {
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                values[j + 1] = value;
+            }
+        }
+    }
+
     private enum InlineType {
 
         KEY, SIGNATURE, NORMAL;
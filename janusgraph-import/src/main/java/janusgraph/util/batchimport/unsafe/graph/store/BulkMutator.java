@@ -13,5 +13,10 @@ import java.util.Collection;
 public interface BulkMutator {
 
     public void mutateMany(StandardJanusGraphTx stx, Collection<InternalRelation> addedRelations) throws BackendException;
+
+    /**
+     * write entries which are already serialized, the entries are cleared afterwards
+     */
+    public void mutateEntries(VertexEntries entries) throws BackendException;
     public void close();
 }
@@ -1,28 +1,25 @@
 package janusgraph.util.batchimport.unsafe.graph.store;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
 import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.janusgraph.core.schema.SchemaStatus;
 import org.janusgraph.diskstorage.BackendException;
-import org.janusgraph.diskstorage.Entry;
-import org.janusgraph.diskstorage.StaticBuffer;
 import org.janusgraph.diskstorage.util.StaticArrayEntry;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.internal.InternalRelation;
 import org.janusgraph.graphdb.internal.InternalRelationType;
-import org.janusgraph.graphdb.internal.InternalVertex;
 import org.janusgraph.graphdb.relations.EdgeDirection;
 import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
 
 /**
  * Created by dengziming on 18/08/2018.
@@ -31,13 +28,62 @@ import java.util.concurrent.Executors;
  */
 public class BulkMutators {
 
+    /**
+     * serializes every direction of the relations covered by their type into entries of the vertex on that side,
+     * then clears the relations
+     */
+    public static void serialize(StandardJanusGraph graph, StandardJanusGraphTx stx,
+                                 Collection<InternalRelation> relations, VertexEntries into) {
+
+        for (InternalRelation add : relations) {
+            Preconditions.checkArgument(add.isNew());
+
+            InternalRelationType type = (InternalRelationType) add.getType();
+            assert type.getBaseType()==null;
+
+            if (type.getStatus()== SchemaStatus.DISABLED) continue;
+            for (int pos = 0; pos < add.getArity(); pos++) {
+                if (!type.isUnidirected(Direction.BOTH) && !type.isUnidirected(EdgeDirection.fromPosition(pos)))
+                    continue; //Directionality is not covered
+                long vertexId = add.getVertex(pos).longId();
+                Preconditions.checkArgument(vertexId > 0, "Vertex has no id: %s", vertexId);
 
+                // FIXME here is some bug ,for example, if a property with integer type and string value,
+                // then the serialize will failed and without throw an Exception! to force cast or print!
+                StaticArrayEntry entry = graph.getEdgeSerializer().writeRelation(add, type, pos, stx);
+                into.add(vertexId, entry);
+            }
+        }
+        relations.clear();
+    }
+
+    /**
+     * sorts the entries by vertex id, then every run of equal ids is the mutation of one row. the entries are
+     * cleared afterwards
+     */
+    public static void group(StandardJanusGraph graph, VertexEntries entries, GroupedMutations into) {
+
+        entries.sortByVertex();
+        long lastVertexId = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            long vertexId = entries.vertexId(i);
+            if (i == 0 || vertexId != lastVertexId) {
+                into.newGroup(graph.getIDManager().getKey(vertexId));
+                lastVertexId = vertexId;
+            }
+            into.add(entries.entry(i));
+        }
+        entries.clear();
+    }
 
     public static class BulkMutatorImpl implements BulkMutator{
 
         private StandardJanusGraph graph;
         private ImportStore store;
 
+        private final VertexEntries serialized = new VertexEntries(1024);
+        private final GroupedMutations grouped = new GroupedMutations(1024);
+
         public BulkMutatorImpl(StandardJanusGraph graph,ImportStore store) {
             this.graph = graph;
             this.store = store;
@@ -46,47 +92,21 @@ public class BulkMutators {
         @Override
         public void mutateMany(StandardJanusGraphTx stx, Collection<InternalRelation> addedRelations) throws BackendException {
 
-            ListMultimap<Long, InternalRelation> mutations = ArrayListMultimap.create();
+            serialize(graph, stx, addedRelations, serialized);
+            mutateEntries(serialized);
+        }
 
-            for (InternalRelation add : addedRelations) {
-                Preconditions.checkArgument(add.isNew());
+        @Override
+        public void mutateEntries(VertexEntries entries) throws BackendException {
 
-                for (int pos = 0; pos < add.getLen(); pos++) {
-                    InternalVertex vertex = add.getVertex(pos);
-                    if (pos == 0 || !add.isLoop()) {
+            if (entries.isEmpty()) return;
 
-                        mutations.put(vertex.longId(), add);
-                    }
+            group(graph, entries, grouped);
 
-                }
-            }
-            addedRelations.clear();
-
-            for (Long vertexId : mutations.keySet()) {
-                Preconditions.checkArgument(vertexId > 0, "Vertex has no id: %s", vertexId);
-                List<InternalRelation> edges = mutations.get(vertexId);
-                List<Entry> additions = new ArrayList<>(edges.size());
-                for (InternalRelation edge : edges) {
-
-                    InternalRelationType type = (InternalRelationType) edge.getType();
-                    assert type.getBaseType()==null;
-
-                    if (type.getStatus()== SchemaStatus.DISABLED) continue;
-                    for (int pos = 0; pos < edge.getArity(); pos++) {
-                        if (!type.isUnidirected(Direction.BOTH) && !type.isUnidirected(EdgeDirection.fromPosition(pos)))
-                            continue; //Directionality is not covered
-                        if (edge.getVertex(pos).longId()==vertexId) {
-
-                            // FIXME here is some bug ,for example, if a property with integer type and string value,
-                            // then the serialize will failed and without throw an Exception! to force cast or print!
-                            StaticArrayEntry entry = graph.getEdgeSerializer().writeRelation(edge, type, pos, stx);
-                            additions.add(entry);
-                        }
-                    }
-                }
-
-                StaticBuffer vertexKey = graph.getIDManager().getKey(vertexId);
-                store.mutateEdges(vertexKey, additions);
+            try {
+                store.mutateEdges(grouped);
+            } finally {
+                grouped.clear();
             }
         }
 
@@ -96,7 +116,7 @@ public class BulkMutators {
                 // TODO close multiple time ?
                 store.close();
             } catch (IOException e) {
-                e.printStackTrace();
+                throw launderedException(e);
             }
         }
 
@@ -116,6 +136,8 @@ public class BulkMutators {
         private int parallel;
         private long cursor;
         private StandardJanusGraph graph;
+        // first batch which failed on a thread of the pool, thrown by the next call or by close()
+        private final AtomicReference<BackendException> failure = new AtomicReference<>();
 
         public ParallelBulkMutator(StandardJanusGraph graph,ImportStore store,int parallel) {
 
@@ -138,12 +160,42 @@ public class BulkMutators {
         @Override
         public void mutateMany(StandardJanusGraphTx stx, Collection<InternalRelation> addedRelations) throws BackendException {
 
+            checkFailure();
             int i = (int) (cursor % parallel);
             Runnable runnable = () -> {
                 try {
                     mutators[i].mutateMany(stx, addedRelations);
                 } catch (BackendException e) {
-                    e.printStackTrace();
+                    failure.compareAndSet(null, e);
+                }
+            };
+            executor.submit(runnable);
+
+            cursor ++;
+        }
+
+        @Override
+        public void mutateEntries(VertexEntries entries) throws BackendException {
+
+            checkFailure();
+            if (entries.isEmpty()) return;
+
+            // the caller reuses its buffer, so the entries are handed over in a copy of their own
+            VertexEntries copy = new VertexEntries(entries.size());
+            for (int j = 0; j < entries.size(); j++) {
+                copy.add(entries.vertexId(j), entries.entry(j));
+            }
+            entries.clear();
+
+            BulkMutatorImpl mutator = mutators[(int) (cursor % parallel)];
+            Runnable runnable = () -> {
+                // the scratch buffers of a mutator are not shared, batches queued for the same one take turns
+                synchronized (mutator) {
+                    try {
+                        mutator.mutateEntries(copy);
+                    } catch (BackendException e) {
+                        failure.compareAndSet(null, e);
+                    }
                 }
             };
             executor.submit(runnable);
@@ -154,10 +206,26 @@ public class BulkMutators {
         @Override
         public void close() {
 
+            // the batches still queued are written before the stores are closed
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             for (int i = 0; i < parallel; i ++){
                 mutators[i].close();
             }
-            executor.shutdown();
+            if (failure.get() != null) {
+                throw launderedException(failure.get());
+            }
+        }
+
+        private void checkFailure() throws BackendException {
+            BackendException e = failure.get();
+            if (e != null) {
+                throw e;
+            }
         }
     }
 
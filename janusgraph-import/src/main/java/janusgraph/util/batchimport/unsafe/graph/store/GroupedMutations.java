@@ -0,0 +1,97 @@
+package janusgraph.util.batchimport.unsafe.graph.store;
+
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ * additions of a batch grouped by row key: group {@code g} has key {@link #key(int)} and the entries
+ * {@link #from(int)} until {@link #to(int)}. this replaces the {@code Map<StaticBuffer, KCVEntryMutation>} which was
+ * passed to the consumers, the groups are built from entries sorted by vertex id so no hashing is needed.
+ *
+ * reused between batches, consumers must not keep a reference to it after {@code accept} returns.
+ */
+public class GroupedMutations {
+
+    private StaticBuffer[] keys;
+    private int[] ends;
+    private Entry[] entries;
+    private int groups;
+    private int size;
+
+    public GroupedMutations(int capacity) {
+        keys = new StaticBuffer[Math.max(1, capacity / 4)];
+        ends = new int[keys.length];
+        entries = new Entry[Math.max(1, capacity)];
+    }
+
+    /**
+     * starts a new group, following {@link #add} go into it
+     */
+    public void newGroup(StaticBuffer key) {
+        if (groups == keys.length) {
+            keys = Arrays.copyOf(keys, groups * 2);
+            ends = Arrays.copyOf(ends, groups * 2);
+        }
+        keys[groups] = key;
+        ends[groups] = size;
+        groups++;
+    }
+
+    public void add(Entry entry) {
+        assert groups > 0;
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = entry;
+        ends[groups - 1] = size;
+    }
+
+    public int groups() {
+        return groups;
+    }
+
+    /**
+     * total number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public StaticBuffer key(int group) {
+        return keys[group];
+    }
+
+    public int from(int group) {
+        return group == 0 ? 0 : ends[group - 1];
+    }
+
+    public int to(int group) {
+        return ends[group];
+    }
+
+    public Entry entry(int index) {
+        return entries[index];
+    }
+
+    /**
+     * view of the entries of a group, only valid until the next {@link #clear()}
+     */
+    public List<Entry> entries(int group) {
+        return Arrays.asList(entries).subList(from(group), to(group));
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, groups, null);
+        Arrays.fill(entries, 0, size, null);
+        groups = 0;
+        size = 0;
+    }
+}
@@ -1,19 +1,16 @@
 package janusgraph.util.batchimport.unsafe.graph.store;
 
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.graph.store.berkeleyje.BerkeleyJEBulkWriter;
 import janusgraph.util.batchimport.unsafe.graph.store.cassandra.CassandraSSTableWriter;
+import janusgraph.util.batchimport.unsafe.graph.store.cassandra.TokenRangeSSTableWriter;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.HbaseHFileWriter;
 import org.janusgraph.diskstorage.BackendException;
-import org.janusgraph.diskstorage.Entry;
-import org.janusgraph.diskstorage.StaticBuffer;
-import org.janusgraph.diskstorage.keycolumnvalue.cache.KCVEntryMutation;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
-import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.BUFFER_SIZE;
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
 
 /**
  * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
@@ -24,82 +21,36 @@ public class ImportStores {
     public static abstract class AbstractImportStoreImpl implements ImportStore {
 
         protected StandardJanusGraph graph;
-        int numMutations;
-        int persistChunkSize;
+        long numMutations;
         boolean open;
-        Map<String, Map<StaticBuffer, KCVEntryMutation>> mutations ;
         protected StoreConsumers.KeyColumnValueConsumer consumer;
         String edgestore ; // default value "edgestore"
 
         AbstractImportStoreImpl(StandardJanusGraph graph, String edgestore) {
             this.graph = graph;
             this.numMutations = 0;
-            this.persistChunkSize = graph.getConfiguration().getConfiguration().get(BUFFER_SIZE);
-            this.mutations = new HashMap<>(2);// edgestore and graphindex, here isn't graphindex
             this.open = true;
             this.edgestore = edgestore;
         }
 
         @Override
-        public void mutateEdges(StaticBuffer key, List<Entry> additions) throws BackendException {
+        public void mutateEdges(GroupedMutations mutations) throws BackendException {
 
-            if (additions.isEmpty()) return;
+            if (mutations.isEmpty()) return;
 
-            // cf -> key-> cassmutation
-            KCVEntryMutation m = new KCVEntryMutation(additions, new ArrayList<>());
-
-            // without meaning because edgestore is always constant?
-            Map<StaticBuffer, KCVEntryMutation> storeMutation = mutations.computeIfAbsent(edgestore, k -> new HashMap<>());
-
-            KCVEntryMutation existingM = storeMutation.get(key);
-            if (existingM == null) {
-                storeMutation.put(key, m);
-            } else {
-                existingM.merge(m);
-            }
-            numMutations += m.getTotalMutations();
-
-            if ( numMutations >= persistChunkSize) {
-                flushInternal();
-            }
-
-        }
-
-        private void clear(){
-
-            // loop to clear, in fact just on key : edgestore
-            for (Map<StaticBuffer, KCVEntryMutation> mutationMap: mutations.values()){
-                mutationMap.clear();
-                numMutations = 0;
-            }
-        }
-
-
-        private void flushInternal() throws BackendException {
-
-            // loop to consume, in fact just on key : edgestore
-            for (Map<StaticBuffer, KCVEntryMutation> mutationMap: mutations.values()){
-                consumer.accept(mutationMap);
-            }
-            clear();
+            // already grouped by key, no need to merge into a map before consuming
+            consumer.accept(mutations);
+            numMutations += mutations.size();
         }
 
-        public void close() {
+        /**
+         * the sorting consumers write their output here, a failure is thrown instead of leaving it incomplete
+         */
+        public void close() throws IOException {
 
             if (open){
-                if (numMutations > 0){
-                    try {
-                        flushInternal();
-                    } catch (BackendException e) {
-                        e.printStackTrace();
-                    }
-                }
-                try {
-                    consumer.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
                 open = false;
+                consumer.close();
             }
 
         }
@@ -110,9 +61,9 @@ public class ImportStores {
         public TxImportStoreImpl(StandardJanusGraph graph, String edgestore) {
             super(graph, edgestore);
             try {
-                this.consumer = new StoreConsumers.JanusGraphTxWriter(graph);
+                this.consumer = new StoreConsumers.JanusGraphTxWriter(graph, edgestore);
             } catch (BackendException e) {
-                e.printStackTrace();
+                throw launderedException(e);
             }
         }
 
@@ -141,14 +92,56 @@ public class ImportStores {
 
 
         public BulkImportStoreImpl(StandardJanusGraph graph, String path, String keySpace, String edgestore) {
+            this(graph, path, keySpace, edgestore, 0);
+        }
+
+        /**
+         * @param sortBufferSize off-heap bytes used to sort cells before writing, 0 to write unsorted
+         */
+        public BulkImportStoreImpl(StandardJanusGraph graph, String path, String keySpace, String edgestore,
+                                   long sortBufferSize) {
+            super(graph, edgestore);
+            this.path = path;
+            this.keySpace = keySpace;
+            try {
+                this.consumer = new CassandraSSTableWriter(graph,path,keySpace,edgestore,sortBufferSize);
+            } catch (BackendException e) {
+                throw launderedException(e);
+            }
+        }
+
+        /**
+         * hfiles split on region boundaries when the graph is on hbase, sorted runs for the berkeleyje loader when it
+         * is on berkeleyje, otherwise sstables as configured: sorted or not, aligned to token ranges, or left in run
+         * files to be merged later
+         */
+        public BulkImportStoreImpl(StandardJanusGraph graph, String path, String keySpace, String edgestore,
+                                   Configuration config) {
             super(graph, edgestore);
             this.path = path;
             this.keySpace = keySpace;
-            // this.consumer = new StoreConsumers.SingleWriter(graph,edgestore);//
+            long sortBufferSize = config.sortBufferSize() > 0 ? config.sortBufferSize() :
+                    Configuration.DEFAULT.sortBufferSize();
             try {
-                this.consumer = new CassandraSSTableWriter(graph,path,keySpace,edgestore);
+                if (HbaseHFileWriter.isHbase(graph)) {
+                    this.consumer = new HbaseHFileWriter(graph,path,edgestore,sortBufferSize,
+                            config.regionBoundaries());
+                } else if (BerkeleyJEBulkWriter.isBerkeleyJE(graph)) {
+                    this.consumer = new BerkeleyJEBulkWriter(graph,path,edgestore,sortBufferSize);
+                } else if (config.mergeSSTables()) {
+                    // ranges are taken care of by the merge
+                    this.consumer = new CassandraSSTableWriter(graph,path,keySpace,edgestore,sortBufferSize,
+                            CassandraSSTableWriter.Mode.RUNS);
+                } else if (config.tokenRanges() != null) {
+                    // sorted even without a sort buffer, an unsorted writer per range would buffer on its own
+                    this.consumer = new TokenRangeSSTableWriter(graph,path,keySpace,edgestore,sortBufferSize,
+                            config.tokenRanges());
+                } else {
+                    this.consumer = new CassandraSSTableWriter(graph,path,keySpace,edgestore,config.sortBufferSize());
+                }
             } catch (BackendException e) {
-                e.printStackTrace();
+                // a store without consumer would only fail on its first mutation, hiding why
+                throw launderedException(e);
             }
         }
 
@@ -0,0 +1,43 @@
+package janusgraph.util.batchimport.unsafe.graph.store;
+
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+/**
+ * entries serialized from one batch of the input, passed between the steps of a stage which sort and write them.
+ * the edgestore entries are {@link #group grouped} by row key before they're written.
+ */
+public class SerializedEntries {
+
+    private final VertexEntries entries;
+    // composite index entries, null when the schema has no composite vertex index
+    private final GroupedMutations indexEntries;
+    private GroupedMutations grouped;
+
+    public SerializedEntries(VertexEntries entries, GroupedMutations indexEntries) {
+        this.entries = entries;
+        this.indexEntries = indexEntries;
+    }
+
+    public VertexEntries entries() {
+        return entries;
+    }
+
+    public GroupedMutations indexEntries() {
+        return indexEntries;
+    }
+
+    /**
+     * @return the edgestore entries grouped by row key, null until {@link #group} is called.
+     */
+    public GroupedMutations grouped() {
+        return grouped;
+    }
+
+    /**
+     * sorts the edgestore entries by vertex and groups them by row key, see {@link BulkMutators#group}.
+     */
+    public void group(StandardJanusGraph graph) {
+        grouped = new GroupedMutations(Math.max(1, entries.size()));
+        BulkMutators.group(graph, entries, grouped);
+    }
+}
@@ -1,10 +1,9 @@
 package janusgraph.util.batchimport.unsafe.graph.store;
 
+import org.janusgraph.diskstorage.Backend;
 import org.janusgraph.diskstorage.BackendException;
 import org.janusgraph.diskstorage.BackendTransaction;
 import org.janusgraph.diskstorage.Entry;
-import org.janusgraph.diskstorage.StaticBuffer;
-import org.janusgraph.diskstorage.keycolumnvalue.cache.KCVEntryMutation;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
 
@@ -12,7 +11,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
 /**
@@ -21,7 +19,7 @@ import java.util.function.Consumer;
 public class StoreConsumers {
 
 
-    public abstract static class KeyColumnValueConsumer implements Consumer<Map<StaticBuffer, KCVEntryMutation>>,Closeable {
+    public abstract static class KeyColumnValueConsumer implements Consumer<GroupedMutations>,Closeable {
 
         protected StandardJanusGraph graph;
         public KeyColumnValueConsumer(StandardJanusGraph graph) throws BackendException {
@@ -31,29 +29,39 @@ public class StoreConsumers {
     }
 
     /**
-     * simple writer use BackendTransaction
+     * simple writer use BackendTransaction, into the edgestore or the graphindex
      */
     public static class JanusGraphTxWriter extends KeyColumnValueConsumer{
 
 
         private List<Entry> EMPTY = new ArrayList<>();
+        private final boolean index;
 
         public JanusGraphTxWriter(StandardJanusGraph graph) throws BackendException {
+            this(graph, Backend.EDGESTORE_NAME);
+        }
+
+        public JanusGraphTxWriter(StandardJanusGraph graph, String store) throws BackendException {
             super(graph);
+            this.index = Backend.INDEXSTORE_NAME.equals(store);
         }
 
         @Override
-        public void accept(Map<StaticBuffer, KCVEntryMutation> mutationMap) {
+        public void accept(GroupedMutations mutations) {
 
             StandardJanusGraphTx tx = (StandardJanusGraphTx)graph.newTransaction();
 
             BackendTransaction mutater = tx.getTxHandle();
 
 
-            for (Map.Entry<StaticBuffer, KCVEntryMutation> mutEntry : mutationMap.entrySet()) {
+            for (int group = 0; group < mutations.groups(); group++) {
 
                 try {
-                    mutater.mutateEdges(mutEntry.getKey(), mutEntry.getValue().getAdditions(), EMPTY);
+                    if (index) {
+                        mutater.mutateIndex(mutations.key(group), mutations.entries(group), EMPTY);
+                    } else {
+                        mutater.mutateEdges(mutations.key(group), mutations.entries(group), EMPTY);
+                    }
                 } catch (BackendException e) {
                     e.printStackTrace();
                 }
@@ -0,0 +1,134 @@
+package janusgraph.util.batchimport.unsafe.graph.store;
+
+import org.janusgraph.diskstorage.Entry;
+
+import java.util.Arrays;
+
+/**
+ * Created by dengziming on 18/08/2018.
+ * serialized entries of a batch together with the vertex they belong to, filled by the importers and drained by
+ * {@link BulkMutator#mutateEntries}. the arrays are kept between batches so a batch allocates nothing but entries.
+ */
+public class VertexEntries {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private long[] vertexIds;
+    private Entry[] entries;
+    private int size;
+
+    // scratch arrays of sortByVertex
+    private long[] sortedIds;
+    private int[] order;
+    private Entry[] sortedEntries;
+
+    public VertexEntries(int capacity) {
+        vertexIds = new long[capacity];
+        entries = new Entry[capacity];
+    }
+
+    public void add(long vertexId, Entry entry) {
+        if (size == vertexIds.length) {
+            int capacity = Math.max(16, size * 2);
+            vertexIds = Arrays.copyOf(vertexIds, capacity);
+            entries = Arrays.copyOf(entries, capacity);
+        }
+        vertexIds[size] = vertexId;
+        entries[size] = entry;
+        size++;
+    }
+
+    public long vertexId(int index) {
+        return vertexIds[index];
+    }
+
+    public Entry entry(int index) {
+        return entries[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * sorts the entries by vertex id, entries of the same vertex keep the order they were added in.
+     * a primitive sort over (vertexId, index) pairs, nothing is boxed.
+     */
+    public void sortByVertex() {
+        if (sortedIds == null || sortedIds.length < size) {
+            sortedIds = new long[vertexIds.length];
+            order = new int[vertexIds.length];
+            sortedEntries = new Entry[vertexIds.length];
+        }
+        System.arraycopy(vertexIds, 0, sortedIds, 0, size);
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(sortedIds, order, 0, size - 1);
+
+        for (int i = 0; i < size; i++) {
+            sortedEntries[i] = entries[order[i]];
+        }
+        // the sorted arrays become the current ones, the former ones are kept as scratch for the next batch
+        long[] ids = vertexIds;
+        vertexIds = sortedIds;
+        sortedIds = ids;
+        Entry[] unsorted = entries;
+        entries = sortedEntries;
+        sortedEntries = unsorted;
+        Arrays.fill(sortedEntries, 0, size, null);
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0, size, null);
+        size = 0;
+    }
+
+    private static void sort(long[] ids, int[] order, int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            int mid = (lo + hi) >>> 1;
+            long pivotId = ids[mid];
+            int pivotIndex = order[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(ids[i], order[i], pivotId, pivotIndex) < 0) i++;
+                while (compare(ids[j], order[j], pivotId, pivotIndex) > 0) j--;
+                if (i <= j) {
+                    swap(ids, order, i++, j--);
+                }
+            }
+            // recurse into the smaller half to bound the stack
+            if (j - lo < hi - i) {
+                sort(ids, order, lo, j);
+                lo = i;
+            } else {
+                sort(ids, order, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(ids[j - 1], order[j - 1], ids[j], order[j]) > 0; j--) {
+                swap(ids, order, j - 1, j);
+            }
+        }
+    }
+
+    private static int compare(long id1, int index1, long id2, int index2) {
+        int c = Long.compare(id1, id2);
+        return c != 0 ? c : Integer.compare(index1, index2);
+    }
+
+    private static void swap(long[] ids, int[] order, int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        int index = order[i];
+        order[i] = order[j];
+        order[j] = index;
+    }
+}
@@ -0,0 +1,121 @@
+package janusgraph.util.batchimport.unsafe.graph.store.berkeleyje;
+
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import janusgraph.util.batchimport.unsafe.graph.store.StoreConsumers;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_BACKEND;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * bulk writer for graphs on berkeleyje. the environment can't be written while the graph holds it, so the cells are
+ * sorted in key order with an {@link ExternalCellSorter} and left in run files under {@code path/runs/<store>}, and
+ * {@link janusgraph.util.batchimport.unsafe.load.berkeleyje.BerkeleyJELoader} inserts all of them, merged, once the
+ * graph is closed.
+ */
+public class BerkeleyJEBulkWriter extends StoreConsumers.KeyColumnValueConsumer {
+
+    // key length of the stores janusgraph gives a static key length, see Backend
+    private static final int EDGESTORE_KEY_LENGTH = 8;
+    // other keys get their length appended, like OrderedKeyValueStoreAdapter does
+    private static final int VARIABLE_KEY_LENGTH_SIZE = 2;
+
+    private final ExternalCellSorter sorter;
+    private long cnt;
+    private boolean open;
+
+    /**
+     * @param store janusgraph store, e.g. edgestore, which is also the name of the berkeleyje database
+     */
+    public BerkeleyJEBulkWriter(StandardJanusGraph graph,
+                                String path,
+                                String store,
+                                long sortBufferSize) throws BackendException {
+        super(graph);
+        this.sorter = new ExternalCellSorter(runDirectory(path, store), sortBufferSize);
+        this.open = true;
+    }
+
+    @Override
+    public void accept(GroupedMutations batch) {
+
+        try {
+            for (int group = 0; group < batch.groups(); group++) {
+
+                ByteBuffer key = batch.key(group).asByteBuffer();
+
+                for (int i = batch.from(group); i < batch.to(group); i++) {
+                    Entry mut = batch.entry(i);
+                    // the same token for every cell: byte order of key and column, the order of the btree
+                    sorter.add(0, key, mut.getColumnAs(StaticBuffer.BB_FACTORY),
+                            mut.getValueAs(StaticBuffer.BB_FACTORY));
+                    cnt++;
+                }
+            }
+        } catch (IOException e) {
+            // a run file which couldn't be spilled, the loader would insert the others without a word
+            throw launderedException(e);
+        }
+    }
+
+    /**
+     * spills the last run, a failure is thrown since the runs are then incomplete
+     */
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            try {
+                sorter.flush();
+            } finally {
+                sorter.close();
+            }
+        }
+    }
+
+    /**
+     * number of cells written
+     */
+    public long cells() {
+        return cnt;
+    }
+
+    public static boolean isBerkeleyJE(StandardJanusGraph graph) {
+        return "berkeleyje".equals(graph.getConfiguration().getConfiguration().get(STORAGE_BACKEND));
+    }
+
+    /**
+     * where a writer writing to {@code path} leaves the runs of {@code store}
+     */
+    public static File runDirectory(String path, String store) {
+        return new File(String.format("%s/%s/%s", path, ExternalCellSorter.RUN_DIR_NAME, store));
+    }
+
+    /**
+     * the berkeleyje key of a cell: key and column concatenated, followed by the key length unless the store has a
+     * static key length. with a static key length the byte order of the keys is the order of key and column.
+     */
+    public static byte[] concatenate(String store, ByteBuffer key, ByteBuffer column) {
+        boolean staticKeyLength = Backend.EDGESTORE_NAME.equals(store) && key.remaining() == EDGESTORE_KEY_LENGTH;
+        byte[] bytes = new byte[key.remaining() + column.remaining() +
+                (staticKeyLength ? 0 : VARIABLE_KEY_LENGTH_SIZE)];
+        key.duplicate().get(bytes, 0, key.remaining());
+        column.duplicate().get(bytes, key.remaining(), column.remaining());
+        if (!staticKeyLength) {
+            bytes[bytes.length - 2] = (byte) (key.remaining() >>> 8);
+            bytes[bytes.length - 1] = (byte) key.remaining();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,185 @@
+package janusgraph.util.batchimport.unsafe.graph.store.cassandra;
+
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+import static janusgraph.util.batchimport.unsafe.helps.Format.bytes;
+import static janusgraph.util.batchimport.unsafe.helps.Format.duration;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * the offline merge after the import: node and edge importers of every thread leave their cells in sorted run files
+ * (see {@link CassandraSSTableWriter.Mode#RUNS}), and here all of them are merged into one set of sstables where
+ * every partition key is in one place. without it the cells of one vertex are spread over 2 x processors
+ * overlapping sstables which cassandra has to compact after loading.
+ *
+ * with {@link TokenRanges} every range gets its own sstables, like {@link TokenRangeSSTableWriter} does.
+ */
+public class CassandraSSTableMerger {
+
+    public static final String MERGED_DIR_NAME = "Merged";
+
+    private final StandardJanusGraph graph;
+    private final String keySpace;
+    private final String table;
+    private final TokenRanges ranges;
+
+    public CassandraSSTableMerger(StandardJanusGraph graph, String keySpace, String table, TokenRanges ranges) {
+        this.graph = graph;
+        this.keySpace = keySpace;
+        this.table = table;
+        this.ranges = ranges;
+    }
+
+    /**
+     * merges the run files found below {@code inputs} into {@code storeDir/Merged}, and removes them.
+     */
+    public Result merge(File storeDir, File... inputs) throws IOException, BackendException {
+
+        long start = System.currentTimeMillis();
+        List<File> runs = new ArrayList<>();
+        int writers = 0;
+        for (File input : inputs) {
+            writers += collectRuns(input, runs);
+        }
+        long inputBytes = 0;
+        for (File run : runs) {
+            inputBytes += run.length();
+        }
+
+        File output = new File(storeDir, MERGED_DIR_NAME);
+        CassandraSSTableWriter[] outputs = new CassandraSSTableWriter[ranges == null ? 1 : ranges.size()];
+        long[] cells = new long[1];
+        try {
+            ExternalCellSorter.merge(runs, (token, key, column, value) -> {
+                int range = ranges == null ? 0 : ranges.route(token);
+                if (outputs[range] == null) {
+                    String path = ranges == null ? output.getPath() :
+                            output.getPath() + File.separator + TokenRangeSSTableWriter.RANGE_DIR_PREFIX + range;
+                    try {
+                        outputs[range] = new CassandraSSTableWriter(graph, path, keySpace, table, 0,
+                                CassandraSSTableWriter.Mode.PRESORTED);
+                    } catch (BackendException e) {
+                        throw new IOException(e);
+                    }
+                }
+                // the wrap around range gets the smallest and the biggest tokens, still in order for its writer
+                outputs[range].addSorted(key, column, value);
+                cells[0]++;
+            });
+        } finally {
+            for (CassandraSSTableWriter writer : outputs) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        for (File run : runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        return new Result(table, runs.size(), writers, cells[0], inputBytes, sizeOf(output, false),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return number of run directories, that is writers, found
+     */
+    private int collectRuns(File dir, List<File> runs) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        int writers = 0;
+        if (ExternalCellSorter.RUN_DIR_NAME.equals(dir.getName())) {
+            File runDir = new File(new File(dir, keySpace), table);
+            File[] files = runDir.listFiles((d, name) -> name.startsWith(ExternalCellSorter.RUN_FILE_PREFIX));
+            if (files != null && files.length > 0) {
+                for (File file : files) {
+                    runs.add(file);
+                }
+                writers++;
+            }
+            return writers;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                writers += collectRuns(child, runs);
+            }
+        }
+        return writers;
+    }
+
+    /**
+     * bytes of the sstables of our table below {@code file}, other tables may be merged into the same directory
+     */
+    private long sizeOf(File file, boolean inTable) {
+        if (file.isFile()) {
+            return inTable ? file.length() : 0;
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child, inTable || (child.isDirectory() && table.equals(child.getName())));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * what the merge did, printed in the summary of the import
+     */
+    public static class Result {
+
+        private final String table;
+        private final int runs;
+        private final int writers;
+        private final long cells;
+        private final long inputBytes;
+        private final long outputBytes;
+        private final long millis;
+
+        Result(String table, int runs, int writers, long cells, long inputBytes, long outputBytes, long millis) {
+            this.table = table;
+            this.runs = runs;
+            this.writers = writers;
+            this.cells = cells;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.millis = millis;
+        }
+
+        public long cells() {
+            return cells;
+        }
+
+        public long inputBytes() {
+            return inputBytes;
+        }
+
+        public long outputBytes() {
+            return outputBytes;
+        }
+
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return format("Merged %d %s cells from %d runs of %d writers (%s) into %s of sstables in %s",
+                    cells, table, runs, writers, bytes(inputBytes), bytes(outputBytes), duration(millis));
+        }
+    }
+}
@@ -1,23 +1,30 @@
 package janusgraph.util.batchimport.unsafe.graph.store.cassandra;
 
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.Config;
 import org.apache.cassandra.dht.Murmur3Partitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.apache.cassandra.utils.MurmurHash;
 import org.janusgraph.diskstorage.BackendException;
 import org.janusgraph.diskstorage.Entry;
 import org.janusgraph.diskstorage.StaticBuffer;
-import org.janusgraph.diskstorage.keycolumnvalue.cache.KCVEntryMutation;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Map;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
 
 /**
  * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * with a sort buffer the cells are sorted by Murmur3 token and column with an {@link ExternalCellSorter} and written
+ * in one go by a sorted {@link CQLSSTableWriter} on close, which gives one sstable per writer instead of one per
+ * flush of the unsorted writer, and the sstables of a writer don't overlap each other.
  */
 public class CassandraSSTableWriter extends CassandraWriter {
 
@@ -43,12 +50,51 @@ public class CassandraSSTableWriter extends CassandraWriter {
 
     private final CQLSSTableWriter.Builder builder;
 
+    // null when writing unsorted or presorted
+    private final ExternalCellSorter sorter;
+    private final Mode mode;
+
+    /**
+     * how the cells get into the sstables
+     */
+    public enum Mode {
+        /** cells go to an unsorted writer which sorts and flushes by itself */
+        UNSORTED,
+        /** cells are sorted by an {@link ExternalCellSorter} and written in token order on close */
+        SORTED,
+        /** cells are sorted and left in run files, for {@link CassandraSSTableMerger} to merge them with others */
+        RUNS,
+        /** cells are added in token order with {@link #addSorted} */
+        PRESORTED
+    }
+
     public CassandraSSTableWriter(StandardJanusGraph graph,
                                   String path,
                                   String keySpace,
                                   String table) throws BackendException {
+        this(graph, path, keySpace, table, 0);
+    }
+
+    /**
+     * @param sortBufferSize off-heap bytes to sort cells in, 0 to let the unsorted writer do the sorting
+     */
+    public CassandraSSTableWriter(StandardJanusGraph graph,
+                                  String path,
+                                  String keySpace,
+                                  String table,
+                                  long sortBufferSize) throws BackendException {
+        this(graph, path, keySpace, table, sortBufferSize, sortBufferSize > 0 ? Mode.SORTED : Mode.UNSORTED);
+    }
+
+    public CassandraSSTableWriter(StandardJanusGraph graph,
+                                  String path,
+                                  String keySpace,
+                                  String table,
+                                  long sortBufferSize,
+                                  Mode mode) throws BackendException {
         super(graph);
 
+        this.mode = mode;
         open = true;
         cnt = 0;
         this.cf = table;
@@ -56,7 +102,7 @@ public class CassandraSSTableWriter extends CassandraWriter {
         this.outputDir = String.format("%s/%s/%s", path,keySpace, cf);
 
         File outPath = new File(outputDir);
-        if (!outPath.exists()){
+        if (mode != Mode.RUNS && !outPath.exists()){
             outPath.mkdirs();
         }
 
@@ -86,50 +132,130 @@ public class CassandraSSTableWriter extends CassandraWriter {
                 // set partitioner if needed
                 // default is Murmur3Partitioner so set if you use different one.
                 .withPartitioner(new Murmur3Partitioner());
-        writer = builder.build();
+        if (mode == Mode.SORTED || mode == Mode.RUNS){
+            // the sorted writer is built once all cells are sorted, see close()
+            builder.sorted();
+            sorter = new ExternalCellSorter(runDirectory(path, keySpace, cf), sortBufferSize);
+        }else if (mode == Mode.PRESORTED){
+            builder.sorted();
+            sorter = null;
+        }else {
+            sorter = null;
+            writer = builder.build();
+        }
     }
 
 
     @Override
-    public void accept(Map<StaticBuffer, KCVEntryMutation> batch) {
+    public void accept(GroupedMutations batch) {
 
         // magic!
         Config.setClientMode(true);
 
         try {
 
-            // key -> cf -> cassmutation
-            for (Map.Entry<StaticBuffer, KCVEntryMutation> cfMutationEntry: batch.entrySet()){
+            // key -> entries
+            for (int group = 0; group < batch.groups(); group++){
 
-                ByteBuffer keyBB = cfMutationEntry.getKey().asByteBuffer();
+                ByteBuffer keyBB = batch.key(group).asByteBuffer();
 
-                for (Entry mut: cfMutationEntry.getValue().getAdditions()){
+                for (int i = batch.from(group); i < batch.to(group); i++){
 
+                    Entry mut = batch.entry(i);
                     ByteBuffer columnAs = mut.getColumnAs(StaticBuffer.BB_FACTORY);
                     ByteBuffer valueAs = mut.getValueAs(StaticBuffer.BB_FACTORY);
 
-                    writer.rawAddRow(keyBB, columnAs, valueAs);
+                    if (sorter != null){
+                        sorter.add(token(keyBB), keyBB, columnAs, valueAs);
+                    }else {
+                        writer.rawAddRow(keyBB, columnAs, valueAs);
+                    }
                     cnt ++;
                 }
             }
         } catch (org.apache.cassandra.exceptions.InvalidRequestException | IOException e) {
-            e.printStackTrace();
+            // e.g. a run file which couldn't be spilled, its cells would be missing from the sstables
+            throw launderedException(e);
         }
 
     }
 
+    /**
+     * adds a cell in {@link Mode#PRESORTED} mode, cells must come in the order of {@link ExternalCellSorter}
+     */
+    public void addSorted(ByteBuffer key, ByteBuffer column, ByteBuffer value) throws IOException {
+        assert mode == Mode.PRESORTED;
+        if (writer == null){
+            Config.setClientMode(true);
+            writer = builder.build();
+        }
+        try {
+            writer.rawAddRow(key, column, value);
+        } catch (org.apache.cassandra.exceptions.InvalidRequestException e) {
+            throw new IOException(e);
+        }
+        cnt ++;
+    }
+
+    /**
+     * writes the sorted cells in {@link Mode#SORTED} mode and the last run in {@link Mode#RUNS} mode, so a failure
+     * here means output is missing and is thrown
+     */
     @Override
-    public void close(){
+    public void close() throws IOException {
         if (open){
+            open = false;
             try {
-                writer.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                if (mode == Mode.SORTED){
+                    writeSorted();
+                }else if (mode == Mode.RUNS){
+                    sorter.flush();
+                }
+                if (writer != null){
+                    writer.close();
+                }
+            } finally {
+                if (mode == Mode.SORTED){
+                    sorter.deleteRuns();
+                }
+                if (sorter != null){
+                    sorter.close();
+                }
             }
-            open = false;
         }
     }
 
+    /**
+     * where a writer writing to {@code path} spills its run files
+     */
+    public static File runDirectory(String path, String keySpace, String table){
+        return new File(String.format("%s/%s/%s/%s", path, ExternalCellSorter.RUN_DIR_NAME, keySpace, table));
+    }
+
+    private void writeSorted() throws IOException {
+
+        if (sorter.cells() == 0){
+            return;
+        }
+        Config.setClientMode(true);
+        writer = builder.build();
+        sorter.finish((token, key, column, value) -> {
+            try {
+                writer.rawAddRow(key, column, value);
+            } catch (org.apache.cassandra.exceptions.InvalidRequestException e) {
+                throw new IOException(e);
+            }
+        });
+    }
+
+    /**
+     * the token {@link Murmur3Partitioner} gives the key
+     */
+    public static long token(ByteBuffer key){
+        long hash = MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0)[0];
+        return hash == Long.MIN_VALUE ? Long.MAX_VALUE : hash;
+    }
+
 
     /**
 
@@ -0,0 +1,126 @@
+package janusgraph.util.batchimport.unsafe.graph.store.cassandra;
+
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import janusgraph.util.batchimport.unsafe.graph.store.StoreConsumers;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * writes the cells of every {@link TokenRanges token range} to its own sstables under
+ * {@code path/r<range>/keyspace/table}. all cells are sorted by token in one {@link ExternalCellSorter}, and on close
+ * they are split by range while they're written, so the memory used doesn't depend on the number of ranges: a ring
+ * of vnodes has thousands of them. writers are created when the first cell of their range shows up and closed when
+ * the cells move on to the next range.
+ */
+public class TokenRangeSSTableWriter extends StoreConsumers.KeyColumnValueConsumer {
+
+    public static final String RANGE_DIR_PREFIX = "r";
+
+    private final String path;
+    private final String keySpace;
+    private final String table;
+    private final TokenRanges ranges;
+    private final ExternalCellSorter sorter;
+    private boolean open = true;
+
+    /**
+     * @param sortBufferSize off-heap bytes to sort the cells of all ranges in
+     */
+    public TokenRangeSSTableWriter(StandardJanusGraph graph,
+                                   String path,
+                                   String keySpace,
+                                   String table,
+                                   long sortBufferSize,
+                                   TokenRanges ranges) throws BackendException {
+        super(graph);
+        this.path = path;
+        this.keySpace = keySpace;
+        this.table = table;
+        this.ranges = ranges;
+        this.sorter = new ExternalCellSorter(CassandraSSTableWriter.runDirectory(path, keySpace, table),
+                sortBufferSize);
+    }
+
+    @Override
+    public void accept(GroupedMutations batch) {
+
+        try {
+            for (int group = 0; group < batch.groups(); group++) {
+                ByteBuffer key = batch.key(group).asByteBuffer();
+                long token = CassandraSSTableWriter.token(key);
+                for (int i = batch.from(group); i < batch.to(group); i++) {
+                    Entry entry = batch.entry(i);
+                    sorter.add(token, key, entry.getColumnAs(StaticBuffer.BB_FACTORY),
+                            entry.getValueAs(StaticBuffer.BB_FACTORY));
+                }
+            }
+        } catch (IOException e) {
+            // a run file which couldn't be spilled, the cells of every range in it would be missing
+            throw launderedException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        CassandraSSTableWriter[] current = new CassandraSSTableWriter[1];
+        int[] currentRange = {-1};
+        // the wrap around range gets the smallest and the biggest tokens, so its writer is kept open until the end
+        CassandraSSTableWriter[] wrapAround = new CassandraSSTableWriter[1];
+        try {
+            if (sorter.cells() == 0) {
+                return;
+            }
+            sorter.finish((token, key, column, value) -> {
+                int range = ranges.route(token);
+                if (range == 0) {
+                    if (wrapAround[0] == null) {
+                        wrapAround[0] = writer(0);
+                    }
+                    wrapAround[0].addSorted(key, column, value);
+                    return;
+                }
+                if (range != currentRange[0]) {
+                    if (current[0] != null) {
+                        current[0].close();
+                    }
+                    current[0] = writer(range);
+                    currentRange[0] = range;
+                }
+                current[0].addSorted(key, column, value);
+            });
+        } finally {
+            if (current[0] != null) {
+                current[0].close();
+            }
+            if (wrapAround[0] != null) {
+                wrapAround[0].close();
+            }
+            sorter.deleteRuns();
+            sorter.close();
+        }
+    }
+
+    private CassandraSSTableWriter writer(int range) throws IOException {
+        try {
+            return new CassandraSSTableWriter(graph, path + File.separator + RANGE_DIR_PREFIX + range,
+                    keySpace, table, 0, CassandraSSTableWriter.Mode.PRESORTED);
+        } catch (BackendException e) {
+            throw new IOException(e);
+        }
+    }
+}
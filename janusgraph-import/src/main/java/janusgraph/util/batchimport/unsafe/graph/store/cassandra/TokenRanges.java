@@ -0,0 +1,118 @@
+package janusgraph.util.batchimport.unsafe.graph.store.cassandra;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * a split of the Murmur3 token ring. with sorted tokens t[0..n-1], range i owns (t[i-1], t[i]] and range 0 also
+ * owns the wrap around (t[n-1], t[0]], just like the ranges the nodes of a ring own. cells routed to the same range
+ * go to the same sstable, so streaming that sstable only touches the replicas of that range.
+ */
+public class TokenRanges {
+
+    private final long[] tokens;
+
+    private TokenRanges(long[] tokens) {
+        if (tokens.length == 0) {
+            throw new IllegalArgumentException("No tokens to split the ring on");
+        }
+        this.tokens = tokens;
+    }
+
+    /**
+     * splits the ring in {@code n} ranges of the same size
+     */
+    public static TokenRanges evenly(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Expected at least one range, was " + n);
+        }
+        BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        BigInteger size = BigInteger.valueOf(Long.MAX_VALUE).subtract(min);
+        long[] tokens = new long[n];
+        for (int i = 0; i < n - 1; i++) {
+            tokens[i] = min.add(size.multiply(BigInteger.valueOf(i + 1)).divide(BigInteger.valueOf(n))).longValue();
+        }
+        tokens[n - 1] = Long.MAX_VALUE;
+        return new TokenRanges(tokens);
+    }
+
+    /**
+     * the given tokens, in any order
+     */
+    public static TokenRanges of(long... tokens) {
+        long[] sorted = Arrays.stream(tokens).sorted().distinct().toArray();
+        return new TokenRanges(sorted);
+    }
+
+    /**
+     * reads a ring description, for example the output of {@code nodetool ring}: the last column of every line
+     * which is a number is a token, other lines are ignored.
+     */
+    public static TokenRanges fromFile(File ring) throws IOException {
+        long[] tokens = new long[16];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(ring),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.trim().split("[\\s,]+");
+                String last = columns[columns.length - 1];
+                if (line.trim().startsWith("#") || !last.matches("-?\\d+")) {
+                    continue;
+                }
+                if (count == tokens.length) {
+                    tokens = Arrays.copyOf(tokens, count * 2);
+                }
+                tokens[count++] = Long.parseLong(last);
+            }
+        }
+        return of(Arrays.copyOf(tokens, count));
+    }
+
+    /**
+     * a number is an even split in that many ranges, anything else is a ring description file
+     */
+    public static TokenRanges parse(String value) throws IOException {
+        if (value.matches("\\d+")) {
+            return evenly(Integer.parseInt(value));
+        }
+        return fromFile(new File(value));
+    }
+
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * @return index of the range owning {@code token}
+     */
+    public int route(long token) {
+        int index = Arrays.binarySearch(tokens, token);
+        if (index >= 0) {
+            return index;
+        }
+        int insertion = -index - 1;
+        // greater than every token: wraps around to the first range
+        return insertion == tokens.length ? 0 : insertion;
+    }
+
+    /**
+     * upper bound, inclusive, of range {@code index}
+     */
+    public long token(int index) {
+        return tokens[index];
+    }
+
+    @Override
+    public String toString() {
+        return "TokenRanges" + Arrays.toString(tokens);
+    }
+}
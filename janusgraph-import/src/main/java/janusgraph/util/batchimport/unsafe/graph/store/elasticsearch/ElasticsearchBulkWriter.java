@@ -0,0 +1,375 @@
+package janusgraph.util.batchimport.unsafe.graph.store.elasticsearch;
+
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.attribute.Geoshape;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.JanusGraphSchemaType;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.core.schema.Parameter;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.es.ElasticSearchIndex;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.database.management.JanusGraphIndexWrapper;
+import org.janusgraph.graphdb.internal.ElementCategory;
+import org.janusgraph.graphdb.types.MixedIndexType;
+import org.janusgraph.graphdb.types.ParameterIndexField;
+import org.janusgraph.graphdb.types.ParameterType;
+import org.janusgraph.util.encoding.LongEncoding;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.INDEX_BACKEND;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.INDEX_NAME;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * writes the documents of the mixed indexes backed by elasticsearch as {@code _bulk} request bodies, an action line
+ * followed by the document for every indexed vertex or edge. the properties of an element are collected with
+ * {@link #property} and {@link #endVertex} or {@link #endEdge} writes one document per index that applies to it.
+ *
+ * every importer thread writes its own files {@code <prefix>-<n>.ndjson}, a new one is started before a file grows
+ * over {@code maxFileSize}, so the files can be posted to {@code _bulk} in parallel as they are.
+ *
+ * document ids and field names are the ones janusgraph uses, see {@code IndexSerializer#element2String} and
+ * {@code IndexSerializer#key2Field}. not thread safe.
+ */
+public class ElasticsearchBulkWriter implements AutoCloseable {
+
+    public static final String DIRECTORY_NAME = "elasticsearch";
+    public static final String FILE_SUFFIX = ".ndjson";
+    // ElasticSearchIndex indexes TEXTSTRING keys a second time under this suffix
+    private static final String STRING_MAPPING_SUFFIX = "__STRING";
+    // RelationIdentifier#toString
+    private static final char RELATION_ID_DELIMITER = '-';
+
+    private final List<Index> indexes;
+    private final File directory;
+    private final String prefix;
+    private final long maxFileSize;
+
+    // properties of the current element
+    private long[] keys = new long[8];
+    private Object[] values = new Object[8];
+    private int count;
+
+    private final StringBuilder document = new StringBuilder(256);
+    private OutputStream out;
+    private long fileSize;
+    private int files;
+    private long documents;
+
+    public ElasticsearchBulkWriter(List<Index> indexes, File directory, String prefix, long maxFileSize) {
+        this.indexes = indexes;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * a writer for the mixed indexes of the graph backed by elasticsearch, {@code null} if there are none
+     */
+    public static ElasticsearchBulkWriter of(StandardJanusGraph graph, JanusGraphManagement mgmt, File directory,
+                                             String prefix, long maxFileSize) {
+        List<Index> indexes = indexes(graph, mgmt);
+        return indexes.isEmpty() ? null : new ElasticsearchBulkWriter(indexes, directory, prefix, maxFileSize);
+    }
+
+    static List<Index> indexes(StandardJanusGraph graph, JanusGraphManagement mgmt) {
+        org.janusgraph.diskstorage.configuration.Configuration config = graph.getConfiguration().getConfiguration();
+        List<Index> indexes = new ArrayList<>();
+        for (Class<? extends Element> element : Arrays.asList(Vertex.class, Edge.class)) {
+            for (JanusGraphIndex index : mgmt.getGraphIndexes(element)) {
+                if (!index.isMixedIndex()) continue;
+                MixedIndexType type = (MixedIndexType) ((JanusGraphIndexWrapper) index).getBaseIndex();
+                String backing = type.getBackingIndexName();
+                if (!"elasticsearch".equals(config.get(INDEX_BACKEND, backing))) continue;
+
+                // the index names ElasticSearchIndex#getIndexStoreName gives the stores
+                String store = type.getStoreName();
+                String indexName = config.get(INDEX_NAME, backing);
+                if (!config.get(ElasticSearchIndex.USE_DEPRECATED_MULTITYPE_INDEX, backing)) {
+                    indexName = indexName + "_" + store.toLowerCase();
+                }
+
+                List<Field> fields = new ArrayList<>();
+                for (ParameterIndexField field : type.getFieldKeys()) {
+                    if (field.getStatus() == SchemaStatus.DISABLED) continue;
+                    PropertyKey key = field.getFieldKey();
+                    fields.add(new Field(key.longId(), fieldName(field), key.cardinality() != Cardinality.SINGLE,
+                            key.dataType() == String.class && isTextString(field.getParameters())));
+                }
+                long constraint = type.hasSchemaTypeConstraint() ? type.getSchemaTypeConstraint().longId() : 0;
+                indexes.add(new Index(indexName, store, type.getElement(), constraint, fields));
+            }
+        }
+        return indexes;
+    }
+
+    private static String fieldName(ParameterIndexField field) {
+        return ParameterType.MAPPED_NAME.findParameter(field.getParameters(),
+                LongEncoding.encode(field.getFieldKey().longId()));
+    }
+
+    private static boolean isTextString(Parameter[] parameters) {
+        Object mapping = ParameterType.MAPPING.findParameter(parameters, null);
+        return mapping == Mapping.TEXTSTRING ||
+                (mapping instanceof String && Mapping.TEXTSTRING.name().equalsIgnoreCase((String) mapping));
+    }
+
+    /**
+     * remembers a property of the current element
+     */
+    public void property(PropertyKey key, Object value) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        keys[count] = key.longId();
+        values[count] = value;
+        count++;
+    }
+
+    /**
+     * forgets the properties of the current element without writing anything, e.g. for a bad edge
+     */
+    public void discard() {
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * @return number of documents written for the vertex
+     */
+    public int endVertex(long vertexId, JanusGraphSchemaType label) throws IOException {
+        return end(ElementCategory.VERTEX, LongEncoding.encode(vertexId), label);
+    }
+
+    /**
+     * @return number of documents written for the edge
+     */
+    public int endEdge(long relationId, long outVertexId, JanusGraphSchemaType label, long inVertexId)
+            throws IOException {
+        String id = LongEncoding.encode(relationId) + RELATION_ID_DELIMITER + LongEncoding.encode(outVertexId) +
+                RELATION_ID_DELIMITER + LongEncoding.encode(label.longId()) + RELATION_ID_DELIMITER +
+                LongEncoding.encode(inVertexId);
+        return end(ElementCategory.EDGE, id, label);
+    }
+
+    private int end(ElementCategory element, String id, JanusGraphSchemaType label) throws IOException {
+        int written = 0;
+        if (count > 0) {
+            for (Index index : indexes) {
+                if (index.element != element) continue;
+                if (index.constraint != 0 && (label == null || label.longId() != index.constraint)) continue;
+                if (writeDocument(index, id)) {
+                    written++;
+                }
+            }
+        }
+        discard();
+        documents += written;
+        return written;
+    }
+
+    private boolean writeDocument(Index index, String id) throws IOException {
+        document.setLength(0);
+        document.append("{\"index\":{\"_index\":");
+        appendString(index.name);
+        document.append(",\"_type\":");
+        appendString(index.type);
+        document.append(",\"_id\":");
+        appendString(id);
+        document.append("}}\n{");
+
+        boolean empty = true;
+        for (Field field : index.fields) {
+            if (!appendField(field, field.name, empty)) continue;
+            empty = false;
+            if (field.dualString) {
+                appendField(field, field.name + STRING_MAPPING_SUFFIX, false);
+            }
+        }
+        if (empty) {
+            return false;
+        }
+        document.append("}\n");
+
+        byte[] bytes = document.toString().getBytes(StandardCharsets.UTF_8);
+        if (out == null || (fileSize > 0 && fileSize + bytes.length > maxFileSize)) {
+            nextFile();
+        }
+        out.write(bytes);
+        fileSize += bytes.length;
+        return true;
+    }
+
+    /**
+     * appends the values the current element has for the field, an array for keys with several values
+     *
+     * @return false if the element has no value for it
+     */
+    private boolean appendField(Field field, String name, boolean first) {
+        int start = document.length();
+        if (!first) document.append(',');
+        appendString(name);
+        document.append(':');
+
+        if (field.multi) document.append('[');
+        int values = 0;
+        for (int i = 0; i < count; i++) {
+            // geoshapes need the mapping of the field, they are left to a reindex
+            if (keys[i] != field.keyId || this.values[i] instanceof Geoshape) continue;
+            if (values > 0) {
+                if (!field.multi) break;
+                document.append(',');
+            }
+            appendValue(this.values[i]);
+            values++;
+        }
+        if (field.multi) document.append(']');
+
+        if (values == 0) {
+            document.setLength(start);
+            return false;
+        }
+        return true;
+    }
+
+    private void appendValue(Object value) {
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                document.append("null");
+            } else {
+                document.append(value);
+            }
+        } else if (value instanceof Boolean) {
+            document.append(value);
+        } else if (value instanceof Date) {
+            // epoch_millis is one of the formats of the date fields elasticsearch maps
+            document.append(((Date) value).getTime());
+        } else if (value instanceof Instant) {
+            document.append(((Instant) value).toEpochMilli());
+        } else {
+            appendString(value.toString());
+        }
+    }
+
+    private void appendString(String value) {
+        document.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    document.append("\\\"");
+                    break;
+                case '\\':
+                    document.append("\\\\");
+                    break;
+                case '\n':
+                    document.append("\\n");
+                    break;
+                case '\r':
+                    document.append("\\r");
+                    break;
+                case '\t':
+                    document.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        document.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        document.append(c);
+                    }
+            }
+        }
+        document.append('"');
+    }
+
+    private void nextFile() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        out = new BufferedOutputStream(new FileOutputStream(
+                new File(directory, String.format("%s-%05d%s", prefix, files, FILE_SUFFIX))), 1 << 16);
+        files++;
+        fileSize = 0;
+    }
+
+    /**
+     * number of documents written
+     */
+    public long documents() {
+        return documents;
+    }
+
+    /**
+     * number of files written
+     */
+    public int files() {
+        return files;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * an elasticsearch index janusgraph keeps a mixed index in
+     */
+    public static final class Index {
+        final String name;
+        final String type;
+        final ElementCategory element;
+        // id of the label the index is restricted to, 0 if it isn't
+        final long constraint;
+        final List<Field> fields;
+
+        Index(String name, String type, ElementCategory element, long constraint, List<Field> fields) {
+            this.name = name;
+            this.type = type;
+            this.element = element;
+            this.constraint = constraint;
+            this.fields = fields;
+        }
+    }
+
+    static final class Field {
+        final long keyId;
+        final String name;
+        // keys with cardinality SET or LIST get an array
+        final boolean multi;
+        // TEXTSTRING keys are written twice
+        final boolean dualString;
+
+        Field(long keyId, String name, boolean multi, boolean dualString) {
+            this.keyId = keyId;
+            this.name = name;
+            this.multi = multi;
+            this.dualString = dualString;
+        }
+    }
+}
@@ -1,23 +1,279 @@
 package janusgraph.util.batchimport.unsafe.graph.store.hbase;
 
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
 import janusgraph.util.batchimport.unsafe.graph.store.StoreConsumers;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
+import janusgraph.util.batchimport.unsafe.helps.ArrayUtil;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.janusgraph.diskstorage.Backend;
 import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
 import org.janusgraph.diskstorage.configuration.Configuration;
+import org.janusgraph.diskstorage.util.time.TimestampProvider;
+import org.janusgraph.graphdb.configuration.JanusGraphConstants;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.COMPRESSION;
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.HBASE_CONFIGURATION_NAMESPACE;
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.HBASE_TABLE;
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.SHORT_CF_NAMES;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_BACKEND;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_HOSTS;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_PORT;
+
 /**
  * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * writes the cells of a janusgraph store as hfiles of its column family, ready for
+ * {@link org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles}. cells are sorted in byte order with an
+ * {@link ExternalCellSorter} and written on close, one hfile per {@link RegionBoundaries region} to
+ * {@code path/table/family/r<region>}, so that loading only has to move the files into their regions.
  */
-public abstract class HbaseHFileWriter extends StoreConsumers.KeyColumnValueConsumer {
+public class HbaseHFileWriter extends StoreConsumers.KeyColumnValueConsumer {
+
+    public static final String REGION_FILE_PREFIX = "r";
+
+    private final File outputDir;
+    private final byte[] family;
+    private final long timestamp;
+    private final Compression.Algorithm compression;
+    private final RegionBoundaries regions;
+    private final ExternalCellSorter sorter;
+    private long cnt;
+    private boolean open;
 
-    protected StandardJanusGraph graph;
-    protected final Configuration config;
+    /**
+     * @param store janusgraph store, e.g. edgestore, mapped to its column family
+     * @param sortBufferSize off-heap bytes to sort cells in, hfiles can only be written sorted
+     */
+    public HbaseHFileWriter(StandardJanusGraph graph,
+                            String path,
+                            String store,
+                            long sortBufferSize,
+                            RegionBoundaries regions) throws BackendException {
+        this(graph, path,
+                graph.getConfiguration().getConfiguration().get(HBASE_TABLE),
+                columnFamily(graph.getConfiguration().getConfiguration(), store),
+                timestamp(graph),
+                Compression.Algorithm.valueOf(graph.getConfiguration().getConfiguration().get(COMPRESSION)),
+                sortBufferSize, regions);
+    }
 
-    public HbaseHFileWriter(StandardJanusGraph graph) throws BackendException {
+    HbaseHFileWriter(StandardJanusGraph graph,
+                     String path,
+                     String table,
+                     String family,
+                     long timestamp,
+                     Compression.Algorithm compression,
+                     long sortBufferSize,
+                     RegionBoundaries regions) throws BackendException {
         super(graph);
-        this.config = graph.getConfiguration().getConfiguration();
-        // TODO
+        this.outputDir = new File(String.format("%s/%s/%s", path, table, family));
+        this.family = Bytes.toBytes(family);
+        this.timestamp = timestamp;
+        this.compression = compression;
+        this.regions = regions != null ? regions : RegionBoundaries.single();
+        this.sorter = new ExternalCellSorter(new File(String.format("%s/%s/%s/%s", path,
+                ExternalCellSorter.RUN_DIR_NAME, table, family)), sortBufferSize);
+        this.open = true;
+    }
+
+    @Override
+    public void accept(GroupedMutations batch) {
+
+        try {
+            for (int group = 0; group < batch.groups(); group++) {
+
+                ByteBuffer key = batch.key(group).asByteBuffer();
+
+                for (int i = batch.from(group); i < batch.to(group); i++) {
+                    Entry mut = batch.entry(i);
+                    // the same token for every cell: plain byte order of row and qualifier
+                    sorter.add(0, key, mut.getColumnAs(StaticBuffer.BB_FACTORY),
+                            mut.getValueAs(StaticBuffer.BB_FACTORY));
+                    cnt++;
+                }
+            }
+        } catch (IOException e) {
+            // a run file which couldn't be spilled, its cells would be missing from the hfiles
+            throw launderedException(e);
+        }
+    }
+
+    /**
+     * writes the hfiles. if that fails the partial hfiles are deleted, so that no loader moves them into the regions,
+     * and the exception is thrown. the run files are only deleted once the hfiles are written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            boolean written = false;
+            try {
+                writeHFiles();
+                written = true;
+            } finally {
+                if (written) {
+                    sorter.deleteRuns();
+                } else {
+                    deleteHFiles();
+                }
+                sorter.close();
+            }
+        }
     }
 
+    private void deleteHFiles() {
+        File[] files = outputDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(REGION_FILE_PREFIX) && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private void writeHFiles() throws IOException {
+
+        if (sorter.cells() == 0) {
+            return;
+        }
+        if (!outputDir.exists() && !outputDir.mkdirs() && !outputDir.exists()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+
+        org.apache.hadoop.conf.Configuration conf = HBaseConfiguration.create();
+        // no block cache for a writer, like HFileOutputFormat2
+        conf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+        CacheConfig cacheConfig = new CacheConfig(conf);
+        // the raw file system doesn't leave .crc files next to the hfiles
+        FileSystem fs = FileSystem.getLocal(conf).getRawFileSystem();
+        HFileContext context = new HFileContextBuilder()
+                .withCompression(compression)
+                .withBlockSize(HConstants.DEFAULT_BLOCKSIZE)
+                .build();
 
-}
\ No newline at end of file
+        StoreFile.Writer[] writer = new StoreFile.Writer[1];
+        int[] region = {-1};
+        try {
+            sorter.finish((token, key, column, value) -> {
+                byte[] row = bytes(key);
+                int r = regions.route(row);
+                if (r != region[0]) {
+                    // rows come in order, a region is done once a row of the next one shows up
+                    closeHFile(writer[0]);
+                    region[0] = r;
+                    writer[0] = new StoreFile.WriterBuilder(conf, cacheConfig, fs)
+                            .withFilePath(new Path(new File(outputDir, REGION_FILE_PREFIX + r).toURI()))
+                            .withBloomType(BloomType.ROW)
+                            .withFileContext(context)
+                            .build();
+                }
+                writer[0].append(new KeyValue(row, 0, row.length,
+                        family, 0, family.length,
+                        column.array(), column.arrayOffset() + column.position(), column.remaining(),
+                        timestamp, KeyValue.Type.Put,
+                        value.array(), value.arrayOffset() + value.position(), value.remaining()));
+            });
+        } finally {
+            closeHFile(writer[0]);
+        }
+    }
+
+    private static void closeHFile(StoreFile.Writer writer) throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+        writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+        writer.appendTrackedTimestampsToMetadata();
+        writer.close();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * number of cells written
+     */
+    public long cells() {
+        return cnt;
+    }
+
+    public static boolean isHbase(StandardJanusGraph graph) {
+        return "hbase".equals(graph.getConfiguration().getConfiguration().get(STORAGE_BACKEND));
+    }
+
+    /**
+     * the column family janusgraph keeps {@code store} in
+     */
+    public static String columnFamily(Configuration config, String store) {
+        if (!config.get(SHORT_CF_NAMES)) {
+            return store;
+        }
+        switch (store) {
+            case Backend.EDGESTORE_NAME:
+                return "e";
+            case Backend.INDEXSTORE_NAME:
+                return "g";
+            case JanusGraphConstants.JANUSGRAPH_ID_STORE_NAME:
+                return "i";
+            default:
+                throw new IllegalArgumentException("No short column family name for " + store);
+        }
+    }
+
+    /**
+     * cells get the timestamp janusgraph would give them, in the unit of its timestamp provider
+     */
+    private static long timestamp(StandardJanusGraph graph) {
+        TimestampProvider times = graph.getConfiguration().getTimestampProvider();
+        return times.getTime(times.getTime());
+    }
+
+    /**
+     * hbase client configuration of the graph, the same janusgraph's HBaseStoreManager builds
+     */
+    public static org.apache.hadoop.conf.Configuration hbaseConfiguration(Configuration config) {
+        org.apache.hadoop.conf.Configuration conf = HBaseConfiguration.create();
+        if (config.has(STORAGE_HOSTS)) {
+            conf.set(HConstants.ZOOKEEPER_QUORUM, ArrayUtil.join(config.get(STORAGE_HOSTS), ","));
+        }
+        if (config.has(STORAGE_PORT)) {
+            conf.set(HConstants.ZOOKEEPER_CLIENT_PORT, String.valueOf(config.get(STORAGE_PORT)));
+        }
+        for (Map.Entry<String, Object> entry : config.getSubset(HBASE_CONFIGURATION_NAMESPACE).entrySet()) {
+            if (entry.getValue() != null) {
+                conf.set(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        return conf;
+    }
+}
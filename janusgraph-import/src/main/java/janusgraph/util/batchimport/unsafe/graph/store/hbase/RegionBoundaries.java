@@ -0,0 +1,132 @@
+package janusgraph.util.batchimport.unsafe.graph.store.hbase;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * the regions of an hbase table, given by the start keys of all regions but the first. with sorted split keys
+ * s[0..n-1], region 0 owns [, s[0]), region i owns [s[i-1], s[i]) and region n owns [s[n-1], ). an hfile holding the
+ * rows of one region is moved into it as is, an hfile crossing a boundary has to be split when loading.
+ */
+public class RegionBoundaries {
+
+    private static final byte[][] NO_SPLITS = new byte[0][];
+
+    private final byte[][] splits;
+
+    private RegionBoundaries(byte[][] splits) {
+        this.splits = splits;
+    }
+
+    /**
+     * one region holding every row
+     */
+    public static RegionBoundaries single() {
+        return new RegionBoundaries(NO_SPLITS);
+    }
+
+    /**
+     * {@code n} regions splitting the first 4 bytes of the key evenly, which is how janusgraph pre-splits the table
+     * with {@code storage.hbase.region-count}, vertex ids start with their partition bits.
+     */
+    public static RegionBoundaries evenly(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Expected at least one region, was " + n);
+        }
+        byte[][] splits = new byte[n - 1][];
+        for (int i = 1; i < n; i++) {
+            splits[i - 1] = Bytes.toBytes((int) ((1L << 32) * i / n));
+        }
+        return new RegionBoundaries(splits);
+    }
+
+    /**
+     * the given start keys, in any order, an empty key, the start of the first region, is ignored
+     */
+    public static RegionBoundaries of(byte[]... startKeys) {
+        List<byte[]> splits = new ArrayList<>(startKeys.length);
+        for (byte[] key : startKeys) {
+            if (key.length > 0) {
+                splits.add(key);
+            }
+        }
+        splits.sort(Bytes.BYTES_COMPARATOR);
+        List<byte[]> distinct = new ArrayList<>(splits.size());
+        for (byte[] split : splits) {
+            if (distinct.isEmpty() || !Bytes.equals(distinct.get(distinct.size() - 1), split)) {
+                distinct.add(split);
+            }
+        }
+        return new RegionBoundaries(distinct.toArray(new byte[distinct.size()][]));
+    }
+
+    /**
+     * reads one region start key per line, written like {@link Bytes#toStringBinary}, that is like the hbase shell
+     * prints them, e.g. {@code \x10\x00\x00\x00}. blank lines and lines starting with # are ignored.
+     */
+    public static RegionBoundaries fromFile(File file) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                keys.add(Bytes.toBytesBinary(line));
+            }
+        }
+        return of(keys.toArray(new byte[keys.size()][]));
+    }
+
+    /**
+     * a number is an even split in that many regions, anything else is a file of region start keys
+     */
+    public static RegionBoundaries parse(String value) throws IOException {
+        if (value.matches("\\d+")) {
+            return evenly(Integer.parseInt(value));
+        }
+        return fromFile(new File(value));
+    }
+
+    public int size() {
+        return splits.length + 1;
+    }
+
+    /**
+     * @return index of the region owning {@code row}
+     */
+    public int route(byte[] row) {
+        int index = Arrays.binarySearch(splits, row, Bytes.BYTES_COMPARATOR);
+        // a start key belongs to the region it starts
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * start key of region {@code index}, empty for the first one
+     */
+    public byte[] startKey(int index) {
+        return index == 0 ? new byte[0] : splits[index - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RegionBoundaries[");
+        for (int i = 0; i < splits.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(Bytes.toStringBinary(splits[i]));
+        }
+        return builder.append(']').toString();
+    }
+}
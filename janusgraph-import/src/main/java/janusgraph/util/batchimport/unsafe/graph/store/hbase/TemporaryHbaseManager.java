@@ -0,0 +1,62 @@
+package janusgraph.util.batchimport.unsafe.graph.store.hbase;
+
+import janusgraph.util.batchimport.unsafe.graph.store.StoreManager;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.PermanentBackendException;
+import org.janusgraph.diskstorage.configuration.Configuration;
+import org.janusgraph.graphdb.configuration.JanusGraphConstants;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.IOException;
+
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.HBASE_TABLE;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ * the hbase counterpart of TemporaryCassandraThriftManager: empties the column families of edgestore, graphindex and
+ * ids by dropping and adding them again with the same settings, the other families of the table are kept.
+ */
+public class TemporaryHbaseManager implements StoreManager {
+
+    private final Configuration config;
+
+    public TemporaryHbaseManager(StandardJanusGraph graph) {
+        this.config = graph.getConfiguration().getConfiguration();
+    }
+
+    @Override
+    public void reCreateGraphIfExists() throws BackendException {
+
+        TableName name = TableName.valueOf(config.get(HBASE_TABLE));
+        try (Connection connection = ConnectionFactory.createConnection(HbaseHFileWriter.hbaseConfiguration(config));
+             Admin admin = connection.getAdmin()) {
+
+            if (!admin.tableExists(name)) {
+                return;
+            }
+            HTableDescriptor descriptor = admin.getTableDescriptor(name);
+            if (admin.isTableEnabled(name)) {
+                admin.disableTable(name);
+            }
+            for (String store : new String[]{Backend.EDGESTORE_NAME, Backend.INDEXSTORE_NAME,
+                    JanusGraphConstants.JANUSGRAPH_ID_STORE_NAME}) {
+                HColumnDescriptor family = descriptor.getFamily(Bytes.toBytes(HbaseHFileWriter.columnFamily(config, store)));
+                if (family != null) {
+                    admin.deleteColumn(name, family.getName());
+                    admin.addColumn(name, new HColumnDescriptor(family));
+                }
+            }
+            admin.enableTable(name);
+        } catch (IOException e) {
+            throw new PermanentBackendException("Unable to empty table " + name, e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package janusgraph.util.batchimport.unsafe.graph.store.proxy;
 
 import janusgraph.util.batchimport.unsafe.graph.store.StoreManager;
 import janusgraph.util.batchimport.unsafe.graph.store.cassandra.TemporaryCassandraThriftManager;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.TemporaryHbaseManager;
 import org.apache.thrift.TException;
 import org.janusgraph.diskstorage.BackendException;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
@@ -22,7 +23,7 @@ public class ProxyManager implements StoreManager {
         if ("cassandrathrift".equals(backend)){
             real = new TemporaryCassandraThriftManager(graph);
         }else if ("hbase".equals(backend)){
-            // ignore
+            real = new TemporaryHbaseManager(graph);
         }else if ("bigtable".equals(backend)){
             // ignore
         }else {
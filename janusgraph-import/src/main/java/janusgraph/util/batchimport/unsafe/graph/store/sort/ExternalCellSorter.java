@@ -0,0 +1,417 @@
+package janusgraph.util.batchimport.unsafe.graph.store.sort;
+
+import janusgraph.util.batchimport.unsafe.helps.UnsafeUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * sorts (token, key, column, value) cells which don't fit in memory.
+ *
+ * cells are appended to an off-heap buffer, a full buffer is sorted and spilled to a run file, and
+ * {@link #finish(CellConsumer)} merges all runs with a k-way merge, in passes of at most {@link #MERGE_FAN_IN} runs.
+ * cells come out ordered by token (signed), then key and column (both unsigned bytes), which is the order a sorted
+ * sstable writer expects when the token is the Murmur3 token of the key. with the same token for every cell it is
+ * plain byte order, which is what bigtable like stores expect.
+ *
+ * the heap only holds one int per buffered cell and one record and read buffer per merged run.
+ */
+public class ExternalCellSorter implements Closeable {
+
+    public static final String RUN_FILE_PREFIX = "run-";
+    public static final String RUN_DIR_NAME = "runs";
+    // runs written while merging in passes, not picked up as runs of a writer
+    static final String MERGED_RUN_FILE_PREFIX = "merged-";
+    // runs merged at once, every one holds a read buffer and a file
+    public static final int MERGE_FAN_IN = 64;
+
+    // token, key length, column length, value length
+    private static final int HEADER_SIZE = 8 + 4 + 4 + 4;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    private final File runDir;
+    private final int bufferSize;
+    private final List<File> runs = new ArrayList<>();
+
+    private long address;
+    private ByteBuffer buffer;
+    private int[] offsets = new int[1024];
+    private int count;
+    private long cells;
+    private long spilledBytes;
+
+    /**
+     * @param runDir where run files are spilled to, created if missing
+     * @param bufferSize bytes of off-heap memory to sort in, allocated on the first {@link #add}
+     */
+    public ExternalCellSorter(File runDir, long bufferSize) {
+        if (bufferSize < HEADER_SIZE || bufferSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid sort buffer size " + bufferSize);
+        }
+        this.runDir = runDir;
+        this.bufferSize = (int) bufferSize;
+    }
+
+    public void add(long token, ByteBuffer key, ByteBuffer column, ByteBuffer value) throws IOException {
+
+        int recordSize = HEADER_SIZE + key.remaining() + column.remaining() + value.remaining();
+        if (recordSize > bufferSize) {
+            throw new IllegalArgumentException("Cell of " + recordSize + " bytes doesn't fit in a sort buffer of " +
+                    bufferSize + " bytes");
+        }
+        if (buffer == null) {
+            allocate();
+        }
+        if (buffer.remaining() < recordSize) {
+            spill();
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+
+        offsets[count++] = buffer.position();
+        buffer.putLong(token);
+        buffer.putInt(key.remaining());
+        buffer.putInt(column.remaining());
+        buffer.putInt(value.remaining());
+        buffer.put(key.duplicate());
+        buffer.put(column.duplicate());
+        buffer.put(value.duplicate());
+        cells++;
+    }
+
+    /**
+     * number of cells added so far
+     */
+    public long cells() {
+        return cells;
+    }
+
+    /**
+     * bytes written to run files so far
+     */
+    public long spilledBytes() {
+        return spilledBytes;
+    }
+
+    public List<File> runs() {
+        return runs;
+    }
+
+    /**
+     * spills what is left in memory and hands all cells, merged, to {@code consumer}. the buffers given to the
+     * consumer are not reused, a sorted writer can keep them until the partition is done.
+     */
+    public void finish(CellConsumer consumer) throws IOException {
+        flush();
+        merge(runs, consumer);
+    }
+
+    /**
+     * spills what is left in memory and releases the buffer, the cells are all in {@link #runs()} afterwards
+     */
+    public void flush() throws IOException {
+        if (count > 0) {
+            spill();
+        }
+        release();
+    }
+
+    /**
+     * k-way merge of run files, possibly written by different sorters, into {@code consumer}. at most
+     * {@link #MERGE_FAN_IN} runs are open at a time, more runs are first merged into fewer ones in passes.
+     */
+    public static void merge(List<File> runs, CellConsumer consumer) throws IOException {
+        merge(runs, MERGE_FAN_IN, consumer);
+    }
+
+    static void merge(List<File> runs, int fanIn, CellConsumer consumer) throws IOException {
+
+        List<File> merged = new ArrayList<>();
+        try {
+            List<File> pass = runs;
+            while (pass.size() > fanIn) {
+                pass = mergePass(pass, fanIn, merged);
+            }
+            mergeRuns(pass, consumer);
+        } finally {
+            // the runs given are the caller's to delete, the ones merged in passes are ours
+            for (File run : merged) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * merges every {@code fanIn} runs into one run next to the first of them
+     *
+     * @param merged collects the runs written, runs of an earlier pass are deleted once they're merged
+     * @return the runs written
+     */
+    private static List<File> mergePass(List<File> runs, int fanIn, List<File> merged) throws IOException {
+
+        List<File> output = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += fanIn) {
+            List<File> group = runs.subList(from, Math.min(from + fanIn, runs.size()));
+            File run = File.createTempFile(MERGED_RUN_FILE_PREFIX, "", group.get(0).getParentFile());
+            merged.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                    IO_BUFFER_SIZE))) {
+                mergeRuns(group, (token, key, column, value) -> {
+                    out.writeLong(token);
+                    out.writeInt(key.remaining());
+                    out.writeInt(column.remaining());
+                    out.writeInt(value.remaining());
+                    out.write(key.array(), key.arrayOffset() + key.position(), key.remaining());
+                    out.write(column.array(), column.arrayOffset() + column.position(), column.remaining());
+                    out.write(value.array(), value.arrayOffset() + value.position(), value.remaining());
+                });
+            }
+            output.add(run);
+            for (File input : group) {
+                if (merged.remove(input)) {
+                    input.delete();
+                }
+            }
+        }
+        return output;
+    }
+
+    private static void mergeRuns(List<File> runs, CellConsumer consumer) throws IOException {
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                consumer.accept(reader.token, ByteBuffer.wrap(reader.key), ByteBuffer.wrap(reader.column),
+                        ByteBuffer.wrap(reader.value));
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * removes the run files
+     */
+    public void deleteRuns() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        runs.clear();
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private void allocate() {
+        address = UnsafeUtil.allocateMemory(bufferSize);
+        try {
+            // run files are read back with DataInputStream, a buffer wrapped without its constructor may not be
+            // big endian yet
+            buffer = UnsafeUtil.newDirectByteBuffer(address, bufferSize).order(ByteOrder.BIG_ENDIAN);
+        } catch (Exception e) {
+            UnsafeUtil.free(address);
+            address = 0;
+            throw new IllegalStateException("Unable to wrap sort buffer", e);
+        }
+    }
+
+    private void release() {
+        if (buffer != null) {
+            buffer = null;
+            UnsafeUtil.free(address);
+            address = 0;
+        }
+    }
+
+    private void spill() throws IOException {
+
+        sort(0, count - 1);
+
+        if (!runDir.exists() && !runDir.mkdirs() && !runDir.exists()) {
+            throw new IOException("Unable to create " + runDir);
+        }
+        File run = new File(runDir, RUN_FILE_PREFIX + runs.size());
+        // several sorters spilling into the same directory would overwrite each other
+        assert !run.exists() : run;
+        byte[] bytes = new byte[IO_BUFFER_SIZE];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                IO_BUFFER_SIZE))) {
+            ByteBuffer read = buffer.duplicate();
+            for (int i = 0; i < count; i++) {
+                int offset = offsets[i];
+                int length = HEADER_SIZE + buffer.getInt(offset + 8) + buffer.getInt(offset + 12) +
+                        buffer.getInt(offset + 16);
+                read.limit(offset + length).position(offset);
+                while (read.hasRemaining()) {
+                    int chunk = Math.min(bytes.length, read.remaining());
+                    read.get(bytes, 0, chunk);
+                    out.write(bytes, 0, chunk);
+                }
+                spilledBytes += length;
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+        count = 0;
+    }
+
+    private void sort(int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            int pivot = offsets[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(offsets[i], pivot) < 0) i++;
+                while (compare(offsets[j], pivot) > 0) j--;
+                if (i <= j) {
+                    int tmp = offsets[i];
+                    offsets[i++] = offsets[j];
+                    offsets[j--] = tmp;
+                }
+            }
+            // recurse into the smaller half to bound the stack
+            if (j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(offsets[j - 1], offsets[j]) > 0; j--) {
+                int tmp = offsets[j - 1];
+                offsets[j - 1] = offsets[j];
+                offsets[j] = tmp;
+            }
+        }
+    }
+
+    private int compare(int a, int b) {
+        int c = Long.compare(buffer.getLong(a), buffer.getLong(b));
+        if (c != 0) {
+            return c;
+        }
+        int keyA = buffer.getInt(a + 8);
+        int keyB = buffer.getInt(b + 8);
+        c = compareUnsigned(a + HEADER_SIZE, keyA, b + HEADER_SIZE, keyB);
+        if (c != 0) {
+            return c;
+        }
+        return compareUnsigned(a + HEADER_SIZE + keyA, buffer.getInt(a + 12),
+                b + HEADER_SIZE + keyB, buffer.getInt(b + 12));
+    }
+
+    private int compareUnsigned(int a, int lengthA, int b, int lengthB) {
+        int length = Math.min(lengthA, lengthB);
+        for (int i = 0; i < length; i++) {
+            int c = (buffer.get(a + i) & 0xFF) - (buffer.get(b + i) & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    static int compareUnsigned(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * receives the merged cells in order
+     */
+    public interface CellConsumer {
+        void accept(long token, ByteBuffer key, ByteBuffer column, ByteBuffer value) throws IOException;
+    }
+
+    /**
+     * reads the records of one run file, every record into new arrays.
+     */
+    static class RunReader implements Comparable<RunReader>, Closeable {
+
+        private final DataInputStream in;
+        long token;
+        byte[] key;
+        byte[] column;
+        byte[] value;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                token = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            key = new byte[in.readInt()];
+            column = new byte[in.readInt()];
+            value = new byte[in.readInt()];
+            in.readFully(key);
+            in.readFully(column);
+            in.readFully(value);
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            int c = Long.compare(token, other.token);
+            if (c != 0) {
+                return c;
+            }
+            c = compareUnsigned(key, other.key);
+            return c != 0 ? c : compareUnsigned(column, other.column);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
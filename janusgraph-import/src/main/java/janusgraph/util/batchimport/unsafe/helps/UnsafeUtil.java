@@ -6,6 +6,7 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -378,6 +379,41 @@ public final class UnsafeUtil
         unsafe.freeMemory( pointer );
     }
 
+    /**
+     * Releases the memory, or the file mapping, of a direct buffer now instead of when it's garbage collected.
+     * The buffer must not be accessed afterwards.
+     */
+    public static void invokeCleaner( ByteBuffer buffer )
+    {
+        try
+        {
+            // java 9 and later
+            Unsafe.class.getMethod( "invokeCleaner", ByteBuffer.class ).invoke( unsafe, buffer );
+        }
+        catch ( NoSuchMethodException e )
+        {
+            // java 8, sun.nio.ch.DirectBuffer#cleaner()
+            try
+            {
+                Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+                cleanerMethod.setAccessible( true );
+                Object cleaner = cleanerMethod.invoke( buffer );
+                if ( cleaner != null )
+                {
+                    cleaner.getClass().getMethod( "clean" ).invoke( cleaner );
+                }
+            }
+            catch ( ReflectiveOperationException e1 )
+            {
+                throw new LinkageError( "Cannot clean " + buffer, e1 );
+            }
+        }
+        catch ( ReflectiveOperationException e )
+        {
+            throw new LinkageError( "Cannot clean " + buffer, e );
+        }
+    }
+
     private static final class FreeTrace extends Throwable implements Comparable<FreeTrace>
     {
         private final long pointer;
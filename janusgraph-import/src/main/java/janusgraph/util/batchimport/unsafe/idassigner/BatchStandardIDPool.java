@@ -15,39 +15,43 @@
 package janusgraph.util.batchimport.unsafe.idassigner;
 
 import com.google.common.base.Preconditions;
+import org.janusgraph.core.JanusGraphException;
 import org.janusgraph.diskstorage.BackendException;
 import org.janusgraph.diskstorage.IDAuthority;
 import org.janusgraph.diskstorage.IDBlock;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.database.idassigner.IDPool;
+import org.janusgraph.graphdb.database.idassigner.IDPoolExhaustedException;
 
 import java.time.Duration;
-import java.util.concurrent.atomic.AtomicLong;
-
-import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDAUTHORITY_CAV_BITS;
-import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDAUTHORITY_CAV_TAG;
 
 /**
  * @author dengziming (swzmdeng@163.com)
+ *
+ * hands out ids from {@link IDBlock}s leased from the {@link IDAuthority}, so every id is reserved in the storage
+ * before it's used. Every importer thread takes its own {@link #newLease() lease} and increments through its blocks
+ * without sharing anything, only getting the next block goes through here. The size of the blocks is
+ * {@code ids.block-size} of the graph, large blocks are fetched rarely.
  */
 
 public class BatchStandardIDPool implements IDPool {
 
-    private StandardJanusGraph graph;
+    // leases of more blocks than this for one import are a lot of round trips to the storage for nothing
+    static final long MAX_EXPECTED_BLOCKS = 10_000;
 
     private final IDAuthority idAuthority;
     private final int partition;
     private final int idNamespace;
+    private final long idUpperBound;
     private final Duration renewTimeout;
 
+    // for nextID() of this pool itself, shared by its callers
+    private Lease shared;
+    // first id of the first block leased, the lowest id this pool hands out
+    private volatile long firstId = -1;
 
     private volatile boolean closed;
 
-    private final int uniqueIdBitWidth;
-    private final int uniqueId;
-
-    private final AtomicLong counter = new AtomicLong(1);
-
 
     public BatchStandardIDPool(StandardJanusGraph graph,IDAuthority idAuthority, int partition, int idNamespace, long idUpperBound, Duration renewTimeout, double renewBufferPercentage) {
 
@@ -56,41 +60,102 @@ public class BatchStandardIDPool implements IDPool {
         this.partition = partition;
         Preconditions.checkArgument(idNamespace>=0);
         this.idNamespace = idNamespace;
+        Preconditions.checkArgument(idUpperBound>0);
+        this.idUpperBound = idUpperBound;
         Preconditions.checkArgument(!renewTimeout.isZero(), "Renew-timeout must be positive");
         this.renewTimeout = renewTimeout;
 
-        this.graph = graph;
+        closed = false;
+    }
 
-        //exec.allowCoreThreadTimeOut(false);
-        //exec.prestartCoreThread();
+    /**
+     * @return a block of ids reserved in the storage for this partition and namespace, for one thread to use.
+     */
+    synchronized IDBlock leaseBlock() {
+        Preconditions.checkState(!closed, "ID pool has been closed for partition(%s)-namespace(%s)", partition, idNamespace);
+        try {
+            IDBlock block = idAuthority.getIDBlock(partition, idNamespace, renewTimeout);
+            if (block.numIds() > 0 && block.getId(block.numIds() - 1) >= idUpperBound) {
+                throw new IDPoolExhaustedException("Exhausted id block for partition(" + partition + ")-namespace(" +
+                        idNamespace + ") with upper bound: " + idUpperBound);
+            }
+            if (firstId < 0 && block.numIds() > 0) {
+                firstId = block.getId(0);
+            }
+            return block;
+        } catch (BackendException e) {
+            throw new JanusGraphException("Could not acquire new ID block from storage", e);
+        }
+    }
 
-        closed = false;
-        uniqueIdBitWidth = graph.getConfiguration().getConfiguration().get(IDAUTHORITY_CAV_BITS);
-        uniqueId = graph.getConfiguration().getConfiguration().get(IDAUTHORITY_CAV_TAG);
+    /**
+     * @return a warning if {@code ids} ids take more than {@link #MAX_EXPECTED_BLOCKS} blocks of {@code blockSize}
+     * ids, every one of which is a round trip to the storage, null if they don't.
+     */
+    static String blockSizeWarning(long ids, long blockSize) {
+        long blocks = (ids + blockSize - 1) / blockSize;
+        if (blocks <= MAX_EXPECTED_BLOCKS) {
+            return null;
+        }
+        return String.format("ids.block-size %d leases about %d id blocks from the storage for %d ids, set " +
+                "ids.block-size to %d or more", blockSize, blocks, ids, (ids + MAX_EXPECTED_BLOCKS - 1) / MAX_EXPECTED_BLOCKS);
+    }
 
+    /**
+     * @return the lowest id handed out by this pool, -1 if no block was leased yet. blocks leased later have higher
+     * ids, the counter of the {@link IDAuthority} only goes up.
+     */
+    public long firstId() {
+        return firstId;
     }
 
-    @Override
-    public long nextID() {
+    /**
+     * @return ids for one thread, the first block of which is leased right away.
+     */
+    public Lease newLease() {
+        return new Lease(this);
+    }
 
-        return counter.getAndIncrement() << uniqueIdBitWidth + uniqueId;
+    @Override
+    public synchronized long nextID() {
+        if (shared == null) {
+            shared = new Lease(this);
+        }
+        return shared.nextID();
     }
 
     @Override
     public void close() {
+        // every id handed out was in a leased block, the rest of the blocks is left unused
+        closed=true;
+    }
 
-        long count = counter.get();
+    /**
+     * ids of a {@link BatchStandardIDPool} for a single thread, not thread safe.
+     */
+    public static class Lease implements IDPool {
 
-        for (int i = 0; i < count ;){
-            try {
-                IDBlock idBlock = idAuthority.getIDBlock(partition, idNamespace, renewTimeout);
-                i += idBlock.numIds();
-            } catch (BackendException e) {
-                e.printStackTrace();
-            }
+        private final BatchStandardIDPool pool;
+        private IDBlock block;
+        private long index;
+
+        Lease(BatchStandardIDPool pool) {
+            this.pool = pool;
+            this.block = pool.leaseBlock();
         }
 
-        closed=true;
+        @Override
+        public long nextID() {
+            while (index == block.numIds()) {
+                block = pool.leaseBlock();
+                index = 0;
+            }
+            return block.getId(index++);
+        }
 
+        @Override
+        public void close() {
+            block = null;
+        }
     }
 }
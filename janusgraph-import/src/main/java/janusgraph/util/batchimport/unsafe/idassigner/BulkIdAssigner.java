@@ -1,17 +1,27 @@
 package janusgraph.util.batchimport.unsafe.idassigner;
 
 import com.google.common.base.Preconditions;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import org.janusgraph.core.JanusGraphVertex;
 import org.janusgraph.diskstorage.IDAuthority;
+import org.janusgraph.diskstorage.IDBlock;
 import org.janusgraph.diskstorage.configuration.Configuration;
+import org.janusgraph.diskstorage.idmanagement.ConflictAvoidanceMode;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
-import org.janusgraph.graphdb.database.idassigner.IDPool;
 import org.janusgraph.graphdb.idmanagement.IDManager;
 import org.janusgraph.graphdb.internal.InternalElement;
 import org.janusgraph.graphdb.internal.InternalRelation;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDAUTHORITY_CAV_BITS;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDAUTHORITY_CAV_TAG;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDAUTHORITY_CONFLICT_AVOIDANCE;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDS_BLOCK_SIZE;
 import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDS_RENEW_BUFFER_PERCENTAGE;
 import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.IDS_RENEW_TIMEOUT;
 
@@ -20,78 +30,308 @@ import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.ID
  * this is different from {@code VertexIDAssigner}, VertexIDAssigner just assign unique id, and is single thread
  * BulkIdAssigner should try best to make sure the id is self increase to make use of all long number, and we will
  * sort the number
+ *
+ * vertices get ids in all partitions of {@code cluster.max-partitions}, as the graph's own {@link IDManager} has
+ * them, the partition is picked by a {@link PartitionPolicy}. Id mappers keep a node at its dense
+ * {@link #vertexIndex(long) index} rather than its vertex id, which has the partition below the count. The counts
+ * start at the first block leased by this import in the partition, so the indexes start at 0 however many vertices
+ * the graph has already.
  */
 public class BulkIdAssigner  {
 
-    private StandardJanusGraph graph;
-    private Configuration config ;
-    private int partitionBits;
-    private IDManager idManager;
-    private int partitionIdBound;
-    private IDAuthority idAuthority;
-    private Duration renewTimeoutMS;
-    private double renewBufferPercentage;
-    private int vertexPartitionID;
-    private int relationPartitionID;
-    private final IDPool vertexIdPool;
-    private final IDPool relationIdPool;
+    // padding of IDManager.VertexIDType.NormalVertex
+    private static final int PAD_BITS = 3;
+
+    private final IDManager idManager;
+    private final int partitionBits;
+    private final int partitionMask;
+    private final int uniqueIdBits;
+    private final long uniqueId;
+    private final int blockSize;
+    private final BatchStandardIDPool[] vertexIdPools;
+    private final BatchStandardIDPool[] relationIdPools;
+    private final AtomicInteger leases = new AtomicInteger();
+
+    // for the methods of the assigner itself, shared by their callers
+    private Lease shared;
+    // first counts by partition of an earlier import whose vertex indexes are used, null for this import's own
+    private long[] savedFirstCounts;
 
     public BulkIdAssigner(StandardJanusGraph graph){
-        this.graph = graph;
-        config = graph.getConfiguration().getConfiguration();
-//        partitionBits = NumberUtil.getPowerOf2(config.get(CLUSTER_MAX_PARTITIONS));
-        partitionBits = 5;
-        idManager = new IDManager(partitionBits);
-        partitionIdBound = (int)idManager.getPartitionBound();
-        idAuthority = graph.getBackend().getIDAuthority();
-        renewTimeoutMS = config.get(IDS_RENEW_TIMEOUT);
-        renewBufferPercentage = config.get(IDS_RENEW_BUFFER_PERCENTAGE);
-        vertexPartitionID = 0;
-        relationPartitionID = 1;
-        vertexIdPool = new BatchStandardIDPool(graph,idAuthority, vertexPartitionID, 0, idManager.getVertexCountBound(), renewTimeoutMS, renewBufferPercentage);
-        relationIdPool = new BatchStandardIDPool(graph,idAuthority, relationPartitionID, 3, idManager.getRelationCountBound(), renewTimeoutMS, renewBufferPercentage);
+        Configuration config = graph.getConfiguration().getConfiguration();
+        // partition bits of the graph are from cluster.max-partitions
+        idManager = graph.getIDManager();
+        int partitions = (int)idManager.getPartitionBound();
+        partitionBits = Integer.numberOfTrailingZeros(partitions);
+        partitionMask = partitions - 1;
+        // the counts of the leased blocks end with the unique id of this instance, see ConsistentKeyIDAuthority
+        Preconditions.checkArgument(config.get(IDAUTHORITY_CONFLICT_AVOIDANCE) != ConflictAvoidanceMode.GLOBAL_AUTO,
+                "conflict avoidance mode %s is not supported by the importer", ConflictAvoidanceMode.GLOBAL_AUTO);
+        uniqueIdBits = config.get(IDAUTHORITY_CAV_BITS);
+        uniqueId = config.get(IDAUTHORITY_CAV_TAG);
+        blockSize = config.get(IDS_BLOCK_SIZE);
+
+        IDAuthority idAuthority = graph.getBackend().getIDAuthority();
+        Duration renewTimeoutMS = config.get(IDS_RENEW_TIMEOUT);
+        double renewBufferPercentage = config.get(IDS_RENEW_BUFFER_PERCENTAGE);
+        vertexIdPools = new BatchStandardIDPool[partitions];
+        relationIdPools = new BatchStandardIDPool[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            vertexIdPools[partition] = new BatchStandardIDPool(graph, idAuthority, partition, 0,
+                    idManager.getVertexCountBound(), renewTimeoutMS, renewBufferPercentage);
+            relationIdPools[partition] = new BatchStandardIDPool(graph, idAuthority, partition, 3,
+                    idManager.getRelationCountBound(), renewTimeoutMS, renewBufferPercentage);
+        }
+    }
+
+    public synchronized void assignRelationID(InternalRelation element) {
+        shared().assignRelationID(element);
+    }
+
+    public synchronized void assignVertexID(JanusGraphVertex element) {
+        shared().assignVertexID(element, null, 0);
+    }
+
+    /**
+     * next relation id, for relations which are serialized without a janusgraph element
+     */
+    public synchronized long nextRelationId() {
+        return shared().nextRelationId();
+    }
+
+    /**
+     * next vertex id, for vertices which are serialized without a janusgraph element
+     */
+    public synchronized long nextVertexId() {
+        return shared().nextVertexId(null, 0);
+    }
+
+    /**
+     * @param nodes estimated number of vertices to import.
+     * @param relations estimated number of edges and properties to import.
+     * @return a warning if {@code ids.block-size} is far too small for that many ids, null if it isn't.
+     */
+    public String blockSizeWarning(long nodes, long relations) {
+        return BatchStandardIDPool.blockSizeWarning(nodes + relations, blockSize);
+    }
 
-        Preconditions.checkArgument(vertexPartitionID < partitionIdBound, vertexPartitionID);
+    private Lease shared() {
+        if (shared == null) {
+            shared = newLease(PartitionPolicy.ROUND_ROBIN);
+        }
+        return shared;
+    }
+
+    /**
+     * @return dense index of a vertex this assigner gave its id to, the block count of its id since the first block
+     * of this import in its partition, followed by its partition. Unused ids of the leased blocks, and blocks leased
+     * by other writers meanwhile, leave gaps.
+     */
+    public long vertexIndex(long vertexId) {
+        long partition = (vertexId >>> PAD_BITS) & partitionMask;
+        long count = vertexId >>> (PAD_BITS + partitionBits);
+        return ((count >>> uniqueIdBits) - firstCount((int)partition)) << partitionBits | partition;
+    }
+
+    /**
+     * @return vertex id of a {@link #vertexIndex(long) vertex index}.
+     */
+    public long vertexId(long vertexIndex) {
+        int partition = (int)(vertexIndex & partitionMask);
+        long count = ((vertexIndex >>> partitionBits) + firstCount(partition)) << uniqueIdBits | uniqueId;
+        return idManager.getVertexID(count, partition, IDManager.VertexIDType.NormalVertex);
+    }
+
+    /**
+     * @return count, without the unique id, of the first vertex id of the import in {@code partition}.
+     */
+    private long firstCount(int partition) {
+        if (savedFirstCounts != null) {
+            return savedFirstCounts[partition];
+        }
+        long firstId = vertexIdPools[partition].firstId();
+        Preconditions.checkState(firstId >= 0, "no vertex ids were leased in partition %s", partition);
+        return firstId >>> uniqueIdBits;
+    }
 
+    /**
+     * @return how {@link #vertexIndex(long) vertex indexes} map to vertex ids, saved with the id mapper. Partitions
+     * without vertices start at 0.
+     */
+    public IdMapperFile.Layout layout() {
+        long[] firstCounts = new long[vertexIdPools.length];
+        for (int partition = 0; partition < firstCounts.length; partition++) {
+            long firstId = vertexIdPools[partition].firstId();
+            firstCounts[partition] = savedFirstCounts != null ? savedFirstCounts[partition]
+                    : firstId >= 0 ? firstId >>> uniqueIdBits : 0;
+        }
+        return new IdMapperFile.Layout(partitionBits, uniqueIdBits, uniqueId, firstCounts);
     }
 
-    public void assignRelationID(InternalRelation element) {
+    /**
+     * takes the vertex indexes of a saved id mapper for the vertex ids they were saved for, instead of the ones of
+     * this import.
+     *
+     * @throws IllegalArgumentException if {@code cluster.max-partitions} or the conflict avoidance of the graph
+     * changed since the mapper was saved.
+     */
+    public void useLayout(IdMapperFile.Layout saved) {
+        Preconditions.checkArgument(saved.partitionBits() == partitionBits && saved.uniqueIdBits() == uniqueIdBits &&
+                saved.uniqueId() == uniqueId, "the id mapper was saved for vertex ids of %s, but the graph has " +
+                "partitionBits=%s, uniqueIdBits=%s, uniqueId=%s, see cluster.max-partitions and " +
+                "ids.authority.conflict-avoidance-*", saved, partitionBits, uniqueIdBits, uniqueId);
+        savedFirstCounts = saved.firstCounts();
+    }
 
-        assignRelationIDAttempt(element);
+    /**
+     * @return ids for one importer thread, from blocks leased for it alone, see {@link BatchStandardIDPool.Lease}.
+     */
+    public Lease newLease(PartitionPolicy policy) {
+        return new Lease(policy, leases.getAndIncrement());
     }
 
-    private void assignRelationIDAttempt(final InternalRelation element) {
-        Preconditions.checkNotNull(element);
-//        Preconditions.checkArgument(!element.hasId());
+    /**
+     * assigns ids like its {@link BulkIdAssigner}, from blocks of its own. Not thread safe, one per importer thread.
+     * Relations of a lease all get their ids in one partition, leases take the partitions in turn.
+     */
+    public class Lease {
+
+        private final PartitionPolicy policy;
+        // leased once the policy first picks their partition
+        private final BatchStandardIDPool.Lease[] vertexIds;
+        private final int relationPartition;
+        private final BatchStandardIDPool.Lease relationIds;
+        private int turn;
+
+        private Lease(PartitionPolicy policy, int number) {
+            this.policy = policy;
+            this.vertexIds = new BatchStandardIDPool.Lease[vertexIdPools.length];
+            this.relationPartition = number & partitionMask;
+            this.relationIds = relationIdPools[relationPartition].newLease();
+            // threads start round robin at different partitions
+            this.turn = number;
+        }
+
+        public void assignRelationID(InternalRelation element) {
+            Preconditions.checkNotNull(element);
+//            Preconditions.checkArgument(!element.hasId());
+            element.setId(nextRelationId());
+        }
 
-        long count = relationIdPool.nextID();
+        public void assignVertexID(JanusGraphVertex element, Object inputId, long labelId) {
+            Preconditions.checkNotNull(element);
+            //Preconditions.checkArgument(!element.hasId());
+            ((InternalElement)element).setId(nextVertexId(inputId, labelId));
+        }
 
-        long elementId = idManager.getRelationID(count, relationPartitionID);
+        public long nextRelationId() {
+            long elementId = idManager.getRelationID(relationIds.nextID(), relationPartition);
+            Preconditions.checkArgument(elementId >= 0);
+            return elementId;
+        }
 
+        /**
+         * @param inputId id of the vertex in the input, for {@link PartitionPolicy#HASH}.
+         * @param labelId id of the vertex label, for {@link PartitionPolicy#LABEL}.
+         */
+        public long nextVertexId(Object inputId, long labelId) {
+            int partition = policy.partition(inputId, labelId, turn++, partitionMask);
+            BatchStandardIDPool.Lease ids = vertexIds[partition];
+            if (ids == null) {
+                ids = vertexIds[partition] = vertexIdPools[partition].newLease();
+            }
+            long elementId = idManager.getVertexID(ids.nextID(), partition, IDManager.VertexIDType.NormalVertex);
+            Preconditions.checkArgument(elementId >= 0);
+            return elementId;
+        }
 
-        Preconditions.checkArgument(elementId >= 0);
-        element.setId(elementId);
+        public long vertexIndex(long vertexId) {
+            return BulkIdAssigner.this.vertexIndex(vertexId);
+        }
+
+        public long vertexId(long vertexIndex) {
+            return BulkIdAssigner.this.vertexId(vertexIndex);
+        }
+
+        public void close() {
+            for (BatchStandardIDPool.Lease ids : vertexIds) {
+                if (ids != null) {
+                    ids.close();
+                }
+            }
+            relationIds.close();
+        }
     }
 
-    public void assignVertexID(JanusGraphVertex element) {
-        assignVertexIDAttempt(element);
+    /**
+     * leases blocks for {@code count} vertex ids up front, see {@link Reservation}.
+     */
+    public Reservation reserveVertexIds(long count) {
+        return new Reservation(count);
     }
 
-    private void assignVertexIDAttempt(final JanusGraphVertex element) {
-        Preconditions.checkNotNull(element);
-        //Preconditions.checkArgument(!element.hasId());
+    /**
+     * vertex ids reserved for a known number of vertices, the vertex id of a position depends on nothing but the
+     * position and the leased blocks. Positions take the partitions in turn. Thread safe once created.
+     */
+    public class Reservation {
+
+        private final long count;
+        private final IDBlock[][] blocks;
+        // index in its partition of the first id of every block
+        private final long[][] firstIndexes;
 
-        long count = vertexIdPool.nextID();
+        private Reservation(long count) {
+            this.count = count;
+            int partitions = vertexIdPools.length;
+            blocks = new IDBlock[partitions][];
+            firstIndexes = new long[partitions][];
+            for (int partition = 0; partition < partitions; partition++) {
+                long ids = Math.max(0, (count - partition + partitions - 1) >>> partitionBits);
+                List<IDBlock> leased = new ArrayList<>();
+                List<Long> firsts = new ArrayList<>();
+                for (long leasedIds = 0; leasedIds < ids; ) {
+                    IDBlock block = vertexIdPools[partition].leaseBlock();
+                    if (block.numIds() == 0) {
+                        continue;
+                    }
+                    leased.add(block);
+                    firsts.add(leasedIds);
+                    leasedIds += block.numIds();
+                }
+                blocks[partition] = leased.toArray(new IDBlock[0]);
+                firstIndexes[partition] = firsts.stream().mapToLong(Long::longValue).toArray();
+            }
+        }
 
-        long elementId = idManager.getVertexID(count, vertexPartitionID, IDManager.VertexIDType.NormalVertex);
+        public long count() {
+            return count;
+        }
 
-        Preconditions.checkArgument(elementId >= 0);
-        ((InternalElement)element).setId(elementId);
+        /**
+         * @param position 0 to {@link #count()} - 1.
+         */
+        public long vertexId(long position) {
+            Preconditions.checkArgument(position >= 0 && position < count, "position %s of %s reserved ids", position, count);
+            int partition = (int)(position & partitionMask);
+            long index = position >>> partitionBits;
+            long[] firsts = firstIndexes[partition];
+            int block = Arrays.binarySearch(firsts, index);
+            if (block < 0) {
+                block = -block - 2;
+            }
+            long elementId = idManager.getVertexID(blocks[partition][block].getId(index - firsts[block]), partition,
+                    IDManager.VertexIDType.NormalVertex);
+            Preconditions.checkArgument(elementId >= 0);
+            return elementId;
+        }
     }
 
     public void close() {
-        vertexIdPool.close();
-        relationIdPool.close();
+        for (int partition = 0; partition < vertexIdPools.length; partition++) {
+            vertexIdPools[partition].close();
+            relationIdPools[partition].close();
+        }
     }
 
 }
@@ -0,0 +1,50 @@
+package janusgraph.util.batchimport.unsafe.idassigner;
+
+/**
+ * picks the partition of {@code cluster.max-partitions} every imported vertex gets its id in, see
+ * {@link BulkIdAssigner.Lease#nextVertexId(Object, long)}. Enum names in here are user facing.
+ */
+public enum PartitionPolicy {
+
+    /**
+     * every importer thread takes the partitions in turn, vertices are spread evenly and ids stay dense.
+     */
+    ROUND_ROBIN {
+        @Override
+        int partition(Object inputId, long labelId, int turn, int partitionMask) {
+            return turn & partitionMask;
+        }
+    },
+
+    /**
+     * partition by a hash of the input id, the same id always gets the same partition, whichever thread imports it.
+     */
+    HASH {
+        @Override
+        int partition(Object inputId, long labelId, int turn, int partitionMask) {
+            return spread(inputId.hashCode()) & partitionMask;
+        }
+    },
+
+    /**
+     * partition by the vertex label, all vertices of a label are kept together. Only spreads vertices if there are
+     * several labels of similar size, the id mapper grows with the most used partition times the partition count.
+     */
+    LABEL {
+        @Override
+        int partition(Object inputId, long labelId, int turn, int partitionMask) {
+            return spread(Long.hashCode(labelId)) & partitionMask;
+        }
+    };
+
+    /**
+     * @param turn number of vertices the calling thread assigned ids to before this one.
+     * @param partitionMask partition count - 1, the partition count is a power of two.
+     */
+    abstract int partition(Object inputId, long labelId, int turn, int partitionMask);
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
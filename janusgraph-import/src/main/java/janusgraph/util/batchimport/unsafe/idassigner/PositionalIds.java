@@ -0,0 +1,86 @@
+package janusgraph.util.batchimport.unsafe.idassigner;
+
+import com.google.common.base.Preconditions;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
+
+import java.util.Arrays;
+
+/**
+ * vertex ids by the position of a node in the input, the same in every import of the same input into an empty graph
+ * whatever the number of threads and however they take the chunks. A pre-pass {@link #newCounter() counts} the nodes
+ * of every {@link janusgraph.util.batchimport.unsafe.input.InputChunk#ordinal() chunk}, then ids for all of them are
+ * {@link #reserve(BulkIdAssigner) reserved} and a node gets the id of its chunk's first position plus its row.
+ */
+public class PositionalIds {
+
+    private long[] counts = new long[1024];
+    private int chunks;
+    private long[] firstPositions;
+    private BulkIdAssigner.Reservation reservation;
+
+    /**
+     * @return a visitor of the node input for one thread of the pre-pass.
+     */
+    public InputEntityVisitor newCounter() {
+        return new Counter();
+    }
+
+    private synchronized void count(long ordinal, long count) {
+        Preconditions.checkState(ordinal >= 0 && ordinal < Integer.MAX_VALUE, "input chunk %s has no ordinal", ordinal);
+        if (ordinal >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(counts.length * 2, (int)ordinal + 1));
+        }
+        counts[(int)ordinal] = count;
+        chunks = Math.max(chunks, (int)ordinal + 1);
+    }
+
+    /**
+     * reserves vertex ids for all counted nodes, once the pre-pass is done.
+     *
+     * @return number of nodes counted.
+     */
+    public long reserve(BulkIdAssigner idAssigner) {
+        firstPositions = new long[chunks];
+        long total = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            firstPositions[chunk] = total;
+            total += counts[chunk];
+        }
+        reservation = idAssigner.reserveVertexIds(total);
+        return total;
+    }
+
+    /**
+     * @param chunkOrdinal ordinal of the chunk the node is in.
+     * @param row number of nodes before it in the chunk.
+     */
+    public long vertexId(long chunkOrdinal, long row) {
+        Preconditions.checkState(chunkOrdinal >= 0 && chunkOrdinal < chunks && row < counts[(int)chunkOrdinal],
+                "node %s of input chunk %s wasn't counted, the input changed since", row, chunkOrdinal);
+        return reservation.vertexId(firstPositions[(int)chunkOrdinal] + row);
+    }
+
+    private class Counter extends InputEntityVisitor.Adapter {
+
+        private long ordinal = -1;
+        private long count;
+
+        @Override
+        public void startOfChunk(long ordinal) {
+            this.ordinal = ordinal;
+            count = 0;
+        }
+
+        @Override
+        public boolean id(Object id, Group group) {
+            count++;
+            return true;
+        }
+
+        @Override
+        public void endOfChunk() {
+            count(ordinal, count);
+        }
+    }
+}
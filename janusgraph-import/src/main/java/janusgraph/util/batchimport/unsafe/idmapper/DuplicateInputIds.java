@@ -0,0 +1,365 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.IntArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.LongArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.XXHash64Encoder;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.InputIdStore;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds input ids which occur more than once among the nodes, before any node is imported, so that only the first
+ * of them is imported and the others cost no vertex id and no bytes in the store.
+ *
+ * A pre-pass over the node input {@link #newVisitor() visits} the ids and keeps a 64 bit hash of every id and its
+ * group, each visitor in its own array. {@link #detect()} sorts the arrays in parallel and merges them, the hashes
+ * seen more than once are kept, usually only those of duplicates. While the nodes are imported only ids with such a
+ * hash are {@link #claim(Object, Group) claimed} by their actual value, the first claim wins.
+ *
+ * Claims are kept off-heap. Every claim gets a number, the claimed id is kept by its number in an
+ * {@link InputIdStore} and the claims of a hash are chained from the position of the hash among the suspects, so
+ * the ids of nodes which aren't suspects are never kept.
+ */
+public class DuplicateInputIds implements MemoryStatsVisitor.Visitable, AutoCloseable
+{
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int INSERTION_SORT_SIZE = 32;
+    private static final int CLAIM_CHUNK_SIZE = 1 << 16;
+    private static final int LOCK_STRIPES = 64;
+    private static final long[] NONE = new long[0];
+
+    private final NumberArrayFactory factory;
+    private final XXHash64Encoder encoder = new XXHash64Encoder();
+    private final List<Visitor> visitors = new ArrayList<>();
+    private long[] suspects = NONE;
+    // by suspect position, number + 1 of the latest claim of that hash, 0 if none
+    private LongArray latestClaims;
+    // by claim number, number + 1 of the claim of the same hash before it, 0 if none
+    private LongArray previousClaims;
+    // by claim number, group of the claimed id
+    private IntArray claimGroups;
+    // by claim number, the claimed id
+    private InputIdStore claimedIds;
+    private final AtomicLong claims = new AtomicLong();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final LongAdder duplicates = new LongAdder();
+
+    public DuplicateInputIds( NumberArrayFactory factory )
+    {
+        this.factory = factory;
+        for ( int i = 0; i < locks.length; i++ )
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return a visitor of the node input for one thread of the pre-pass, it keeps the hashes of the ids it visits.
+     */
+    public synchronized InputEntityVisitor newVisitor()
+    {
+        Visitor visitor = new Visitor( factory.newDynamicLongArray( CHUNK_SIZE, 0 ) );
+        visitors.add( visitor );
+        return visitor;
+    }
+
+    /**
+     * Sorts the hashes of all visitors and keeps the ones seen more than once, then lets go of the rest.
+     *
+     * @return number of hashes seen more than once.
+     */
+    public long detect() throws InterruptedException
+    {
+        Thread[] sorters = new Thread[visitors.size()];
+        for ( int i = 0; i < sorters.length; i++ )
+        {
+            Visitor visitor = visitors.get( i );
+            sorters[i] = new Thread( () -> sort( visitor.hashes, 0, visitor.count - 1 ), "DuplicatesSorter-" + i );
+            sorters[i].start();
+        }
+        for ( Thread sorter : sorters )
+        {
+            sorter.join();
+        }
+        suspects = merge();
+        closeVisitors();
+        if ( suspects.length > 0 )
+        {
+            latestClaims = factory.newLongArray( suspects.length, 0 );
+            previousClaims = factory.newDynamicLongArray( CLAIM_CHUNK_SIZE, 0 );
+            claimGroups = factory.newDynamicIntArray( CLAIM_CHUNK_SIZE, 0 );
+            claimedIds = new InputIdStore( factory );
+        }
+        return suspects.length;
+    }
+
+    /**
+     * Merges the sorted hashes of the visitors with a heap of their cursors, collecting every hash equal to the
+     * one before it.
+     */
+    private long[] merge()
+    {
+        int size = 0;
+        Visitor[] heap = new Visitor[visitors.size()];
+        for ( Visitor visitor : visitors )
+        {
+            if ( visitor.count > 0 )
+            {
+                visitor.cursor = 0;
+                heap[size++] = visitor;
+            }
+        }
+        for ( int i = size / 2 - 1; i >= 0; i-- )
+        {
+            siftDown( heap, i, size );
+        }
+
+        long[] found = NONE;
+        int foundCount = 0;
+        boolean first = true;
+        long previous = 0;
+        while ( size > 0 )
+        {
+            Visitor top = heap[0];
+            long hash = top.head();
+            if ( !first && hash == previous && (foundCount == 0 || found[foundCount - 1] != hash) )
+            {
+                if ( foundCount == found.length )
+                {
+                    found = Arrays.copyOf( found, Math.max( 16, foundCount * 2 ) );
+                }
+                found[foundCount++] = hash;
+            }
+            first = false;
+            previous = hash;
+            if ( ++top.cursor == top.count )
+            {
+                heap[0] = heap[--size];
+            }
+            siftDown( heap, 0, size );
+        }
+        return Arrays.copyOf( found, foundCount );
+    }
+
+    private static void siftDown( Visitor[] heap, int index, int size )
+    {
+        while ( true )
+        {
+            int smallest = index;
+            int left = index * 2 + 1;
+            int right = left + 1;
+            if ( left < size && heap[left].head() < heap[smallest].head() )
+            {
+                smallest = left;
+            }
+            if ( right < size && heap[right].head() < heap[smallest].head() )
+            {
+                smallest = right;
+            }
+            if ( smallest == index )
+            {
+                return;
+            }
+            Visitor swap = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = swap;
+            index = smallest;
+        }
+    }
+
+    /**
+     * Quicksort of {@code array} between {@code low} and {@code high}, inclusive. Recurses into the smaller side only.
+     */
+    static void sort( LongArray array, long low, long high )
+    {
+        while ( high - low >= INSERTION_SORT_SIZE )
+        {
+            long middle = low + (high - low) / 2;
+            if ( array.get( middle ) < array.get( low ) )
+            {
+                array.swap( middle, low );
+            }
+            if ( array.get( high ) < array.get( low ) )
+            {
+                array.swap( high, low );
+            }
+            if ( array.get( high ) < array.get( middle ) )
+            {
+                array.swap( high, middle );
+            }
+            long pivot = array.get( middle );
+            long i = low - 1;
+            long j = high + 1;
+            while ( true )
+            {
+                do
+                {
+                    i++;
+                }
+                while ( array.get( i ) < pivot );
+                do
+                {
+                    j--;
+                }
+                while ( array.get( j ) > pivot );
+                if ( i >= j )
+                {
+                    break;
+                }
+                array.swap( i, j );
+            }
+            if ( j - low < high - j )
+            {
+                sort( array, low, j );
+                low = j + 1;
+            }
+            else
+            {
+                sort( array, j + 1, high );
+                high = j;
+            }
+        }
+        for ( long i = low + 1; i <= high; i++ )
+        {
+            long value = array.get( i );
+            long j = i - 1;
+            while ( j >= low && array.get( j ) > value )
+            {
+                array.set( j + 1, array.get( j ) );
+                j--;
+            }
+            array.set( j + 1, value );
+        }
+    }
+
+    /**
+     * Called for every node while importing, after {@link #detect()}.
+     *
+     * @return {@code true} if {@code id} is seen for the first time in {@code group} and its node is to be imported,
+     * {@code false} if it's a duplicate of an id claimed before.
+     */
+    public boolean claim( Object id, Group group )
+    {
+        int position = Arrays.binarySearch( suspects, hash( id, group ) );
+        if ( position < 0 )
+        {
+            return true;
+        }
+        String value = id.toString();
+        synchronized ( locks[position % LOCK_STRIPES] )
+        {
+            for ( long claim = latestClaims.get( position ) - 1; claim >= 0; claim = previousClaims.get( claim ) - 1 )
+            {
+                if ( claimGroups.get( claim ) == group.id() && value.equals( claimedIds.apply( claim ) ) )
+                {
+                    duplicates.increment();
+                    return false;
+                }
+            }
+            long claim = claims.getAndIncrement();
+            claimedIds.add( claim, value );
+            claimGroups.set( claim, group.id() );
+            previousClaims.set( claim, latestClaims.get( position ) );
+            latestClaims.set( position, claim + 1 );
+            return true;
+        }
+    }
+
+    /**
+     * @return number of distinct ids {@link #claim(Object, Group) claimed} among the suspects.
+     */
+    public long claims()
+    {
+        return claims.get();
+    }
+
+    /**
+     * @return number of ids which {@link #claim(Object, Group) claims} were refused for.
+     */
+    public long duplicates()
+    {
+        return duplicates.sum();
+    }
+
+    private long hash( Object id, Group group )
+    {
+        long x = id instanceof Long ? (Long) id : encoder.encode( id.toString() );
+        x += group.id() * 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    @Override
+    public synchronized void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+    {
+        for ( Visitor idVisitor : visitors )
+        {
+            idVisitor.hashes.acceptMemoryStatsVisitor( visitor );
+        }
+        visitor.heapUsage( suspects.length * Long.BYTES );
+        if ( claimedIds != null )
+        {
+            latestClaims.acceptMemoryStatsVisitor( visitor );
+            previousClaims.acceptMemoryStatsVisitor( visitor );
+            claimGroups.acceptMemoryStatsVisitor( visitor );
+            claimedIds.acceptMemoryStatsVisitor( visitor );
+        }
+    }
+
+    private synchronized void closeVisitors()
+    {
+        for ( Visitor visitor : visitors )
+        {
+            visitor.hashes.close();
+        }
+        visitors.clear();
+    }
+
+    @Override
+    public void close()
+    {
+        closeVisitors();
+        suspects = NONE;
+        if ( claimedIds != null )
+        {
+            latestClaims.close();
+            previousClaims.close();
+            claimGroups.close();
+            claimedIds.close();
+            claimedIds = null;
+        }
+    }
+
+    private class Visitor extends InputEntityVisitor.Adapter
+    {
+        private final LongArray hashes;
+        private long count;
+        private long cursor;
+
+        Visitor( LongArray hashes )
+        {
+            this.hashes = hashes;
+        }
+
+        @Override
+        public boolean id( Object id, Group group )
+        {
+            hashes.set( count++, hash( id, group ) );
+            return true;
+        }
+
+        long head()
+        {
+            return hashes.get( cursor );
+        }
+    }
+}
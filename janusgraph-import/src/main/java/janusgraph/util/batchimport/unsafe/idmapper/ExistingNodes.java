@@ -0,0 +1,229 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.LongArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.InputIdStore;
+import janusgraph.util.batchimport.unsafe.input.Collector;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Nodes which are in the graph already, for an import which adds nodes and edges to a graph with data. Edges whose
+ * start or end node isn't one of the imported nodes are looked up in here.
+ *
+ * They are {@link #read(File, Groups, Function) read} from id mapping files like the ones {@link IdMappingWriter}
+ * writes, {@code group,id,vertexId}, plain or gzipped. Input ids are put in an id mapper of their own at the index
+ * of their line, the vertex id of every line is kept at that index and used as it is.
+ */
+public class ExistingNodes implements MemoryStatsVisitor.Visitable, AutoCloseable
+{
+    private static final int CHUNK_SIZE = 1_000_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final IdMapper<Object> idMapper;
+    private final LongArray vertexIds;
+    private InputIdStore inputIds;
+    private long count;
+
+    public ExistingNodes( IdMapper<Object> idMapper, NumberArrayFactory factory )
+    {
+        this.idMapper = idMapper;
+        this.vertexIds = factory.newDynamicLongArray( CHUNK_SIZE, IdMapper.ID_NOT_FOUND );
+        this.inputIds = idMapper.needsInputIdLookup() ? new InputIdStore( factory ) : null;
+    }
+
+    public void add( Object inputId, Group group, long vertexId )
+    {
+        idMapper.put( inputId, group, count );
+        if ( inputIds != null )
+        {
+            inputIds.add( count, inputId.toString() );
+        }
+        vertexIds.set( count++, vertexId );
+    }
+
+    /**
+     * Adds the nodes of an id mapping file, skipping its header and empty lines.
+     *
+     * @param groups groups of the import, the ones in the file are created in it.
+     * @param ids converts the id field to the type of the input ids.
+     * @throws IOException on I/O error, or if a line isn't {@code group,id,vertexId}.
+     */
+    public void read( File file, Groups groups, Function<String,Object> ids ) throws IOException
+    {
+        InputStream stream = new FileInputStream( file );
+        if ( file.getName().endsWith( ".gz" ) )
+        {
+            stream = new GZIPInputStream( stream, BUFFER_SIZE );
+        }
+        try ( Reader in = new BufferedReader( new InputStreamReader( stream, StandardCharsets.UTF_8 ), BUFFER_SIZE ) )
+        {
+            List<String> fields = new ArrayList<>( 3 );
+            StringBuilder field = new StringBuilder();
+            long line = 0;
+            while ( readLine( in, fields, field ) )
+            {
+                line++;
+                if ( fields.size() == 1 && fields.get( 0 ).isEmpty() ||
+                        line == 1 && IdMappingWriter.HEADER.equals( String.join( ",", fields ) ) )
+                {
+                    continue;
+                }
+                if ( fields.size() != 3 )
+                {
+                    throw new IOException( file + ":" + line + " isn't " + IdMappingWriter.HEADER + ": " + fields );
+                }
+                long vertexId;
+                try
+                {
+                    vertexId = Long.parseLong( fields.get( 2 ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new IOException( file + ":" + line + " has no vertex id: " + fields, e );
+                }
+                String groupName = fields.get( 0 );
+                add( ids.apply( fields.get( 1 ) ), groupName.isEmpty() ? Group.GLOBAL : groups.getOrCreate( groupName ),
+                        vertexId );
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a csv line, quoted like {@link IdMappingWriter} quotes them.
+     *
+     * @return {@code false} at the end of the file.
+     */
+    private static boolean readLine( Reader in, List<String> fields, StringBuilder field ) throws IOException
+    {
+        fields.clear();
+        field.setLength( 0 );
+        boolean any = false;
+        boolean quoted = false;
+        boolean closedQuote = false;
+        int c;
+        while ( (c = in.read()) != -1 )
+        {
+            any = true;
+            if ( quoted )
+            {
+                if ( c == '"' )
+                {
+                    quoted = false;
+                    closedQuote = true;
+                }
+                else
+                {
+                    field.append( (char) c );
+                }
+                continue;
+            }
+            if ( c == '"' )
+            {   // a quote right after a closing one is an escaped quote
+                if ( closedQuote )
+                {
+                    field.append( '"' );
+                }
+                quoted = true;
+                closedQuote = false;
+                continue;
+            }
+            closedQuote = false;
+            if ( c == ',' )
+            {
+                fields.add( field.toString() );
+                field.setLength( 0 );
+            }
+            else if ( c == '\n' )
+            {
+                break;
+            }
+            else if ( c != '\r' )
+            {
+                field.append( (char) c );
+            }
+        }
+        if ( !any )
+        {
+            return false;
+        }
+        fields.add( field.toString() );
+        return true;
+    }
+
+    /**
+     * Prepares the id mapper for lookups, once all files are read. Duplicate ids are found like the ones of nodes
+     * and only the first is kept, they aren't bad entries of this import.
+     */
+    public void prepare( ProgressListener progress ) throws Exception
+    {
+        idMapper.prepare( inputIds != null ? inputIds::apply : null, Collector.EMPTY, progress );
+        closeInputIds();
+    }
+
+    /**
+     * @return number of nodes read.
+     */
+    public long count()
+    {
+        return count;
+    }
+
+    /**
+     * Same as {@link IdMapper#getAll(Object[], Group[], int, long[])}, but into vertex ids.
+     */
+    public void getAll( Object[] keys, Group[] groups, int count, long[] into )
+    {
+        idMapper.getAll( keys, groups, count, into );
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( into[i] != IdMapper.ID_NOT_FOUND )
+            {
+                into[i] = vertexIds.get( into[i] );
+            }
+        }
+    }
+
+    @Override
+    public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+    {
+        idMapper.acceptMemoryStatsVisitor( visitor );
+        vertexIds.acceptMemoryStatsVisitor( visitor );
+        if ( inputIds != null )
+        {
+            inputIds.acceptMemoryStatsVisitor( visitor );
+        }
+    }
+
+    private void closeInputIds()
+    {
+        if ( inputIds != null )
+        {
+            inputIds.close();
+            inputIds = null;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        closeInputIds();
+        idMapper.close();
+        vertexIds.close();
+    }
+}
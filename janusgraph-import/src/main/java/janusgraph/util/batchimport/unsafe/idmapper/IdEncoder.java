@@ -0,0 +1,52 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.impl.StringEncoder;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.WyHashEncoder;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.XXHash64Encoder;
+
+/**
+ * {@link Encoder Encoders} the string id mapper can encode input ids with. Enum names in here are user facing.
+ *
+ * an id mapper saved with one encoder can only be loaded with the same one.
+ */
+public enum IdEncoder
+{
+    /**
+     * {@link StringEncoder}, keeps short strings as they are and codes longer ones. Collides often on long ids which
+     * differ in a few chars, e.g. uuids.
+     */
+    STRING
+    {
+        @Override
+        public Encoder<String> newEncoder()
+        {
+            return new StringEncoder();
+        }
+    },
+
+    /**
+     * {@link XXHash64Encoder}, a 56 bit xxhash of the string tagged with its length.
+     */
+    XXHASH64
+    {
+        @Override
+        public Encoder<String> newEncoder()
+        {
+            return new XXHash64Encoder();
+        }
+    },
+
+    /**
+     * {@link WyHashEncoder}, a 56 bit wyhash-like hash of the string tagged with its length.
+     */
+    WYHASH
+    {
+        @Override
+        public Encoder<String> newEncoder()
+        {
+            return new WyHashEncoder();
+        }
+    };
+
+    public abstract Encoder<String> newEncoder();
+}
@@ -0,0 +1,258 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.stats.DetailLevel;
+import janusgraph.util.batchimport.unsafe.stats.Stat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size cache of input id to node id in front of {@link IdMapper#getAll(Object[], Group[], int, long[])}, for
+ * edges whose endpoints are the same few hot nodes over and over. Not thread safe, every edge importer thread has its
+ * own.
+ *
+ * Slots are kept in primitive arrays, in sets of {@link #WAYS} which a key hashes to. Once the set of a key is full a
+ * clock hand goes round it and evicts the first slot which wasn't hit since the hand last passed it. Keys are kept to
+ * tell ids with the same hash apart, a wrong node id would silently connect the wrong nodes. Ids which aren't found
+ * aren't cached.
+ */
+public class IdLookupCache implements MemoryStatsVisitor.Visitable
+{
+    public static final int WAYS = 8;
+
+    private final int setMask;
+    private final Object[] keys;
+    private final int[] groups;
+    private final int[] hashes;
+    private final long[] nodeIds;
+    private final boolean[] referenced;
+    private final byte[] hands;
+    private final HitRate hitRate;
+
+    // misses of the current batch, looked up in the id mapper together
+    private Object[] missedKeys = new Object[0];
+    private Group[] missedGroups = new Group[0];
+    private int[] missedIndexes = new int[0];
+    private long[] missedNodeIds = new long[0];
+
+    /**
+     * @param size number of ids to cache, rounded up to a power of two.
+     * @param hitRate where hits and lookups are counted, shared by the caches of all threads.
+     */
+    public IdLookupCache( int size, HitRate hitRate )
+    {
+        int sets = sets( size );
+        this.setMask = sets - 1;
+        this.keys = new Object[sets * WAYS];
+        this.groups = new int[sets * WAYS];
+        this.hashes = new int[sets * WAYS];
+        this.nodeIds = new long[sets * WAYS];
+        this.referenced = new boolean[sets * WAYS];
+        this.hands = new byte[sets];
+        this.hitRate = hitRate;
+    }
+
+    private static int sets( int size )
+    {
+        int sets = Integer.highestOneBit( Math.max( size - 1, WAYS ) / WAYS ) << 1;
+        return Math.min( sets, 1 << 26 );
+    }
+
+    /**
+     * @return heap size of a cache of {@code size} ids, not counting the keys themselves.
+     */
+    public static long calculateMemoryUsage( int size )
+    {
+        return memoryUsageOfSets( sets( size ) );
+    }
+
+    private static long memoryUsageOfSets( int sets )
+    {
+        // a compressed reference to the key, group, hash, node id and referenced bit of every slot, a hand per set
+        return (long) sets * WAYS * (4 + Integer.BYTES + Integer.BYTES + Long.BYTES + 1) + sets;
+    }
+
+    /**
+     * Same as {@link IdMapper#getAll(Object[], Group[], int, long[])}, looking up in {@code idMapper} only the keys
+     * which aren't cached, and caching the ones found there.
+     */
+    public void getAll( IdMapper<Object> idMapper, Object[] keys, Group[] groups, int count, long[] into )
+    {
+        ensureCapacity( count );
+        int misses = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            long nodeId = get( keys[i], groups[i] );
+            if ( nodeId == IdMapper.ID_NOT_FOUND )
+            {
+                missedKeys[misses] = keys[i];
+                missedGroups[misses] = groups[i];
+                missedIndexes[misses++] = i;
+            }
+            into[i] = nodeId;
+        }
+        if ( misses > 0 )
+        {
+            idMapper.getAll( missedKeys, missedGroups, misses, missedNodeIds );
+            for ( int i = 0; i < misses; i++ )
+            {
+                into[missedIndexes[i]] = missedNodeIds[i];
+                put( missedKeys[i], missedGroups[i], missedNodeIds[i] );
+                missedKeys[i] = null;
+            }
+        }
+        hitRate.add( count, count - misses );
+    }
+
+    private void ensureCapacity( int count )
+    {
+        if ( missedKeys.length < count )
+        {
+            missedKeys = new Object[count];
+            missedGroups = new Group[count];
+            missedIndexes = new int[count];
+            missedNodeIds = new long[count];
+        }
+    }
+
+    /**
+     * @return node id of {@code key} in {@code group}, or {@link IdMapper#ID_NOT_FOUND} if it isn't cached.
+     */
+    public long get( Object key, Group group )
+    {
+        int slot = slot( key, group.id(), hash( key, group.id() ) );
+        if ( slot == -1 )
+        {
+            return IdMapper.ID_NOT_FOUND;
+        }
+        referenced[slot] = true;
+        return nodeIds[slot];
+    }
+
+    /**
+     * Caches {@code nodeId} of {@code key} in {@code group}, evicting another id if its set is full.
+     */
+    public void put( Object key, Group group, long nodeId )
+    {
+        int groupId = group.id();
+        int hash = hash( key, groupId );
+        if ( nodeId < 0 || slot( key, groupId, hash ) != -1 )
+        {
+            return;
+        }
+        int set = hash & setMask;
+        int slot = emptySlot( set );
+        if ( slot == -1 )
+        {
+            slot = evict( set );
+        }
+        keys[slot] = key;
+        groups[slot] = groupId;
+        hashes[slot] = hash;
+        nodeIds[slot] = nodeId;
+        referenced[slot] = false;
+    }
+
+    private int slot( Object key, int groupId, int hash )
+    {
+        int first = (hash & setMask) * WAYS;
+        for ( int slot = first; slot < first + WAYS; slot++ )
+        {
+            if ( hashes[slot] == hash && groups[slot] == groupId && key.equals( keys[slot] ) )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int emptySlot( int set )
+    {
+        int first = set * WAYS;
+        for ( int slot = first; slot < first + WAYS; slot++ )
+        {
+            if ( keys[slot] == null )
+            {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int evict( int set )
+    {
+        int first = set * WAYS;
+        int hand = hands[set];
+        // at most once round clearing the bits, then the slot the hand started at is free to go
+        while ( referenced[first + hand] )
+        {
+            referenced[first + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+        hands[set] = (byte) ((hand + 1) % WAYS);
+        return first + hand;
+    }
+
+    private static int hash( Object key, int groupId )
+    {
+        int hash = key.hashCode() * 0x9E3779B9 + groupId;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+    {
+        visitor.heapUsage( memoryUsageOfSets( hands.length ) );
+    }
+
+    /**
+     * Hit rate of the caches of all edge importer threads, in parts per million. Its string also has the number of
+     * lookups.
+     */
+    public static class HitRate implements Stat
+    {
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+
+        void add( long lookups, long hits )
+        {
+            this.lookups.add( lookups );
+            this.hits.add( hits );
+        }
+
+        public long lookups()
+        {
+            return lookups.sum();
+        }
+
+        public long hits()
+        {
+            return hits.sum();
+        }
+
+        public double rate()
+        {
+            long lookups = lookups();
+            return lookups == 0 ? 0 : hits() / (double) lookups;
+        }
+
+        @Override
+        public DetailLevel detailLevel()
+        {
+            return DetailLevel.BASIC;
+        }
+
+        @Override
+        public long asLong()
+        {
+            return Math.round( rate() * 1_000_000 );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%.1f%% hits of %d lookups", rate() * 100, lookups() );
+        }
+    }
+}
@@ -5,7 +5,10 @@ import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
 import janusgraph.util.batchimport.unsafe.input.Collector;
 import janusgraph.util.batchimport.unsafe.input.Group;
 import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
+import janusgraph.util.batchimport.unsafe.stats.GenericStatsProvider;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.function.LongFunction;
 
 /**
@@ -14,10 +17,31 @@ import java.util.function.LongFunction;
 public interface IdMapper<T> extends MemoryStatsVisitor.Visitable{
     long ID_NOT_FOUND = -1;
 
+    /**
+     * @param id dense index of the node, not its vertex id, see {@code BulkIdAssigner#vertexIndex(long)}.
+     */
     public void put(T key, Group group, long id);
 
     public long get(T key, Group group);
 
+    /**
+     * Looks up many ids at once, e.g. all endpoint ids of a chunk of edges. Implementations may sort the keys
+     * and resolve them in one forward pass over their sorted data, instead of one random search per key.
+     *
+     * @param keys input ids, {@code keys[i]} is looked up in {@code groups[i]}.
+     * @param groups groups of the input ids.
+     * @param count number of keys to look up, from index 0.
+     * @param into receives what {@link #get(Object, Group)} would return for every key, at the same index.
+     */
+    @SuppressWarnings( "unchecked" )
+    default void getAll( Object[] keys, Group[] groups, int count, long[] into )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            into[i] = get( (T) keys[i], groups[i] );
+        }
+    }
+
     /**
      * @return whether or not a call to {@link #prepare(LongFunction, Collector, ProgressListener)} needs to commence after all calls to
      * {@link #put(Object, Group, long)} and before any call to {@link #get(Object, Group)}. I.e. whether or not all ids
@@ -37,6 +61,33 @@ public interface IdMapper<T> extends MemoryStatsVisitor.Visitable{
      */
     void prepare(LongFunction<T> inputIdLookup, Collector collector, ProgressListener progress) throws Exception;
 
+    /**
+     * @return whether or not {@link #prepare(LongFunction, Collector, ProgressListener)} may need the original input ids,
+     * i.e. whether they should be kept aside while putting.
+     */
+    default boolean needsInputIdLookup()
+    {
+        return false;
+    }
+
+    /**
+     * Saves this prepared mapper to {@code file}, for a later import to load it and import edges only, without the
+     * nodes having to be read again.
+     *
+     * @param layout of the vertex ids the node indexes put stand for.
+     */
+    default void save(File file, IdMapperFile.Layout layout) throws IOException
+    {
+        throw new UnsupportedOperationException( getClass().getSimpleName() + " can't be saved" );
+    }
+
+    /**
+     * Adds stats of the lookups of this mapper to {@code stats}, e.g. of a filter in front of them.
+     */
+    default void addStats( GenericStatsProvider stats )
+    {   // No stats by default
+    }
+
     public void close();
 
     PrimitiveLongIterator leftOverDuplicateNodesIds();
@@ -0,0 +1,370 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.ByteArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.IntArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.LongArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MappedByteArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MappedIntArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MappedLongArray;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * file a prepared {@link IdMapper} is saved to, so that a later import can map it and import edges only.
+ *
+ * all values are little endian like the memory mapped caches, so that a saved array is mapped read-only as it is
+ * instead of being read back. the file starts with a magic number, a version, the {@link Layout} of the vertex ids the
+ * saved node indexes stand for, the kind of id mapper and the names of the groups by id, what follows is up to the id
+ * mapper.
+ */
+public class IdMapperFile {
+
+    private static final long MAGIC = 0x4A47_4944_4D41_5031L; // "JGIDMAP1"
+    private static final int VERSION = 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private IdMapperFile() {
+    }
+
+    /**
+     * @param kind written for {@link #open(File, String, Groups)} to check.
+     * @param groups all groups of the import, ids are saved with their id.
+     * @param layout of the vertex ids of the saved node indexes, for {@link #layout(File)}.
+     */
+    public static Writer create(File file, String kind, Groups groups, Layout layout) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        Writer writer = new Writer(new RandomAccessFile(file, "rw"));
+        writer.channel.truncate(0);
+        writer.writeLong(MAGIC);
+        writer.writeInt(VERSION);
+        layout.write(writer);
+        writer.writeString(kind);
+        writer.writeInt(groups.size());
+        for (int id = 1; id < groups.size(); id++) {
+            writer.writeString(groups.get(id).name());
+        }
+        return writer;
+    }
+
+    /**
+     * @param kind the kind of id mapper the caller loads, must be the one saved.
+     * @param groups saved groups are created in it, must get the saved ids.
+     */
+    public static Reader open(File file, String kind, Groups groups) throws IOException {
+        Reader reader = new Reader(new RandomAccessFile(file, "r"));
+        try {
+            readLayout(reader, file);
+            String savedKind = reader.readString();
+            if (!savedKind.equals(kind)) {
+                throw new IOException(file + " is a saved " + savedKind + " id mapper, but " + kind + " was asked for");
+            }
+            int numberOfGroups = reader.readInt();
+            for (int id = 1; id < numberOfGroups; id++) {
+                String name = reader.readString();
+                Group group = groups.getOrCreate(name);
+                if (group.id() != id) {
+                    throw new IOException("Group '" + name + "' has id " + group.id() + " but it was saved with id "
+                            + id + " in " + file);
+                }
+            }
+            return reader;
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return layout of the vertex ids of the node indexes saved in {@code file}, which the importer of its edges
+     * must have too.
+     */
+    public static Layout layout(File file) throws IOException {
+        try (Reader reader = new Reader(new RandomAccessFile(file, "r"))) {
+            return readLayout(reader, file);
+        }
+    }
+
+    private static Layout readLayout(Reader reader, File file) throws IOException {
+        if (reader.readLong() != MAGIC) {
+            throw new IOException(file + " is not a saved id mapper");
+        }
+        int version = reader.readInt();
+        if (version != VERSION) {
+            throw new IOException(file + " has version " + version + ", only version " + VERSION + " is supported");
+        }
+        return Layout.read(reader);
+    }
+
+    /**
+     * how node indexes map to vertex ids, see {@code BulkIdAssigner#vertexIndex(long)}: the partition bits of
+     * {@code cluster.max-partitions}, the bits and tag of {@code ids.authority.conflict-avoidance-*} and the count
+     * the indexes start at in every partition. the indexes of a saved id mapper are only vertex ids again with the
+     * layout they were saved with.
+     */
+    public static class Layout {
+        private final int partitionBits;
+        private final int uniqueIdBits;
+        private final long uniqueId;
+        private final long[] firstCounts;
+
+        public Layout(int partitionBits, int uniqueIdBits, long uniqueId, long[] firstCounts) {
+            if (firstCounts.length != 1 << partitionBits) {
+                throw new IllegalArgumentException("Expected first counts of " + (1 << partitionBits) +
+                        " partitions, got " + firstCounts.length);
+            }
+            this.partitionBits = partitionBits;
+            this.uniqueIdBits = uniqueIdBits;
+            this.uniqueId = uniqueId;
+            this.firstCounts = firstCounts.clone();
+        }
+
+        public int partitionBits() {
+            return partitionBits;
+        }
+
+        public int uniqueIdBits() {
+            return uniqueIdBits;
+        }
+
+        public long uniqueId() {
+            return uniqueId;
+        }
+
+        /**
+         * @return by partition, the count of the vertex id the indexes of the partition start at.
+         */
+        public long[] firstCounts() {
+            return firstCounts.clone();
+        }
+
+        private void write(Writer writer) throws IOException {
+            writer.writeInt(partitionBits);
+            writer.writeInt(uniqueIdBits);
+            writer.writeLong(uniqueId);
+            for (long firstCount : firstCounts) {
+                writer.writeLong(firstCount);
+            }
+        }
+
+        private static Layout read(Reader reader) throws IOException {
+            int partitionBits = reader.readInt();
+            int uniqueIdBits = reader.readInt();
+            long uniqueId = reader.readLong();
+            if (partitionBits < 0 || partitionBits > 30) {
+                throw new IOException("Saved id mapper has " + partitionBits + " partition bits");
+            }
+            long[] firstCounts = new long[1 << partitionBits];
+            for (int partition = 0; partition < firstCounts.length; partition++) {
+                firstCounts[partition] = reader.readLong();
+            }
+            return new Layout(partitionBits, uniqueIdBits, uniqueId, firstCounts);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Layout)) {
+                return false;
+            }
+            Layout other = (Layout) o;
+            return partitionBits == other.partitionBits && uniqueIdBits == other.uniqueIdBits &&
+                    uniqueId == other.uniqueId && Arrays.equals(firstCounts, other.firstCounts);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((partitionBits * 31 + uniqueIdBits) * 31 + Long.hashCode(uniqueId)) * 31 +
+                    Arrays.hashCode(firstCounts);
+        }
+
+        @Override
+        public String toString() {
+            return "Layout[partitionBits=" + partitionBits + ", uniqueIdBits=" + uniqueIdBits + ", uniqueId=" +
+                    uniqueId + ", firstCounts=" + Arrays.toString(firstCounts) + "]";
+        }
+    }
+
+    public static class Writer implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Writer(RandomAccessFile file) {
+            this.file = file;
+            this.channel = file.getChannel();
+        }
+
+        private ByteBuffer room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void writeLong(long value) throws IOException {
+            room(Long.BYTES).putLong(value);
+        }
+
+        public void writeInt(int value) throws IOException {
+            room(Integer.BYTES).putInt(value);
+        }
+
+        public void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            for (byte b : bytes) {
+                room(1).put(b);
+            }
+        }
+
+        /**
+         * writes the first {@code count} items of {@code array}, for {@link Reader#mapLongs(long)}.
+         */
+        public void writeLongs(LongArray array, long count) throws IOException {
+            writeLong(count);
+            for (long i = 0; i < count; i++) {
+                room(Long.BYTES).putLong(array.get(i));
+            }
+        }
+
+        /**
+         * writes the first {@code count} items of {@code array}, for {@link Reader#mapInts(int)}.
+         */
+        public void writeInts(IntArray array, long count) throws IOException {
+            writeLong(count);
+            for (long i = 0; i < count; i++) {
+                room(Integer.BYTES).putInt(array.get(i));
+            }
+        }
+
+        /**
+         * writes the first {@code count} items of {@code itemSize} bytes of {@code array}, for
+         * {@link Reader#mapBytes(byte[])}.
+         */
+        public void writeBytes(ByteArray array, long count, int itemSize) throws IOException {
+            writeLong(count);
+            writeInt(itemSize);
+            byte[] item = new byte[itemSize];
+            for (long i = 0; i < count; i++) {
+                array.get(i, item);
+                room(itemSize).put(item);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * reads what a {@link Writer} wrote, in the same order. arrays are mapped read-only and stay valid after the
+     * reader is closed, until they are closed themselves.
+     */
+    public static class Reader implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        private Reader(RandomAccessFile file) {
+            this.file = file;
+            this.channel = file.getChannel();
+        }
+
+        private ByteBuffer read(int bytes) throws IOException {
+            ByteBuffer into = bytes <= buffer.capacity() ? buffer : ByteBuffer.allocate(bytes);
+            into.clear();
+            into.limit(bytes);
+            while (into.hasRemaining()) {
+                if (channel.read(into, position + into.position()) < 0) {
+                    throw new EOFException("Saved id mapper ends at " + (position + into.position()));
+                }
+            }
+            position += bytes;
+            into.flip();
+            return into;
+        }
+
+        private void skip(long bytes) throws IOException {
+            position += bytes;
+            if (position > channel.size()) {
+                throw new EOFException("Saved id mapper ends at " + channel.size() + ", wanted " + position);
+            }
+        }
+
+        public long readLong() throws IOException {
+            return read(Long.BYTES).getLong();
+        }
+
+        public int readInt() throws IOException {
+            return read(Integer.BYTES).getInt();
+        }
+
+        public String readString() throws IOException {
+            int length = readInt();
+            return new String(read(length).array(), 0, length, StandardCharsets.UTF_8);
+        }
+
+        public LongArray mapLongs(long defaultValue) throws IOException {
+            long count = readLong();
+            long at = position;
+            skip(count * Long.BYTES);
+            return new MappedLongArray(channel, at, count, defaultValue);
+        }
+
+        public IntArray mapInts(int defaultValue) throws IOException {
+            long count = readLong();
+            long at = position;
+            skip(count * Integer.BYTES);
+            return new MappedIntArray(channel, at, count, defaultValue);
+        }
+
+        /**
+         * @param defaultValue its length must be the saved item size.
+         */
+        public ByteArray mapBytes(byte[] defaultValue) throws IOException {
+            long count = readLong();
+            int itemSize = readInt();
+            if (itemSize != defaultValue.length) {
+                throw new IOException("Saved items have " + itemSize + " bytes, expected " + defaultValue.length);
+            }
+            long at = position;
+            skip(count * itemSize);
+            return new MappedByteArray(channel, at, count, defaultValue);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -5,7 +5,7 @@ import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongCollecti
 import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongIterator;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
-import janusgraph.util.batchimport.unsafe.idmapper.impl.StringEncoder;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.longs.LongIdMapper;
 import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper;
 import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.StringCollisionValues;
 import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.raddix.Radix;
@@ -14,6 +14,8 @@ import janusgraph.util.batchimport.unsafe.input.Group;
 import janusgraph.util.batchimport.unsafe.input.Groups;
 import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.function.LongFunction;
 
 import static janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.TrackerFactories.dynamic;
@@ -103,8 +105,54 @@ public class IdMappers
      */
     public static IdMapper<String> strings(NumberArrayFactory cacheFactory, Groups groups )
     {
-        return new EncodingIdMapper( cacheFactory, new StringEncoder(), Radix.STRING, NO_MONITOR, dynamic(), groups,
+        return strings( cacheFactory, groups, IdEncoder.STRING );
+    }
+
+    /**
+     * An {@link IdMapper} capable of mapping {@link String strings} to long ids.
+     *
+     * @param cacheFactory {@link NumberArrayFactory} for allocating memory for the cache used by this index.
+     * @param groups {@link Groups} containing all id groups.
+     * @param encoder {@link IdEncoder} to encode the strings with.
+     * @return {@link IdMapper} for when input ids are strings.
+     */
+    public static IdMapper<String> strings( NumberArrayFactory cacheFactory, Groups groups, IdEncoder encoder )
+    {
+        return new EncodingIdMapper( cacheFactory, encoder.newEncoder(), Radix.STRING, NO_MONITOR, dynamic(), groups,
                 numberOfCollisions -> new StringCollisionValues( cacheFactory, numberOfCollisions ) );
     }
 
+    /**
+     * An {@link IdMapper} capable of mapping {@link Long longs} to long ids, the input ids are kept as they are.
+     *
+     * @param cacheFactory {@link NumberArrayFactory} for allocating memory for the cache used by this index.
+     * @param groups {@link Groups} containing all id groups.
+     * @return {@link IdMapper} for when input ids are numbers.
+     */
+    public static IdMapper<Long> longs(NumberArrayFactory cacheFactory, Groups groups )
+    {
+        return new LongIdMapper( cacheFactory, groups );
+    }
+
+    /**
+     * @param file where an id mapper from {@link #strings(NumberArrayFactory, Groups, IdEncoder)} was saved.
+     * @param groups the saved groups are created in it.
+     * @param encoder the {@link IdEncoder} it was created with.
+     * @return the saved {@link IdMapper}, ready for use.
+     */
+    public static IdMapper<String> loadStrings( File file, Groups groups, IdEncoder encoder ) throws IOException
+    {
+        return EncodingIdMapper.load( file, encoder.newEncoder(), Radix.STRING, groups );
+    }
+
+    /**
+     * @param file where an id mapper from {@link #longs(NumberArrayFactory, Groups)} was saved.
+     * @param groups the saved groups are created in it.
+     * @return the saved {@link IdMapper}, ready for use.
+     */
+    public static IdMapper<Long> loadLongs( File file, Groups groups ) throws IOException
+    {
+        return LongIdMapper.load( file, groups );
+    }
+
 }
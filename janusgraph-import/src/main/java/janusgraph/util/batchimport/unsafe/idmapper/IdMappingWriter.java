@@ -0,0 +1,79 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.input.Group;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * writes the mapping from input id to vertex id as it's {@link IdMapper#put put}, for systems outside the graph to
+ * join their ids with the vertex ids instead of looking every one up in an index after loading.
+ *
+ * every node importer thread writes its own gzipped csv file {@code <name>.csv.gz}, with a header line
+ * {@code group,id,vertexId}. the group is empty for the global id space, fields are quoted like the input when they
+ * contain a delimiter, a quote or a line break. not thread safe.
+ */
+public class IdMappingWriter implements AutoCloseable {
+
+    public static final String DIRECTORY_NAME = "id-mapping";
+    public static final String FILE_SUFFIX = ".csv.gz";
+    public static final String HEADER = "group,id,vertexId";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(64);
+
+    public IdMappingWriter(File directory, String name) throws IOException {
+        directory.mkdirs();
+        this.out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                new FileOutputStream(new File(directory, name + FILE_SUFFIX)), BUFFER_SIZE),
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+        out.write(HEADER);
+        out.write('\n');
+    }
+
+    public void write(Group group, Object inputId, long vertexId) throws IOException {
+        line.setLength(0);
+        if (group.id() != Group.GLOBAL.id()) {
+            field(group.name());
+        }
+        line.append(',');
+        field(inputId.toString());
+        line.append(',').append(vertexId).append('\n');
+        out.append(line);
+    }
+
+    private void field(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,143 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Bloom filter of 64 bit hashes, split in blocks of 8 longs, i.e. a cache line. A hash picks one block and sets one
+ * bit in each of its longs, so that looking it up touches a single block and most hashes which weren't added are
+ * rejected at the first long. See split block bloom filters of parquet, which this is a 64 bit version of.
+ *
+ * Hashes are expected to be well mixed already. {@link #add(long)} isn't thread safe, {@link #mightContain(long)}
+ * can be called by any number of threads once all hashes are added.
+ */
+public class BlockedBloomFilter implements MemoryStatsVisitor.Visitable, AutoCloseable
+{
+    public static final int WORDS_PER_BLOCK = 8;
+    private static final int BITS_PER_BLOCK = WORDS_PER_BLOCK * Long.SIZE;
+    // odd multipliers picking the bit in every long of a block from the same 32 bits of the hash
+    private static final int[] SALT = {0x47B6137B, 0x44974D91, 0x8824AD5B, 0xA2B7289D,
+                                       0x705495C7, 0x2DF1424B, 0x9EFC4947, 0x5C6BFB31};
+
+    private final LongArray bits;
+    private final long blocks;
+    private volatile double falsePositiveRate = -1;
+
+    /**
+     * @param expectedHashes number of hashes which will be added.
+     * @param bitsPerHash bits to spend on every one of them, 10 gives a false positive rate of about 1%.
+     */
+    public BlockedBloomFilter( NumberArrayFactory factory, long expectedHashes, int bitsPerHash )
+    {
+        this( factory.newLongArray( blocks( expectedHashes, bitsPerHash ) * WORDS_PER_BLOCK, 0 ) );
+    }
+
+    /**
+     * A filter over bits of another one, e.g. {@link #bits() saved} by it.
+     */
+    public BlockedBloomFilter( LongArray bits )
+    {
+        this.bits = bits;
+        this.blocks = bits.length() / WORDS_PER_BLOCK;
+    }
+
+    private static long blocks( long expectedHashes, int bitsPerHash )
+    {
+        long blocks = (max( expectedHashes, 1 ) * bitsPerHash + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK;
+        // the block is picked by the upper 32 bits of the hash
+        return min( max( blocks, 1 ), Integer.MAX_VALUE );
+    }
+
+    /**
+     * @return size in bytes of a filter for {@code expectedHashes} of {@code bitsPerHash} bits.
+     */
+    public static long calculateMemoryUsage( long expectedHashes, int bitsPerHash )
+    {
+        return blocks( expectedHashes, bitsPerHash ) * WORDS_PER_BLOCK * Long.BYTES;
+    }
+
+    public void add( long hash )
+    {
+        long word = block( hash );
+        int h = (int) hash;
+        for ( int i = 0; i < WORDS_PER_BLOCK; i++, word++ )
+        {
+            bits.set( word, bits.get( word ) | bit( h, i ) );
+        }
+    }
+
+    /**
+     * @return {@code false} if {@code hash} surely wasn't {@link #add(long) added}, otherwise it probably was.
+     */
+    public boolean mightContain( long hash )
+    {
+        long word = block( hash );
+        int h = (int) hash;
+        for ( int i = 0; i < WORDS_PER_BLOCK; i++, word++ )
+        {
+            long bit = bit( h, i );
+            if ( (bits.get( word ) & bit) != bit )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long block( long hash )
+    {
+        return ((hash >>> 32) * blocks >>> 32) * WORDS_PER_BLOCK;
+    }
+
+    private static long bit( int hash, int word )
+    {
+        return 1L << ((hash * SALT[word]) >>> 26);
+    }
+
+    /**
+     * @return chance that {@link #mightContain(long)} is {@code true} for a hash which wasn't added, calculated from
+     * the bits set in every block. Scans the whole filter the first time, call it once all hashes are added.
+     */
+    public double falsePositiveRate()
+    {
+        double rate = falsePositiveRate;
+        if ( rate < 0 )
+        {
+            double sum = 0;
+            for ( long block = 0; block < blocks; block++ )
+            {
+                double blockRate = 1;
+                for ( int i = 0; i < WORDS_PER_BLOCK; i++ )
+                {
+                    blockRate *= Long.bitCount( bits.get( block * WORDS_PER_BLOCK + i ) ) / (double) Long.SIZE;
+                }
+                sum += blockRate;
+            }
+            rate = sum / blocks;
+            falsePositiveRate = rate;
+        }
+        return rate;
+    }
+
+    public LongArray bits()
+    {
+        return bits;
+    }
+
+    public long sizeInBytes()
+    {
+        return bits.length() * Long.BYTES;
+    }
+
+    @Override
+    public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+    {
+        bits.acceptMemoryStatsVisitor( visitor );
+    }
+
+    @Override
+    public void close()
+    {
+        bits.close();
+    }
+}
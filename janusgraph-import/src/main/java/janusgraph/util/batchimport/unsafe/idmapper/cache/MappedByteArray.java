@@ -0,0 +1,191 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped file version of {@link ByteArray}, values are little endian like {@link OffHeapByteArray}
+ * without unaligned access. Supports arrays with length beyond Integer.MAX_VALUE.
+ */
+public class MappedByteArray extends MappedNumberArray<ByteArray> implements ByteArray
+{
+    private final byte[] defaultValue;
+
+    public MappedByteArray( File directory, long length, byte[] defaultValue, long base )
+    {
+        super( directory, length, defaultValue.length, base );
+        this.defaultValue = defaultValue;
+        for ( byte b : defaultValue )
+        {
+            if ( b != 0 )
+            {   // a new file is all zeros already
+                clear();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Maps {@code length} items of an existing file, starting at {@code position}, read-only.
+     */
+    public MappedByteArray( FileChannel channel, long position, long length, byte[] defaultValue )
+    {
+        super( channel, position, length, defaultValue.length );
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public void swap( long fromIndex, long toIndex )
+    {
+        MappedByteBuffer from = segment( fromIndex );
+        MappedByteBuffer to = segment( toIndex );
+        int fromOffset = offset( fromIndex );
+        int toOffset = offset( toIndex );
+        for ( int i = 0; i < itemSize; i++ )
+        {
+            byte intermediary = from.get( fromOffset + i );
+            from.put( fromOffset + i, to.get( toOffset + i ) );
+            to.put( toOffset + i, intermediary );
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( long i = 0; i < length; i++ )
+        {
+            set( base + i, defaultValue );
+        }
+    }
+
+    @Override
+    public void get( long index, byte[] into )
+    {
+        MappedByteBuffer segment = segment( index );
+        int offset = offset( index );
+        for ( int i = 0; i < itemSize; i++ )
+        {
+            into[i] = segment.get( offset + i );
+        }
+    }
+
+    @Override
+    public byte getByte( long index, int offset )
+    {
+        return segment( index ).get( offset( index ) + offset );
+    }
+
+    @Override
+    public short getShort( long index, int offset )
+    {
+        return segment( index ).getShort( offset( index ) + offset );
+    }
+
+    @Override
+    public int getInt( long index, int offset )
+    {
+        return segment( index ).getInt( offset( index ) + offset );
+    }
+
+    @Override
+    public long get5ByteLong( long index, int offset )
+    {
+        MappedByteBuffer segment = segment( index );
+        int p = offset( index ) + offset;
+        long low4b = segment.getInt( p ) & 0xFFFFFFFFL;
+        long high1b = segment.get( p + Integer.BYTES ) & 0xFF;
+        long result = low4b | (high1b << 32);
+        return result == 0xFFFFFFFFFFL ? -1 : result;
+    }
+
+    @Override
+    public long get6ByteLong( long index, int offset )
+    {
+        MappedByteBuffer segment = segment( index );
+        int p = offset( index ) + offset;
+        long low4b = segment.getInt( p ) & 0xFFFFFFFFL;
+        long high2b = segment.getShort( p + Integer.BYTES ) & 0xFFFF;
+        long result = low4b | (high2b << 32);
+        return result == 0xFFFFFFFFFFFFL ? -1 : result;
+    }
+
+    @Override
+    public long getLong( long index, int offset )
+    {
+        return segment( index ).getLong( offset( index ) + offset );
+    }
+
+    @Override
+    public void set( long index, byte[] value )
+    {
+        MappedByteBuffer segment = segment( index );
+        int offset = offset( index );
+        for ( int i = 0; i < itemSize; i++ )
+        {
+            segment.put( offset + i, value[i] );
+        }
+    }
+
+    @Override
+    public void setByte( long index, int offset, byte value )
+    {
+        segment( index ).put( offset( index ) + offset, value );
+    }
+
+    @Override
+    public void setShort( long index, int offset, short value )
+    {
+        segment( index ).putShort( offset( index ) + offset, value );
+    }
+
+    @Override
+    public void setInt( long index, int offset, int value )
+    {
+        segment( index ).putInt( offset( index ) + offset, value );
+    }
+
+    @Override
+    public void set5ByteLong( long index, int offset, long value )
+    {
+        MappedByteBuffer segment = segment( index );
+        int p = offset( index ) + offset;
+        segment.putInt( p, (int) value );
+        segment.put( p + Integer.BYTES, (byte) (value >>> 32) );
+    }
+
+    @Override
+    public void set6ByteLong( long index, int offset, long value )
+    {
+        MappedByteBuffer segment = segment( index );
+        int p = offset( index ) + offset;
+        segment.putInt( p, (int) value );
+        segment.putShort( p + Integer.BYTES, (short) (value >>> 32) );
+    }
+
+    @Override
+    public void setLong( long index, int offset, long value )
+    {
+        segment( index ).putLong( offset( index ) + offset, value );
+    }
+
+    @Override
+    public int get3ByteInt( long index, int offset )
+    {
+        MappedByteBuffer segment = segment( index );
+        int p = offset( index ) + offset;
+        int lowWord = segment.getShort( p ) & 0xFFFF;
+        int highByte = segment.get( p + Short.BYTES ) & 0xFF;
+        int result = lowWord | (highByte << Short.SIZE);
+        return result == 0xFFFFFF ? -1 : result;
+    }
+
+    @Override
+    public void set3ByteInt( long index, int offset, int value )
+    {
+        MappedByteBuffer segment = segment( index );
+        int p = offset( index ) + offset;
+        segment.putShort( p, (short) value );
+        segment.put( p + Short.BYTES, (byte) (value >>> Short.SIZE) );
+    }
+}
@@ -0,0 +1,41 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import java.io.File;
+
+/**
+ * Puts arrays in memory mapped temporary files in a directory, letting the OS page them in and out.
+ * Slower than {@link NumberArrayFactory#OFF_HEAP}, but not limited by the amount of memory.
+ */
+public class MappedFileNumberArrayFactory extends NumberArrayFactory.Adapter
+{
+    private final File directory;
+
+    public MappedFileNumberArrayFactory( File directory )
+    {
+        this.directory = directory;
+    }
+
+    @Override
+    public IntArray newIntArray( long length, int defaultValue, long base )
+    {
+        return new MappedIntArray( directory, length, defaultValue, base );
+    }
+
+    @Override
+    public LongArray newLongArray( long length, long defaultValue, long base )
+    {
+        return new MappedLongArray( directory, length, defaultValue, base );
+    }
+
+    @Override
+    public ByteArray newByteArray( long length, byte[] defaultValue, long base )
+    {
+        return new MappedByteArray( directory, length, defaultValue, base );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MAPPED_FILE[" + directory + "]";
+    }
+}
@@ -0,0 +1,52 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped file version of {@link IntArray}. Supports arrays with length beyond Integer.MAX_VALUE.
+ */
+public class MappedIntArray extends MappedNumberArray<IntArray> implements IntArray
+{
+    private final int defaultValue;
+
+    public MappedIntArray( File directory, long length, int defaultValue, long base )
+    {
+        super( directory, length, Integer.BYTES, base );
+        this.defaultValue = defaultValue;
+        if ( defaultValue != 0 )
+        {   // a new file is all zeros already
+            clear();
+        }
+    }
+
+    /**
+     * Maps {@code length} items of an existing file, starting at {@code position}, read-only.
+     */
+    public MappedIntArray( FileChannel channel, long position, long length, int defaultValue )
+    {
+        super( channel, position, length, Integer.BYTES );
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public int get( long index )
+    {
+        return segment( index ).getInt( offset( index ) );
+    }
+
+    @Override
+    public void set( long index, int value )
+    {
+        segment( index ).putInt( offset( index ), value );
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( long i = 0; i < length; i++ )
+        {
+            set( base + i, defaultValue );
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped file version of {@link LongArray}. Supports arrays with length beyond Integer.MAX_VALUE.
+ */
+public class MappedLongArray extends MappedNumberArray<LongArray> implements LongArray
+{
+    private final long defaultValue;
+
+    public MappedLongArray( File directory, long length, long defaultValue, long base )
+    {
+        super( directory, length, Long.BYTES, base );
+        this.defaultValue = defaultValue;
+        if ( defaultValue != 0 )
+        {   // a new file is all zeros already
+            clear();
+        }
+    }
+
+    /**
+     * Maps {@code length} items of an existing file, starting at {@code position}, read-only.
+     */
+    public MappedLongArray( FileChannel channel, long position, long length, long defaultValue )
+    {
+        super( channel, position, length, Long.BYTES );
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public long get( long index )
+    {
+        return segment( index ).getLong( offset( index ) );
+    }
+
+    @Override
+    public void set( long index, long value )
+    {
+        segment( index ).putLong( offset( index ), value );
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( long i = 0; i < length; i++ )
+        {
+            set( base + i, defaultValue );
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import janusgraph.util.batchimport.unsafe.helps.UnsafeUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Base class for common functionality for any {@link NumberArray} where the data lives in a memory mapped file,
+ * for when it doesn't fit in memory. The file is mapped in segments of at most 1GB, an item never spans two segments.
+ * The file is deleted as soon as it's mapped where the platform allows it, otherwise when the array is closed.
+ * A region of an existing file can also be mapped read-only, that file is left alone.
+ */
+abstract class MappedNumberArray<N extends NumberArray<N>> extends BaseNumberArray<N>
+{
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    protected final long length;
+    private final long itemsPerSegment;
+    protected final MappedByteBuffer[] segments;
+    private final File file;
+    private final boolean deleted;
+    private boolean closed;
+
+    protected MappedNumberArray( File directory, long length, int itemSize, long base )
+    {
+        super( itemSize, base );
+        this.length = length;
+        this.itemsPerSegment = SEGMENT_SIZE / itemSize;
+        this.segments = new MappedByteBuffer[(int) ((length + itemsPerSegment - 1) / itemsPerSegment)];
+        try
+        {
+            directory.mkdirs();
+            file = File.createTempFile( "cache", ".map", directory );
+            try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ); FileChannel channel = raf.getChannel() )
+            {
+                map( channel, FileChannel.MapMode.READ_WRITE, 0 );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+        // mapped pages stay until unmapped, at least on unix
+        deleted = file.delete();
+    }
+
+    protected MappedNumberArray( FileChannel channel, long position, long length, int itemSize )
+    {
+        super( itemSize, 0 );
+        this.length = length;
+        this.itemsPerSegment = SEGMENT_SIZE / itemSize;
+        this.segments = new MappedByteBuffer[(int) ((length + itemsPerSegment - 1) / itemsPerSegment)];
+        this.file = null;
+        this.deleted = true;
+        try
+        {
+            map( channel, FileChannel.MapMode.READ_ONLY, position );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private void map( FileChannel channel, FileChannel.MapMode mode, long position ) throws IOException
+    {
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            long items = Math.min( itemsPerSegment, length - i * itemsPerSegment );
+            segments[i] = channel.map( mode, position + i * itemsPerSegment * itemSize, items * itemSize );
+            segments[i].order( ByteOrder.LITTLE_ENDIAN );
+        }
+    }
+
+    protected MappedByteBuffer segment( long index )
+    {
+        long rebased = rebase( index );
+        if ( rebased < 0 || rebased >= length )
+        {
+            throw new ArrayIndexOutOfBoundsException( "Requested index " + rebased + ", but length is " + length );
+        }
+        return segments[(int) (rebased / itemsPerSegment)];
+    }
+
+    /**
+     * @return byte offset of the item in its {@link #segment(long) segment}.
+     */
+    protected int offset( long index )
+    {
+        return (int) (rebase( index ) % itemsPerSegment) * itemSize;
+    }
+
+    @Override
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+    {
+        visitor.fileUsage( length * itemSize );
+    }
+
+    @Override
+    public void close()
+    {
+        if ( !closed )
+        {
+            for ( MappedByteBuffer segment : segments )
+            {
+                UnsafeUtil.invokeCleaner( segment );
+            }
+            if ( !deleted )
+            {
+                file.delete();
+            }
+            closed = true;
+        }
+    }
+}
@@ -13,4 +13,9 @@ public interface MemoryStatsVisitor
     void heapUsage(long bytes);
 
     void offHeapUsage(long bytes);
+
+    /**
+     * @param bytes size of memory mapped files, paged in and out by the OS rather than held in memory.
+     */
+    void fileUsage(long bytes);
 }
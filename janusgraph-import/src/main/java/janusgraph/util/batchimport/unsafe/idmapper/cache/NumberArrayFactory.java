@@ -1,5 +1,6 @@
 package janusgraph.util.batchimport.unsafe.idmapper.cache;
 
+import java.io.File;
 
 /**
  * Factory of {@link LongArray}, {@link IntArray} and {@link ByteArray} instances. Users can select in which type of
@@ -40,6 +41,19 @@ public interface NumberArrayFactory
     };
 
 
+    /**
+     * Puts arrays off-heap until {@code offHeapBudget} bytes are taken, then in memory mapped files in
+     * {@code directory}, so that caches bigger than the memory of the machine slow down instead of failing.
+     *
+     * @param offHeapBudget max number of bytes to allocate off-heap.
+     * @param directory where to create the files.
+     * @return a tiered factory, off-heap first.
+     */
+    static NumberArrayFactory auto( long offHeapBudget, File directory )
+    {
+        return new TieredNumberArrayFactory( offHeapBudget, new MappedFileNumberArrayFactory( directory ) );
+    }
+
     /**
      * @param length size of the array.
      * @param defaultValue value which will represent unset values.
@@ -0,0 +1,143 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static janusgraph.util.batchimport.unsafe.helps.Format.bytes;
+
+/**
+ * Puts arrays {@link NumberArrayFactory#OFF_HEAP off-heap} as long as they fit in a budget, and the rest in an
+ * overflow factory. Closing an off-heap array gives its bytes back to the budget. Since dynamic arrays allocate
+ * chunk by chunk through this factory, a big dynamic array fills up memory first and only its last chunks overflow.
+ *
+ * @see NumberArrayFactory#auto(long, java.io.File)
+ */
+class TieredNumberArrayFactory extends NumberArrayFactory.Adapter
+{
+    private final long offHeapBudget;
+    private final NumberArrayFactory overflow;
+    private final AtomicLong offHeapUsed = new AtomicLong();
+
+    TieredNumberArrayFactory( long offHeapBudget, NumberArrayFactory overflow )
+    {
+        this.offHeapBudget = offHeapBudget;
+        this.overflow = overflow;
+    }
+
+    @Override
+    public IntArray newIntArray( long length, int defaultValue, long base )
+    {
+        long size = length * Integer.BYTES;
+        if ( reserve( size ) )
+        {
+            try
+            {
+                return new OffHeapIntArray( length, defaultValue, base )
+                {
+                    private boolean released;
+
+                    @Override
+                    public void close()
+                    {
+                        super.close();
+                        released = release( size, released );
+                    }
+                };
+            }
+            catch ( OutOfMemoryError e )
+            {
+                release( size, false );
+            }
+        }
+        return overflow.newIntArray( length, defaultValue, base );
+    }
+
+    @Override
+    public LongArray newLongArray( long length, long defaultValue, long base )
+    {
+        long size = length * Long.BYTES;
+        if ( reserve( size ) )
+        {
+            try
+            {
+                return new OffHeapLongArray( length, defaultValue, base )
+                {
+                    private boolean released;
+
+                    @Override
+                    public void close()
+                    {
+                        super.close();
+                        released = release( size, released );
+                    }
+                };
+            }
+            catch ( OutOfMemoryError e )
+            {
+                release( size, false );
+            }
+        }
+        return overflow.newLongArray( length, defaultValue, base );
+    }
+
+    @Override
+    public ByteArray newByteArray( long length, byte[] defaultValue, long base )
+    {
+        long size = length * defaultValue.length;
+        if ( reserve( size ) )
+        {
+            try
+            {
+                return new OffHeapByteArray( length, defaultValue, base )
+                {
+                    private boolean released;
+
+                    @Override
+                    public void close()
+                    {
+                        super.close();
+                        released = release( size, released );
+                    }
+                };
+            }
+            catch ( OutOfMemoryError e )
+            {
+                release( size, false );
+            }
+        }
+        return overflow.newByteArray( length, defaultValue, base );
+    }
+
+    private boolean reserve( long size )
+    {
+        while ( true )
+        {
+            long used = offHeapUsed.get();
+            if ( used + size > offHeapBudget )
+            {
+                return false;
+            }
+            if ( offHeapUsed.compareAndSet( used, used + size ) )
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true}, i.e. released, so that closing twice only gives the bytes back once.
+     */
+    private boolean release( long size, boolean released )
+    {
+        if ( !released )
+        {
+            offHeapUsed.addAndGet( -size );
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OFF_HEAP[" + bytes( offHeapBudget ) + "] then " + overflow;
+    }
+}
@@ -7,4 +7,63 @@ import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
  * ${Main}
  */
 public abstract class AbstractIdMapper<T> implements IdMapper<T> {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * sorts {@code values[0..count)} in unsigned order, {@code order} is moved along so that {@code order[i]} is where
+     * {@code values[i]} was before sorting. used by batch lookups to resolve keys in the order of the sorted data.
+     */
+    protected static void sortUnsigned(long[] values, int[] order, int count) {
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            // signed order of the flipped values is unsigned order of the values
+            values[i] ^= Long.MIN_VALUE;
+        }
+        sort(values, order, 0, count - 1);
+        for (int i = 0; i < count; i++) {
+            values[i] ^= Long.MIN_VALUE;
+        }
+    }
+
+    private static void sort(long[] values, int[] order, int from, int to) {
+        while (to - from >= INSERTION_SORT_THRESHOLD) {
+            long pivot = values[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, order, i++, j--);
+                }
+            }
+            // recurse into the smaller part, loop on the larger one
+            if (j - from < to - i) {
+                sort(values, order, from, j);
+                from = i;
+            } else {
+                sort(values, order, i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && values[j - 1] > values[j]; j--) {
+                swap(values, order, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] values, int[] order, int a, int b) {
+        long value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+        int index = order[a];
+        order[a] = order[b];
+        order[b] = index;
+    }
 }
@@ -0,0 +1,49 @@
+package janusgraph.util.batchimport.unsafe.idmapper.impl;
+
+import janusgraph.util.batchimport.unsafe.idmapper.Encoder;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Encodes a String into a long by a 64-bit hash of its chars, in the layout the
+ * {@link janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper} expects: the 7 most
+ * significant bits are the length of the string, capped at 127 and at least 1 so that no value is 0, the next bit is
+ * left for the collision mark and the 56 bits below are the hash.
+ *
+ * Nothing is allocated and nothing changes over time, so any number of threads can call {@link #encode(String)}.
+ * Chars are hashed as their UTF-16 code units, read 4 at a time as little endian longs.
+ */
+public abstract class HashEncoder implements Encoder<String>
+{
+    private static final int LENGTH_SHIFT = 57;
+    private static final int MAX_LENGTH = 127;
+    private static final long HASH_MASK = 0x00FFFFFF_FFFFFFFFL;
+
+    @Override
+    public long encode( String s )
+    {
+        long length = max( min( s.length(), MAX_LENGTH ), 1 );
+        return length << LENGTH_SHIFT | hash( s ) & HASH_MASK;
+    }
+
+    /**
+     * @return 64-bit hash of the chars of {@code s}, only the 56 least significant bits of it are kept.
+     */
+    protected abstract long hash( String s );
+
+    /**
+     * @return the 4 chars of {@code s} from {@code index} as a little endian long.
+     */
+    protected static long lane( String s, int index )
+    {
+        return s.charAt( index ) | (long) s.charAt( index + 1 ) << 16 |
+                (long) s.charAt( index + 2 ) << 32 | (long) s.charAt( index + 3 ) << 48;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,63 @@
+package janusgraph.util.batchimport.unsafe.idmapper.impl;
+
+/**
+ * {@link HashEncoder} by the multiply-and-fold mixing of wyhash: 16 bytes of chars at a time are folded into the
+ * state by one 64x64->128 bit multiplication. Fewer multiplications than xxhash on long strings, the values aren't
+ * the ones of the reference wyhash though, since it reads bytes and this reads chars.
+ */
+public class WyHashEncoder extends HashEncoder
+{
+    private static final long P0 = 0xA0761D6478BD642FL;
+    private static final long P1 = 0xE7037ED1A0B428DBL;
+    private static final long P2 = 0x8EBC6AF09C88C6E3L;
+    private static final long P3 = 0x589965CC75374CC3L;
+    private static final long UNSIGNED_INT = 0xFFFFFFFFL;
+
+    @Override
+    protected long hash( String s )
+    {
+        int length = s.length();
+        long seed = mix( P0, P1 );
+        long a;
+        long b;
+        int i = 0;
+        for ( ; i + 8 < length; i += 8 )
+        {
+            seed = mix( lane( s, i ) ^ P1, lane( s, i + 4 ) ^ seed );
+        }
+        // the last up to 8 chars, overlapping with the ones before if there are
+        int remaining = length - i;
+        if ( remaining > 4 )
+        {
+            a = lane( s, i );
+            b = lane( s, length - 4 );
+        }
+        else if ( remaining > 0 )
+        {
+            a = s.charAt( i ) | (long) s.charAt( i + (remaining >>> 1) ) << 16 |
+                    (long) s.charAt( length - 1 ) << 32;
+            b = remaining == 4 ? lane( s, i ) : 0;
+        }
+        else
+        {
+            a = 0;
+            b = 0;
+        }
+        return mix( P3 ^ length * 2L, mix( a ^ P1, b ^ seed ^ P2 ) );
+    }
+
+    /**
+     * @return the high and low 64 bits of the unsigned 128 bit product of {@code x} and {@code y} xor-ed.
+     */
+    static long mix( long x, long y )
+    {
+        long x0 = x & UNSIGNED_INT;
+        long x1 = x >>> 32;
+        long y0 = y & UNSIGNED_INT;
+        long y1 = y >>> 32;
+        long p01 = x0 * y1;
+        long middle = x1 * y0 + (x0 * y0 >>> 32) + (p01 & UNSIGNED_INT);
+        long high = x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+        return x * y ^ high;
+    }
+}
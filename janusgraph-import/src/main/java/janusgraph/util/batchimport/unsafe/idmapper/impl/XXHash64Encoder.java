@@ -0,0 +1,88 @@
+package janusgraph.util.batchimport.unsafe.idmapper.impl;
+
+/**
+ * {@link HashEncoder} by XXH64 of the UTF-16LE bytes of a String, with seed 0.
+ */
+public class XXHash64Encoder extends HashEncoder
+{
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    @Override
+    protected long hash( String s )
+    {
+        int length = s.length();
+        int i = 0;
+        long h;
+        if ( length >= 16 )
+        {
+            // 32 bytes a stripe
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            for ( ; i + 16 <= length; i += 16 )
+            {
+                v1 = round( v1, lane( s, i ) );
+                v2 = round( v2, lane( s, i + 4 ) );
+                v3 = round( v3, lane( s, i + 8 ) );
+                v4 = round( v4, lane( s, i + 12 ) );
+            }
+            h = Long.rotateLeft( v1, 1 ) + Long.rotateLeft( v2, 7 ) + Long.rotateLeft( v3, 12 ) +
+                    Long.rotateLeft( v4, 18 );
+            h = mergeRound( h, v1 );
+            h = mergeRound( h, v2 );
+            h = mergeRound( h, v3 );
+            h = mergeRound( h, v4 );
+        }
+        else
+        {
+            h = PRIME64_5;
+        }
+        h += length * 2L;
+
+        for ( ; i + 4 <= length; i += 4 )
+        {
+            h ^= round( 0, lane( s, i ) );
+            h = Long.rotateLeft( h, 27 ) * PRIME64_1 + PRIME64_4;
+        }
+        if ( i + 2 <= length )
+        {
+            long word = s.charAt( i ) | (long) s.charAt( i + 1 ) << 16;
+            h ^= word * PRIME64_1;
+            h = Long.rotateLeft( h, 23 ) * PRIME64_2 + PRIME64_3;
+            i += 2;
+        }
+        if ( i < length )
+        {
+            char c = s.charAt( i );
+            h ^= (c & 0xFF) * PRIME64_5;
+            h = Long.rotateLeft( h, 11 ) * PRIME64_1;
+            h ^= (c >>> 8) * PRIME64_5;
+            h = Long.rotateLeft( h, 11 ) * PRIME64_1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round( long acc, long input )
+    {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft( acc, 31 );
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound( long acc, long value )
+    {
+        acc ^= round( 0, value );
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+}
@@ -0,0 +1,547 @@
+package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.longs;
+
+import janusgraph.util.batchimport.unsafe.helps.HighestId;
+import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongCollections;
+import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongIterator;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.LongArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.AbstractIdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.BigIdTracker;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.GroupCache;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.IntTracker;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.Tracker;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.TrackerFactories;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.Workers;
+import janusgraph.util.batchimport.unsafe.input.Collector;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+import static java.lang.Math.max;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * maps {@code long} input ids to vertex ids. unlike {@link
+ * janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper} the input ids are kept as they
+ * are, there is nothing to encode and two different ids never collide.
+ *
+ * {@link #put} stores the input id at the data index of the vertex. {@link #prepare} copies the ids into a second
+ * array sorted by id, together with a {@link Tracker} pointing back to the data index, after which the first array
+ * is released. {@link #get} is a binary search over the sorted ids.
+ *
+ * ids are stored with the sign bit flipped, so that unsigned order is numeric order and 0, i.e. {@link Long#MIN_VALUE}
+ * which can't be put, marks a data index no id was put at.
+ */
+public class LongIdMapper extends AbstractIdMapper<Long> {
+
+    private static final int DEFAULT_CACHE_CHUNK_SIZE = 1_000_000; // 8MB a piece
+    private static final long GAP_VALUE = 0;
+    // below this many ids per thread sorting in parallel is overhead
+    private static final long MIN_IDS_PER_THREAD = 100_000;
+    private static final int SAMPLES_PER_BUCKET = 64;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    // kind of the file it's saved to
+    private static final String KIND = "longs";
+
+    private final NumberArrayFactory cacheFactory;
+    private final Groups groups;
+    private final int processorsForParallelWork;
+    private final HighestId candidateHighestSetIndex = new HighestId(-1);
+
+    // input ids by data index, released once they are sorted
+    private LongArray dataCache;
+    private final GroupCache groupCache;
+    // input ids sorted, and the data index every one of them was put at
+    private LongArray sortedCache;
+    private Tracker trackerCache;
+    private long highestSetIndex;
+    private long size;
+    private long numberOfDuplicates;
+    private boolean readyForUse;
+
+    public LongIdMapper(NumberArrayFactory cacheFactory, Groups groups) {
+        this(cacheFactory, groups, DEFAULT_CACHE_CHUNK_SIZE, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public LongIdMapper(NumberArrayFactory cacheFactory, Groups groups, int chunkSize, int processorsForParallelWork) {
+        this.cacheFactory = cacheFactory;
+        this.groups = groups;
+        this.processorsForParallelWork = max(processorsForParallelWork, 1);
+        this.dataCache = cacheFactory.newDynamicLongArray(chunkSize, GAP_VALUE);
+        this.groupCache = GroupCache.select(cacheFactory, chunkSize, groups.size());
+    }
+
+    /**
+     * a mapper ready for use over the sorted ids {@link #save(File, IdMapperFile.Layout) saved} by another import
+     */
+    private LongIdMapper(Groups groups, IdMapperFile.Reader in) throws IOException {
+        this.cacheFactory = null;
+        this.groups = groups;
+        this.processorsForParallelWork = 1;
+        this.highestSetIndex = in.readLong();
+        this.size = in.readLong();
+        this.sortedCache = in.mapLongs(GAP_VALUE);
+        this.trackerCache = TrackerFactories.load(in);
+        this.groupCache = GroupCache.load(in);
+        this.readyForUse = true;
+    }
+
+    /**
+     * @param file written by {@link #save(File, IdMapperFile.Layout)}.
+     * @param groups the saved groups are created in it.
+     * @return a mapper ready for {@link #get(Long, Group)}, mapped read-only from {@code file}.
+     */
+    public static LongIdMapper load(File file, Groups groups) throws IOException {
+        try (IdMapperFile.Reader in = IdMapperFile.open(file, KIND, groups)) {
+            return new LongIdMapper(groups, in);
+        }
+    }
+
+    /**
+     * saves the sorted ids, the tracker and the groups, the ids by data index are gone by now.
+     */
+    @Override
+    public void save(File file, IdMapperFile.Layout layout) throws IOException {
+        assert readyForUse;
+
+        try (IdMapperFile.Writer out = IdMapperFile.create(file, KIND, groups, layout)) {
+            out.writeLong(highestSetIndex);
+            out.writeLong(size);
+            out.writeLongs(sortedCache, size);
+            trackerCache.save(out);
+            groupCache.save(out, highestSetIndex + 1);
+        }
+    }
+
+    @Override
+    public void put(Long key, Group group, long id) {
+        long inputId = key;
+        if (inputId == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Input id " + inputId + " is reserved");
+        }
+        dataCache.set(id, flip(inputId));
+        groupCache.set(id, group.id());
+        candidateHighestSetIndex.offer(id);
+    }
+
+    @Override
+    public long get(Long key, Group group) {
+        assert readyForUse;
+
+        long value = flip(key);
+        int groupId = group.id();
+        return find(value, lowerBound(value, 0, size), groupId);
+    }
+
+    /**
+     * sorts the keys and walks the sorted ids once, galloping forward from where the previous key was found.
+     */
+    @Override
+    public void getAll(Object[] keys, Group[] groups, int count, long[] into) {
+        assert readyForUse;
+
+        long[] values = new long[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = flip(((Number) keys[i]).longValue());
+        }
+        sortUnsigned(values, order, count);
+
+        long from = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i];
+            if (i == 0 || value != values[i - 1]) {
+                from = lowerBound(value, from);
+            }
+            int key = order[i];
+            into[key] = find(value, from, groups[key].id());
+        }
+    }
+
+    private long find(long value, long from, int groupId) {
+        for (long i = from; i < size && sortedCache.get(i) == value; i++) {
+            if (trackerCache.isMarkedAsDuplicate(i)) continue;
+            long dataIndex = trackerCache.get(i);
+            if (groupCache.get(dataIndex) == groupId) {
+                return dataIndex;
+            }
+        }
+        return IdMapper.ID_NOT_FOUND;
+    }
+
+    /**
+     * @return first position from {@code from} with an id not less than {@code value}
+     */
+    private long lowerBound(long value, long from) {
+        long low = from;
+        long high = from;
+        long step = 1;
+        while (high < size && Long.compareUnsigned(sortedCache.get(high), value) < 0) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        return lowerBound(value, low, Math.min(high, size));
+    }
+
+    /**
+     * @return first position in {@code [low, high)} of the sorted ids with an id not less than {@code value}
+     */
+    private long lowerBound(long value, long low, long high) {
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(sortedCache.get(mid), value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public boolean needsPreparation() {
+        return true;
+    }
+
+    /**
+     * the input ids are sorted in parallel and duplicates within a group are reported to {@code collector}, the
+     * first one put is kept. {@code inputIdLookup} isn't needed, the ids themselves are kept.
+     */
+    @Override
+    public void prepare(LongFunction<Long> inputIdLookup, Collector collector, ProgressListener progress)
+            throws Exception {
+        highestSetIndex = candidateHighestSetIndex.get();
+        try {
+            sort(progress);
+            detectDuplicates(collector, progress);
+        } catch (InterruptedException e) {
+            Thread.interrupted();
+            throw new RuntimeException("Got interrupted while preparing the index", e);
+        }
+        dataCache.close();
+        dataCache = null;
+        readyForUse = true;
+    }
+
+    /**
+     * splits the ids in one range per thread with splitters sampled from the data, every thread then moves the ids of
+     * its part of the data to the ranges, and finally sorts one range.
+     */
+    private void sort(ProgressListener progress) throws InterruptedException {
+        long dataSize = highestSetIndex + 1;
+        int threads = (int) Math.min(processorsForParallelWork, max(1, dataSize / MIN_IDS_PER_THREAD));
+        long[] splitters = splitters(threads);
+        int buckets = splitters.length + 1;
+        long stride = dataSize / threads;
+
+        progress.started("SPLIT");
+        Workers<Splitter> counters = new Workers<>("LongIdSplitter");
+        for (int t = 0; t < threads; t++) {
+            counters.start(new Splitter(t * stride, t == threads - 1 ? dataSize : (t + 1) * stride, splitters));
+        }
+        counters.awaitAndThrowOnError(RuntimeException.class);
+
+        // where every splitter writes the ids of every bucket
+        long[] bucketStarts = new long[buckets + 1];
+        long position = 0;
+        for (int b = 0; b < buckets; b++) {
+            bucketStarts[b] = position;
+            for (Splitter splitter : counters) {
+                long count = splitter.counts[b];
+                splitter.counts[b] = position;
+                position += count;
+            }
+        }
+        bucketStarts[buckets] = position;
+        size = position;
+
+        sortedCache = cacheFactory.newLongArray(max(size, 1), GAP_VALUE);
+        trackerCache = highestSetIndex > IntTracker.MAX_ID
+                ? new BigIdTracker(cacheFactory.newByteArray(max(size, 1), BigIdTracker.DEFAULT_VALUE))
+                : new IntTracker(cacheFactory.newIntArray(max(size, 1), IntTracker.DEFAULT_VALUE));
+
+        Workers<Runnable> scatterers = new Workers<>("LongIdScatter");
+        for (Splitter splitter : counters) {
+            scatterers.start(splitter::scatter);
+        }
+        scatterers.awaitAndThrowOnError(RuntimeException.class);
+        progress.add(dataSize);
+        progress.done();
+
+        progress.started("SORT");
+        Workers<Runnable> sorters = new Workers<>("LongIdSorter");
+        for (int b = 0; b < buckets; b++) {
+            long from = bucketStarts[b];
+            long to = bucketStarts[b + 1];
+            if (to - from > 1) {
+                sorters.start(() -> {
+                    quickSort(from, to);
+                    progress.add(to - from);
+                });
+            }
+        }
+        sorters.awaitAndThrowOnError(RuntimeException.class);
+        progress.done();
+    }
+
+    /**
+     * {@code threads - 1} ids sampled evenly from the data, sorted
+     */
+    private long[] splitters(int threads) {
+        if (threads == 1) {
+            return new long[0];
+        }
+        int samples = threads * SAMPLES_PER_BUCKET;
+        long step = max(1, (highestSetIndex + 1) / samples);
+        long[] sample = new long[samples];
+        int count = 0;
+        for (long i = 0; i <= highestSetIndex && count < samples; i += step) {
+            long value = dataCache.get(i);
+            if (value != GAP_VALUE) {
+                // numeric order of the ids
+                sample[count++] = flip(value);
+            }
+        }
+        Arrays.sort(sample, 0, count);
+        long[] splitters = new long[threads - 1];
+        for (int i = 0; i < splitters.length; i++) {
+            splitters[i] = count == 0 ? GAP_VALUE : flip(sample[(int) ((long) count * (i + 1) / threads)]);
+        }
+        return splitters;
+    }
+
+    private static int bucketOf(long value, long[] splitters) {
+        int low = 0;
+        int high = splitters.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(splitters[mid], value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * counts the ids of a part of the data per bucket, and later moves them to the positions it was given
+     */
+    private class Splitter implements Runnable {
+        private final long fromInclusive;
+        private final long toExclusive;
+        private final long[] splitters;
+        // counts, replaced by the next position to write to per bucket before scattering
+        private final long[] counts;
+
+        Splitter(long fromInclusive, long toExclusive, long[] splitters) {
+            this.fromInclusive = fromInclusive;
+            this.toExclusive = toExclusive;
+            this.splitters = splitters;
+            this.counts = new long[splitters.length + 1];
+        }
+
+        @Override
+        public void run() {
+            for (long i = fromInclusive; i < toExclusive; i++) {
+                long value = dataCache.get(i);
+                if (value != GAP_VALUE) {
+                    counts[bucketOf(value, splitters)]++;
+                }
+            }
+        }
+
+        void scatter() {
+            for (long i = fromInclusive; i < toExclusive; i++) {
+                long value = dataCache.get(i);
+                if (value != GAP_VALUE) {
+                    long position = counts[bucketOf(value, splitters)]++;
+                    sortedCache.set(position, value);
+                    trackerCache.set(position, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * sorts [from, to) of the sorted ids, moving the tracker along
+     */
+    private void quickSort(long from, long to) {
+        long[] stack = new long[128];
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = to - 1;
+        while (top > 0) {
+            long high = stack[--top];
+            long low = stack[--top];
+            if (high - low < INSERTION_SORT_THRESHOLD) {
+                insertionSort(low, high);
+                continue;
+            }
+            long pivot = medianOfThree(low, low + (high - low) / 2, high);
+            long i = low;
+            long j = high;
+            while (i <= j) {
+                while (Long.compareUnsigned(sortedCache.get(i), pivot) < 0) i++;
+                while (Long.compareUnsigned(sortedCache.get(j), pivot) > 0) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // the smaller part first keeps the stack small
+            if (j - low < high - i) {
+                top = push(stack, top, i, high);
+                top = push(stack, top, low, j);
+            } else {
+                top = push(stack, top, low, j);
+                top = push(stack, top, i, high);
+            }
+        }
+    }
+
+    private static int push(long[] stack, int top, long low, long high) {
+        if (low < high) {
+            stack[top++] = low;
+            stack[top++] = high;
+        }
+        return top;
+    }
+
+    private long medianOfThree(long a, long b, long c) {
+        long x = sortedCache.get(a);
+        long y = sortedCache.get(b);
+        long z = sortedCache.get(c);
+        if (Long.compareUnsigned(x, y) > 0) {
+            long tmp = x;
+            x = y;
+            y = tmp;
+        }
+        if (Long.compareUnsigned(y, z) > 0) {
+            y = z;
+        }
+        return Long.compareUnsigned(x, y) > 0 ? x : y;
+    }
+
+    private void insertionSort(long low, long high) {
+        for (long i = low + 1; i <= high; i++) {
+            for (long j = i; j > low && Long.compareUnsigned(sortedCache.get(j - 1), sortedCache.get(j)) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(long a, long b) {
+        long value = sortedCache.get(a);
+        sortedCache.set(a, sortedCache.get(b));
+        sortedCache.set(b, value);
+        trackerCache.swap(a, b);
+    }
+
+    /**
+     * equal ids are next to each other now, of equal ids in the same group all but the first one put are duplicates
+     */
+    private void detectDuplicates(Collector collector, ProgressListener progress) throws Exception {
+        progress.started("DETECT");
+        long runStart = 0;
+        for (long i = 1; i <= size; i++) {
+            if (i < size && sortedCache.get(i) == sortedCache.get(runStart)) {
+                continue;
+            }
+            if (i - runStart > 1) {
+                markDuplicates(runStart, i, collector);
+            }
+            runStart = i;
+        }
+        progress.add(size);
+        progress.done();
+    }
+
+    private void markDuplicates(long from, long to, Collector collector) throws Exception {
+        for (long i = from; i < to; i++) {
+            long dataIndex = trackerCache.get(i);
+            int groupId = groupCache.get(dataIndex);
+            // the first one put of this group in the run
+            long first = i;
+            for (long j = from; j < to; j++) {
+                long other = trackerCache.get(j);
+                if (groupCache.get(other) == groupId && other < trackerCache.get(first)) {
+                    first = j;
+                }
+            }
+            if (first != i) {
+                trackerCache.markAsDuplicate(i);
+                numberOfDuplicates++;
+                collector.collectDuplicateNode(flip(sortedCache.get(i)), dataIndex,
+                        groups.get(groupId).name());
+            }
+        }
+    }
+
+    private static long flip(long value) {
+        return value ^ Long.MIN_VALUE;
+    }
+
+    @Override
+    public void close() {
+        if (dataCache != null) {
+            dataCache.close();
+        }
+        if (sortedCache != null) {
+            sortedCache.close();
+        }
+        if (trackerCache != null) {
+            trackerCache.close();
+        }
+    }
+
+    @Override
+    public PrimitiveLongIterator leftOverDuplicateNodesIds() {
+        if (numberOfDuplicates == 0) {
+            return PrimitiveLongCollections.emptyIterator();
+        }
+        return new PrimitiveLongCollections.PrimitiveLongBaseIterator() {
+            private long position;
+
+            @Override
+            protected boolean fetchNext() {
+                while (position < size) {
+                    long candidate = position++;
+                    if (trackerCache.isMarkedAsDuplicate(candidate)) {
+                        return next(trackerCache.get(candidate));
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public long calculateMemoryUsage(long numberOfNodes) {
+        int trackerSize = numberOfNodes > IntTracker.MAX_ID ? BigIdTracker.SIZE : IntTracker.SIZE;
+        // both copies of the ids are alive while sorting
+        return numberOfNodes * (Long.BYTES /*data*/ + Long.BYTES /*sorted*/ + trackerSize /*tracker*/);
+    }
+
+    @Override
+    public void acceptMemoryStatsVisitor(MemoryStatsVisitor visitor) {
+        if (dataCache != null) {
+            dataCache.acceptMemoryStatsVisitor(visitor);
+        }
+        if (sortedCache != null) {
+            sortedCache.acceptMemoryStatsVisitor(visitor);
+        }
+        if (trackerCache != null) {
+            trackerCache.acceptMemoryStatsVisitor(visitor);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.ByteArray;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.LongBitsManipulator;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 /**
@@ -55,4 +57,11 @@ public class BigIdTracker extends AbstractTracker<ByteArray>
         long field = array.get5ByteLong( index, 0 );
         return BITS.get( field, 1 ) == 0;
     }
+
+    @Override
+    public void save( IdMapperFile.Writer out ) throws IOException
+    {
+        out.writeInt( SIZE );
+        out.writeBytes( array, array.length(), SIZE );
+    }
 }
@@ -1,8 +1,11 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
 
+import java.io.IOException;
+
 /**
  * Stores collision values efficiently for retrieval later. The idea is that there's a single thread {@link #add(Object) adding}
  * ids, each gets assigned an offset, and later use those offsets to get back the added ids.
@@ -13,6 +16,11 @@ public interface CollisionValues extends MemoryStatsVisitor.Visitable, AutoClose
 
     Object get(long offset);
 
+    /**
+     * Writes all values added so far, the offsets they were added at stay valid once loaded.
+     */
+    void save(IdMapperFile.Writer out) throws IOException;
+
     @Override
     void close();
 }
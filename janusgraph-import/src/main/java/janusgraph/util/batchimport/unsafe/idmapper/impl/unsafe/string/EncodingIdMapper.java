@@ -1,11 +1,14 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
 import janusgraph.util.batchimport.unsafe.helps.Factory;
+import janusgraph.util.batchimport.unsafe.helps.FeatureToggles;
 import janusgraph.util.batchimport.unsafe.helps.HighestId;
 import janusgraph.util.batchimport.unsafe.helps.Utils;
 import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongCollections;
 import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongIterator;
 import janusgraph.util.batchimport.unsafe.idmapper.Encoder;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMappers;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.*;
 import janusgraph.util.batchimport.unsafe.idmapper.impl.AbstractIdMapper;
 import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.raddix.Radix;
@@ -13,10 +16,17 @@ import janusgraph.util.batchimport.unsafe.input.Collector;
 import janusgraph.util.batchimport.unsafe.input.Group;
 import janusgraph.util.batchimport.unsafe.input.Groups;
 import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
+import janusgraph.util.batchimport.unsafe.stats.DetailLevel;
+import janusgraph.util.batchimport.unsafe.stats.GenericStatsProvider;
+import janusgraph.util.batchimport.unsafe.stats.Keys;
+import janusgraph.util.batchimport.unsafe.stats.Stat;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.LongFunction;
 
 import static java.lang.Math.*;
@@ -77,8 +87,13 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
     private final Radix radix;
     private final int processorsForParallelWork;
     private final ParallelSort.Comparator comparator;
+    private final ParallelSort.Strategy sortStrategy;
 
     private ByteArray collisionNodeIdCache;
+    // eIds and groups of all ids put, rejects most ids which weren't before searching for them
+    private BlockedBloomFilter bloomFilter;
+    private final LongAdder rejectedLookups = new LongAdder();
+    private final LongAdder falsePositiveLookups = new LongAdder();
     // These 3 caches below are needed only during duplicate input id detection, but referenced here so
     // that the memory visitor can see them when they are active.
     private Tracker collisionTrackerCache;
@@ -90,15 +105,40 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
          * @param count Number of eIds that have been marked as collisions.
          */
         void numberOfCollisions(long count);
+
+        /**
+         * @param collisions Number of eIds which had their original input id looked up and kept.
+         * @param duplicates Number of those which turned out to be equal input ids in the same group.
+         */
+        default void collisionsResolved( long collisions, long duplicates )
+        {   // Do nothing by default.
+        }
+
+        /**
+         * @param bytes size of the bloom filter built over all ids.
+         * @param falsePositiveRate estimated chance that it lets an id through which wasn't put.
+         */
+        default void bloomFilter( long bytes, double falsePositiveRate )
+        {   // Do nothing by default.
+        }
     }
 
     // Bit in encoded String --> long values that marks that the particular item has a collision,
     // i.e. that there's at least one other string that encodes into the same long value.
     // This bit is the least significant in the most significant byte of the encoded values,
     // where the 7 most significant bits in that byte denotes length of original string.
-    // See StringEncoder.
+    // See StringEncoder and HashEncoder.
     private static final LongBitsManipulator COLLISION_BIT = new LongBitsManipulator( 56, 1 );
     private static final int DEFAULT_CACHE_CHUNK_SIZE = 1_000_000; // 8MB a piece
+    // -Djanusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper.sort=LSD_RADIX
+    private static final ParallelSort.Strategy SORT_STRATEGY =
+            FeatureToggles.flag( EncodingIdMapper.class, "sort", ParallelSort.Strategy.QUICKSORT );
+    // -Djanusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper.bloomFilterBitsPerId=0
+    // builds no bloom filter
+    private static final int BLOOM_FILTER_BITS_PER_ID =
+            FeatureToggles.getInteger( EncodingIdMapper.class, "bloomFilterBitsPerId", 10 );
+    // kind of the file it's saved to, followed by the encoder
+    private static final String KIND = "strings";
     private static final int COLLISION_ENTRY_SIZE = 5/*nodeId*/ + 6/*offset*/;
     // Using 0 as gap value, i.e. value for a node not having an id, i.e. not present in dataCache is safe
     // because the current set of Encoder implementations will always set some amount of bits higher up in
@@ -112,10 +152,6 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
     private long numberOfCollisions;
     private final LongFunction<CollisionValues> collisionValuesFactory;
     private CollisionValues collisionValues;
-    private int vertexPartitionID = 0;
-    private int partitionBits = 5;
-    private int uniqueBits = 4;
-    private int padBits = 3;
 
     public EncodingIdMapper( NumberArrayFactory cacheFactory, Encoder<String> encoder, Factory<Radix> radixFactory,
                              Monitor monitor, TrackerFactory trackerFactory, Groups groups,
@@ -135,6 +171,21 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
                             int chunkSize,
                             int processorsForParallelWork,
                             ParallelSort.Comparator comparator ){
+        this( cacheFactory, encoder, radixFactory, monitor, trackerFactory, groups, collisionValuesFactory, chunkSize,
+                processorsForParallelWork, comparator, SORT_STRATEGY );
+    }
+
+    public EncodingIdMapper(NumberArrayFactory cacheFactory,
+                            Encoder<String> encoder,
+                            Factory<Radix> radixFactory,
+                            Monitor monitor,
+                            TrackerFactory trackerFactory,
+                            Groups groups,
+                            LongFunction<CollisionValues> collisionValuesFactory,
+                            int chunkSize,
+                            int processorsForParallelWork,
+                            ParallelSort.Comparator comparator,
+                            ParallelSort.Strategy sortStrategy ){
 
         this.cacheFactory = cacheFactory;
         this.radixFactory = radixFactory;
@@ -146,23 +197,107 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         this.groups = groups;
         this.collisionValuesFactory = collisionValuesFactory;
         this.comparator = comparator;
+        this.sortStrategy = sortStrategy;
         this.processorsForParallelWork = max( processorsForParallelWork, 1 );
         this.groupCache = GroupCache.select( cacheFactory, chunkSize, groups.size() );
         numberOfCollisions = 0;
     }
 
+    /**
+     * A mapper ready for use over caches {@link #save(File, IdMapperFile.Layout) saved} by another import.
+     */
+    private EncodingIdMapper( Encoder<String> encoder, Factory<Radix> radixFactory, Groups groups,
+                              IdMapperFile.Reader in ) throws IOException
+    {
+        this.cacheFactory = null;
+        this.radixFactory = radixFactory;
+        this.monitor = IdMappers.NO_MONITOR;
+        this.encoder = encoder;
+        this.radix = radixFactory.newInstance();
+        this.trackerFactory = null;
+        this.groups = groups;
+        this.collisionValuesFactory = null;
+        this.comparator = null;
+        this.sortStrategy = null;
+        this.processorsForParallelWork = 1;
+        this.highestSetIndex = in.readLong();
+        this.numberOfCollisions = in.readLong();
+        this.dataCache = in.mapLongs( GAP_VALUE );
+        this.trackerCache = TrackerFactories.load( in );
+        this.groupCache = GroupCache.load( in );
+        if ( numberOfCollisions > 0 )
+        {
+            this.collisionNodeIdCache = in.mapBytes( new byte[COLLISION_ENTRY_SIZE] );
+            this.collisionValues = StringCollisionValues.load( in );
+        }
+        if ( in.readInt() != 0 )
+        {
+            this.bloomFilter = new BlockedBloomFilter( in.mapLongs( 0 ) );
+        }
+        // the buckets of the sort aren't kept, a search covers all of the ids
+        this.sortBuckets = new long[][]{{Integer.MAX_VALUE, 0}};
+        this.readyForUse = true;
+    }
 
+    /**
+     * @param file written by {@link #save(File, IdMapperFile.Layout)}.
+     * @param encoder must be the encoder the saved mapper had.
+     * @param groups the saved groups are created in it.
+     * @return a mapper ready for {@link #get(String, Group)}, its caches mapped read-only from {@code file}.
+     */
+    public static EncodingIdMapper load( File file, Encoder<String> encoder, Factory<Radix> radixFactory, Groups groups )
+            throws IOException
+    {
+        try ( IdMapperFile.Reader in = IdMapperFile.open( file, kind( encoder ), groups ) )
+        {
+            return new EncodingIdMapper( encoder, radixFactory, groups, in );
+        }
+    }
+
+    // encoded values of another encoder mean nothing to this one
+    private static String kind( Encoder<String> encoder )
+    {
+        return KIND + "/" + encoder;
+    }
+
+    /**
+     * Saves the sorted caches, the groups and the original ids of the collisions, i.e. all that
+     * {@link #get(String, Group)} needs. Ids put are written at their data index, gaps included.
+     */
     @Override
-    public void put(String key, Group group, long id) {
+    public void save( File file, IdMapperFile.Layout layout ) throws IOException
+    {
+        assert readyForUse;
+
+        try ( IdMapperFile.Writer out = IdMapperFile.create( file, kind( encoder ), groups, layout ) )
+        {
+            out.writeLong( highestSetIndex );
+            out.writeLong( numberOfCollisions );
+            out.writeLongs( dataCache, highestSetIndex + 1 );
+            trackerCache.save( out );
+            groupCache.save( out, highestSetIndex + 1 );
+            if ( numberOfCollisions > 0 )
+            {
+                out.writeBytes( collisionNodeIdCache, numberOfCollisions, COLLISION_ENTRY_SIZE );
+                collisionValues.save( out );
+            }
+            out.writeInt( bloomFilter != null ? 1 : 0 );
+            if ( bloomFilter != null )
+            {
+                out.writeLongs( bloomFilter.bits(), bloomFilter.bits().length() );
+            }
+        }
+    }
 
-        // Encode and add the input id
 
-        // id that delete partitionId and padding
-        long new_id = id >> (uniqueBits + partitionBits + padBits);
+    @Override
+    public void put(String key, Group group, long id) {
+
+        // Encode and add the input id at the index of its node
         long ekey = encode( key);
-        dataCache.set( new_id, ekey );
-        groupCache.set( new_id, group.id() );
-        candidateHighestSetIndex.offer( new_id );
+        dataCache.set( id, ekey );
+        groupCache.set( id, group.id() );
+        candidateHighestSetIndex.offer( id );
     }
 
     @Override
@@ -170,12 +305,110 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
 
         assert readyForUse;
 
-        long id = binarySearch(key, group.id());
-        if (id == IdMapper.ID_NOT_FOUND){
-            return IdMapper.ID_NOT_FOUND;
+        return binarySearch(key, group.id());
+
+    }
+
+    /**
+     * Encodes all keys, sorts them by eId and resolves them in one forward pass over the sorted tracker,
+     * galloping from where the previous key was found. Results are scattered back to the index of their key.
+     */
+    @Override
+    public void getAll( Object[] keys, Group[] groups, int count, long[] into )
+    {
+        assert readyForUse;
+
+        long[] eIds = new long[count];
+        int[] order = new int[count];
+        // index of the key of every eId, the ones the filter rejects are left out
+        int[] keyIndexes = new int[count];
+        int searched = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            long x = encode( (String) keys[i] );
+            if ( mightContain( x, groups[i].id() ) )
+            {
+                eIds[searched] = x;
+                keyIndexes[searched++] = i;
+            }
+            else
+            {
+                into[i] = IdMapper.ID_NOT_FOUND;
+            }
         }
-        return id << (uniqueBits + partitionBits + padBits) ;
+        rejectedLookups.add( count - searched );
+        sortUnsigned( eIds, order, searched );
 
+        long low = 0;
+        long notFound = 0;
+        for ( int i = 0; i < searched; i++ )
+        {
+            long x = eIds[i];
+            int key = keyIndexes[order[i]];
+            if ( i == 0 || x != eIds[i - 1] )
+            {
+                low = lowerBound( x, low );
+            }
+            long dataIndex = IdMapper.ID_NOT_FOUND;
+            if ( low <= highestSetIndex && dataValue( low ) == x )
+            {
+                long to = low;
+                while ( to < highestSetIndex && dataValue( to + 1 ) == x )
+                {
+                    to++;
+                }
+                int groupId = groups[key].id();
+                if ( to == low )
+                {
+                    long candidate = trackerCache.get( low );
+                    dataIndex = groupOf( candidate ) == groupId ? candidate : IdMapper.ID_NOT_FOUND;
+                }
+                else
+                {
+                    dataIndex = findFromEIdRange( low, to, groupId, keys[key] );
+                }
+            }
+            if ( dataIndex == IdMapper.ID_NOT_FOUND )
+            {
+                notFound++;
+            }
+            into[key] = dataIndex;
+        }
+        if ( bloomFilter != null )
+        {
+            falsePositiveLookups.add( notFound );
+        }
+    }
+
+    /**
+     * @return first tracker index from {@code from} with a data value not less than {@code x}, found by galloping
+     * forward and then a binary search in the last step.
+     */
+    private long lowerBound( long x, long from )
+    {
+        long low = from;
+        long high = from;
+        long step = 1;
+        while ( high <= highestSetIndex && unsignedDifference( dataValue( high ), x ) == Utils.CompareType.LT )
+        {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = min( high, highestSetIndex + 1 );
+        while ( low < high )
+        {
+            long mid = (low + high) >>> 1;
+            if ( unsignedDifference( dataValue( mid ), x ) == Utils.CompareType.LT )
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
     }
 
     private long binarySearch( String inputId, int groupId )
@@ -183,6 +416,11 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         long low = 0;
         long high = highestSetIndex;
         long x = encode( inputId );
+        if ( !mightContain( x, groupId ) )
+        {
+            rejectedLookups.increment();
+            return IdMapper.ID_NOT_FOUND;
+        }
         int rIndex = radixOf( x );
         for ( int k = 0; k < sortBuckets.length; k++ )
         {
@@ -195,15 +433,36 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         }
 
         long returnVal = binarySearch( x, inputId, low, high, groupId );
-        if ( returnVal == IdMapper.ID_NOT_FOUND )
+        if ( returnVal == IdMapper.ID_NOT_FOUND && (low != 0 || high != highestSetIndex) )
         {
             low = 0;
             high = highestSetIndex;
             returnVal = binarySearch( x, inputId, low, high, groupId );
         }
+        if ( returnVal == IdMapper.ID_NOT_FOUND && bloomFilter != null )
+        {
+            falsePositiveLookups.increment();
+        }
         return returnVal;
     }
 
+    /**
+     * @return {@code false} if no id of group {@code groupId} was encoded into {@code x}, {@code true} if one might.
+     */
+    private boolean mightContain( long x, int groupId )
+    {
+        return bloomFilter == null || bloomFilter.mightContain( filterHash( x, groupId ) );
+    }
+
+    private static long filterHash( long x, int groupId )
+    {
+        // eIds of the string encoder aren't mixed well enough to pick bits from
+        long h = x ^ groupId * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
     private long binarySearch( long x, Object inputId, long low, long high, int groupId )
     {
         while ( low <= high )
@@ -342,19 +601,31 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
     @Override
     public void prepare(LongFunction<String> inputIdLookup, Collector collector, ProgressListener progress ) throws Exception {
         highestSetIndex = candidateHighestSetIndex.get();
-        updateRadix( dataCache, radix, highestSetIndex );
         trackerCache = trackerFactory.create( cacheFactory, highestSetIndex + 1 );
 
         try
         {
-            sortBuckets = new ParallelSort( radix, dataCache, highestSetIndex, trackerCache,
-                    processorsForParallelWork, progress, comparator ).run();
+            if ( sortStrategy == ParallelSort.Strategy.LSD_RADIX )
+            {
+                sortBuckets = new LsdRadixSort( cacheFactory, dataCache, highestSetIndex, trackerCache,
+                        processorsForParallelWork, progress ).run();
+            }
+            else
+            {
+                updateRadix( dataCache, radix, highestSetIndex );
+                sortBuckets = new ParallelSort( radix, dataCache, highestSetIndex, trackerCache,
+                        processorsForParallelWork, progress, comparator ).run();
+            }
 
             long pessimisticNumberOfCollisions = detectAndMarkCollisions( progress );
             if ( pessimisticNumberOfCollisions > 0 )
             {
                 buildCollisionInfo( inputIdLookup, pessimisticNumberOfCollisions, collector, progress );
             }
+            if ( BLOOM_FILTER_BITS_PER_ID > 0 )
+            {
+                buildBloomFilter( progress );
+            }
         }
         catch ( InterruptedException e )
         {
@@ -366,6 +637,77 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         readyForUse = true;
     }
 
+    private void buildBloomFilter( ProgressListener progress )
+    {
+        progress.started( "FILTER" );
+        BlockedBloomFilter filter = new BlockedBloomFilter( cacheFactory, highestSetIndex + 1, BLOOM_FILTER_BITS_PER_ID );
+        int localProgress = 0;
+        for ( long dataIndex = 0; dataIndex <= highestSetIndex; dataIndex++ )
+        {
+            long eId = dataCache.get( dataIndex );
+            if ( eId != GAP_VALUE )
+            {
+                filter.add( filterHash( clearCollision( eId ), groupOf( dataIndex ) ) );
+            }
+            if ( ++localProgress == 1000 )
+            {
+                progress.add( localProgress );
+                localProgress = 0;
+            }
+        }
+        progress.add( localProgress );
+        progress.done();
+        bloomFilter = filter;
+        monitor.bloomFilter( filter.sizeInBytes(), filter.falsePositiveRate() );
+    }
+
+    @Override
+    public void addStats( GenericStatsProvider stats )
+    {
+        if ( bloomFilter != null )
+        {
+            BlockedBloomFilter filter = bloomFilter;
+            stats.add( Keys.bloom_filter, new BloomFilterStat( filter, rejectedLookups, falsePositiveLookups ) );
+        }
+    }
+
+    /**
+     * Estimated false positive rate of the bloom filter, in parts per million. Its string also has how many lookups
+     * the filter rejected and how many it let through for ids which weren't there.
+     */
+    private static class BloomFilterStat implements Stat
+    {
+        private final BlockedBloomFilter filter;
+        private final LongAdder rejected;
+        private final LongAdder falsePositives;
+
+        BloomFilterStat( BlockedBloomFilter filter, LongAdder rejected, LongAdder falsePositives )
+        {
+            this.filter = filter;
+            this.rejected = rejected;
+            this.falsePositives = falsePositives;
+        }
+
+        @Override
+        public DetailLevel detailLevel()
+        {
+            return DetailLevel.BASIC;
+        }
+
+        @Override
+        public long asLong()
+        {
+            return round( filter.falsePositiveRate() * 1_000_000 );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%.3f%% fp, %d rejected, %d false positives",
+                    filter.falsePositiveRate() * 100, rejected.sum(), falsePositives.sum() );
+        }
+    }
+
     @Override
     public void close() {
         dataCache.close();
@@ -381,6 +723,10 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         {
             collisionValues.close();
         }
+        if ( bloomFilter != null )
+        {
+            bloomFilter.close();
+        }
     }
 
     @Override
@@ -417,7 +763,8 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
     public long calculateMemoryUsage( long numberOfNodes )
     {
         int trackerSize = numberOfNodes > IntTracker.MAX_ID ? BigIdTracker.SIZE : IntTracker.SIZE;
-        return numberOfNodes * (Long.BYTES /*data*/ + trackerSize /*tracker*/);
+        return numberOfNodes * (Long.BYTES /*data*/ + trackerSize /*tracker*/) +
+                (BLOOM_FILTER_BITS_PER_ID > 0 ? BlockedBloomFilter.calculateMemoryUsage( numberOfNodes, BLOOM_FILTER_BITS_PER_ID ) : 0);
     }
 
     /**
@@ -640,48 +987,157 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
                                      Collector collector, ProgressListener progress )
             throws Exception
     {
-        progress.started( "RESOLVE (~" + pessimisticNumberOfCollisions + " collisions)" );
-        Radix radix = radixFactory.newInstance();
-        collisionNodeIdCache = cacheFactory.newByteArray( pessimisticNumberOfCollisions, new byte[COLLISION_ENTRY_SIZE] );
-        collisionTrackerCache = trackerFactory.create( cacheFactory, pessimisticNumberOfCollisions );
-        collisionValues = collisionValuesFactory.apply( pessimisticNumberOfCollisions );
-        for ( long nodeId = 0; nodeId <= highestSetIndex; nodeId++ )
+        if ( inputIdLookup == null )
         {
-            long eId = dataCache.get( nodeId );
-            if ( isCollision( eId ) )
-            {
-                // Store this collision input id for matching later in get()
-                long collisionIndex = numberOfCollisions++;
-//                Object id = inputIdLookup.apply( nodeId );
+            throw new IllegalStateException( "~" + pessimisticNumberOfCollisions + " encoded ids collide within " +
+                    "their group, the original input ids are needed to tell them apart but no input id lookup was given" );
+        }
 
-//                long eIdFromInputId = encode( (String) id );//
-                long eIdWithoutCollisionBit = clearCollision( eId );
-                /*assert eIdFromInputId == eIdWithoutCollisionBit : format( "Encoding mismatch during building of " +
-                                "collision info. input id %s (a %s) marked as collision where this id was encoded into " +
-                                "%d when put, but was now encoded into %d",
-                        id, id.getClass().getSimpleName(), eIdWithoutCollisionBit, eIdFromInputId );*/
-//                long offset = collisionValues.add( id );
-                collisionNodeIdCache.set5ByteLong( collisionIndex, 0, nodeId );
-//                collisionNodeIdCache.set6ByteLong( collisionIndex, 5, offset );
+        progress.started( "RESOLVE (~" + pessimisticNumberOfCollisions + " collisions)" );
 
-                // The base of our sorting this time is going to be node id, so register that in the radix
-                radix.registerRadixOf( eIdWithoutCollisionBit );
+        // Every worker takes a range of node ids. Collision indexes must be in node id order, findCollisionIndex
+        // does a binary search on them, so each range first counts its collisions to know where to start writing.
+        long totalCount = highestSetIndex + 1;
+        int processors = processorsForParallelWork;
+        long stride = totalCount / processors;
+        if ( stride < 10 )
+        {
+            processors = 1;
+            stride = totalCount;
+        }
+        long[] fromInclusive = new long[processors];
+        long[] toExclusive = new long[processors];
+        Workers<ResolveWorker> counters = new Workers<>( "RESOLVE" );
+        for ( int i = 0; i < processors; i++ )
+        {
+            fromInclusive[i] = i * stride;
+            toExclusive[i] = i == processors - 1 ? totalCount : fromInclusive[i] + stride;
+            counters.start( new ResolveWorker( fromInclusive[i], toExclusive[i], -1, null, progress ) );
+        }
+        counters.awaitAndThrowOnErrorStrict( RuntimeException.class );
 
-                // System.out.println("Collision"); // FIXME dengziming@u51.com
-            }
-            progress.add( 1 );
+        long collisionIndex = 0;
+        for ( ResolveWorker counter : counters )
+        {
+            collisionIndex += counter.count;
         }
+        // exact now, the pessimistic number from detection can be off because of races between detectors
+        collisionNodeIdCache = cacheFactory.newByteArray( collisionIndex, new byte[COLLISION_ENTRY_SIZE] );
+        collisionValues = collisionValuesFactory.apply( collisionIndex );
+
+        collisionIndex = 0;
+        Workers<ResolveWorker> resolvers = new Workers<>( "RESOLVE" );
+        int i = 0;
+        for ( ResolveWorker counter : counters )
+        {
+            resolvers.start( new ResolveWorker( fromInclusive[i], toExclusive[i], collisionIndex, inputIdLookup, progress ) );
+            collisionIndex += counter.count;
+            i++;
+        }
+        resolvers.awaitAndThrowOnErrorStrict( RuntimeException.class );
+        numberOfCollisions = collisionIndex;
         progress.done();
 
+        // The base of our sorting this time is going to be node id, so register that in the radix.
+        // Done here, single threaded, since a radix isn't thread safe and there are few collisions anyway.
+        Radix radix = radixFactory.newInstance();
+        for ( long index = 0; index < numberOfCollisions; index++ )
+        {
+            radix.registerRadixOf( clearCollision( dataCache.get( collisionNodeIdCache.get5ByteLong( index, 0 ) ) ) );
+        }
+
         // Detect input id duplicates within the same group, with source information, line number and the works
-        detectDuplicateInputIds( radix, collector, progress );
+        collisionTrackerCache = trackerFactory.create( cacheFactory, max( numberOfCollisions, 1 ) );
+        long duplicates = detectDuplicateInputIds( radix, collector, progress );
+        monitor.collisionsResolved( numberOfCollisions, duplicates );
 
         // We won't be needing these anymore
         collisionTrackerCache.close();
         collisionTrackerCache = null;
     }
 
-    private void detectDuplicateInputIds( Radix radix, Collector collector, ProgressListener progress )
+    /**
+     * Goes through a range of node ids. Without a lookup it only counts the collisions in there, with one it stores
+     * node id and original input id of each collision, starting at the given collision index. Memory is bounded
+     * to the collision caches, an input id is only held while it's being added.
+     */
+    private class ResolveWorker implements Runnable
+    {
+        private final long fromInclusive;
+        private final long toExclusive;
+        private final LongFunction<String> inputIdLookup;
+        private final ProgressListener progress;
+
+        private long collisionIndex;
+        private long count;
+        private int localProgress;
+
+        ResolveWorker( long fromInclusive, long toExclusive, long collisionIndex, LongFunction<String> inputIdLookup,
+                       ProgressListener progress )
+        {
+            this.fromInclusive = fromInclusive;
+            this.toExclusive = toExclusive;
+            this.collisionIndex = collisionIndex;
+            this.inputIdLookup = inputIdLookup;
+            this.progress = progress;
+        }
+
+        @Override
+        public void run()
+        {
+            for ( long nodeId = fromInclusive; nodeId < toExclusive; nodeId++ )
+            {
+                long eId = dataCache.get( nodeId );
+                if ( isCollision( eId ) )
+                {
+                    count++;
+                    if ( inputIdLookup != null )
+                    {
+                        resolve( nodeId, clearCollision( eId ) );
+                    }
+                }
+                if ( inputIdLookup != null && ++localProgress == 1000 )
+                {
+                    progress.add( localProgress );
+                    localProgress = 0;
+                }
+            }
+            if ( inputIdLookup != null )
+            {
+                progress.add( localProgress );
+            }
+        }
+
+        private void resolve( long nodeId, long eIdWithoutCollisionBit )
+        {
+            String id = inputIdLookup.apply( nodeId );
+            if ( id == null )
+            {
+                throw new IllegalStateException( "No input id for node " + nodeId + " marked as collision" );
+            }
+            long eIdFromInputId = encode( id );
+            if ( eIdFromInputId != eIdWithoutCollisionBit )
+            {
+                throw new IllegalStateException( "Encoding mismatch during building of collision info. input id " + id +
+                        " marked as collision where this id was encoded into " + eIdWithoutCollisionBit +
+                        " when put, but was now encoded into " + eIdFromInputId );
+            }
+
+            long offset;
+            synchronized ( collisionValues )
+            {
+                offset = collisionValues.add( id );
+            }
+            collisionNodeIdCache.set5ByteLong( collisionIndex, 0, nodeId );
+            collisionNodeIdCache.set6ByteLong( collisionIndex, 5, offset );
+            collisionIndex++;
+        }
+    }
+
+    /**
+     * @return number of duplicate input ids found.
+     */
+    private long detectDuplicateInputIds( Radix radix, Collector collector, ProgressListener progress )
             throws Exception
     {
         // We do this collision sort using ParallelSort which has the data cache and the tracker cache,
@@ -737,6 +1193,7 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         // We want to detect duplicate input ids within it
         long previousEid = 0;
         int previousGroupId = -1;
+        long duplicates = 0;
         SameInputIdDetector detector = new SameInputIdDetector();
         progress.started( "DEDUPLICATE" );
         for ( int i = 0; i < numberOfCollisions; i++ )
@@ -760,7 +1217,9 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
             {   // Duplicate
                 collector.collectDuplicateNode( inputId, nodeId, groups.get( groupId ).name() );
                 trackerCache.markAsDuplicate( nodeId );
-                unmarkAsCollision( nonDuplicateNodeId );
+                // nonDuplicateNodeId keeps its collision mark, other input ids may share its eId in this group
+                // and get() must keep comparing input ids for them
+                duplicates++;
             }
 
             previousEid = eid;
@@ -768,16 +1227,7 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
             progress.add( 1 );
         }
         progress.done();
-    }
-
-    private void unmarkAsCollision( long dataIndex )
-    {
-        long eId = dataCache.get( dataIndex );
-        boolean isMarked = isCollision( eId );
-        if ( isMarked )
-        {
-            dataCache.set( dataIndex, clearCollision( eId ) );
-        }
+        return duplicates;
     }
 
     private LongArray as5ByteLongArray( ByteArray byteArray )
@@ -879,6 +1329,7 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         nullSafeAcceptMemoryStatsVisitor( visitor, collisionTrackerCache );
         nullSafeAcceptMemoryStatsVisitor( visitor, collisionNodeIdCache );
         nullSafeAcceptMemoryStatsVisitor( visitor, collisionValues );
+        nullSafeAcceptMemoryStatsVisitor( visitor, bloomFilter );
     }
 
     private void nullSafeAcceptMemoryStatsVisitor( MemoryStatsVisitor visitor, MemoryStatsVisitor.Visitable mem )
@@ -895,6 +1346,12 @@ public class EncodingIdMapper extends AbstractIdMapper<String> {
         return true;
     }
 
+    @Override
+    public boolean needsInputIdLookup()
+    {
+        return true;
+    }
+
     public static final ParallelSort.Comparator DEFAULT = new ParallelSort.Comparator()
     {
         @Override
@@ -1,11 +1,14 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.ByteArray;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
 import janusgraph.util.batchimport.unsafe.input.Group;
 import janusgraph.util.batchimport.unsafe.helps.Numbers;
 
+import java.io.IOException;
+
 /**
  * Cache for keeping nodeId --> groupId mapping.
  */
@@ -15,6 +18,11 @@ public interface GroupCache
 
     int get(long nodeId);
 
+    /**
+     * Writes the groups of node ids {@code [0, size)}, for {@link #load(IdMapperFile.Reader)}.
+     */
+    void save(IdMapperFile.Writer out, long size) throws IOException;
+
     GroupCache GLOBAL = new GroupCache()
     {
         @Override
@@ -28,6 +36,12 @@ public interface GroupCache
         {
             return Group.GLOBAL.id();
         }
+
+        @Override
+        public void save( IdMapperFile.Writer out, long size ) throws IOException
+        {
+            out.writeInt( 0 );
+        }
     };
 
     class ByteGroupCache implements GroupCache
@@ -36,7 +50,12 @@ public interface GroupCache
 
         public ByteGroupCache(NumberArrayFactory factory, int chunkSize )
         {
-            array = factory.newDynamicByteArray( chunkSize, new byte[Byte.BYTES] );
+            this( factory.newDynamicByteArray( chunkSize, new byte[Byte.BYTES] ) );
+        }
+
+        ByteGroupCache( ByteArray array )
+        {
+            this.array = array;
         }
 
         @Override
@@ -50,6 +69,13 @@ public interface GroupCache
         {
             return Numbers.unsignedByteToInt( array.getByte( nodeId, 0 ) );
         }
+
+        @Override
+        public void save( IdMapperFile.Writer out, long size ) throws IOException
+        {
+            out.writeInt( Byte.BYTES );
+            out.writeBytes( array, size, Byte.BYTES );
+        }
     }
 
     class ShortGroupCache implements GroupCache
@@ -58,7 +84,12 @@ public interface GroupCache
 
         public ShortGroupCache( NumberArrayFactory factory, int chunkSize )
         {
-            array = factory.newDynamicByteArray( chunkSize, new byte[Short.BYTES] );
+            this( factory.newDynamicByteArray( chunkSize, new byte[Short.BYTES] ) );
+        }
+
+        ShortGroupCache( ByteArray array )
+        {
+            this.array = array;
         }
 
         @Override
@@ -72,6 +103,13 @@ public interface GroupCache
         {
             return Numbers.unsignedShortToInt( array.getShort( nodeId, 0 ) );
         }
+
+        @Override
+        public void save( IdMapperFile.Writer out, long size ) throws IOException
+        {
+            out.writeInt( Short.BYTES );
+            out.writeBytes( array, size, Short.BYTES );
+        }
     }
 
     static GroupCache select(NumberArrayFactory factory, int chunkSize, int numberOfGroups)
@@ -90,4 +128,23 @@ public interface GroupCache
         }
         throw new IllegalArgumentException( "Max allowed groups is " + 0xFFFF + ", but wanted " + numberOfGroups );
     }
+
+    /**
+     * @return the {@link #save(IdMapperFile.Writer, long) saved} group cache, mapped read-only.
+     */
+    static GroupCache load( IdMapperFile.Reader in ) throws IOException
+    {
+        int size = in.readInt();
+        switch ( size )
+        {
+        case 0:
+            return GLOBAL;
+        case Byte.BYTES:
+            return new ByteGroupCache( in.mapBytes( new byte[Byte.BYTES] ) );
+        case Short.BYTES:
+            return new ShortGroupCache( in.mapBytes( new byte[Short.BYTES] ) );
+        default:
+            throw new IOException( "Unknown group cache of " + size + " bytes" );
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.ByteArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Keeps the original input id of every node, so that {@link EncodingIdMapper} can tell apart ids which encode
+ * into the same value. Node importers {@link #add(long, String) add} ids concurrently, alongside
+ * {@link janusgraph.util.batchimport.unsafe.idmapper.IdMapper#put(Object, janusgraph.util.batchimport.unsafe.input.Group, long) put},
+ * and the store is handed to {@code prepare} as the input id lookup.
+ *
+ * Values are compact UTF-8, a 2B length followed by the bytes, appended to off-heap {@link ByteArray} chunks.
+ * A value never spans two chunks. A 6B offset per node points at its value, offsets are stored + 1 so that 0 means
+ * no value.
+ *
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ */
+public class InputIdStore implements LongFunction<String>, MemoryStatsVisitor.Visitable, AutoCloseable
+{
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int OFFSET_CHUNK_SIZE = 1_000_000;
+    private static final int MAX_LENGTH = 0xFFFF;
+
+    private final long chunkSize;
+    private final ByteArray values;
+    private final ByteArray offsets;
+    private final AtomicLong next = new AtomicLong();
+
+    public InputIdStore( NumberArrayFactory factory )
+    {
+        this( factory, DEFAULT_CHUNK_SIZE );
+    }
+
+    public InputIdStore( NumberArrayFactory factory, int chunkSize )
+    {
+        if ( chunkSize < MAX_LENGTH + 2 )
+        {
+            throw new IllegalArgumentException( "chunk size " + chunkSize + " can't hold the longest id" );
+        }
+        this.chunkSize = chunkSize;
+        this.values = factory.newDynamicByteArray( chunkSize, new byte[1] );
+        this.offsets = factory.newDynamicByteArray( OFFSET_CHUNK_SIZE, new byte[6] );
+    }
+
+    /**
+     * @param id index of the node the input id was put with.
+     * @param inputId the original input id.
+     */
+    public void add( long id, String inputId )
+    {
+        byte[] bytes = UTF8.encode( inputId );
+        int length = bytes.length;
+        if ( length > MAX_LENGTH )
+        {
+            throw new IllegalArgumentException( inputId );
+        }
+
+        long offset = reserve( 2 + length );
+        ByteArray chunk = values.at( offset );
+        chunk.setShort( offset, 0, (short) length );
+        for ( int i = 0; i < length; i++ )
+        {
+            chunk.setByte( offset + 2 + i, 0, bytes[i] );
+        }
+        offsets.set6ByteLong( id, 0, offset + 1 );
+    }
+
+    private long reserve( int size )
+    {
+        while ( true )
+        {
+            long current = next.get();
+            long offset = current;
+            if ( offset % chunkSize + size > chunkSize )
+            {
+                // doesn't fit in what's left of this chunk, start at the next one
+                offset += chunkSize - offset % chunkSize;
+            }
+            if ( next.compareAndSet( current, offset + size ) )
+            {
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * @param dataIndex index of the node in the id mapper.
+     * @return the input id the node was added with, or {@code null} if none.
+     */
+    @Override
+    public String apply( long dataIndex )
+    {
+        long offset = offsets.get6ByteLong( dataIndex, 0 ) - 1;
+        if ( offset < 0 )
+        {
+            return null;
+        }
+        ByteArray chunk = values.at( offset );
+        int length = chunk.getShort( offset, 0 ) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            bytes[i] = chunk.getByte( offset + 2 + i, 0 );
+        }
+        return UTF8.decode( bytes );
+    }
+
+    /**
+     * @return number of bytes used by values so far.
+     */
+    public long size()
+    {
+        return next.get();
+    }
+
+    @Override
+    public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+    {
+        values.acceptMemoryStatsVisitor( visitor );
+        offsets.acceptMemoryStatsVisitor( visitor );
+    }
+
+    @Override
+    public void close()
+    {
+        values.close();
+        offsets.close();
+    }
+}
@@ -1,9 +1,12 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.IntArray;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.LongBitsManipulator;
 
+import java.io.IOException;
+
 /**
  * {@link Tracker} capable of keeping {@code int} range values, using {@link IntArray}.
  * Will fail in {@link #set(long, long)} with {@link ArithmeticException} if trying to put a too big value.
@@ -53,4 +56,11 @@ public class IntTracker extends AbstractTracker<IntArray>
         long field = array.get( index );
         return BITS.get( field, 1 ) == 0;
     }
+
+    @Override
+    public void save( IdMapperFile.Writer out ) throws IOException
+    {
+        out.writeInt( SIZE );
+        out.writeInts( array, array.length() );
+    }
 }
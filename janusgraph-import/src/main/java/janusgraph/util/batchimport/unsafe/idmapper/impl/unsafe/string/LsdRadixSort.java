@@ -0,0 +1,204 @@
+package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.LongArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
+
+import static janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper.clearCollision;
+
+/**
+ * Sorts the tracker like {@link ParallelSort} does, but with a least significant digit radix sort instead of a
+ * quick sort: (eId, data index) pairs are moved between two off-heap buffers one 11 bit digit at a time, every pass
+ * split over all threads. Each pass is stable so equal eIds end up in data index order. A pass where all eIds
+ * have the same digit is skipped, which is common for the high digits.
+ *
+ * Passes cost the same whatever the order of the input, at the price of 32B per entry while sorting.
+ * Values are ordered unsigned, i.e. like {@link ParallelSort#DEFAULT}.
+ *
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ */
+public class LsdRadixSort
+{
+    private static final int DIGIT_BITS = 11;
+    private static final int BUCKETS = 1 << DIGIT_BITS;
+    private static final int DIGIT_MASK = BUCKETS - 1;
+
+    private final NumberArrayFactory cacheFactory;
+    private final LongArray dataCache;
+    private final long highestSetIndex;
+    private final Tracker tracker;
+    private final int threads;
+    private final ProgressListener progress;
+
+    public LsdRadixSort( NumberArrayFactory cacheFactory, LongArray dataCache, long highestSetIndex,
+            Tracker tracker, int threads, ProgressListener progress )
+    {
+        this.cacheFactory = cacheFactory;
+        this.dataCache = dataCache;
+        this.highestSetIndex = highestSetIndex;
+        this.tracker = tracker;
+        this.threads = threads;
+        this.progress = progress;
+    }
+
+    /**
+     * @return sort buckets in the same form as {@link ParallelSort#run()}, here a single one covering all data.
+     */
+    public synchronized long[][] run() throws InterruptedException
+    {
+        long size = highestSetIndex + 1;
+        int workers = (int) Math.max( 1, Math.min( threads, size / BUCKETS ) );
+        progress.started( "SORT" );
+        LongArray keys = null;
+        LongArray indexes = null;
+        LongArray otherKeys = null;
+        LongArray otherIndexes = null;
+        try
+        {
+            for ( int shift = 0; shift < Long.SIZE; shift += DIGIT_BITS )
+            {
+                long[][] counts = count( keys, shift, size, workers );
+                if ( !offsets( counts, size ) )
+                {   // all values have the same digit, nothing would move
+                    continue;
+                }
+                if ( otherKeys == null )
+                {
+                    otherKeys = cacheFactory.newLongArray( size, 0 );
+                    otherIndexes = cacheFactory.newLongArray( size, 0 );
+                }
+                scatter( keys, indexes, otherKeys, otherIndexes, shift, counts, size );
+                LongArray swapKeys = keys;
+                LongArray swapIndexes = indexes;
+                keys = otherKeys;
+                indexes = otherIndexes;
+                // null after the first pass, which read from the data cache
+                otherKeys = swapKeys;
+                otherIndexes = swapIndexes;
+            }
+            fillTracker( indexes, size, workers );
+        }
+        finally
+        {
+            close( keys, indexes, otherKeys, otherIndexes );
+            progress.done();
+        }
+        return new long[][] {{Integer.MAX_VALUE, 0}};
+    }
+
+    private long[][] count( LongArray keys, int shift, long size, int workers ) throws InterruptedException
+    {
+        long[][] counts = new long[workers][BUCKETS];
+        Workers<Runnable> counters = new Workers<>( "RadixCounter" );
+        for ( int w = 0; w < workers; w++ )
+        {
+            long[] workerCounts = counts[w];
+            long from = from( w, workers, size );
+            long to = from( w + 1, workers, size );
+            counters.start( () ->
+            {
+                for ( long i = from; i < to; i++ )
+                {
+                    workerCounts[digit( key( keys, i ), shift )]++;
+                }
+            } );
+        }
+        counters.awaitAndThrowOnError( RuntimeException.class );
+        return counts;
+    }
+
+    /**
+     * Turns the counts into where each worker starts writing each digit: all smaller digits first, then the
+     * same digit of the workers before it, which keeps the pass stable.
+     *
+     * @return whether or not there's more than one digit, i.e. whether or not the pass is needed.
+     */
+    private static boolean offsets( long[][] counts, long size )
+    {
+        long offset = 0;
+        for ( int bucket = 0; bucket < BUCKETS; bucket++ )
+        {
+            long bucketStart = offset;
+            for ( long[] workerCounts : counts )
+            {
+                long count = workerCounts[bucket];
+                workerCounts[bucket] = offset;
+                offset += count;
+            }
+            if ( offset - bucketStart == size )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void scatter( LongArray keys, LongArray indexes, LongArray toKeys, LongArray toIndexes, int shift,
+            long[][] offsets, long size ) throws InterruptedException
+    {
+        int workers = offsets.length;
+        Workers<Runnable> scatterers = new Workers<>( "RadixScatterer" );
+        for ( int w = 0; w < workers; w++ )
+        {
+            long[] next = offsets[w];
+            long from = from( w, workers, size );
+            long to = from( w + 1, workers, size );
+            scatterers.start( () ->
+            {
+                for ( long i = from; i < to; i++ )
+                {
+                    long key = key( keys, i );
+                    long target = next[digit( key, shift )]++;
+                    toKeys.set( target, key );
+                    toIndexes.set( target, indexes != null ? indexes.get( i ) : i );
+                }
+            } );
+        }
+        scatterers.awaitAndThrowOnError( RuntimeException.class );
+    }
+
+    private void fillTracker( LongArray indexes, long size, int workers ) throws InterruptedException
+    {
+        Workers<Runnable> fillers = new Workers<>( "TrackerFiller" );
+        for ( int w = 0; w < workers; w++ )
+        {
+            long from = from( w, workers, size );
+            long to = from( w + 1, workers, size );
+            fillers.start( () ->
+            {
+                for ( long i = from; i < to; i++ )
+                {
+                    tracker.set( i, indexes != null ? indexes.get( i ) : i );
+                }
+                progress.add( to - from );
+            } );
+        }
+        fillers.awaitAndThrowOnError( RuntimeException.class );
+    }
+
+    private long key( LongArray keys, long i )
+    {
+        return keys != null ? keys.get( i ) : clearCollision( dataCache.get( i ) );
+    }
+
+    private static int digit( long key, int shift )
+    {
+        return (int) (key >>> shift) & DIGIT_MASK;
+    }
+
+    private static long from( int worker, int workers, long size )
+    {
+        return size * worker / workers;
+    }
+
+    private static void close( LongArray... arrays )
+    {
+        for ( LongArray array : arrays )
+        {
+            if ( array != null )
+            {
+                array.close();
+            }
+        }
+    }
+}
@@ -168,6 +168,21 @@ public class ParallelSort
         return builder.toString();
     }
 
+    /**
+     * How {@link EncodingIdMapper} sorts its tracker while preparing.
+     */
+    public enum Strategy
+    {
+        /**
+         * Split by radix, then quick sort each split, see {@link ParallelSort}.
+         */
+        QUICKSORT,
+        /**
+         * Stable passes over all data one digit at a time, see {@link LsdRadixSort}. Needs 32B per entry while sorting.
+         */
+        LSD_RADIX
+    }
+
     /**
      * Pluggable comparator for the comparisons that quick-sort needs in order to function.
      */
@@ -1,10 +1,13 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.ByteArray;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
 
+import java.io.IOException;
+
 import static java.lang.Integer.min;
 import static java.lang.Long.max;
 
@@ -26,6 +29,24 @@ public class StringCollisionValues implements CollisionValues
         current = cache.at( 0 );
     }
 
+    private StringCollisionValues( ByteArray cache, long chunkSize, long offset )
+    {
+        this.chunkSize = chunkSize;
+        this.cache = cache;
+        this.offset = offset;
+        this.current = cache.at( offset );
+    }
+
+    /**
+     * @return the {@link #save(IdMapperFile.Writer) saved} values, mapped read-only.
+     */
+    public static StringCollisionValues load( IdMapperFile.Reader in ) throws IOException
+    {
+        long chunkSize = in.readLong();
+        long offset = in.readLong();
+        return new StringCollisionValues( in.mapBytes( new byte[1] ), chunkSize, offset );
+    }
+
     @Override
     public long add( Object id )
     {
@@ -57,8 +78,8 @@ public class StringCollisionValues implements CollisionValues
                 current.setByte( offset++, 0, bytes[i++] );
             }
 
-            if ( length > i )
-            {
+            if ( offset % chunkSize == 0 )
+            {   // also when the value ends right at the end of the chunk, the next one starts in the next chunk
                 current = cache.at( offset );
             }
         }
@@ -91,6 +112,14 @@ public class StringCollisionValues implements CollisionValues
         return UTF8.decode( bytes );
     }
 
+    @Override
+    public void save( IdMapperFile.Writer out ) throws IOException
+    {
+        out.writeLong( chunkSize );
+        out.writeLong( offset );
+        out.writeBytes( cache, offset, 1 );
+    }
+
     @Override
     public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
     {
@@ -1,8 +1,9 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
-
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
 
+import java.io.IOException;
 import java.util.function.LongFunction;
 
 /**
@@ -46,6 +47,11 @@ public interface Tracker extends MemoryStatsVisitor.Visitable, AutoCloseable
 
     boolean isMarkedAsDuplicate(long index);
 
+    /**
+     * Writes all values, duplicate marks included, for {@link TrackerFactories#load(IdMapperFile.Reader)}.
+     */
+    void save(IdMapperFile.Writer out) throws IOException;
+
     @Override
     void close();
 }
@@ -1,5 +1,9 @@
 package janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string;
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
+
+import java.io.IOException;
+
 /**
  * Common {@link TrackerFactory} implementations.
  */
@@ -18,4 +22,21 @@ public class TrackerFactories
                 ? new BigIdTracker( arrayFactory.newByteArray( size, BigIdTracker.DEFAULT_VALUE ) )
                 : new IntTracker( arrayFactory.newIntArray( size, IntTracker.DEFAULT_VALUE ) );
     }
+
+    /**
+     * @return the {@link Tracker#save(IdMapperFile.Writer) saved} tracker, mapped read-only.
+     */
+    public static Tracker load( IdMapperFile.Reader in ) throws IOException
+    {
+        int size = in.readInt();
+        switch ( size )
+        {
+        case IntTracker.SIZE:
+            return new IntTracker( in.mapInts( IntTracker.DEFAULT_VALUE ) );
+        case BigIdTracker.SIZE:
+            return new BigIdTracker( in.mapBytes( BigIdTracker.DEFAULT_VALUE ) );
+        default:
+            throw new IOException( "Unknown tracker of " + size + " bytes" );
+        }
+    }
 }
@@ -2,6 +2,8 @@ package janusgraph.util.batchimport.unsafe.input;
 
 
 import janusgraph.util.batchimport.unsafe.BatchImporter;
+import janusgraph.util.batchimport.unsafe.idmapper.ExistingNodes;
+import janusgraph.util.batchimport.unsafe.idmapper.IdEncoder;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
 import janusgraph.util.batchimport.unsafe.input.Collector;
@@ -9,6 +11,7 @@ import janusgraph.util.batchimport.unsafe.input.InputIterable;
 import janusgraph.util.batchimport.unsafe.input.InputIterator;
 import janusgraph.util.batchimport.unsafe.input.csv.Value;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.function.ToIntFunction;
 
@@ -81,8 +84,31 @@ public interface Input
      * and later queried by {@link janusgraph.util.batchimport.unsafe.output.EdgeImporter#startNode()} and {@link InputEdge#endNode()} ids
      * to resolve potentially temporary input node ids to actual node ids in the database.
      * @param numberArrayFactory The factory for creating data-structures to use for caching internally in the IdMapper.
+     * @param encoder The encoder of string ids, if the IdMapper encodes them.
      */
-    IdMapper<String> idMapper(NumberArrayFactory numberArrayFactory);
+    IdMapper<Object> idMapper(NumberArrayFactory numberArrayFactory, IdEncoder encoder);
+
+    /**
+     * @param saved where a prepared {@link IdMapper} was saved by an earlier import of the nodes.
+     * @param encoder The encoder of string ids it was created with.
+     * @return that {@link IdMapper}, ready for use, for importing edges only.
+     */
+    default IdMapper<Object> idMapper(File saved, IdEncoder encoder) throws IOException
+    {
+        throw new UnsupportedOperationException( "This input can't load a saved id mapper" );
+    }
+
+    /**
+     * @param files id mapping files of nodes which are in the graph already, see {@link ExistingNodes}.
+     * @param numberArrayFactory The factory for creating data-structures to use for caching internally in the IdMapper.
+     * @param encoder The encoder of string ids, if the IdMapper encodes them.
+     * @return those nodes, not prepared yet.
+     */
+    default ExistingNodes existingNodes(File[] files, NumberArrayFactory numberArrayFactory, IdEncoder encoder)
+            throws IOException
+    {
+        throw new UnsupportedOperationException( "This input can't look up existing nodes" );
+    }
 
     /**
      * @return a {@link Collector} capable of writing {@link InputEdge bad edges}
@@ -24,4 +24,13 @@ public interface InputChunk extends Closeable
     };
 
     boolean next(InputEntityVisitor visitor) throws Exception;
+
+    /**
+     * @return number of this chunk in the order the input read its chunks, the same in every read of the same input.
+     * -1 if the input doesn't number them.
+     */
+    default long ordinal()
+    {
+        return -1;
+    }
 }
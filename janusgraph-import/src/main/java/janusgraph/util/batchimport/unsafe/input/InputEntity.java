@@ -221,7 +221,7 @@ public class InputEntity implements InputEntityVisitor, Cloneable
         }
     }
 
-    private void clear()
+    public void clear()
     {
         end = false;
         hasPropertyId = false;
@@ -271,27 +271,6 @@ public class InputEntity implements InputEntityVisitor, Cloneable
 
     public void replayOnto( InputEntityVisitor visitor ) throws IOException
     {
-        // properties
-        if ( hasPropertyId )
-        {
-            visitor.propertyId( propertyId );
-        }
-        else if ( !properties.isEmpty() )
-        {
-            int propertyCount = propertyCount();
-            for ( int i = 0; i < propertyCount; i++ )
-            {
-                if ( hasIntPropertyKeyIds )
-                {
-                    visitor.property( (Integer) propertyKey( i ), propertyValue( i ) );
-                }
-                else
-                {
-                    visitor.property( (String) propertyKey( i ), propertyValue( i ) );
-                }
-            }
-        }
-
         // id
         if ( hasLongId )
         {
@@ -312,6 +291,27 @@ public class InputEntity implements InputEntityVisitor, Cloneable
             visitor.labels( labels.toArray( new String[labels.size()] ) );
         }
 
+        // properties, after the id and labels like the importers take them
+        if ( hasPropertyId )
+        {
+            visitor.propertyId( propertyId );
+        }
+        else if ( !properties.isEmpty() )
+        {
+            int propertyCount = propertyCount();
+            for ( int i = 0; i < propertyCount; i++ )
+            {
+                if ( hasIntPropertyKeyIds )
+                {
+                    visitor.property( (Integer) propertyKey( i ), propertyValue( i ) );
+                }
+                else
+                {
+                    visitor.property( (String) propertyKey( i ), propertyValue( i ) );
+                }
+            }
+        }
+
         // start id
         if ( hasLongStartId )
         {
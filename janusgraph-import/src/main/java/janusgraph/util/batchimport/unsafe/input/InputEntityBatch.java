@@ -0,0 +1,49 @@
+package janusgraph.util.batchimport.unsafe.input;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entities parsed from one {@link InputChunk}, passed between the steps of a stage which imports them.
+ */
+public class InputEntityBatch
+{
+    private final List<InputEntity> entities;
+    private final long ordinal;
+    // start and end node ids of the edges with object ids, null until they're resolved
+    private long[] nodeIds;
+
+    public InputEntityBatch( InputEntity[] entities, long ordinal )
+    {
+        this.entities = Arrays.asList( entities );
+        this.ordinal = ordinal;
+    }
+
+    public List<InputEntity> entities()
+    {
+        return entities;
+    }
+
+    public int size()
+    {
+        return entities.size();
+    }
+
+    /**
+     * @return {@link InputChunk#ordinal() ordinal} of the chunk the entities were parsed from.
+     */
+    public long ordinal()
+    {
+        return ordinal;
+    }
+
+    public long[] nodeIds()
+    {
+        return nodeIds;
+    }
+
+    public void nodeIds( long[] nodeIds )
+    {
+        this.nodeIds = nodeIds;
+    }
+}
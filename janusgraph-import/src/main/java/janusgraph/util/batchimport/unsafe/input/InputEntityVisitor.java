@@ -47,6 +47,22 @@ public interface InputEntityVisitor extends Closeable
 
     void endOfEntity() throws IOException;
 
+    /**
+     * called before the entities of a chunk are visited.
+     *
+     * @param ordinal number of the chunk in the order the input read its chunks, -1 if the input doesn't number them.
+     */
+    default void startOfChunk( long ordinal )
+    {
+    }
+
+    /**
+     * called after every entity of a chunk has been visited, importers which buffer a chunk write it here.
+     */
+    default void endOfChunk()
+    {
+    }
+
     class Adapter implements InputEntityVisitor
     {
         @Override
@@ -26,6 +26,8 @@ public class CsvGroupInputIterator extends InputIterator.Adapter
     private final Groups groups;
     private CsvInputIterator current;
     private int groupId;
+    // chunks are filled one at a time, in the order of the data
+    private long chunks;
 
     public CsvGroupInputIterator( Iterator<DataFactory> source, Header.Factory headerFactory,
             IdType idType, Configuration config, Collector badCollector, Groups groups )
@@ -67,6 +69,7 @@ public class CsvGroupInputIterator extends InputIterator.Adapter
 
             if ( current.next( (CsvInputChunkProxy) chunk ) )
             {
+                ((CsvInputChunkProxy) chunk).ordinal( chunks++ );
                 return true;
             }
             current.close();
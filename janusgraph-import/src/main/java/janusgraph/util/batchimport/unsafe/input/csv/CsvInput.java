@@ -2,6 +2,8 @@ package janusgraph.util.batchimport.unsafe.input.csv;
 
 import janusgraph.util.batchimport.unsafe.graph.GraphUtil;
 import janusgraph.util.batchimport.unsafe.helps.collection.RawIterator;
+import janusgraph.util.batchimport.unsafe.idmapper.ExistingNodes;
+import janusgraph.util.batchimport.unsafe.idmapper.IdEncoder;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
 import janusgraph.util.batchimport.unsafe.input.*;
@@ -11,10 +13,12 @@ import janusgraph.util.batchimport.unsafe.input.reader.MultiReadable;
 import janusgraph.util.batchimport.unsafe.helps.ByteUnit;
 import janusgraph.util.batchimport.unsafe.input.reader.CharSeekers;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.ToIntFunction;
 
 import static janusgraph.util.batchimport.unsafe.input.Collector.EMPTY;
@@ -158,9 +162,40 @@ public class CsvInput implements Input
     }
 
     @Override
-    public IdMapper idMapper(NumberArrayFactory numberArrayFactory )
+    public IdMapper idMapper( NumberArrayFactory numberArrayFactory, IdEncoder encoder )
     {
-        return idType.idMapper( numberArrayFactory, groups );
+        return idType.idMapper( numberArrayFactory, groups, encoder );
+    }
+
+    @Override
+    public IdMapper idMapper( File saved, IdEncoder encoder ) throws IOException
+    {
+        return idType.loadIdMapper( saved, groups, encoder );
+    }
+
+    @Override
+    public ExistingNodes existingNodes( File[] files, NumberArrayFactory numberArrayFactory, IdEncoder encoder )
+            throws IOException
+    {
+        if ( !idType.idsAreExternal() )
+        {
+            throw new IllegalArgumentException( IdType.ACTUAL + " ids are the vertex ids, existing nodes aren't looked up" );
+        }
+        Function<String,Object> ids = idType == IdType.INTEGER ? Long::valueOf : id -> id;
+        ExistingNodes existingNodes = new ExistingNodes( idMapper( numberArrayFactory, encoder ), numberArrayFactory );
+        try
+        {
+            for ( File file : files )
+            {
+                existingNodes.read( file, groups, ids );
+            }
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            existingNodes.close();
+            throw e;
+        }
+        return existingNodes;
     }
 
     @Override
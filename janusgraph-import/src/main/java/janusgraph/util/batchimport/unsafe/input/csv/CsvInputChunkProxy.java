@@ -20,6 +20,7 @@ public class CsvInputChunkProxy implements CsvInputChunk
 {
     private CsvInputChunk actual;
     private int groupId = -1;
+    private long ordinal = -1;
 
     public void ensureInstantiated( Supplier<CsvInputChunk> newChunk, int groupId ) throws IOException
     {
@@ -31,6 +32,17 @@ public class CsvInputChunkProxy implements CsvInputChunk
         this.groupId = groupId;
     }
 
+    void ordinal( long ordinal )
+    {
+        this.ordinal = ordinal;
+    }
+
+    @Override
+    public long ordinal()
+    {
+        return ordinal;
+    }
+
     @Override
     public void close() throws IOException
     {
@@ -1,6 +1,7 @@
 package janusgraph.util.batchimport.unsafe.input.csv;
 
 
+import janusgraph.util.batchimport.unsafe.idmapper.IdEncoder;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMappers;
 import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
@@ -8,6 +9,9 @@ import janusgraph.util.batchimport.unsafe.input.Groups;
 import janusgraph.util.batchimport.unsafe.input.reader.Extractor;
 import janusgraph.util.batchimport.unsafe.input.reader.Extractors;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Defines different types that input ids can come in. Enum names in here are user facing.
  *
@@ -27,9 +31,15 @@ public enum IdType
         }
 
         @Override
-        public IdMapper<String> idMapper(NumberArrayFactory numberArrayFactory, Groups groups )
+        public IdMapper<String> idMapper( NumberArrayFactory numberArrayFactory, Groups groups, IdEncoder encoder )
+        {
+            return IdMappers.strings( numberArrayFactory, groups, encoder );
+        }
+
+        @Override
+        public IdMapper<String> loadIdMapper( File file, Groups groups, IdEncoder encoder ) throws IOException
         {
-            return IdMappers.strings( numberArrayFactory, groups );
+            return IdMappers.loadStrings( file, groups, encoder );
         }
     },
 
@@ -46,9 +56,15 @@ public enum IdType
         }
 
         @Override
-        public IdMapper idMapper( NumberArrayFactory numberArrayFactory, Groups groups )
+        public IdMapper<Long> idMapper( NumberArrayFactory numberArrayFactory, Groups groups, IdEncoder encoder )
+        {
+            return IdMappers.longs( numberArrayFactory, groups );
+        }
+
+        @Override
+        public IdMapper<Long> loadIdMapper( File file, Groups groups, IdEncoder encoder ) throws IOException
         {
-            return null;
+            return IdMappers.loadLongs( file, groups );
         }
     },
 
@@ -65,10 +81,16 @@ public enum IdType
         }
 
         @Override
-        public IdMapper idMapper( NumberArrayFactory numberArrayFactory, Groups groups )
+        public IdMapper idMapper( NumberArrayFactory numberArrayFactory, Groups groups, IdEncoder encoder )
         {
             return IdMappers.actual();
         }
+
+        @Override
+        public IdMapper loadIdMapper( File file, Groups groups, IdEncoder encoder )
+        {   // Nothing was saved, ids are the actual ones
+            return IdMappers.actual();
+        }
     };
 
     private final boolean idsAreExternal;
@@ -78,7 +100,17 @@ public enum IdType
         this.idsAreExternal = idsAreExternal;
     }
 
-    public abstract IdMapper idMapper( NumberArrayFactory numberArrayFactory, Groups groups );
+    /**
+     * @param encoder how {@link #STRING} ids are encoded, ignored by the others.
+     */
+    public abstract IdMapper idMapper( NumberArrayFactory numberArrayFactory, Groups groups, IdEncoder encoder );
+
+    /**
+     * @param file where a prepared {@link IdMapper} of this type was {@link IdMapper#save(File, janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile.Layout) saved}.
+     * @param groups the saved groups are created in it.
+     * @param encoder the one it was created with.
+     */
+    public abstract IdMapper loadIdMapper( File file, Groups groups, IdEncoder encoder ) throws IOException;
 
     public boolean idsAreExternal()
     {
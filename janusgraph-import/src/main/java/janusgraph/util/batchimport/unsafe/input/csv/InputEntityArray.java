@@ -11,10 +11,11 @@ import java.util.Arrays;
 
 /**
  * An array of {@link InputEntity} looking like an {@link InputEntityVisitor} to be able to fit into thinks like {@link Decorator}.
+ * Grows if more entities are visited than its initial length.
  */
 public class InputEntityArray implements InputEntityVisitor
 {
-    private final InputEntity[] entities;
+    private InputEntity[] entities;
     private int cursor;
 
     public InputEntityArray(int length )
@@ -118,6 +119,10 @@ public class InputEntityArray implements InputEntityVisitor
 
     private InputEntity currentEntity()
     {
+        if ( cursor == entities.length )
+        {
+            entities = Arrays.copyOf( entities, Math.max( 16, entities.length * 2 ) );
+        }
         if ( entities[cursor] == null )
         {
             entities[cursor] = new InputEntity();
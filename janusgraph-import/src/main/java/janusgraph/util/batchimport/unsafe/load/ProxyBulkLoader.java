@@ -1,7 +1,9 @@
 package janusgraph.util.batchimport.unsafe.load;
 
 import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.load.berkeleyje.BerkeleyJELoader;
 import janusgraph.util.batchimport.unsafe.load.cassandra.CassandraSSTableLoader;
+import janusgraph.util.batchimport.unsafe.load.hbase.HbaseHFileLoader;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 
 import java.io.File;
@@ -25,7 +27,9 @@ public class ProxyBulkLoader implements BulkLoader {
         if ("cassandrathrift".equals(backend)){
             real = new CassandraSSTableLoader();
         }else if ("hbase".equals(backend)){
-            // ignore
+            real = new HbaseHFileLoader();
+        }else if ("berkeleyje".equals(backend)){
+            real = new BerkeleyJELoader();
         }else if ("bigtable".equals(backend)){
             // ignore
         }else {
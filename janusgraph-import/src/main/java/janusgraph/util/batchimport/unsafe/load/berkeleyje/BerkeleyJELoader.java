@@ -0,0 +1,207 @@
+package janusgraph.util.batchimport.unsafe.load.berkeleyje;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Durability;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.Transaction;
+import com.sleepycat.je.TransactionConfig;
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.DataImporter;
+import janusgraph.util.batchimport.unsafe.graph.GraphUtil;
+import janusgraph.util.batchimport.unsafe.graph.store.berkeleyje.BerkeleyJEBulkWriter;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
+import janusgraph.util.batchimport.unsafe.load.BulkLoader;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.String.format;
+import static janusgraph.util.batchimport.unsafe.helps.Format.duration;
+import static org.janusgraph.diskstorage.berkeleyje.BerkeleyJEStoreManager.JVM_CACHE;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_DIRECTORY;
+import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.STORAGE_TRANSACTIONAL;
+
+/**
+ * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * inserts the runs every {@link BerkeleyJEBulkWriter} left behind into the berkeleyje environment of the graph. the
+ * graph is closed first, only one handle can write a database. runs are merged so the keys come in btree order.
+ *
+ * databases of the graph are opened with the config they were created with, berkeleyje rejects a transactional one
+ * opened non transactional. they're written in large transactions which don't sync the log on commit, the log is
+ * flushed once at the end. databases which don't exist yet are created like janusgraph would, and written in deferred
+ * write mode when they're non transactional.
+ */
+public class BerkeleyJELoader implements BulkLoader {
+
+    // puts per transaction, a transaction holds a lock per record it writes
+    static final int PUTS_PER_TRANSACTION = 100_000;
+
+    @Override
+    public void load(StandardJanusGraph graph, PrintStream out, PrintStream err, InputStream in, File storeDir,
+                     File logsDir, Configuration configuration) throws Exception {
+
+        org.janusgraph.diskstorage.configuration.Configuration janusConf = graph.getConfiguration().getConfiguration();
+        File directory = new File(janusConf.get(STORAGE_DIRECTORY));
+        int cachePercent = janusConf.get(JVM_CACHE);
+        boolean transactional = janusConf.get(STORAGE_TRANSACTIONAL);
+
+        // the graph holds the databases open, and so does the id assigner
+        GraphUtil.close();
+
+        long start = System.currentTimeMillis();
+        long cells = write(directory, cachePercent, transactional, new File(storeDir, DataImporter.NODE_IMPORT_NAME),
+                new File(storeDir, DataImporter.EDGE_IMPORT_NAME));
+        out.println(format("Inserted %d cells into %s in %s", cells, directory,
+                duration(System.currentTimeMillis() - start)));
+    }
+
+    /**
+     * inserts the runs found below {@code inputs} into the environment in {@code directory}, and removes them.
+     *
+     * @param transactional whether databases which don't exist yet are created transactional, like
+     * {@code storage.transactions} has janusgraph create them.
+     * @return number of cells inserted
+     */
+    public static long write(File directory, int cachePercent, boolean transactional, File... inputs)
+            throws IOException {
+
+        Map<String, List<File>> runs = new TreeMap<>();
+        for (File input : inputs) {
+            collectRuns(input, runs);
+        }
+        if (runs.isEmpty()) {
+            return 0;
+        }
+
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        envConfig.setTransactional(true);
+        envConfig.setCachePercent(cachePercent);
+
+        long cells = 0;
+        Environment environment = new Environment(directory, envConfig);
+        try {
+            List<String> existing = environment.getDatabaseNames();
+            for (Map.Entry<String, List<File>> store : runs.entrySet()) {
+                Database db = environment.openDatabase(null, store.getKey(),
+                        databaseConfig(existing.contains(store.getKey()), transactional));
+                try {
+                    cells += insert(environment, db, store.getKey(), store.getValue());
+                } finally {
+                    db.close();
+                }
+            }
+            // commits didn't sync
+            environment.flushLog(true);
+        } finally {
+            environment.close();
+        }
+
+        for (List<File> files : runs.values()) {
+            for (File run : files) {
+                if (!run.delete()) {
+                    run.deleteOnExit();
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * the config an existing database was created with, or the one janusgraph creates a database with.
+     */
+    private static DatabaseConfig databaseConfig(boolean exists, boolean transactional) {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        if (exists) {
+            dbConfig.setUseExistingConfig(true);
+            return dbConfig;
+        }
+        dbConfig.setAllowCreate(true);
+        dbConfig.setTransactional(transactional);
+        dbConfig.setKeyPrefixing(true);
+        // deferred writes only reach the log when the database is synced, which is not allowed with transactions
+        dbConfig.setDeferredWrite(!transactional);
+        return dbConfig;
+    }
+
+    /**
+     * merges the runs of a store into its database
+     *
+     * @return number of cells inserted
+     */
+    private static long insert(Environment environment, Database db, String store, List<File> runs)
+            throws IOException {
+
+        boolean transactional = db.getConfig().getTransactional();
+        TransactionConfig txnConfig = new TransactionConfig();
+        txnConfig.setDurability(Durability.COMMIT_NO_SYNC);
+        Transaction[] txn = {transactional ? environment.beginTransaction(null, txnConfig) : null};
+        long[] cells = new long[1];
+        try {
+            ExternalCellSorter.merge(runs, (token, key, column, value) -> {
+                db.put(txn[0], new DatabaseEntry(BerkeleyJEBulkWriter.concatenate(store, key, column)),
+                        new DatabaseEntry(bytes(value)));
+                if (++cells[0] % PUTS_PER_TRANSACTION == 0 && txn[0] != null) {
+                    txn[0].commit();
+                    txn[0] = environment.beginTransaction(null, txnConfig);
+                }
+            });
+            if (txn[0] != null) {
+                txn[0].commit();
+                txn[0] = null;
+            }
+        } finally {
+            if (txn[0] != null) {
+                txn[0].abort();
+            }
+        }
+        if (db.getConfig().getDeferredWrite()) {
+            // deferred writes only reach the log here
+            db.sync();
+        }
+        return cells[0];
+    }
+
+    /**
+     * run files by store, from every {@code runs/<store>} directory below {@code dir}
+     */
+    private static void collectRuns(File dir, Map<String, List<File>> runs) {
+        File[] children = dir.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        if (ExternalCellSorter.RUN_DIR_NAME.equals(dir.getName())) {
+            for (File store : children) {
+                File[] files = store.listFiles((d, name) -> name.startsWith(ExternalCellSorter.RUN_FILE_PREFIX));
+                if (files != null && files.length > 0) {
+                    List<File> list = runs.computeIfAbsent(store.getName(), name -> new ArrayList<>());
+                    for (File file : files) {
+                        list.add(file);
+                    }
+                }
+            }
+            return;
+        }
+        for (File child : children) {
+            collectRuns(child, runs);
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
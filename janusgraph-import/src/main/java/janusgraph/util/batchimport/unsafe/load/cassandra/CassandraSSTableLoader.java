@@ -2,7 +2,10 @@ package janusgraph.util.batchimport.unsafe.load.cassandra;
 
 import janusgraph.util.batchimport.unsafe.Configuration;
 import janusgraph.util.batchimport.unsafe.DataImporter;
+import janusgraph.util.batchimport.unsafe.graph.store.cassandra.CassandraSSTableMerger;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
 import janusgraph.util.batchimport.unsafe.helps.ArrayUtil;
+import janusgraph.util.batchimport.unsafe.helps.NumberAwareStringComparator;
 import janusgraph.util.batchimport.unsafe.load.BulkLoader;
 import org.janusgraph.diskstorage.Backend;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
@@ -12,6 +15,8 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.security.Permission;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import static org.janusgraph.diskstorage.cassandra.AbstractCassandraStoreManager.*;
@@ -63,27 +68,25 @@ public class CassandraSSTableLoader implements BulkLoader {
         SecurityManager securityManager = System.getSecurityManager();
         System.setSecurityManager(new NoExitSecurityManager());
 
-        for (int i = 0; i < configuration.maxNumberOfProcessors(); i ++){
-            List<String> nodeList = new ArrayList<>(argList);
-            String path = storeDir.getAbsolutePath() + File.separator + DataImporter.NODE_IMPORT_NAME +
-                    File.separator + i + File.separator + cassConf.get(CASSANDRA_KEYSPACE) + File.separator + Backend.EDGESTORE_NAME;
-            nodeList.add(path);
-
-            try {
-                org.apache.cassandra.tools.BulkLoader.main(nodeList.toArray(new String[nodeList.size()]));
-            } catch (SecurityException e) {
-                out.println("this exception doesn't have impact" + e.getClass());
+        String keySpace = cassConf.get(CASSANDRA_KEYSPACE);
+        List<File> directories = new ArrayList<>();
+        File merged = new File(storeDir, CassandraSSTableMerger.MERGED_DIR_NAME);
+        // composite index entries are in graphindex sstables next to the edgestore ones
+        for (String table : new String[]{Backend.EDGESTORE_NAME, Backend.INDEXSTORE_NAME}){
+            if (merged.isDirectory()){
+                directories.addAll(sstableDirectories(merged, keySpace, table));
+            }else {
+                directories.addAll(sstableDirectories(new File(storeDir, DataImporter.NODE_IMPORT_NAME), keySpace, table));
+                directories.addAll(sstableDirectories(new File(storeDir, DataImporter.EDGE_IMPORT_NAME), keySpace, table));
             }
         }
 
-        for (int i = 0; i < configuration.maxNumberOfProcessors(); i ++){
-            List<String> relationList = new ArrayList<>(argList);
-            String path = storeDir.getAbsolutePath() + File.separator  + DataImporter.EDGE_IMPORT_NAME +
-                    File.separator + i + File.separator + cassConf.get(CASSANDRA_KEYSPACE) + File.separator + Backend.EDGESTORE_NAME;
-            relationList.add(path);
+        for (File directory : directories){
+            List<String> list = new ArrayList<>(argList);
+            list.add(directory.getAbsolutePath());
 
             try {
-                org.apache.cassandra.tools.BulkLoader.main(relationList.toArray(new String[relationList.size()]));
+                org.apache.cassandra.tools.BulkLoader.main(list.toArray(new String[list.size()]));
             } catch (SecurityException e) {
                 out.println("this exception doesn't have impact" + e.getClass());
             }
@@ -91,6 +94,36 @@ public class CassandraSSTableLoader implements BulkLoader {
         System.setSecurityManager(securityManager);
     }
 
+    /**
+     * all {@code keyspace/table} directories below {@code root}, root included, holding sstables, that is
+     * {@code <rank>/keyspace/table} or {@code <rank>/r<range>/keyspace/table} when the sstables are aligned to token
+     * ranges. run files of the sorter are skipped.
+     */
+    static List<File> sstableDirectories(File root, String keySpace, String table) {
+        List<File> directories = new ArrayList<>();
+        collectSSTableDirectories(root, keySpace, table, directories);
+        return directories;
+    }
+
+    private static void collectSSTableDirectories(File dir, String keySpace, String table, List<File> directories) {
+        if (ExternalCellSorter.RUN_DIR_NAME.equals(dir.getName())) {
+            return;
+        }
+        File directory = new File(new File(dir, keySpace), table);
+        String[] data = directory.list((d, name) -> name.endsWith("-Data.db"));
+        if (data != null && data.length > 0) {
+            directories.add(directory);
+        }
+        File[] children = dir.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children, Comparator.comparing(File::getName, NumberAwareStringComparator.INSTANCE));
+        for (File child : children) {
+            collectSSTableDirectories(child, keySpace, table, directories);
+        }
+    }
+
     static class NoExitSecurityManager extends SecurityManager {
         @Override
         public void checkPermission(Permission perm) {
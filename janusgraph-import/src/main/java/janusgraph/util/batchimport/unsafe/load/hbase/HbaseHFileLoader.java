@@ -1,21 +1,136 @@
 package janusgraph.util.batchimport.unsafe.load.hbase;
 
 import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.DataImporter;
+import janusgraph.util.batchimport.unsafe.graph.store.hbase.HbaseHFileWriter;
+import janusgraph.util.batchimport.unsafe.graph.store.sort.ExternalCellSorter;
+import janusgraph.util.batchimport.unsafe.helps.NumberAwareStringComparator;
 import janusgraph.util.batchimport.unsafe.load.BulkLoader;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 
 import java.io.File;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.janusgraph.diskstorage.hbase.HBaseStoreManager.HBASE_TABLE;
 
 /**
  * @author dengziming (swzmdeng@163.com,dengziming1993@gmail.com)
+ *
+ * hands the hfiles of every importer to {@link LoadIncrementalHFiles}. the files are copied to a staging directory
+ * first, region servers can't read our local disk: {@link Configuration#hfileStagingDir()} if set, otherwise the
+ * temporary directory on the file system of {@code hbase.rootdir}, unless that is the local one.
  */
 public class HbaseHFileLoader implements BulkLoader {
 
     @Override
-    public void load(StandardJanusGraph graph, PrintStream out, PrintStream err, InputStream in, File storeDir, File logsDir, Configuration configuration) {
+    public void load(StandardJanusGraph graph, PrintStream out, PrintStream err, InputStream in, File storeDir,
+                     File logsDir, Configuration configuration) throws Exception {
+
+        /*
+         org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles /path/to/databases/Nodes/0/janusgraph janusgraph
+         org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles /path/to/databases/Edges/0/janusgraph janusgraph
+         */
+        out.println("org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles");
+        org.janusgraph.diskstorage.configuration.Configuration janusConf = graph.getConfiguration().getConfiguration();
+        org.apache.hadoop.conf.Configuration conf = HbaseHFileWriter.hbaseConfiguration(janusConf);
+        String tableName = janusConf.get(HBASE_TABLE);
+        TableName name = TableName.valueOf(tableName);
+
+        List<File> directories = new ArrayList<>();
+        directories.addAll(hfileDirectories(new File(storeDir, DataImporter.NODE_IMPORT_NAME), tableName));
+        directories.addAll(hfileDirectories(new File(storeDir, DataImporter.EDGE_IMPORT_NAME), tableName));
+
+        FileSystem fs;
+        Path staging;
+        String stagingName = "janusgraph-import-" + System.currentTimeMillis();
+        if (configuration.hfileStagingDir() != null) {
+            Path stagingDir = new Path(configuration.hfileStagingDir());
+            fs = stagingDir.getFileSystem(conf);
+            staging = new Path(stagingDir, stagingName);
+        } else {
+            // the file system of hbase.rootdir, not fs.defaultFS: a client configured with the quorum only has the
+            // local file system as its default
+            fs = new Path(conf.get(HConstants.HBASE_DIR)).getFileSystem(conf);
+            if (fs instanceof LocalFileSystem) {
+                staging = null;
+                err.println("hbase.rootdir " + conf.get(HConstants.HBASE_DIR) + " is on the local file system, the " +
+                        "hfiles are loaded from " + storeDir + " which every region server has to be able to read. " +
+                        "Set --hfile-staging-dir or storage.hbase.ext.hbase.rootdir otherwise.");
+            } else {
+                staging = fs.makeQualified(new Path(conf.get(HConstants.TEMPORARY_FS_DIRECTORY_KEY, "/tmp"),
+                        stagingName));
+            }
+        }
+
+        try (Connection connection = ConnectionFactory.createConnection(conf);
+             Admin admin = connection.getAdmin();
+             Table table = connection.getTable(name);
+             RegionLocator locator = connection.getRegionLocator(name)) {
+
+            LoadIncrementalHFiles loader = new LoadIncrementalHFiles(conf);
+            for (int i = 0; i < directories.size(); i++) {
+                Path hfiles = new Path(directories.get(i).toURI());
+                if (staging != null) {
+                    Path copy = new Path(staging, String.valueOf(i));
+                    fs.copyFromLocalFile(false, true, hfiles, copy);
+                    hfiles = copy;
+                }
+                out.println(directories.get(i).getAbsolutePath());
+                loader.doBulkLoad(hfiles, admin, table, locator);
+            }
+        } finally {
+            if (staging != null) {
+                fs.delete(staging, true);
+            }
+        }
+    }
+
+    /**
+     * all {@code table} directories below {@code root} holding column family directories, that is
+     * {@code <rank>/table}, in the layout {@link LoadIncrementalHFiles} expects. run files of the sorter are skipped.
+     */
+    static List<File> hfileDirectories(File root, String table) {
+        List<File> directories = new ArrayList<>();
+        collectHFileDirectories(root, table, directories);
+        return directories;
+    }
 
-        // ignore TODO
+    private static void collectHFileDirectories(File dir, String table, List<File> directories) {
+        if (ExternalCellSorter.RUN_DIR_NAME.equals(dir.getName())) {
+            return;
+        }
+        File directory = new File(dir, table);
+        File[] families = directory.listFiles(File::isDirectory);
+        if (families != null && Arrays.stream(families).anyMatch(family -> {
+            String[] hfiles = family.list((d, name) -> name.startsWith(HbaseHFileWriter.REGION_FILE_PREFIX));
+            return hfiles != null && hfiles.length > 0;
+        })) {
+            directories.add(directory);
+            return;
+        }
+        File[] children = dir.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children, Comparator.comparing(File::getName, NumberAwareStringComparator.INSTANCE));
+        for (File child : children) {
+            collectHFileDirectories(child, table, directories);
+        }
     }
 }
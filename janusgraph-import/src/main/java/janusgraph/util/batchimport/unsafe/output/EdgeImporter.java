@@ -1,13 +1,19 @@
 package janusgraph.util.batchimport.unsafe.output;
 
 
+import janusgraph.util.batchimport.unsafe.Configuration;
 import janusgraph.util.batchimport.unsafe.DataImporter;
+import janusgraph.util.batchimport.unsafe.graph.serializer.RelationSerializer;
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
 import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
+import janusgraph.util.batchimport.unsafe.idmapper.ExistingNodes;
+import janusgraph.util.batchimport.unsafe.idmapper.IdLookupCache;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
 import janusgraph.util.batchimport.unsafe.input.Collector;
 import janusgraph.util.batchimport.unsafe.input.Group;
 import janusgraph.util.batchimport.unsafe.input.InputChunk;
+import janusgraph.util.batchimport.unsafe.input.InputEntity;
+import janusgraph.util.batchimport.unsafe.input.InputEntityBatch;
 import org.janusgraph.core.EdgeLabel;
 import org.janusgraph.core.JanusGraphEdge;
 import org.janusgraph.core.JanusGraphVertex;
@@ -19,132 +25,84 @@ import org.janusgraph.graphdb.internal.InternalElement;
 import org.janusgraph.graphdb.internal.InternalRelation;
 import org.janusgraph.graphdb.vertices.StandardVertex;
 
-import static java.lang.String.format;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Imports edges using data from {@link InputChunk}.
  */
 public class EdgeImporter extends EntityImporter
 {
-    private final IdMapper<String> idMapper;
-    private JanusGraphVertex start ;
-    private JanusGraphVertex end;
+    private final EdgeIdResolver resolver;
     private final Collector badCollector;
 
-    protected JanusGraphEdge nodeRecord;
-    private boolean startNotFound = true;
-    private boolean endNotFound = true;
-
-
     private long edgeCount;
 
-    // State to keep in the event of bad edges that need to be handed to the Collector
-    private Object startId;
-    private Group startIdGroup;
-    private Object endId;
-    private Group endIdGroup;
-    private String type;
-    private EdgeLabel edgeLabel;
+    // edges of the current chunk, resolved and written at the end of it
+    private final List<InputEntity> buffered = new ArrayList<>();
+    private int bufferedCount;
+    private long[] nodeIds = new long[0];
+
+    // the edge is written at the end of the entity by direct serialization
+    private final RelationSerializer.InlineProperties edgeProperties = new RelationSerializer.InlineProperties();
 
-    public EdgeImporter(boolean bulkLoading,
+    public EdgeImporter(Configuration config,
                         int numRunners,
                         int threadNum,
                         String title,
-                        IdMapper<String> idMapper,
+                        IdMapper<Object> idMapper,
+                        IdLookupCache lookupCache,
+                        ExistingNodes existingNodes,
                         DataImporter.Monitor monitor,
                         Collector badCollector,
                         StandardJanusGraph graph,
                         BulkIdAssigner idAssigner,
-                        ImportStore janusStore)
+                        ImportStore janusStore,
+                        boolean staged)
     {
-        super(bulkLoading,numRunners,threadNum,title,monitor,graph,idAssigner,janusStore);
-        this.idMapper = idMapper;
+        super(config,numRunners,threadNum,title,monitor,graph,idAssigner,janusStore,staged);
+        this.resolver = new EdgeIdResolver( idMapper, lookupCache, existingNodes, idAssigner );
         this.badCollector = badCollector;
         edgeCount = 0;
-
-        start = null;
-        end = null;
     }
 
     @Override
     public boolean startId( long id )
     {
-        ((InternalElement)start).setId(id);
+        current().startId( id );
         return true;
     }
 
     @Override
     public boolean startId( Object id, Group group )
     {
-
-        long nodeId = nodeId( id, group );
-        this.startId = id;
-        this.startIdGroup = group;
-        if (nodeId == IdMapper.ID_NOT_FOUND){
-            return false;
-        }else {
-            startNotFound = false;
-            start = new StandardVertex(stx, IDManager.getTemporaryVertexID(IDManager.VertexIDType.NormalVertex, temporaryIds.nextID()), ElementLifeCycle.New);
-            ((InternalElement)start).setId(nodeId);
-            return true;
-        }
+        current().startId( id, group );
+        return true;
     }
 
     @Override
     public boolean endId( long id )
     {
-        ((InternalElement)end).setId(id);
+        current().endId( id );
         return true;
     }
 
     @Override
     public boolean endId( Object id, Group group )
     {
-
-        if (startNotFound){
-            return false;
-        }
-        long nodeId = nodeId( id, group );
-        this.endId = id;
-        this.endIdGroup = group;
-        if (nodeId == IdMapper.ID_NOT_FOUND){
-            return false;
-        }else {
-            endNotFound = false;
-            end = new StandardVertex(stx, IDManager.getTemporaryVertexID(IDManager.VertexIDType.NormalVertex, temporaryIds.nextID()), ElementLifeCycle.New);
-            ((InternalElement)end).setId(nodeId);
-            // edge should be added after endId 。
-            nodeRecord = addEdge(start,end,edgeLabel);
-            return true;
-        }
-    }
-
-    private long nodeId( Object id, Group group )
-    {
-        long nodeId = idMapper.get( (String)id, group );
-        if ( nodeId < 0 )
-        {
-            return IdMapper.ID_NOT_FOUND;
-        }
-
-        return nodeId;
+        current().endId( id, group );
+        return true;
     }
 
-
-
     @Override
     public boolean property( String key, Object value )
     {
-        if (nodeRecord == null){
-            return false;
-        }
-        PropertyKey propertyKey = getPropertyKey(key);
-        ((InternalRelation)nodeRecord).setPropertyDirect(propertyKey,value);
-        propertyCount ++;
+        current().property( key, value );
         return true;
     }
 
-
     @Override
     public boolean type( long typeId )
     {
@@ -154,54 +112,151 @@ public class EdgeImporter extends EntityImporter
     @Override
     public boolean type( String type )
     {
-        this.type = type;
-        edgeLabel = getEdgeLabel(type);
-        return type(edgeLabel.longId());
+        current().type( type );
+        return true;
     }
 
     @Override
     public void endOfEntity()
     {
+        try
+        {
+            current().endOfEntity();
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+        bufferedCount++;
+        super.endOfEntity();
+    }
+
+    private InputEntity current()
+    {
+        if ( bufferedCount == buffered.size() )
+        {
+            buffered.add( new InputEntity() );
+        }
+        return buffered.get( bufferedCount );
+    }
+
+    /**
+     * All edges of the chunk are buffered until here, so that their endpoint ids can be looked up in one
+     * {@link EdgeIdResolver#resolve(List, int, long[]) batch}, instead of two random searches per edge.
+     */
+    @Override
+    public void endOfChunk()
+    {
+        if ( nodeIds.length < bufferedCount * 2 )
+        {
+            nodeIds = new long[bufferedCount * 2];
+        }
+        resolver.resolve( buffered, bufferedCount, nodeIds );
+        importEdges( buffered, bufferedCount, nodeIds );
+        bufferedCount = 0;
+    }
+
+    /**
+     * Imports the edges of a batch whose node ids a step before has {@link EdgeIdResolver resolved} already, or
+     * resolves them here if not.
+     */
+    @Override
+    public void importBatch( InputEntityBatch batch )
+    {
+        long[] resolved = batch.nodeIds();
+        if ( resolved == null )
+        {
+            resolved = new long[batch.size() * 2];
+            resolver.resolve( batch.entities(), batch.size(), resolved );
+        }
+        importEdges( batch.entities(), batch.size(), resolved );
+    }
+
+    /**
+     * @param nodeIds node ids resolved by {@link EdgeIdResolver#resolve(List, int, long[])}.
+     */
+    private void importEdges( List<InputEntity> edges, int count, long[] nodeIds )
+    {
+        int lookup = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            InputEntity entity = edges.get( i );
+            if ( entity.objectStartId != null && entity.objectEndId != null )
+            {
+                importEdge( entity, nodeIds[lookup++], nodeIds[lookup++] );
+            }
+            else
+            {
+                importEdge( entity, entity.hasLongStartId ? entity.longStartId : IdMapper.ID_NOT_FOUND,
+                        entity.hasLongEndId ? entity.longEndId : IdMapper.ID_NOT_FOUND );
+            }
+            entity.clear();
+        }
+    }
 
-        if (startNotFound || endNotFound){
+    private void importEdge( InputEntity entity, long startNodeId, long endNodeId )
+    {
+        Object startId = entity.hasLongStartId ? (Object) entity.longStartId : entity.objectStartId;
+        Object endId = entity.hasLongEndId ? (Object) entity.longEndId : entity.objectEndId;
+        boolean startNotFound = startNodeId < 0;
+        boolean endNotFound = endNodeId < 0;
+        if ( startNotFound || endNotFound )
+        {
             try {
-                badCollector.collectBadEdge( startId, group( startIdGroup ).name(), type, endId, group( endIdGroup ).name(),
+                badCollector.collectBadEdge( startId, EdgeIdResolver.group( entity.startIdGroup ).name(),
+                        entity.stringType, endId, EdgeIdResolver.group( entity.endIdGroup ).name(),
                         startNotFound ? startId : endId );
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        }else {
-            // count total
-            edgeCount++;
-            recordCnt ++ ;
-            if (recordCnt == BATCH){
-
-                flush();
-                recordCnt = 0;
+            return;
+        }
+
+        EdgeLabel edgeLabel = getEdgeLabel( entity.stringType );
+        JanusGraphEdge nodeRecord = null;
+        if ( !direct )
+        {
+            JanusGraphVertex start = new StandardVertex(stx, IDManager.getTemporaryVertexID(IDManager.VertexIDType.NormalVertex, temporaryIds.nextID()), ElementLifeCycle.New);
+            ((InternalElement)start).setId(startNodeId);
+            JanusGraphVertex end = new StandardVertex(stx, IDManager.getTemporaryVertexID(IDManager.VertexIDType.NormalVertex, temporaryIds.nextID()), ElementLifeCycle.New);
+            ((InternalElement)end).setId(endNodeId);
+            nodeRecord = addEdge(start,end,edgeLabel);
+        }
+        for ( int i = 0; i < entity.propertyCount(); i++ )
+        {
+            PropertyKey propertyKey = getPropertyKey( (String) entity.propertyKey( i ) );
+            Object value = entity.propertyValue( i );
+            if ( direct )
+            {
+                edgeProperties.set( propertyKey, value );
+            }
+            else
+            {
+                ((InternalRelation)nodeRecord).setPropertyDirect(propertyKey,value);
             }
+            documentProperty( propertyKey, value );
+            propertyCount ++;
         }
-        startId = null;
-        startIdGroup = null;
-        start = null;
-        end = null;
-        endId = null;
-        endIdGroup = null;
-        type = null;
-        edgeLabel = null;
-        startNotFound = true;
-        endNotFound = true;
-        super.endOfEntity();
-    }
 
-    private Group group( Group group )
-    {
-        return group != null ? group : Group.GLOBAL;
-    }
+        long relationId = direct ?
+                writeEdge(startNodeId,endNodeId,edgeLabel,edgeProperties) :
+                nodeRecord.longId();
+        documentEdge(relationId, startNodeId, edgeLabel, endNodeId);
+        edgeProperties.clear();
+        edgeCount++;
+        recordCnt ++ ;
+        if (recordCnt == BATCH){
 
+            flush();
+            recordCnt = 0;
+        }
+    }
 
     @Override
     public void close()
     {
+        // in case the chunk ended without telling
+        endOfChunk();
         flush();
         super.close();
         monitor.edgesImported(edgeCount);
@@ -1,21 +1,35 @@
 package janusgraph.util.batchimport.unsafe.output;
 
+import janusgraph.util.batchimport.unsafe.Configuration;
 import janusgraph.util.batchimport.unsafe.DataImporter;
+import janusgraph.util.batchimport.unsafe.graph.serializer.IndexEntrySerializer;
+import janusgraph.util.batchimport.unsafe.graph.serializer.RelationSerializer;
 import janusgraph.util.batchimport.unsafe.graph.store.BulkMutator;
 import janusgraph.util.batchimport.unsafe.graph.store.BulkMutators;
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStores;
+import janusgraph.util.batchimport.unsafe.graph.store.SerializedEntries;
+import janusgraph.util.batchimport.unsafe.graph.store.VertexEntries;
+import janusgraph.util.batchimport.unsafe.graph.store.elasticsearch.ElasticsearchBulkWriter;
 import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
+import janusgraph.util.batchimport.unsafe.input.InputEntity;
+import janusgraph.util.batchimport.unsafe.input.InputEntityBatch;
 import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
 import org.janusgraph.core.*;
+import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.Backend;
 import org.janusgraph.diskstorage.BackendException;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.database.idassigner.IDPool;
 import org.janusgraph.graphdb.idmanagement.IDManager;
 import org.janusgraph.graphdb.internal.ElementLifeCycle;
 import org.janusgraph.graphdb.internal.InternalRelation;
+import org.janusgraph.graphdb.internal.InternalRelationType;
 import org.janusgraph.graphdb.internal.InternalVertex;
+import org.janusgraph.graphdb.relations.EdgeDirection;
 import org.janusgraph.graphdb.relations.StandardEdge;
 import org.janusgraph.graphdb.relations.StandardVertexProperty;
 import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
@@ -25,6 +39,7 @@ import org.janusgraph.graphdb.types.vertices.PropertyKeyVertex;
 import org.janusgraph.graphdb.vertices.StandardVertex;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -32,6 +47,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
 import static java.lang.String.format;
 
 /**
@@ -40,7 +56,9 @@ import static java.lang.String.format;
  */
 public abstract class EntityImporter extends InputEntityVisitor.Adapter {
 
-    protected final BulkIdAssigner idAssigner;
+    // ids of this thread alone
+    protected final BulkIdAssigner.Lease idAssigner;
+    // null if staged, the entries are then taken by the steps of a stage, see takeSerialized()
     protected final BulkMutator mutator;
     private final ImportStore janusStore;
     protected int recordCnt = 0;
@@ -48,6 +66,22 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
     protected final Collection<InternalRelation> addedRelations = new ArrayList<>(BATCH);
     protected static final int DEFAULT_CAPACITY = 128;
 
+    // direct serialization, entries are written from ids and values without janusgraph elements
+    protected final boolean direct;
+    private final RelationSerializer serializer;
+    private VertexEntries entries;
+    private final RelationSerializer.InlineProperties noProperties = new RelationSerializer.InlineProperties();
+
+    // composite index entries, null when the schema has no composite vertex index
+    private final IndexEntrySerializer indexSerializer;
+    private GroupedMutations indexEntries;
+    private final Configuration config;
+    private final String storePath;
+    private ImportStore indexStore;
+
+    // _bulk files of the mixed indexes backed by elasticsearch, null when there are none
+    private final ElasticsearchBulkWriter documents;
+
     private final StandardJanusGraph graph;
     protected final StandardJanusGraphTx stx;
     JanusGraphManagement mgmt ;
@@ -78,34 +112,49 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
         }
     };
 
-    protected EntityImporter(boolean bulkLoading,
+    protected EntityImporter(Configuration config,
                              int numRunners, // this field is remained to do multi-thread serialize in future edition
                              int rank,
                              String title,
                              DataImporter.Monitor monitor ,
                              StandardJanusGraph graph,
                              BulkIdAssigner idAssigner,
-                             ImportStore janusStore)
+                             ImportStore janusStore,
+                             boolean staged)
     {
 
-        this.idAssigner = idAssigner;
+        this.idAssigner = idAssigner.newLease(config.partitionPolicy());
         this.monitor = monitor;
         this.graph = graph;
         this.stx = (StandardJanusGraphTx) graph.newTransaction();
         this.mgmt = graph.openManagement();
-        if (bulkLoading) {
+        this.direct = config.directSerialization();
+        this.serializer = direct ? new RelationSerializer(graph, stx) : null;
+        this.entries = direct || staged ? new VertexEntries(BATCH * 4) : null;
+        this.config = config;
+        boolean indexed = IndexEntrySerializer.hasCompositeVertexIndex(mgmt);
+        this.indexSerializer = indexed ? new IndexEntrySerializer(graph) : null;
+        this.indexEntries = indexed ? new GroupedMutations(BATCH) : null;
+        if (staged) {
+            this.storePath = null;
+            this.janusStore = null;
+        }else if (config.bulkLoading()) {
+            this.storePath = janusStore.getPath() + File.separator + title + File.separator + rank;
             // BulkImportStoreImpl will write data to SSTable
             this.janusStore = new ImportStores.BulkImportStoreImpl(graph,
-                    janusStore.getPath() + File.separator + title + File.separator + rank,
-                    janusStore.getKeySpace(),janusStore.getTable());
+                    storePath, janusStore.getKeySpace(),janusStore.getTable(), config);
         }else {
+            this.storePath = null;
             // TxImportStoreImpl will write data to janusgraph
             this.janusStore = new ImportStores.TxImportStoreImpl(graph, janusStore.getTable());
         }
+        this.documents = config.mixedIndexBulkSize() > 0 ? ElasticsearchBulkWriter.of(graph, mgmt,
+                new File(janusStore.getPath(), ElasticsearchBulkWriter.DIRECTORY_NAME), title + "-" + rank,
+                config.mixedIndexBulkSize()) : null;
 
 
         //this.mutator = new BulkMutators.ParallelBulkMutator(graph,janusStore,  2);// use 1/3 of all cores. +1 in case of numRunners<3
-        this.mutator = new BulkMutators.BulkMutatorImpl(graph,this.janusStore);
+        this.mutator = staged ? null : new BulkMutators.BulkMutatorImpl(graph,this.janusStore);
     }
 
 
@@ -134,6 +183,36 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
         hasPropertyId = false;
     }
 
+    @Override
+    public void endOfChunk()
+    {
+    }
+
+    /**
+     * imports the entities of a batch parsed by a step before, like a chunk visited by the input.
+     */
+    public void importBatch(InputEntityBatch batch) throws IOException {
+        startOfChunk(batch.ordinal());
+        for (InputEntity entity : batch.entities()) {
+            entity.replayOnto(this);
+        }
+        endOfChunk();
+    }
+
+    /**
+     * @return entries serialized since the last call, for the steps of a stage to sort and write. Only for staged
+     * importers, which write nothing themselves.
+     */
+    public SerializedEntries takeSerialized() {
+        flush();
+        SerializedEntries taken = new SerializedEntries(entries, indexEntries);
+        entries = new VertexEntries(Math.max(DEFAULT_CAPACITY, entries.size()));
+        if (indexEntries != null) {
+            indexEntries = new GroupedMutations(Math.max(DEFAULT_CAPACITY, indexEntries.size()));
+        }
+        return taken;
+    }
+
 
     @Override
     public void close()
@@ -142,7 +221,24 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
         stx.commit();
         stx.close();
         mgmt.commit();
-        mutator.close();
+        if (mutator != null) {
+            mutator.close();
+        }
+        if (indexStore != null) {
+            try {
+                indexStore.close();
+            } catch (IOException e) {
+                throw launderedException(e);
+            }
+        }
+        if (documents != null) {
+            try {
+                documents.close();
+            } catch (IOException e) {
+                throw launderedException(e);
+            }
+        }
+        idAssigner.close();
     }
 
     public static class Monitor
@@ -205,22 +301,24 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
      * tools to add Vertex
      * @param tx
      * @param vertexLabel
+     * @param vertexId id assigned to the vertex
      * @return
      */
-    protected StandardVertex addVertex(StandardJanusGraphTx tx, VertexLabel vertexLabel){
+    protected StandardVertex addVertex(StandardJanusGraphTx tx, VertexLabel vertexLabel, long vertexId){
         StandardVertex vertex = new StandardVertex(tx, IDManager.getTemporaryVertexID(IDManager.VertexIDType.NormalVertex, temporaryIds.nextID()), ElementLifeCycle.New);
 
-        assignID(vertex);
+        vertex.setId(vertexId);
         // also set the label
         addProperty(vertex, BaseKey.VertexExists, Boolean.TRUE);
         addEdge(vertex, vertexLabel, BaseLabel.VertexLabelEdge);
         return vertex;
     }
 
-    protected void addProperty(JanusGraphVertex vertex, PropertyKey key, Object value){
+    protected StandardVertexProperty addProperty(JanusGraphVertex vertex, PropertyKey key, Object value){
         StandardVertexProperty prop = new StandardVertexProperty(IDManager.getTemporaryRelationID(temporaryIds.nextID()), key, (InternalVertex) vertex, value, ElementLifeCycle.New);
         assignID(prop);
         connectRelation(prop);
+        return prop;
     }
 
     /**
@@ -254,10 +352,6 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
     }
 
 
-    protected void assignID(InternalVertex vertex) {
-        idAssigner.assignVertexID(vertex);
-    }
-
     protected void assignID(InternalRelation relation) {
         idAssigner.assignRelationID(relation);
     }
@@ -267,9 +361,131 @@ public abstract class EntityImporter extends InputEntityVisitor.Adapter {
         addedRelations.add(r);
     }
 
+    /**
+     * direct counterpart of {@link #addVertex}
+     */
+    protected void writeVertex(long vertexId, VertexLabel vertexLabel){
+        writeProperty(vertexId, BaseKey.VertexExists, Boolean.TRUE);
+        writeEdge(vertexId, vertexLabel.longId(), BaseLabel.VertexLabelEdge, noProperties);
+    }
+
+    /**
+     * direct counterpart of {@link #addProperty}
+     * @return id of the property
+     */
+    protected long writeProperty(long vertexId, PropertyKey key, Object value){
+        long relationId = idAssigner.nextRelationId();
+        if (((InternalRelationType) key).getStatus() == SchemaStatus.DISABLED) return relationId;
+        entries.add(vertexId, serializer.writeProperty(key, relationId, value));
+        return relationId;
+    }
+
+    /**
+     * remembers a property of the current vertex for its composite index entries
+     */
+    protected void indexProperty(PropertyKey key, long relationId, Object value){
+        if (indexSerializer != null) {
+            indexSerializer.property(key, relationId, value);
+        }
+    }
+
+    /**
+     * writes the composite index entries of the vertex whose properties were given to {@link #indexProperty}
+     */
+    protected void indexVertex(long vertexId, VertexLabel vertexLabel){
+        if (indexSerializer != null) {
+            indexSerializer.endVertex(vertexId, vertexLabel, indexEntries);
+        }
+    }
+
+    /**
+     * remembers a property of the current vertex or edge for its mixed index documents
+     */
+    protected void documentProperty(PropertyKey key, Object value){
+        if (documents != null) {
+            documents.property(key, value);
+        }
+    }
+
+    /**
+     * writes the mixed index documents of the vertex whose properties were given to {@link #documentProperty}
+     */
+    protected void documentVertex(long vertexId, VertexLabel vertexLabel){
+        if (documents != null) {
+            try {
+                documents.endVertex(vertexId, vertexLabel);
+            } catch (IOException e) {
+                // short _bulk files would leave the mixed indexes out of sync with the store
+                throw launderedException(e);
+            }
+        }
+    }
+
+    /**
+     * writes the mixed index documents of the edge whose properties were given to {@link #documentProperty}
+     */
+    protected void documentEdge(long relationId, long outVertexId, EdgeLabel label, long inVertexId){
+        if (documents != null) {
+            try {
+                documents.endEdge(relationId, outVertexId, label, inVertexId);
+            } catch (IOException e) {
+                throw launderedException(e);
+            }
+        }
+    }
+
+    /**
+     * the graphindex next to the edgestore, created when there are entries to write
+     */
+    private ImportStore indexStore(){
+        if (indexStore == null) {
+            if (config.bulkLoading()) {
+                indexStore = new ImportStores.BulkImportStoreImpl(graph, storePath,
+                        janusStore.getKeySpace(), Backend.INDEXSTORE_NAME, config);
+            }else {
+                indexStore = new ImportStores.TxImportStoreImpl(graph, Backend.INDEXSTORE_NAME);
+            }
+        }
+        return indexStore;
+    }
+
+    /**
+     * direct counterpart of {@link #addEdge}, writes an entry for every direction covered by the label
+     * @return id of the edge
+     */
+    protected long writeEdge(long outVertexId, long inVertexId, EdgeLabel label,
+                             RelationSerializer.InlineProperties properties){
+        long relationId = idAssigner.nextRelationId();
+        InternalRelationType type = (InternalRelationType) label;
+        if (type.getStatus() == SchemaStatus.DISABLED) return relationId;
+        for (int pos = 0; pos < 2; pos++) {
+            if (!type.isUnidirected(Direction.BOTH) && !type.isUnidirected(EdgeDirection.fromPosition(pos)))
+                continue; //Directionality is not covered
+            long vertexId = pos == 0 ? outVertexId : inVertexId;
+            long otherVertexId = pos == 0 ? inVertexId : outVertexId;
+            entries.add(vertexId, serializer.writeEdge(type, pos, otherVertexId, relationId, properties));
+        }
+        return relationId;
+    }
+
     protected void flush() {
 
+        if (mutator == null) {
+            // staged, the relations are serialized here and written by the steps after this one
+            if (!direct) {
+                BulkMutators.serialize(graph, stx, addedRelations, entries);
+            }
+            return;
+        }
         try {
+            if (indexEntries != null && !indexEntries.isEmpty()) {
+                indexStore().mutateEdges(indexEntries);
+                indexEntries.clear();
+            }
+            if (direct) {
+                mutator.mutateEntries(entries);
+                return;
+            }
             mutator.mutateMany(stx,addedRelations);
         } catch (BackendException e) {
             e.printStackTrace();
@@ -1,9 +1,15 @@
 package janusgraph.util.batchimport.unsafe.output;
 
+import janusgraph.util.batchimport.unsafe.Configuration;
 import janusgraph.util.batchimport.unsafe.DataImporter;
 import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
 import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
+import janusgraph.util.batchimport.unsafe.idassigner.PositionalIds;
+import janusgraph.util.batchimport.unsafe.idmapper.DuplicateInputIds;
 import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMappingWriter;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.InputIdStore;
+import janusgraph.util.batchimport.unsafe.input.Collector;
 import janusgraph.util.batchimport.unsafe.input.Group;
 import org.janusgraph.core.JanusGraphVertex;
 import org.janusgraph.core.PropertyKey;
@@ -12,6 +18,10 @@ import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.internal.ElementLifeCycle;
 import org.janusgraph.graphdb.vertices.StandardVertex;
 
+import java.io.File;
+import java.io.IOException;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.launderedException;
 import static java.lang.Long.max;
 import static java.util.Arrays.copyOf;
 
@@ -20,7 +30,20 @@ import static java.util.Arrays.copyOf;
  */
 public class NodeImporter extends EntityImporter{
 
-    private final IdMapper<String> idMapper;
+    private final IdMapper<Object> idMapper;
+    // original input ids for collision resolution, null if the id mapper doesn't need them
+    private final InputIdStore inputIds;
+    // input id to vertex id of every node, null if not exported
+    private final IdMappingWriter idMapping;
+    // ids found more than once by a pre-pass over the nodes, null if there was none
+    private final DuplicateInputIds duplicates;
+    private final Collector badCollector;
+    // the current node is a duplicate and nothing of it is written
+    private boolean skipping;
+    // vertex ids by the position of the node in the input, null if they're leased as the nodes come
+    private final PositionalIds positions;
+    private long chunkOrdinal = -1;
+    private long row;
 
     private String[] labels = new String[10];
     private int labelsCursor;
@@ -29,24 +52,44 @@ public class NodeImporter extends EntityImporter{
     private long highestId = -1;
     private boolean hasLabelField;
     private JanusGraphVertex nodeRecord;
+    private long nodeId;
+    private VertexLabel nodeLabel;
 
-    public NodeImporter(boolean bulkLoading,
+    public NodeImporter(Configuration config,
                         int numRunners,
                         int threadNum,
                         String title,
-                        IdMapper<String> idMapper,
+                        IdMapper<Object> idMapper,
+                        InputIdStore inputIds,
+                        DuplicateInputIds duplicates,
+                        PositionalIds positions,
+                        Collector badCollector,
                         DataImporter.Monitor monitor ,
                         StandardJanusGraph graph,
                         BulkIdAssigner idAssigner,
-                        ImportStore janusStore
+                        ImportStore janusStore,
+                        boolean staged
                         ) {
-        super(bulkLoading,numRunners,threadNum,title,monitor,graph,idAssigner,janusStore);
+        super(config,numRunners,threadNum,title,monitor,graph,idAssigner,janusStore,staged);
         this.idMapper = idMapper;
+        this.inputIds = inputIds;
+        this.duplicates = duplicates;
+        this.positions = positions;
+        this.badCollector = badCollector;
+        this.idMapping = config.exportIdMapping() ? idMappingWriter(janusStore, title + "-" + threadNum) : null;
 
         nodeRecord = new StandardVertex(stx, -1, ElementLifeCycle.New);// temp id
     }
 
 
+    private static IdMappingWriter idMappingWriter(ImportStore janusStore, String name) {
+        try {
+            return new IdMappingWriter(new File(janusStore.getPath(), IdMappingWriter.DIRECTORY_NAME), name);
+        } catch (IOException e) {
+            throw launderedException( e );
+        }
+    }
+
     @Override
     public boolean id( long id )
     {
@@ -54,16 +97,59 @@ public class NodeImporter extends EntityImporter{
         return true;
     }
 
+    @Override
+    public void startOfChunk( long ordinal )
+    {
+        chunkOrdinal = ordinal;
+        row = 0;
+    }
+
     @Override
     public boolean id( Object id, Group group )
     {
+        // duplicates take their position too, the positions are the ones counted
+        long position = row++;
+        if ( duplicates != null && !duplicates.claim( id, group ) )
+        {
+            skipping = true;
+            try
+            {
+                badCollector.collectDuplicateNode( id, IdMapper.ID_NOT_FOUND, group.name() );
+            }
+            catch ( Exception e )
+            {   // too many of them, or they aren't skipped
+                throw launderedException( e );
+            }
+            return true;
+        }
 
         //
         VertexLabel vertexLabel = getVertexLabel(group.name());
+        nodeLabel = vertexLabel;
+
+        nodeId = positions != null ? positions.vertexId( chunkOrdinal, position )
+                : idAssigner.nextVertexId( id, vertexLabel.longId() );
+        if (direct){
+            writeVertex(nodeId, vertexLabel);
+        }else {
+            nodeRecord = addVertex(stx,vertexLabel,nodeId);
+        }
 
-        nodeRecord = addVertex(stx,vertexLabel);// tmp id
-
-        idMapper.put( (String) id, group, nodeRecord.longId() );
+        long nodeIndex = idAssigner.vertexIndex( nodeId );
+        idMapper.put( id, group, nodeIndex );
+        if ( inputIds != null )
+        {
+            inputIds.add( nodeIndex, id.toString() );
+        }
+        if ( idMapping != null )
+        {
+            try {
+                idMapping.write( group, id, nodeId );
+            } catch (IOException e) {
+                // an incomplete mapping would be trusted by whatever joins on it, e.g. --existing-nodes
+                throw launderedException( e );
+            }
+        }
 
         return true;
     }
@@ -71,8 +157,17 @@ public class NodeImporter extends EntityImporter{
     @Override
     public boolean property(PropertyKey key, Object value )
     {
+        if ( skipping )
+        {
+            return true;
+        }
         propertyCount ++;
-        addProperty(nodeRecord,key,value);
+        if (direct){
+            indexProperty(key, writeProperty(nodeId,key,value), value);
+        }else {
+            indexProperty(key, addProperty(nodeRecord,key,value).longId(), value);
+        }
+        documentProperty(key, value);
         return true;
     }
 
@@ -99,8 +194,16 @@ public class NodeImporter extends EntityImporter{
     @Override
     public void endOfEntity()
     {
+        if ( skipping )
+        {
+            skipping = false;
+            super.endOfEntity();
+            return;
+        }
         nodeCount ++;
         recordCnt ++;
+        indexVertex(nodeId, nodeLabel);
+        documentVertex(nodeId, nodeLabel);
 
         if (recordCnt == BATCH){
 
@@ -118,6 +221,14 @@ public class NodeImporter extends EntityImporter{
     {
         flush();
         super.close();
+        if ( idMapping != null )
+        {
+            try {
+                idMapping.close();
+            } catch (IOException e) {
+                throw launderedException( e );
+            }
+        }
         monitor.nodesImported( nodeCount );
     }
 
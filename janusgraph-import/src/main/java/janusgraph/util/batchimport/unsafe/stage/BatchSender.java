@@ -0,0 +1,9 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+/**
+ * Sends a processed batch downstream, see {@link ProcessorStep#process(Object, BatchSender)}.
+ */
+public interface BatchSender
+{
+    void send( Object batch );
+}
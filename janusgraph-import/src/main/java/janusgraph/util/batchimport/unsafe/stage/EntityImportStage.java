@@ -0,0 +1,46 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
+import janusgraph.util.batchimport.unsafe.input.InputIterable;
+import janusgraph.util.batchimport.unsafe.output.EdgeIdResolver;
+import janusgraph.util.batchimport.unsafe.output.EntityImporter;
+import janusgraph.util.batchimport.unsafe.stats.StatsProvider;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.util.function.IntFunction;
+
+/**
+ * Imports nodes or edges in steps which each get their processors from the {@link DynamicProcessorAssigner}:
+ * <ol>
+ * <li>READ chunks of the input</li>
+ * <li>PARSE the chunks into entities</li>
+ * <li>RESOLVE the vertex ids of the start and end nodes, for edges only</li>
+ * <li>SERIALIZE the entities into entries by {@link EntityImporter importers}</li>
+ * <li>SORT the entries by row key</li>
+ * <li>WRITE the entries into the stores</li>
+ * </ol>
+ */
+public class EntityImportStage extends Stage
+{
+    /**
+     * @param resolvers creates the {@link EdgeIdResolver} of a processor, null when importing nodes.
+     * @param importers creates the staged importer of a processor, given its rank.
+     */
+    public EntityImportStage( String name, Configuration config, InputIterable input,
+                              IntFunction<EdgeIdResolver> resolvers, IntFunction<? extends EntityImporter> importers,
+                              StandardJanusGraph graph, ImportStore janusStore, StatsProvider... statsProviders )
+    {
+        super( name, null, config, Step.RECYCLE_BATCHES );
+        add( new ReadChunksStep( control(), config, input ) );
+        add( new ParseChunksStep( control(), config ) );
+        if ( resolvers != null )
+        {
+            add( new ResolveEdgeIdsStep( control(), config, resolvers ) );
+        }
+        add( new ImportEntitiesStep( control(), config, importers, statsProviders ) );
+        add( new SortEntriesStep( control(), config, graph ) );
+        add( new WriteEntriesStep( control(), config, graph, janusStore, name ) );
+    }
+}
@@ -11,6 +11,7 @@ public class GatheringMemoryStatsVisitor implements MemoryStatsVisitor
 {
     private long heapUsage;
     private long offHeapUsage;
+    private long fileUsage;
 
     @Override
     public void heapUsage( long bytes )
@@ -24,6 +25,12 @@ public class GatheringMemoryStatsVisitor implements MemoryStatsVisitor
         offHeapUsage += bytes;
     }
 
+    @Override
+    public void fileUsage( long bytes )
+    {
+        fileUsage += bytes;
+    }
+
     public long getHeapUsage()
     {
         return heapUsage;
@@ -34,6 +41,14 @@ public class GatheringMemoryStatsVisitor implements MemoryStatsVisitor
         return offHeapUsage;
     }
 
+    public long getFileUsage()
+    {
+        return fileUsage;
+    }
+
+    /**
+     * @return memory usage, i.e. without {@link #getFileUsage() file usage}.
+     */
     public long getTotalUsage()
     {
         return heapUsage + offHeapUsage;
@@ -42,7 +57,8 @@ public class GatheringMemoryStatsVisitor implements MemoryStatsVisitor
     @Override
     public String toString()
     {
-        return "Memory usage[heap:" + ByteUnit.bytes( heapUsage ) + ", off-heap:" + ByteUnit.bytes( offHeapUsage ) + "]";
+        return "Memory usage[heap:" + ByteUnit.bytes( heapUsage ) + ", off-heap:" + ByteUnit.bytes( offHeapUsage ) +
+                ", file:" + ByteUnit.bytes( fileUsage ) + "]";
     }
 
     public static long totalMemoryUsageOf( MemoryStatsVisitor.Visitable... memoryUsers )
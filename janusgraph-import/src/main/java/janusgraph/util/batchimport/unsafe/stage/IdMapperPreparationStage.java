@@ -18,10 +18,10 @@ public class IdMapperPreparationStage extends Stage
 {
     public static final String NAME = "Prepare node index";
 
-    public IdMapperPreparationStage(Configuration config, IdMapper idMapper,
+    public IdMapperPreparationStage(Configuration config, IdMapper idMapper, LongFunction<?> inputIdLookup,
                                     Collector collector, StatsProvider memoryUsageStats )
     {
         super( NAME, null, config, 0 );
-        add( new IdMapperPreparationStep( control(), config, idMapper, collector, memoryUsageStats ) );
+        add( new IdMapperPreparationStep( control(), config, idMapper, inputIdLookup, collector, memoryUsageStats ) );
     }
 }
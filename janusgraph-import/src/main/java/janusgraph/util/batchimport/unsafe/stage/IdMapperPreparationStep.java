@@ -16,20 +16,26 @@ import java.util.function.LongFunction;
 public class IdMapperPreparationStep extends LonelyProcessingStep
 {
     private final IdMapper idMapper;
+    private final LongFunction<?> inputIdLookup;
     private final Collector collector;
 
+    /**
+     * @param inputIdLookup original input id by node index, may be {@code null} if the id mapper
+     * doesn't {@link IdMapper#needsInputIdLookup() need} it.
+     */
     public IdMapperPreparationStep(StageControl control, Configuration config,
-                                   IdMapper idMapper,  Collector collector,
+                                   IdMapper idMapper, LongFunction<?> inputIdLookup, Collector collector,
                                    StatsProvider... additionalStatsProviders )
     {
         super( control, "" /*named later in the progress listener*/, config, additionalStatsProviders );
         this.idMapper = idMapper;
+        this.inputIdLookup = inputIdLookup;
         this.collector = collector;
     }
 
     @Override
     protected void process() throws Exception {
-        idMapper.prepare( null, collector, new ProgressListener.Adapter()
+        idMapper.prepare( inputIdLookup, collector, new ProgressListener.Adapter()
         {
             @Override
             public void started( String task )
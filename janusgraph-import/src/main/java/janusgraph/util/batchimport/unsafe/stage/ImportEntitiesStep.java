@@ -0,0 +1,74 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.graph.store.SerializedEntries;
+import janusgraph.util.batchimport.unsafe.input.InputEntityBatch;
+import janusgraph.util.batchimport.unsafe.output.EntityImporter;
+import janusgraph.util.batchimport.unsafe.stats.DetailLevel;
+import janusgraph.util.batchimport.unsafe.stats.GenericStatsProvider;
+import janusgraph.util.batchimport.unsafe.stats.Keys;
+import janusgraph.util.batchimport.unsafe.stats.Stats;
+import janusgraph.util.batchimport.unsafe.stats.StatsProvider;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Lets an {@link EntityImporter} import a batch of entities, sending the entries it serialized them into downstream
+ * instead of writing them. The importers are closed when the stage is.
+ */
+public class ImportEntitiesStep extends ProcessorStep<InputEntityBatch>
+{
+    private final ProcessorResources<EntityImporter> importers;
+    private final LongAdder entities = new LongAdder();
+    private final GenericStatsProvider progress = new GenericStatsProvider();
+
+    public ImportEntitiesStep( StageControl control, Configuration config,
+                               IntFunction<? extends EntityImporter> importers,
+                               StatsProvider... additionalStatsProviders )
+    {
+        super( control, "SERIALIZE", config, 0, additionalStatsProviders );
+        this.importers = new ProcessorResources<>( importers::apply );
+        progress.add( Keys.progress, new Stats.LongBasedStat( DetailLevel.BASIC )
+        {
+            @Override
+            public long asLong()
+            {
+                return entities.sum();
+            }
+        } );
+    }
+
+    @Override
+    protected void process( InputEntityBatch batch, BatchSender sender ) throws Exception
+    {
+        SerializedEntries serialized;
+        EntityImporter importer = importers.acquire();
+        try
+        {
+            importer.importBatch( batch );
+            serialized = importer.takeSerialized();
+        }
+        finally
+        {
+            importers.release( importer );
+        }
+        entities.add( batch.size() );
+        sender.send( serialized );
+    }
+
+    @Override
+    protected void collectStatsProviders( Collection<StatsProvider> into )
+    {
+        super.collectStatsProviders( into );
+        into.add( progress );
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        importers.forEach( EntityImporter::close );
+    }
+}
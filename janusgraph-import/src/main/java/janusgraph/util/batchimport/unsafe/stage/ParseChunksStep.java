@@ -0,0 +1,33 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.input.InputChunk;
+import janusgraph.util.batchimport.unsafe.input.InputEntityBatch;
+import janusgraph.util.batchimport.unsafe.input.csv.InputEntityArray;
+
+/**
+ * Parses every entity of a {@link InputChunk chunk} into an {@link InputEntityBatch}, so that the steps after this
+ * one don't need to know about the input format. The chunk is recycled when it's parsed.
+ */
+public class ParseChunksStep extends ProcessorStep<InputChunk>
+{
+    private static final int INITIAL_ENTITIES = 1024;
+
+    public ParseChunksStep( StageControl control, Configuration config )
+    {
+        super( control, "PARSE", config, 0 );
+    }
+
+    @Override
+    protected void process( InputChunk chunk, BatchSender sender ) throws Exception
+    {
+        InputEntityArray entities = new InputEntityArray( INITIAL_ENTITIES );
+        while ( chunk.next( entities ) )
+        {   // every entity is collected by the array
+        }
+        long ordinal = chunk.ordinal();
+        control.recycle( chunk );
+        sender.send( new InputEntityBatch( entities.toArray(), ordinal ) );
+    }
+}
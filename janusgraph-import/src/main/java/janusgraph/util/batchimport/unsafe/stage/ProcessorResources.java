@@ -0,0 +1,60 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Resources which a processor of a {@link ProcessorStep} uses alone while it processes a batch, like an importer or
+ * a store writer. One is {@link #acquire() acquired} per batch and {@link #release(Object) released} after it, so
+ * there are no more of them than processors ever ran at the same time, however often processors are assigned.
+ *
+ * @param <R> type of resource.
+ */
+public class ProcessorResources<R>
+{
+    private final IntFunction<R> factory;
+    private final Queue<R> idle = new ConcurrentLinkedQueue<>();
+    private final List<R> all = new ArrayList<>();
+
+    /**
+     * @param factory creates a resource, given the number of resources created before it.
+     */
+    public ProcessorResources( IntFunction<R> factory )
+    {
+        this.factory = factory;
+    }
+
+    public R acquire()
+    {
+        R resource = idle.poll();
+        if ( resource == null )
+        {
+            synchronized ( all )
+            {
+                resource = factory.apply( all.size() );
+                all.add( resource );
+            }
+        }
+        return resource;
+    }
+
+    public void release( R resource )
+    {
+        idle.offer( resource );
+    }
+
+    /**
+     * Visits all resources created, once no processor uses them any more, e.g. to close them.
+     */
+    public void forEach( Consumer<? super R> action )
+    {
+        synchronized ( all )
+        {
+            all.forEach( action );
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.stats.StatsProvider;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * {@link Step} which processes the batches it receives on a number of threads, which may change while it runs,
+ * see {@link #processors(int)}. Every processor works on one batch at a time and upstream waits as long as more
+ * batches than processors are queued, so the slowest step of a stage sets the pace and bounds the batches in memory.
+ *
+ * Processed batches are sent downstream by the {@link BatchSender} given to {@link #process(Object, BatchSender)}.
+ * If the stage guarantees {@link Step#ORDER_SEND_DOWNSTREAM} they are passed on ordered by ticket and every
+ * received batch must then be sent exactly once.
+ *
+ * @param <T> the type of batch objects received from upstream.
+ */
+public abstract class ProcessorStep<T> extends AbstractStep<T>
+{
+    private static final long PARK_NANOS = MILLISECONDS.toNanos( 1 );
+
+    private final BlockingQueue<TicketedBatch> queue = new LinkedBlockingQueue<>();
+    private final int maxProcessors;
+    // guarded by this
+    private int processors = 1;
+    // threads still taking batches, more than processors until the ones which are let go notice it
+    private int threads;
+    private int threadNumber;
+    private boolean started;
+
+    /**
+     * @param maxProcessors upper bound of {@link #processors(int)}, 0 for {@link Configuration#maxNumberOfProcessors()}.
+     */
+    protected ProcessorStep( StageControl control, String name, Configuration config, int maxProcessors,
+                             StatsProvider... additionalStatsProviders )
+    {
+        super( control, name, config, additionalStatsProviders );
+        this.maxProcessors = maxProcessors > 0 ? maxProcessors : max( 1, config.maxNumberOfProcessors() );
+    }
+
+    @Override
+    public void start( int orderingGuarantees )
+    {
+        super.start( orderingGuarantees );
+        synchronized ( this )
+        {
+            started = true;
+            startThreads();
+        }
+    }
+
+    @Override
+    public synchronized int processors( int delta )
+    {
+        processors = max( 1, min( processors + delta, maxProcessors ) );
+        if ( started )
+        {
+            startThreads();
+        }
+        return processors;
+    }
+
+    private void startThreads()
+    {
+        while ( threads < processors )
+        {
+            threads++;
+            Thread thread = new Thread( this::work, name() + "-" + threadNumber++ );
+            thread.setDaemon( true );
+            thread.start();
+        }
+    }
+
+    @Override
+    public long receive( long ticket, T batch )
+    {
+        long time = currentTimeMillis();
+        while ( queuedBatches.get() > processors( 0 ) )
+        {
+            assertHealthy();
+            LockSupport.parkNanos( PARK_NANOS );
+        }
+        long idleTime = currentTimeMillis() - time;
+        queuedBatches.incrementAndGet();
+        queue.add( new TicketedBatch( ticket, batch ) );
+        return idleTime;
+    }
+
+    private void work()
+    {
+        try
+        {
+            while ( !letGo() )
+            {
+                long time = currentTimeMillis();
+                TicketedBatch batch = queue.poll( 10, MILLISECONDS );
+                if ( batch == null )
+                {
+                    upstreamIdleTime.add( currentTimeMillis() - time );
+                    continue;
+                }
+                process( batch );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            synchronized ( this )
+            {
+                threads--;
+            }
+        }
+    }
+
+    /**
+     * @return whether the calling thread stops taking batches, because there are more threads than processors or
+     * the work is done.
+     */
+    private synchronized boolean letGo()
+    {
+        if ( threads > processors || !stillWorking() )
+        {
+            threads--;
+            return true;
+        }
+        return false;
+    }
+
+    private void process( TicketedBatch ticketed )
+    {
+        long startTime = nanoTime();
+        try
+        {
+            @SuppressWarnings( "unchecked" )
+            T batch = (T) ticketed.batch;
+            process( batch, processed -> sendDownstream( ticketed.ticket, processed ) );
+            if ( downstream == null || !guarantees( ORDER_SEND_DOWNSTREAM ) )
+            {   // otherwise counted as they're passed on in order
+                doneBatches.incrementAndGet();
+            }
+        }
+        catch ( Throwable e )
+        {
+            issuePanic( e, false );
+        }
+        totalProcessingTime.add( nanoTime() - startTime );
+        queuedBatches.decrementAndGet();
+        try
+        {
+            checkNotifyEndDownstream();
+        }
+        catch ( Throwable e )
+        {   // e.g. from done(), which would otherwise end this processor without ending the stage
+            issuePanic( e, false );
+        }
+    }
+
+    private void sendDownstream( long ticket, Object batch )
+    {
+        if ( guarantees( ORDER_SEND_DOWNSTREAM ) )
+        {
+            try
+            {
+                downstreamWorkSync.apply( new SendDownstream( ticket, batch, downstreamIdleTime ) );
+            }
+            catch ( ExecutionException e )
+            {
+                issuePanic( e.getCause() );
+            }
+        }
+        else
+        {
+            downstreamIdleTime.add( downstream.receive( ticket, batch ) );
+        }
+    }
+
+    /**
+     * Processes a batch, called by any of the processors of this step.
+     *
+     * @param batch batch received from upstream.
+     * @param sender sends batches to the downstream step.
+     */
+    protected abstract void process( T batch, BatchSender sender ) throws Throwable;
+}
@@ -0,0 +1,58 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.stats.StatsProvider;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * First {@link Step} of a {@link Stage}, which doesn't receive batches but produces them on a thread of its own,
+ * handing out the tickets of the stage.
+ */
+public abstract class ProducerStep extends AbstractStep<Void>
+{
+    private long lastSendTime;
+
+    protected ProducerStep( StageControl control, String name, Configuration config,
+                            StatsProvider... additionalStatsProviders )
+    {
+        super( control, name, config, additionalStatsProviders );
+    }
+
+    @Override
+    public long receive( long ticket, Void nothing )
+    {
+        new Thread( name() )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    assertHealthy();
+                    lastSendTime = nanoTime();
+                    process();
+                    endOfUpstream();
+                }
+                catch ( Throwable e )
+                {
+                    issuePanic( e, false );
+                }
+            }
+        }.start();
+        return 0;
+    }
+
+    /**
+     * Called once and produces all batches, sending each by {@link #sendDownstream(Object)}.
+     */
+    protected abstract void process() throws Exception;
+
+    protected void sendDownstream( Object batch )
+    {
+        totalProcessingTime.add( nanoTime() - lastSendTime );
+        downstreamIdleTime.add( downstream.receive( doneBatches.getAndIncrement(), batch ) );
+        lastSendTime = nanoTime();
+    }
+}
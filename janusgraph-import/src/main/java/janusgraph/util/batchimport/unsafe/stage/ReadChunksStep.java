@@ -0,0 +1,48 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.input.InputChunk;
+import janusgraph.util.batchimport.unsafe.input.InputIterable;
+import janusgraph.util.batchimport.unsafe.input.InputIterator;
+
+/**
+ * Reads the {@link InputChunk chunks} of an input, reusing the ones {@link StageControl#recycle(Object) recycled}
+ * after they're parsed.
+ */
+public class ReadChunksStep extends ProducerStep
+{
+    private final InputIterable input;
+    private volatile InputIterator data;
+
+    public ReadChunksStep( StageControl control, Configuration config, InputIterable input )
+    {
+        super( control, "READ", config );
+        this.input = input;
+    }
+
+    @Override
+    protected void process() throws Exception
+    {
+        data = input.iterator();
+        while ( true )
+        {
+            InputChunk chunk = control.reuse( data::newChunk );
+            if ( !data.next( chunk ) )
+            {
+                chunk.close();
+                break;
+            }
+            sendDownstream( chunk );
+        }
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if ( data != null )
+        {
+            data.close();
+        }
+    }
+}
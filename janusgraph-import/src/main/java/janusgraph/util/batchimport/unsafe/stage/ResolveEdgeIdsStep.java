@@ -0,0 +1,39 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.input.InputEntityBatch;
+import janusgraph.util.batchimport.unsafe.output.EdgeIdResolver;
+
+import java.util.function.IntFunction;
+
+/**
+ * Looks up the vertex ids of the start and end nodes of a batch of edges, see {@link InputEntityBatch#nodeIds()}.
+ */
+public class ResolveEdgeIdsStep extends ProcessorStep<InputEntityBatch>
+{
+    private final ProcessorResources<EdgeIdResolver> resolvers;
+
+    public ResolveEdgeIdsStep( StageControl control, Configuration config, IntFunction<EdgeIdResolver> resolvers )
+    {
+        super( control, "RESOLVE", config, 0 );
+        this.resolvers = new ProcessorResources<>( resolvers );
+    }
+
+    @Override
+    protected void process( InputEntityBatch batch, BatchSender sender )
+    {
+        long[] nodeIds = new long[batch.size() * 2];
+        EdgeIdResolver resolver = resolvers.acquire();
+        try
+        {
+            resolver.resolve( batch.entities(), batch.size(), nodeIds );
+        }
+        finally
+        {
+            resolvers.release( resolver );
+        }
+        batch.nodeIds( nodeIds );
+        sender.send( batch );
+    }
+}
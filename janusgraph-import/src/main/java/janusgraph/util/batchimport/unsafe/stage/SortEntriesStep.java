@@ -0,0 +1,28 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.graph.store.SerializedEntries;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+/**
+ * Sorts the serialized edgestore entries of a batch by vertex and groups them by row key, see
+ * {@link SerializedEntries#group(StandardJanusGraph)}.
+ */
+public class SortEntriesStep extends ProcessorStep<SerializedEntries>
+{
+    private final StandardJanusGraph graph;
+
+    public SortEntriesStep( StageControl control, Configuration config, StandardJanusGraph graph )
+    {
+        super( control, "SORT", config, 0 );
+        this.graph = graph;
+    }
+
+    @Override
+    protected void process( SerializedEntries batch, BatchSender sender )
+    {
+        batch.group( graph );
+        sender.send( batch );
+    }
+}
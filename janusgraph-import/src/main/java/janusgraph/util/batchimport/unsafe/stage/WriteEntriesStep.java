@@ -0,0 +1,126 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
+import janusgraph.util.batchimport.unsafe.graph.store.ImportStores;
+import janusgraph.util.batchimport.unsafe.graph.store.SerializedEntries;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.File;
+import java.io.IOException;
+
+import static janusgraph.util.batchimport.unsafe.helps.Exceptions.withSuppressed;
+
+/**
+ * Writes the sorted entries of a batch into the stores. Every writer has stores of its own, in the same directories
+ * the importers write into without this stage, so the stores are loaded and merged the same way.
+ */
+public class WriteEntriesStep extends ProcessorStep<SerializedEntries>
+{
+    private final ProcessorResources<Writer> writers;
+    private final StandardJanusGraph graph;
+    private final ImportStore janusStore;
+    private final String title;
+
+    public WriteEntriesStep( StageControl control, Configuration config, StandardJanusGraph graph,
+                             ImportStore janusStore, String title )
+    {
+        super( control, "WRITE", config, 0 );
+        this.graph = graph;
+        this.janusStore = janusStore;
+        this.title = title;
+        this.writers = new ProcessorResources<>( Writer::new );
+    }
+
+    @Override
+    protected void process( SerializedEntries batch, BatchSender sender ) throws BackendException
+    {
+        Writer writer = writers.acquire();
+        try
+        {
+            writer.write( batch );
+        }
+        finally
+        {
+            writers.release( writer );
+        }
+    }
+
+    /**
+     * Closes every writer, which is where sorting stores write their output, and throws the failures of any of them.
+     */
+    @Override
+    public void close() throws Exception
+    {
+        IOException[] failure = new IOException[1];
+        writers.forEach( writer ->
+        {
+            try
+            {
+                writer.close();
+            }
+            catch ( IOException e )
+            {   // the other writers still write their output
+                failure[0] = failure[0] == null ? e : withSuppressed( failure[0], e );
+            }
+        } );
+        if ( failure[0] != null )
+        {
+            throw failure[0];
+        }
+    }
+
+    private class Writer
+    {
+        private final String path;
+        private final ImportStore edges;
+        private ImportStore indexes;
+
+        Writer( int rank )
+        {
+            path = config.bulkLoading()
+                    ? janusStore.getPath() + File.separator + title + File.separator + rank : null;
+            edges = store( janusStore.getTable() );
+        }
+
+        void write( SerializedEntries batch ) throws BackendException
+        {
+            edges.mutateEdges( batch.grouped() );
+            GroupedMutations indexEntries = batch.indexEntries();
+            if ( indexEntries != null && !indexEntries.isEmpty() )
+            {
+                if ( indexes == null )
+                {
+                    indexes = store( Backend.INDEXSTORE_NAME );
+                }
+                indexes.mutateEdges( indexEntries );
+            }
+        }
+
+        private ImportStore store( String table )
+        {
+            return config.bulkLoading()
+                    ? new ImportStores.BulkImportStoreImpl( graph, path, janusStore.getKeySpace(), table, config )
+                    : new ImportStores.TxImportStoreImpl( graph, table );
+        }
+
+        void close() throws IOException
+        {
+            try
+            {
+                edges.close();
+            }
+            finally
+            {
+                if ( indexes != null )
+                {
+                    indexes.close();
+                }
+            }
+        }
+    }
+}
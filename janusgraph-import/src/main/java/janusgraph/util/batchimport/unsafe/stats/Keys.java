@@ -13,6 +13,8 @@ public enum Keys implements Key
     avg_processing_time( "avg", "Average processing time per done batch" ),
     io_throughput( null, "I/O throughput per second" ),
     memory_usage( null, "Memory usage" ),
+    bloom_filter( "bf", "False positive rate of the id mapper's bloom filter" ),
+    lookup_cache( "lc", "Hit rate of the edge importers' id lookup caches" ),
     progress( null, "Progress" ); // overrides progress calculation using done_batches, if this stat exists
 
     private final String shortName;
@@ -0,0 +1,193 @@
+package janusgraph.util.batchimport.unsafe.graph.serializer;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.EdgeLabel;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.Multiplicity;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.idmanagement.IDManager;
+import org.janusgraph.graphdb.internal.ElementLifeCycle;
+import org.janusgraph.graphdb.internal.InternalRelation;
+import org.janusgraph.graphdb.internal.InternalRelationType;
+import org.janusgraph.graphdb.internal.Order;
+import org.janusgraph.graphdb.relations.EdgeDirection;
+import org.janusgraph.graphdb.relations.StandardEdge;
+import org.janusgraph.graphdb.relations.StandardVertexProperty;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
+import org.janusgraph.graphdb.types.StandardEdgeLabelMaker;
+import org.janusgraph.graphdb.types.system.BaseKey;
+import org.janusgraph.graphdb.types.system.BaseLabel;
+import org.janusgraph.graphdb.vertices.StandardVertex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * entries written by {@link RelationSerializer#writeProperty} and {@link RelationSerializer#writeEdge}
+ * must be byte identical to the ones janusgraph writes for the same elements.
+ */
+public class DirectRelationSerializationTest
+{
+    private StandardJanusGraph graph;
+    private StandardJanusGraphTx tx;
+    private RelationSerializer serializer;
+    private long nextId = 1;
+
+    @Before
+    public void setUp()
+    {
+        graph = (StandardJanusGraph) JanusGraphFactory.build().set( "storage.backend", "inmemory" ).open();
+
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.makeVertexLabel( "person" ).make();
+        mgmt.makePropertyKey( "name" ).dataType( String.class ).cardinality( Cardinality.SINGLE ).make();
+        mgmt.makePropertyKey( "tag" ).dataType( String.class ).cardinality( Cardinality.SET ).make();
+        mgmt.makePropertyKey( "score" ).dataType( Integer.class ).cardinality( Cardinality.LIST ).make();
+        PropertyKey since = mgmt.makePropertyKey( "since" ).dataType( Integer.class ).make();
+        PropertyKey weight = mgmt.makePropertyKey( "weight" ).dataType( Double.class ).make();
+        mgmt.makePropertyKey( "note" ).dataType( String.class ).make();
+        mgmt.makeEdgeLabel( "knows" ).multiplicity( Multiplicity.MULTI ).make();
+        mgmt.makeEdgeLabel( "father" ).multiplicity( Multiplicity.MANY2ONE ).make();
+        mgmt.makeEdgeLabel( "follows" ).multiplicity( Multiplicity.MULTI ).unidirected().make();
+        StandardEdgeLabelMaker rated = (StandardEdgeLabelMaker) mgmt.makeEdgeLabel( "rated" ).multiplicity( Multiplicity.MULTI );
+        rated.sortKey( since );
+        rated.sortOrder( Order.DESC );
+        rated.signature( weight );
+        rated.make();
+        mgmt.commit();
+
+        tx = (StandardJanusGraphTx) graph.newTransaction();
+        serializer = new RelationSerializer( graph, tx );
+    }
+
+    @After
+    public void tearDown()
+    {
+        tx.rollback();
+        graph.close();
+    }
+
+    @Test
+    public void shouldWriteVertexPropertiesLikeJanusGraph()
+    {
+        assertProperty( tx.getPropertyKey( "name" ), "tom" );
+        assertProperty( tx.getPropertyKey( "tag" ), "a" );
+        assertProperty( tx.getPropertyKey( "score" ), 42 );
+        assertProperty( BaseKey.VertexExists, Boolean.TRUE );
+    }
+
+    @Test
+    public void shouldWriteVertexLabelEdgeLikeJanusGraph()
+    {
+        VertexLabel person = tx.getVertexLabel( "person" );
+        StandardVertex vertex = vertex();
+        StandardVertex label = new StandardVertex( tx, person.longId(), ElementLifeCycle.New );
+        StandardEdge edge = new StandardEdge( nextId++, BaseLabel.VertexLabelEdge, vertex, label, ElementLifeCycle.New );
+
+        Entry expected = graph.getEdgeSerializer().writeRelation( edge, BaseLabel.VertexLabelEdge, 0, tx );
+        Entry actual = serializer.writeEdge( BaseLabel.VertexLabelEdge, 0, person.longId(), edge.longId(),
+                new RelationSerializer.InlineProperties() );
+        assertEntry( expected, actual );
+    }
+
+    @Test
+    public void shouldWriteEdgesLikeJanusGraph()
+    {
+        for ( String label : new String[]{"knows", "father", "follows", "rated"} )
+        {
+            assertEdge( tx.getEdgeLabel( label ) );
+        }
+    }
+
+    @Test
+    public void shouldKeepEntriesIntactAcrossSlabs()
+    {
+        EdgeLabel knows = tx.getEdgeLabel( "knows" );
+        List<Entry> expected = new ArrayList<>();
+        List<Entry> actual = new ArrayList<>();
+        for ( int i = 0; i < 10_000; i++ )
+        {
+            StandardEdge edge = edge( knows, i );
+            RelationSerializer.InlineProperties properties = properties( edge );
+            for ( int pos = 0; pos < 2; pos++ )
+            {
+                expected.add( graph.getEdgeSerializer().writeRelation( edge, (InternalRelationType) knows, pos, tx ) );
+                actual.add( serializer.writeEdge( (InternalRelationType) knows, pos,
+                        edge.getVertex( (pos + 1) % 2 ).longId(), edge.longId(), properties ) );
+            }
+        }
+        for ( int i = 0; i < expected.size(); i++ )
+        {
+            assertEntry( expected.get( i ), actual.get( i ) );
+        }
+    }
+
+    private void assertProperty( PropertyKey key, Object value )
+    {
+        StandardVertexProperty property = new StandardVertexProperty( nextId++, key, vertex(), value,
+                ElementLifeCycle.New );
+        Entry expected = graph.getEdgeSerializer().writeRelation( property, (InternalRelationType) key, 0, tx );
+        Entry actual = serializer.writeProperty( key, property.longId(), value );
+        assertEntry( expected, actual );
+    }
+
+    private void assertEdge( EdgeLabel label )
+    {
+        InternalRelationType type = (InternalRelationType) label;
+        StandardEdge edge = edge( label, 7 );
+        for ( int pos = 0; pos < 2; pos++ )
+        {
+            if ( !type.isUnidirected( Direction.BOTH ) && !type.isUnidirected( EdgeDirection.fromPosition( pos ) ) )
+            {
+                continue;
+            }
+            Entry expected = graph.getEdgeSerializer().writeRelation( edge, type, pos, tx );
+            Entry actual = serializer.writeEdge( type, pos, edge.getVertex( (pos + 1) % 2 ).longId(), edge.longId(),
+                    properties( edge ) );
+            assertEntry( expected, actual );
+        }
+    }
+
+    private StandardEdge edge( EdgeLabel label, int i )
+    {
+        StandardEdge edge = new StandardEdge( nextId++, label, vertex(), vertex(), ElementLifeCycle.New );
+        edge.setPropertyDirect( tx.getPropertyKey( "note" ), "note" + i );
+        edge.setPropertyDirect( tx.getPropertyKey( "weight" ), i * 0.5 );
+        edge.setPropertyDirect( tx.getPropertyKey( "since" ), 2000 + i );
+        return edge;
+    }
+
+    private RelationSerializer.InlineProperties properties( InternalRelation relation )
+    {
+        RelationSerializer.InlineProperties properties = new RelationSerializer.InlineProperties();
+        for ( PropertyKey key : relation.getPropertyKeysDirect() )
+        {
+            properties.set( key, relation.getValueDirect( key ) );
+        }
+        return properties;
+    }
+
+    private StandardVertex vertex()
+    {
+        long id = graph.getIDManager().getVertexID( nextId++, 0, IDManager.VertexIDType.NormalVertex );
+        return new StandardVertex( tx, id, ElementLifeCycle.New );
+    }
+
+    private static void assertEntry( Entry expected, Entry actual )
+    {
+        assertEquals( expected, actual );
+        assertEquals( expected.getValuePosition(), actual.getValuePosition() );
+        assertEquals( expected.getColumn(), actual.getColumn() );
+        assertEquals( expected.getValue(), actual.getValue() );
+    }
+}
@@ -0,0 +1,144 @@
+package janusgraph.util.batchimport.unsafe.graph.serializer;
+
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.Cardinality;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.JanusGraphVertexProperty;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.graphdb.database.IndexSerializer;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.internal.InternalRelation;
+import org.janusgraph.graphdb.internal.InternalVertex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * composite index entries written by {@link IndexEntrySerializer} must be the ones janusgraph writes for the same
+ * vertex.
+ */
+public class IndexEntrySerializationTest
+{
+    private StandardJanusGraph graph;
+
+    @Before
+    public void setUp()
+    {
+        graph = (StandardJanusGraph) JanusGraphFactory.build().set( "storage.backend", "inmemory" ).open();
+
+        JanusGraphManagement mgmt = graph.openManagement();
+        VertexLabel person = mgmt.makeVertexLabel( "person" ).make();
+        mgmt.makeVertexLabel( "dog" ).make();
+        PropertyKey name = mgmt.makePropertyKey( "name" ).dataType( String.class ).cardinality( Cardinality.SINGLE ).make();
+        PropertyKey tag = mgmt.makePropertyKey( "tag" ).dataType( String.class ).cardinality( Cardinality.SET ).make();
+        PropertyKey age = mgmt.makePropertyKey( "age" ).dataType( Integer.class ).make();
+        mgmt.buildIndex( "byName", Vertex.class ).addKey( name ).unique().buildCompositeIndex();
+        mgmt.buildIndex( "byNameAndTag", Vertex.class ).addKey( name ).addKey( tag ).buildCompositeIndex();
+        mgmt.buildIndex( "personByAge", Vertex.class ).addKey( age ).indexOnly( person ).buildCompositeIndex();
+        mgmt.commit();
+    }
+
+    @After
+    public void tearDown()
+    {
+        graph.close();
+    }
+
+    @Test
+    public void shouldWriteIndexEntriesLikeJanusGraph()
+    {
+        assertIndexEntries( "person", 4 );
+        // personByAge doesn't apply
+        assertIndexEntries( "dog", 3 );
+    }
+
+    @Test
+    public void shouldKnowWhetherThereIsACompositeIndex()
+    {
+        JanusGraphManagement mgmt = graph.openManagement();
+        assertTrue( IndexEntrySerializer.hasCompositeVertexIndex( mgmt ) );
+        mgmt.rollback();
+
+        StandardJanusGraph empty = (StandardJanusGraph) JanusGraphFactory.build().set( "storage.backend", "inmemory" ).open();
+        mgmt = empty.openManagement();
+        assertFalse( IndexEntrySerializer.hasCompositeVertexIndex( mgmt ) );
+        mgmt.rollback();
+        empty.close();
+    }
+
+    private void assertIndexEntries( String label, int expectedEntries )
+    {
+        JanusGraphTransaction tx = graph.newTransaction();
+        JanusGraphVertex created = tx.addVertex( label );
+        created.property( "name", "tom" );
+        created.property( "tag", "a" );
+        created.property( "tag", "b" );
+        created.property( "age", 42 );
+        tx.commit();
+
+        tx = graph.newTransaction();
+        try
+        {
+            InternalVertex vertex = (InternalVertex) tx.getVertex( created.longId() );
+            List<InternalRelation> properties = new ArrayList<>();
+            for ( Object property : vertex.query().properties() )
+            {
+                properties.add( (InternalRelation) property );
+            }
+
+            Set<String> expected = new HashSet<>();
+            for ( IndexSerializer.IndexUpdate update : graph.getIndexSerializer().getIndexUpdates( vertex, properties ) )
+            {
+                if ( update.isCompositeIndex() )
+                {
+                    expected.add( toString( (StaticBuffer) update.getKey(), (Entry) update.getEntry() ) );
+                }
+            }
+
+            IndexEntrySerializer serializer = new IndexEntrySerializer( graph );
+            for ( InternalRelation relation : properties )
+            {
+                JanusGraphVertexProperty property = (JanusGraphVertexProperty) relation;
+                serializer.property( property.propertyKey(), property.longId(), property.value() );
+            }
+            GroupedMutations out = new GroupedMutations( 8 );
+            int entries = serializer.endVertex( vertex.longId(), vertex.vertexLabel(), out );
+
+            Set<String> actual = new HashSet<>();
+            for ( int group = 0; group < out.groups(); group++ )
+            {
+                assertEquals( 1, out.to( group ) - out.from( group ) );
+                actual.add( toString( out.key( group ), out.entry( out.from( group ) ) ) );
+            }
+            assertEquals( expectedEntries, entries );
+            assertEquals( expected, actual );
+        }
+        finally
+        {
+            tx.rollback();
+        }
+    }
+
+    private static String toString( StaticBuffer key, Entry entry )
+    {
+        return Arrays.toString( key.as( StaticBuffer.ARRAY_FACTORY ) ) + " -> " +
+                Arrays.toString( entry.as( StaticBuffer.ARRAY_FACTORY ) ) + "@" + entry.getValuePosition();
+    }
+}
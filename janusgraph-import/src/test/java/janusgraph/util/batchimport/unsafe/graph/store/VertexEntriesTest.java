@@ -0,0 +1,169 @@
+package janusgraph.util.batchimport.unsafe.graph.store;
+
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.util.BufferUtil;
+import org.janusgraph.diskstorage.util.StaticArrayEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class VertexEntriesTest
+{
+    private final Random random = new Random( 42 );
+
+    @Test
+    public void shouldSortByVertexKeepingTheOrderOfEntriesOfAVertex()
+    {
+        // GIVEN far more entries than are insertion sorted, of a few vertices only
+        VertexEntries entries = new VertexEntries( 16 );
+        long[] vertexIds = randomIds( 1_000, 20 );
+        Entry[] added = add( entries, vertexIds );
+
+        // WHEN
+        entries.sortByVertex();
+
+        // THEN
+        assertSorted( entries, vertexIds, added );
+    }
+
+    @Test
+    public void shouldSortBatchesOfEveryKindWhileTheArraysGrowAndAreReused()
+    {
+        // GIVEN one instance for all batches, like an importer has, starting smaller than most of them
+        VertexEntries entries = new VertexEntries( 4 );
+        List<long[]> batches = new ArrayList<>();
+        batches.add( randomIds( 3, 1_000 ) );
+        batches.add( randomIds( 17, 3 ) );
+        batches.add( randomIds( 5, 1_000 ) );
+        batches.add( randomIds( 300, 1_000_000 ) );
+        batches.add( new long[40] );
+        batches.add( descendingIds( 1_000 ) );
+        batches.add( randomIds( 2, 2 ) );
+        batches.add( randomIds( 2_500, 50 ) );
+        batches.add( new long[0] );
+        batches.add( randomIds( 16, 4 ) );
+
+        for ( long[] vertexIds : batches )
+        {
+            // WHEN
+            Entry[] added = add( entries, vertexIds );
+            entries.sortByVertex();
+
+            // THEN
+            assertSorted( entries, vertexIds, added );
+            entries.clear();
+            assertEquals( 0, entries.size() );
+        }
+    }
+
+    @Test
+    public void shouldGroupSortedEntriesByKey()
+    {
+        // GIVEN mutations starting with room for two entries, grouped for two batches in turn
+        GroupedMutations grouped = new GroupedMutations( 2 );
+        VertexEntries entries = new VertexEntries( 16 );
+        for ( int batch = 0; batch < 2; batch++ )
+        {
+            long[] vertexIds = randomIds( 500, 37 );
+            add( entries, vertexIds );
+            entries.sortByVertex();
+
+            // WHEN grouped like the mutators do
+            List<Long> groupIds = new ArrayList<>();
+            for ( int i = 0; i < entries.size(); i++ )
+            {
+                long vertexId = entries.vertexId( i );
+                if ( i == 0 || vertexId != entries.vertexId( i - 1 ) )
+                {
+                    grouped.newGroup( BufferUtil.getLongBuffer( vertexId ) );
+                    groupIds.add( vertexId );
+                }
+                grouped.add( entries.entry( i ) );
+            }
+
+            // THEN every group holds the entries of its vertex, the groups follow each other without gaps
+            assertEquals( vertexIds.length, grouped.size() );
+            assertEquals( groupIds.size(), grouped.groups() );
+            int index = 0;
+            for ( int group = 0; group < grouped.groups(); group++ )
+            {
+                assertEquals( BufferUtil.getLongBuffer( groupIds.get( group ) ), grouped.key( group ) );
+                assertEquals( index, grouped.from( group ) );
+                List<Entry> groupEntries = grouped.entries( group );
+                assertEquals( grouped.to( group ) - grouped.from( group ), groupEntries.size() );
+                for ( Entry entry : groupEntries )
+                {
+                    assertEquals( (long) groupIds.get( group ), entries.vertexId( index ) );
+                    assertSame( entries.entry( index ), entry );
+                    assertSame( entry, grouped.entry( index ) );
+                    index++;
+                }
+            }
+            assertEquals( grouped.size(), index );
+
+            grouped.clear();
+            entries.clear();
+            assertEquals( 0, grouped.groups() );
+            assertEquals( 0, grouped.size() );
+        }
+    }
+
+    private long[] randomIds( int count, int distinct )
+    {
+        long[] vertexIds = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            vertexIds[i] = random.nextInt( distinct ) * 4L + 1;
+        }
+        return vertexIds;
+    }
+
+    private static long[] descendingIds( int count )
+    {
+        long[] vertexIds = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            vertexIds[i] = count - i;
+        }
+        return vertexIds;
+    }
+
+    /**
+     * @return the entries added, a distinct one for every vertex id.
+     */
+    private static Entry[] add( VertexEntries entries, long[] vertexIds )
+    {
+        Entry[] added = new Entry[vertexIds.length];
+        for ( int i = 0; i < vertexIds.length; i++ )
+        {
+            added[i] = StaticArrayEntry.of( BufferUtil.getIntBuffer( i ), BufferUtil.emptyBuffer() );
+            entries.add( vertexIds[i], added[i] );
+        }
+        return added;
+    }
+
+    private static void assertSorted( VertexEntries entries, long[] vertexIds, Entry[] added )
+    {
+        // a stable sort of the positions by vertex id
+        List<Integer> expected = new ArrayList<>();
+        for ( int i = 0; i < vertexIds.length; i++ )
+        {
+            expected.add( i );
+        }
+        expected.sort( Comparator.comparingLong( i -> vertexIds[i] ) );
+
+        assertEquals( vertexIds.length, entries.size() );
+        for ( int i = 0; i < vertexIds.length; i++ )
+        {
+            int position = expected.get( i );
+            assertEquals( vertexIds[position], entries.vertexId( i ) );
+            assertSame( added[position], entries.entry( i ) );
+        }
+    }
+}
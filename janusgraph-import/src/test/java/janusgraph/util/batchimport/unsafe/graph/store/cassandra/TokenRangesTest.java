@@ -0,0 +1,73 @@
+package janusgraph.util.batchimport.unsafe.graph.store.cassandra;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenRangesTest
+{
+    @Test
+    public void shouldRouteTokensToTheRangeOwningThem()
+    {
+        // a ring of three nodes owning (100, -100], (-100, 0] and (0, 100]
+        TokenRanges ranges = TokenRanges.of( 100, -100, 0 );
+
+        assertEquals( 3, ranges.size() );
+        assertEquals( 0, ranges.route( Long.MIN_VALUE ) );
+        assertEquals( 0, ranges.route( -200 ) );
+        assertEquals( 0, ranges.route( -100 ) );
+        assertEquals( 1, ranges.route( -99 ) );
+        assertEquals( 1, ranges.route( 0 ) );
+        assertEquals( 2, ranges.route( 1 ) );
+        assertEquals( 2, ranges.route( 100 ) );
+        // wraps around to the first range
+        assertEquals( 0, ranges.route( 101 ) );
+        assertEquals( 0, ranges.route( Long.MAX_VALUE ) );
+    }
+
+    @Test
+    public void shouldSplitTheRingEvenly()
+    {
+        TokenRanges ranges = TokenRanges.evenly( 4 );
+
+        assertEquals( 4, ranges.size() );
+        assertEquals( Long.MIN_VALUE / 2, ranges.token( 0 ), 1 );
+        assertEquals( 0, ranges.token( 1 ), 1 );
+        assertEquals( Long.MAX_VALUE / 2, ranges.token( 2 ), 1 );
+        assertEquals( Long.MAX_VALUE, ranges.token( 3 ) );
+        assertEquals( 0, ranges.route( Long.MIN_VALUE ) );
+        assertEquals( 1, ranges.route( -1 ) );
+        assertEquals( 2, ranges.route( 1 ) );
+        assertEquals( 3, ranges.route( Long.MAX_VALUE ) );
+        assertEquals( 0, TokenRanges.evenly( 1 ).route( 42 ) );
+    }
+
+    @Test
+    public void shouldReadTokensFromRingDescription() throws IOException
+    {
+        File ring = File.createTempFile( "ring", ".txt" );
+        ring.deleteOnExit();
+        try ( PrintWriter writer = new PrintWriter( ring, StandardCharsets.UTF_8.name() ) )
+        {
+            writer.println( "Datacenter: dc1" );
+            writer.println( "Address    Rack  Status State   Load      Owns    Token" );
+            writer.println( "                                                  3074457345618258602" );
+            writer.println( "10.0.0.1   rack1 Up     Normal  1.2 GiB   33.33%  -9223372036854775808" );
+            writer.println( "10.0.0.2   rack1 Up     Normal  1.1 GiB   33.33%  -3074457345618258603" );
+            writer.println( "10.0.0.3   rack1 Up     Normal  1.3 GiB   33.33%  3074457345618258602" );
+        }
+
+        TokenRanges ranges = TokenRanges.parse( ring.getPath() );
+
+        assertEquals( 3, ranges.size() );
+        assertEquals( Long.MIN_VALUE, ranges.token( 0 ) );
+        assertEquals( 1, ranges.route( -3074457345618258603L ) );
+        assertEquals( 2, ranges.route( 0 ) );
+        assertEquals( 0, ranges.route( 3074457345618258603L ) );
+    }
+}
@@ -0,0 +1,153 @@
+package janusgraph.util.batchimport.unsafe.graph.store.elasticsearch;
+
+import org.apache.tinkerpop.shaded.jackson.databind.JsonNode;
+import org.apache.tinkerpop.shaded.jackson.databind.ObjectMapper;
+import org.janusgraph.core.EdgeLabel;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.graphdb.internal.ElementCategory;
+import org.janusgraph.util.encoding.LongEncoding;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ElasticsearchBulkWriterTest
+{
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final PropertyKey name = key( 1 );
+    private final PropertyKey tag = key( 2 );
+    private final PropertyKey weight = key( 3 );
+    private final VertexLabel person = vertexLabel( 10 );
+    private final VertexLabel dog = vertexLabel( 11 );
+    private final EdgeLabel knows = edgeLabel( 12 );
+
+    @Test
+    public void shouldWriteDocumentsOfTheIndexesAnElementIsIn() throws Exception
+    {
+        File dir = folder.newFolder( "elasticsearch" );
+        ElasticsearchBulkWriter writer = new ElasticsearchBulkWriter( Arrays.asList(
+                new ElasticsearchBulkWriter.Index( "janusgraph_people", "people", ElementCategory.VERTEX, person.longId(),
+                        Arrays.asList( new ElasticsearchBulkWriter.Field( 1, "name", false, true ),
+                                new ElasticsearchBulkWriter.Field( 2, "tag", true, false ) ) ),
+                new ElasticsearchBulkWriter.Index( "janusgraph_weights", "weights", ElementCategory.EDGE, 0,
+                        Arrays.asList( new ElasticsearchBulkWriter.Field( 3, "weight", false, false ) ) ) ),
+                dir, "Nodes-0", 1 << 20 );
+
+        writer.property( name, "tom \"the\" cat\n" );
+        writer.property( tag, "a" );
+        writer.property( tag, "b" );
+        assertEquals( 1, writer.endVertex( 4096, person ) );
+
+        // the index is restricted to persons
+        writer.property( name, "rex" );
+        assertEquals( 0, writer.endVertex( 8192, dog ) );
+
+        writer.property( weight, 0.5d );
+        assertEquals( 1, writer.endEdge( 7, 4096, knows, 8192 ) );
+
+        // no indexed properties, no document
+        assertEquals( 0, writer.endEdge( 8, 4096, knows, 8192 ) );
+        writer.close();
+
+        assertEquals( 2, writer.documents() );
+        assertEquals( 1, writer.files() );
+        List<JsonNode> lines = lines( new File( dir, "Nodes-0-00000.ndjson" ) );
+        assertEquals( 4, lines.size() );
+
+        JsonNode action = lines.get( 0 ).get( "index" );
+        assertEquals( "janusgraph_people", action.get( "_index" ).asText() );
+        assertEquals( "people", action.get( "_type" ).asText() );
+        assertEquals( LongEncoding.encode( 4096 ), action.get( "_id" ).asText() );
+        JsonNode document = lines.get( 1 );
+        assertEquals( "tom \"the\" cat\n", document.get( "name" ).asText() );
+        assertEquals( "tom \"the\" cat\n", document.get( "name__STRING" ).asText() );
+        assertEquals( 2, document.get( "tag" ).size() );
+        assertEquals( "b", document.get( "tag" ).get( 1 ).asText() );
+
+        action = lines.get( 2 ).get( "index" );
+        assertEquals( "janusgraph_weights", action.get( "_index" ).asText() );
+        assertEquals( LongEncoding.encode( 7 ) + "-" + LongEncoding.encode( 4096 ) + "-" +
+                LongEncoding.encode( 12 ) + "-" + LongEncoding.encode( 8192 ), action.get( "_id" ).asText() );
+        assertEquals( 0.5d, lines.get( 3 ).get( "weight" ).asDouble(), 0d );
+    }
+
+    @Test
+    public void shouldStartNewFileBeforeGrowingOverMaxSize() throws Exception
+    {
+        File dir = folder.newFolder( "elasticsearch" );
+        long maxFileSize = 300;
+        ElasticsearchBulkWriter writer = new ElasticsearchBulkWriter( Arrays.asList(
+                new ElasticsearchBulkWriter.Index( "janusgraph_names", "names", ElementCategory.VERTEX, 0,
+                        Arrays.asList( new ElasticsearchBulkWriter.Field( 1, "name", false, false ) ) ) ),
+                dir, "Edges-1", maxFileSize );
+        for ( int i = 0; i < 20; i++ )
+        {
+            writer.property( name, "name-" + i );
+            writer.endVertex( i + 1, null );
+        }
+        writer.close();
+
+        File[] files = dir.listFiles();
+        assertTrue( files.length > 1 );
+        assertEquals( files.length, writer.files() );
+        int documents = 0;
+        for ( File file : files )
+        {
+            assertTrue( file.getName().startsWith( "Edges-1-" ) );
+            assertFalse( file.length() > maxFileSize );
+            List<JsonNode> lines = lines( file );
+            // a document never spans two files
+            assertEquals( 0, lines.size() % 2 );
+            documents += lines.size() / 2;
+        }
+        assertEquals( 20, documents );
+    }
+
+    private static List<JsonNode> lines( File file ) throws Exception
+    {
+        List<JsonNode> lines = new ArrayList<>();
+        for ( String line : Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ) )
+        {
+            lines.add( JSON.readTree( line ) );
+        }
+        return lines;
+    }
+
+    private static PropertyKey key( long id )
+    {
+        PropertyKey key = mock( PropertyKey.class );
+        when( key.longId() ).thenReturn( id );
+        return key;
+    }
+
+    private static VertexLabel vertexLabel( long id )
+    {
+        VertexLabel label = mock( VertexLabel.class );
+        when( label.longId() ).thenReturn( id );
+        return label;
+    }
+
+    private static EdgeLabel edgeLabel( long id )
+    {
+        EdgeLabel label = mock( EdgeLabel.class );
+        when( label.longId() ).thenReturn( id );
+        return label;
+    }
+}
@@ -0,0 +1,118 @@
+package janusgraph.util.batchimport.unsafe.graph.store.hbase;
+
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.janusgraph.diskstorage.util.StaticArrayBuffer;
+import org.janusgraph.diskstorage.util.StaticArrayEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class HbaseHFileWriterTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRouteRowsToTheRegionOwningThem()
+    {
+        RegionBoundaries regions = RegionBoundaries.of( new byte[0], Bytes.toBytes( "m" ), Bytes.toBytes( "f" ) );
+
+        assertEquals( 3, regions.size() );
+        assertEquals( 0, regions.route( new byte[0] ) );
+        assertEquals( 0, regions.route( Bytes.toBytes( "a" ) ) );
+        assertEquals( 1, regions.route( Bytes.toBytes( "f" ) ) );
+        assertEquals( 1, regions.route( Bytes.toBytes( "l" ) ) );
+        assertEquals( 2, regions.route( Bytes.toBytes( "m" ) ) );
+        assertEquals( 2, regions.route( new byte[]{(byte) 0xFF} ) );
+
+        RegionBoundaries even = RegionBoundaries.evenly( 4 );
+        assertEquals( 4, even.size() );
+        assertArrayEquals( new byte[]{0x40, 0, 0, 0}, even.startKey( 1 ) );
+        assertEquals( 2, even.route( new byte[]{(byte) 0x80, 0, 0, 0, 0, 0, 0, 1} ) );
+        assertEquals( 3, even.route( new byte[]{(byte) 0xFF, 0, 0, 0, 0, 0, 0, 1} ) );
+    }
+
+    @Test
+    public void shouldWriteSortedHFilePerRegion() throws Exception
+    {
+        File path = folder.getRoot();
+        HbaseHFileWriter writer = new HbaseHFileWriter( null, path.getPath(), "janusgraph", "e", 42L,
+                Compression.Algorithm.NONE, 1 << 20, RegionBoundaries.of( new byte[]{0x40} ) );
+
+        GroupedMutations batch = new GroupedMutations( 8 );
+        // rows and columns out of order, 0x7F and 0x80 compared unsigned
+        batch.newGroup( StaticArrayBuffer.of( new byte[]{(byte) 0x80} ) );
+        batch.add( StaticArrayEntry.of( StaticArrayBuffer.of( new byte[]{2} ), StaticArrayBuffer.of( new byte[]{20} ) ) );
+        batch.add( StaticArrayEntry.of( StaticArrayBuffer.of( new byte[]{1} ), StaticArrayBuffer.of( new byte[]{10} ) ) );
+        batch.newGroup( StaticArrayBuffer.of( new byte[]{0x01} ) );
+        batch.add( StaticArrayEntry.of( StaticArrayBuffer.of( new byte[]{3} ), StaticArrayBuffer.of( new byte[0] ) ) );
+        batch.newGroup( StaticArrayBuffer.of( new byte[]{0x7F} ) );
+        batch.add( StaticArrayEntry.of( StaticArrayBuffer.of( new byte[]{4} ), StaticArrayBuffer.of( new byte[]{40} ) ) );
+        writer.accept( batch );
+        writer.close();
+
+        File family = new File( path, "janusgraph/e" );
+        List<Cell> first = read( new File( family, HbaseHFileWriter.REGION_FILE_PREFIX + 0 ) );
+        List<Cell> second = read( new File( family, HbaseHFileWriter.REGION_FILE_PREFIX + 1 ) );
+
+        assertEquals( 1, first.size() );
+        assertArrayEquals( new byte[]{0x01}, CellUtil.cloneRow( first.get( 0 ) ) );
+        assertArrayEquals( Bytes.toBytes( "e" ), CellUtil.cloneFamily( first.get( 0 ) ) );
+        assertEquals( 42L, first.get( 0 ).getTimestamp() );
+
+        assertEquals( 3, second.size() );
+        assertArrayEquals( new byte[]{0x7F}, CellUtil.cloneRow( second.get( 0 ) ) );
+        assertArrayEquals( new byte[]{(byte) 0x80}, CellUtil.cloneRow( second.get( 1 ) ) );
+        assertArrayEquals( new byte[]{1}, CellUtil.cloneQualifier( second.get( 1 ) ) );
+        assertArrayEquals( new byte[]{10}, CellUtil.cloneValue( second.get( 1 ) ) );
+        assertArrayEquals( new byte[]{2}, CellUtil.cloneQualifier( second.get( 2 ) ) );
+
+        // run files are gone
+        assertFalse( new File( path, "runs/janusgraph/e/run-0" ).exists() );
+    }
+
+    private static List<Cell> read( File file ) throws Exception
+    {
+        Configuration conf = HBaseConfiguration.create();
+        FileSystem fs = FileSystem.getLocal( conf );
+        List<Cell> cells = new ArrayList<>();
+        HFile.Reader reader = HFile.createReader( fs, new Path( file.toURI() ), new CacheConfig( conf ), conf );
+        try
+        {
+            reader.loadFileInfo();
+            HFileScanner scanner = reader.getScanner( false, false );
+            if ( scanner.seekTo() )
+            {
+                do
+                {
+                    cells.add( scanner.getKeyValue() );
+                }
+                while ( scanner.next() );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return cells;
+    }
+}
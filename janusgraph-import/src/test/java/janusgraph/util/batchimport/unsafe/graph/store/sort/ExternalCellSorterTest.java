@@ -0,0 +1,60 @@
+package janusgraph.util.batchimport.unsafe.graph.store.sort;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalCellSorterTest
+{
+    @Test
+    public void shouldMergeMoreRunsThanTheFanInInPasses() throws IOException
+    {
+        // given a buffer which only holds a few cells, so that there are a lot of runs
+        File runDir = Files.createTempDirectory( "runs" ).toFile();
+        ExternalCellSorter sorter = new ExternalCellSorter( runDir, 100 );
+        Random random = new Random( 42 );
+        int cells = 500;
+        try
+        {
+            for ( int i = 0; i < cells; i++ )
+            {
+                sorter.add( random.nextInt( 1000 ) - 500, ByteBuffer.wrap( new byte[] {(byte) random.nextInt()} ),
+                        ByteBuffer.wrap( new byte[] {(byte) i, (byte) (i >>> 8)} ), ByteBuffer.wrap( new byte[0] ) );
+            }
+            sorter.flush();
+            int runs = sorter.runs().size();
+            assertTrue( runs > 3 * 3 );
+
+            // when merged three runs at a time
+            List<long[]> merged = new ArrayList<>();
+            ExternalCellSorter.merge( sorter.runs(), 3, ( token, key, column, value ) ->
+                    merged.add( new long[] {token, key.get( 0 ) & 0xFF} ) );
+
+            // then every cell comes out once, in order
+            assertEquals( cells, merged.size() );
+            for ( int i = 1; i < merged.size(); i++ )
+            {
+                long[] previous = merged.get( i - 1 );
+                long[] current = merged.get( i );
+                assertTrue( previous[0] < current[0] || (previous[0] == current[0] && previous[1] <= current[1]) );
+            }
+            // and only the runs of the sorter are left
+            assertEquals( runs, runDir.listFiles().length );
+        }
+        finally
+        {
+            sorter.deleteRuns();
+            sorter.close();
+            runDir.delete();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package janusgraph.util.batchimport.unsafe.idassigner;
+
+import org.janusgraph.diskstorage.IDAuthority;
+import org.janusgraph.diskstorage.IDBlock;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyRange;
+import org.janusgraph.graphdb.database.idassigner.IDBlockSizer;
+import org.janusgraph.graphdb.database.idassigner.IDPoolExhaustedException;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchStandardIDPoolTest
+{
+    @Test
+    public void shouldLeaseDisjointBlocksForEveryLease() throws Exception
+    {
+        // GIVEN
+        CountingAuthority authority = new CountingAuthority( 10 );
+        BatchStandardIDPool pool = pool( authority, Long.MAX_VALUE );
+
+        // WHEN two leases take an id each
+        BatchStandardIDPool.Lease first = pool.newLease();
+        BatchStandardIDPool.Lease second = pool.newLease();
+        long firstId = first.nextID();
+        long secondId = second.nextID();
+
+        // THEN they have a block each
+        assertEquals( 2, authority.leased );
+        assertEquals( 1, firstId );
+        assertEquals( 11, secondId );
+        assertEquals( 2, first.nextID() );
+        assertEquals( 12, second.nextID() );
+        assertEquals( 2, authority.leased );
+    }
+
+    @Test
+    public void shouldRollIntoANewBlockOnceOneIsUsedUp() throws Exception
+    {
+        // GIVEN blocks of 3 ids, some of them empty
+        CountingAuthority authority = new CountingAuthority( 3 );
+        authority.emptyBlocks.add( 2 );
+        BatchStandardIDPool.Lease lease = pool( authority, Long.MAX_VALUE ).newLease();
+
+        // WHEN
+        long[] ids = new long[7];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            ids[i] = lease.nextID();
+        }
+
+        // THEN every id is used, in order, and the empty block is passed
+        assertEquals( 4, authority.leased );
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            assertEquals( i + 1, ids[i] );
+        }
+    }
+
+    @Test( expected = IDPoolExhaustedException.class )
+    public void shouldFailOnBlockBeyondTheUpperBound() throws Exception
+    {
+        // GIVEN ids below 5, the second block is 4 to 6
+        BatchStandardIDPool.Lease lease = pool( new CountingAuthority( 3 ), 5 ).newLease();
+        for ( int i = 0; i < 3; i++ )
+        {
+            lease.nextID();
+        }
+
+        // WHEN
+        lease.nextID();
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void shouldNotLeaseFromAClosedPool() throws Exception
+    {
+        BatchStandardIDPool pool = pool( new CountingAuthority( 3 ), Long.MAX_VALUE );
+        pool.close();
+
+        pool.newLease();
+    }
+
+    @Test
+    public void shouldWarnOnlyIfBlocksAreFarTooSmallForTheIds() throws Exception
+    {
+        // a billion ids in the default blocks of 10000
+        String warning = BatchStandardIDPool.blockSizeWarning( 1_000_000_000, 10_000 );
+        assertNotNull( warning );
+        assertTrue( warning, warning.contains( "100000" ) );
+
+        assertNull( BatchStandardIDPool.blockSizeWarning( 1_000_000_000, 1_000_000 ) );
+        assertNull( BatchStandardIDPool.blockSizeWarning( 10_000_000, 10_000 ) );
+        assertNull( BatchStandardIDPool.blockSizeWarning( 0, 10_000 ) );
+    }
+
+    private static BatchStandardIDPool pool( IDAuthority authority, long upperBound )
+    {
+        return new BatchStandardIDPool( null, authority, 0, 0, upperBound, Duration.ofSeconds( 1 ), 0.1 );
+    }
+
+    /**
+     * hands out consecutive blocks of ids starting at 1, like a counter in the storage would.
+     */
+    private static class CountingAuthority implements IDAuthority
+    {
+        private final int blockSize;
+        // numbers of the leases which get no ids
+        private final Set<Integer> emptyBlocks = new HashSet<>();
+        private int leased;
+        private long next = 1;
+
+        CountingAuthority( int blockSize )
+        {
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public IDBlock getIDBlock( int partition, int idNamespace, Duration timeout )
+        {
+            int size = emptyBlocks.contains( ++leased ) ? 0 : blockSize;
+            long first = next;
+            next += size;
+            return new IDBlock()
+            {
+                @Override
+                public long numIds()
+                {
+                    return size;
+                }
+
+                @Override
+                public long getId( long index )
+                {
+                    return first + index;
+                }
+            };
+        }
+
+        @Override
+        public List<KeyRange> getLocalIDPartition()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setIDBlockSizer( IDBlockSizer sizer )
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public String getUniqueID()
+        {
+            return "test";
+        }
+
+        @Override
+        public boolean supportsInterruption()
+        {
+            return false;
+        }
+    }
+}
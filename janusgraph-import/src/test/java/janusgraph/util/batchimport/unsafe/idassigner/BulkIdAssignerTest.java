@@ -0,0 +1,122 @@
+package janusgraph.util.batchimport.unsafe.idassigner;
+
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapperFile;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.diskstorage.IDAuthority;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkIdAssignerTest
+{
+    private static final int PARTITIONS = 4;
+    private static final int BLOCK_SIZE = 1_000_000;
+
+    private StandardJanusGraph graph;
+
+    @Before
+    public void setUp()
+    {
+        graph = (StandardJanusGraph) JanusGraphFactory.build()
+                .set( "storage.backend", "inmemory" )
+                .set( "cluster.max-partitions", PARTITIONS )
+                .set( "ids.block-size", BLOCK_SIZE )
+                .open();
+    }
+
+    @After
+    public void tearDown()
+    {
+        graph.close();
+    }
+
+    @Test
+    public void shouldStartVertexIndexesAtZeroInAGraphWithVerticesAlready() throws Exception
+    {
+        // GIVEN the vertex id counters of every partition three blocks up, as if millions of vertices were there
+        advanceVertexIdCounters( 3 );
+        BulkIdAssigner assigner = new BulkIdAssigner( graph );
+        BulkIdAssigner.Lease lease = assigner.newLease( PartitionPolicy.ROUND_ROBIN );
+
+        // WHEN
+        int count = 1_000;
+        long[] vertexIds = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            vertexIds[i] = lease.nextVertexId( null, 0 );
+        }
+
+        // THEN the indexes are as dense as in an empty graph, and they are the vertex ids again
+        Set<Long> indexes = new HashSet<>();
+        for ( long vertexId : vertexIds )
+        {
+            long index = assigner.vertexIndex( vertexId );
+            assertTrue( "index " + index + " of vertex " + vertexId, index >= 0 && index < count );
+            assertTrue( indexes.add( index ) );
+            assertEquals( vertexId, assigner.vertexId( index ) );
+        }
+        lease.close();
+        assigner.close();
+    }
+
+    @Test
+    public void shouldMapIndexesOfAnEarlierImportWithItsLayout() throws Exception
+    {
+        // GIVEN vertex ids of an import and the layout it saved
+        advanceVertexIdCounters( 1 );
+        BulkIdAssigner earlier = new BulkIdAssigner( graph );
+        BulkIdAssigner.Lease lease = earlier.newLease( PartitionPolicy.ROUND_ROBIN );
+        long[] vertexIds = new long[100];
+        long[] indexes = new long[vertexIds.length];
+        for ( int i = 0; i < vertexIds.length; i++ )
+        {
+            vertexIds[i] = lease.nextVertexId( null, 0 );
+            indexes[i] = earlier.vertexIndex( vertexIds[i] );
+        }
+        lease.close();
+        IdMapperFile.Layout layout = earlier.layout();
+        earlier.close();
+
+        // WHEN a later import, whose own blocks are further up, uses it
+        BulkIdAssigner later = new BulkIdAssigner( graph );
+        later.newLease( PartitionPolicy.ROUND_ROBIN ).nextVertexId( null, 0 );
+        later.useLayout( layout );
+
+        // THEN
+        for ( int i = 0; i < vertexIds.length; i++ )
+        {
+            assertEquals( vertexIds[i], later.vertexId( indexes[i] ) );
+        }
+        later.close();
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldNotUseTheLayoutOfAGraphWithOtherPartitions() throws Exception
+    {
+        BulkIdAssigner assigner = new BulkIdAssigner( graph );
+        IdMapperFile.Layout layout = assigner.layout();
+
+        assigner.useLayout( new IdMapperFile.Layout( layout.partitionBits() + 1, layout.uniqueIdBits(),
+                layout.uniqueId(), new long[PARTITIONS * 2] ) );
+    }
+
+    private void advanceVertexIdCounters( int blocks ) throws Exception
+    {
+        IDAuthority authority = graph.getBackend().getIDAuthority();
+        for ( int partition = 0; partition < PARTITIONS; partition++ )
+        {
+            for ( int i = 0; i < blocks; i++ )
+            {
+                authority.getIDBlock( partition, 0, Duration.ofSeconds( 10 ) );
+            }
+        }
+    }
+}
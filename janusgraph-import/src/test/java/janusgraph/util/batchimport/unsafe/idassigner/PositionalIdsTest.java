@@ -0,0 +1,198 @@
+package janusgraph.util.batchimport.unsafe.idassigner;
+
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PositionalIdsTest
+{
+    private static final int PARTITIONS = 4;
+    // small blocks, so that the positions of a partition span many of them
+    private static final int BLOCK_SIZE = 10;
+    private static final int[] CHUNK_SIZES = {17, 0, 40, 3, 25, 9, 31};
+
+    private final Group group = new Group.Adapter( 0, "global" );
+
+    @Test
+    public void shouldGiveTheSameVertexIdsWhateverTheProcessors() throws Exception
+    {
+        // WHEN the same chunks are counted and imported by one processor, and by three taking the chunks out of order
+        long[] one = importWith( 1 );
+        long[] three = importWith( 3 );
+
+        // THEN
+        assertArrayEquals( one, three );
+        Set<Long> distinct = new HashSet<>();
+        for ( long vertexId : one )
+        {
+            assertTrue( distinct.add( vertexId ) );
+        }
+    }
+
+    @Test
+    public void shouldNotGiveIdsToNodesWhichWerentCounted() throws Exception
+    {
+        StandardJanusGraph graph = emptyGraph();
+        BulkIdAssigner assigner = new BulkIdAssigner( graph );
+        try
+        {
+            // GIVEN
+            PositionalIds positions = new PositionalIds();
+            count( positions.newCounter(), 0, 5 );
+            assertEquals( 5, positions.reserve( assigner ) );
+
+            // WHEN the input has a node more than when it was counted
+            positions.vertexId( 0, 4 );
+            try
+            {
+                positions.vertexId( 0, 5 );
+                fail( "Should have failed" );
+            }
+            catch ( IllegalStateException e )
+            {   // THEN good
+            }
+            try
+            {
+                positions.vertexId( 1, 0 );
+                fail( "Should have failed" );
+            }
+            catch ( IllegalStateException e )
+            {   // THEN good
+            }
+        }
+        finally
+        {
+            assigner.close();
+            graph.close();
+        }
+    }
+
+    @Test
+    public void shouldReserveAVertexIdForEveryPositionAcrossBlocks() throws Exception
+    {
+        StandardJanusGraph graph = emptyGraph();
+        BulkIdAssigner assigner = new BulkIdAssigner( graph );
+        try
+        {
+            // GIVEN positions for many blocks of every partition
+            int count = PARTITIONS * BLOCK_SIZE * 5 + 3;
+
+            // WHEN
+            BulkIdAssigner.Reservation reservation = assigner.reserveVertexIds( count );
+
+            // THEN positions take the partitions in turn, and every one has an id of its own
+            assertEquals( count, reservation.count() );
+            Set<Long> distinct = new HashSet<>();
+            for ( long position = 0; position < count; position++ )
+            {
+                long vertexId = reservation.vertexId( position );
+                assertTrue( distinct.add( vertexId ) );
+                assertEquals( position % PARTITIONS, graph.getIDManager().getPartitionId( vertexId ) );
+                assertEquals( position, assigner.vertexIndex( vertexId ) );
+            }
+            try
+            {
+                reservation.vertexId( count );
+                fail( "Should have failed" );
+            }
+            catch ( IllegalArgumentException e )
+            {   // good
+            }
+        }
+        finally
+        {
+            assigner.close();
+            graph.close();
+        }
+    }
+
+    /**
+     * counts and imports {@link #CHUNK_SIZES} into an empty graph, {@code processors} threads taking the chunks in turn.
+     *
+     * @return vertex ids of the nodes, by chunk and row.
+     */
+    private long[] importWith( int processors ) throws Exception
+    {
+        StandardJanusGraph graph = emptyGraph();
+        BulkIdAssigner assigner = new BulkIdAssigner( graph );
+        try
+        {
+            PositionalIds positions = new PositionalIds();
+            Thread[] counters = new Thread[processors];
+            for ( int p = 0; p < processors; p++ )
+            {
+                int processor = p;
+                InputEntityVisitor counter = positions.newCounter();
+                counters[p] = new Thread( () ->
+                {
+                    // the last chunks first
+                    for ( int chunk = CHUNK_SIZES.length - 1; chunk >= 0; chunk-- )
+                    {
+                        if ( chunk % processors == processor )
+                        {
+                            count( counter, chunk, CHUNK_SIZES[chunk] );
+                        }
+                    }
+                } );
+                counters[p].start();
+            }
+            for ( Thread counter : counters )
+            {
+                counter.join();
+            }
+            positions.reserve( assigner );
+
+            int nodes = 0;
+            for ( int size : CHUNK_SIZES )
+            {
+                nodes += size;
+            }
+            long[] vertexIds = new long[nodes];
+            int node = 0;
+            for ( int chunk = 0; chunk < CHUNK_SIZES.length; chunk++ )
+            {
+                for ( int row = 0; row < CHUNK_SIZES[chunk]; row++ )
+                {
+                    vertexIds[node++] = positions.vertexId( chunk, row );
+                }
+            }
+            return vertexIds;
+        }
+        finally
+        {
+            assigner.close();
+            graph.close();
+        }
+    }
+
+    private void count( InputEntityVisitor counter, long chunk, int nodes )
+    {
+        counter.startOfChunk( chunk );
+        for ( int row = 0; row < nodes; row++ )
+        {
+            counter.id( "n" + row, group );
+        }
+        counter.endOfChunk();
+    }
+
+    private static StandardJanusGraph emptyGraph()
+    {
+        return (StandardJanusGraph) JanusGraphFactory.build()
+                .set( "storage.backend", "inmemory" )
+                .set( "cluster.max-partitions", PARTITIONS )
+                .set( "ids.block-size", BLOCK_SIZE )
+                .set( "ids.authority.wait-time", Duration.ofMillis( 10 ) )
+                .open();
+    }
+}
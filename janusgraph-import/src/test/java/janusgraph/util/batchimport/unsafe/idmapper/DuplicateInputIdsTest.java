@@ -0,0 +1,133 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.LongArray;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
+import janusgraph.util.batchimport.unsafe.stage.GatheringMemoryStatsVisitor;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateInputIdsTest
+{
+    private final Group groupA = new Group.Adapter( 1, "A" );
+    private final Group groupB = new Group.Adapter( 2, "B" );
+
+    @Test
+    public void shouldClaimOnlyTheFirstOfEveryDuplicateId() throws Exception
+    {
+        // GIVEN two visitors, with duplicates within one and across both, and the same id in two groups
+        try ( DuplicateInputIds duplicates = new DuplicateInputIds( NumberArrayFactory.OFF_HEAP ) )
+        {
+            InputEntityVisitor first = duplicates.newVisitor();
+            InputEntityVisitor second = duplicates.newVisitor();
+            for ( int i = 0; i < 10_000; i++ )
+            {
+                (i % 2 == 0 ? first : second).id( "id" + i, groupA );
+            }
+            first.id( "id1", groupA );
+            first.id( "id2", groupA );
+            second.id( "id2", groupA );
+            first.id( "id3", groupB );
+            second.id( 3L, groupB );
+            second.id( 3L, groupB );
+
+            // WHEN
+            long suspects = duplicates.detect();
+
+            // THEN
+            assertEquals( 3, suspects );
+            assertTrue( duplicates.claim( "id1", groupA ) );
+            assertFalse( duplicates.claim( "id1", groupA ) );
+            assertTrue( duplicates.claim( "id2", groupA ) );
+            assertFalse( duplicates.claim( "id2", groupA ) );
+            assertFalse( duplicates.claim( "id2", groupA ) );
+            assertTrue( duplicates.claim( "id3", groupA ) );
+            assertTrue( duplicates.claim( "id3", groupB ) );
+            assertTrue( duplicates.claim( 3L, groupB ) );
+            assertFalse( duplicates.claim( 3L, groupB ) );
+            assertTrue( duplicates.claim( "id4", groupA ) );
+            assertEquals( 4, duplicates.duplicates() );
+        }
+    }
+
+    @Test
+    public void shouldClaimEveryDuplicateOnceAmongConcurrentClaims() throws Exception
+    {
+        // GIVEN 1000 ids, every one of them three times
+        try ( DuplicateInputIds duplicates = new DuplicateInputIds( NumberArrayFactory.OFF_HEAP ) )
+        {
+            InputEntityVisitor visitor = duplicates.newVisitor();
+            for ( int copy = 0; copy < 3; copy++ )
+            {
+                for ( int i = 0; i < 1_000; i++ )
+                {
+                    visitor.id( "id" + i, groupA );
+                }
+            }
+            assertEquals( 1_000, duplicates.detect() );
+
+            // WHEN four threads claim all of them
+            AtomicLong imported = new AtomicLong();
+            Thread[] threads = new Thread[4];
+            for ( int t = 0; t < threads.length; t++ )
+            {
+                threads[t] = new Thread( () ->
+                {
+                    for ( int i = 0; i < 1_000; i++ )
+                    {
+                        if ( duplicates.claim( "id" + i, groupA ) )
+                        {
+                            imported.incrementAndGet();
+                        }
+                    }
+                } );
+                threads[t].start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+
+            // THEN every id is imported once, and its claim is kept off-heap
+            assertEquals( 1_000, imported.get() );
+            assertEquals( 1_000, duplicates.claims() );
+            assertEquals( 3_000, duplicates.duplicates() );
+            GatheringMemoryStatsVisitor memory = new GatheringMemoryStatsVisitor();
+            duplicates.acceptMemoryStatsVisitor( memory );
+            assertTrue( memory.getOffHeapUsage() > 0 );
+        }
+    }
+
+    @Test
+    public void shouldSortLongArray() throws Exception
+    {
+        SplittableRandom random = new SplittableRandom( 3 );
+        for ( int length : new int[]{0, 1, 2, 31, 32, 33, 1000, 100_000} )
+        {
+            long[] expected = new long[length];
+            LongArray array = NumberArrayFactory.OFF_HEAP.newLongArray( length, 0 );
+            for ( int i = 0; i < length; i++ )
+            {
+                // few distinct values in every other array, many equal ones
+                expected[i] = length % 2 == 0 ? random.nextLong() : random.nextInt( 10 );
+                array.set( i, expected[i] );
+            }
+
+            DuplicateInputIds.sort( array, 0, length - 1 );
+
+            Arrays.sort( expected );
+            for ( int i = 0; i < length; i++ )
+            {
+                assertEquals( expected[i], array.get( i ) );
+            }
+        }
+    }
+}
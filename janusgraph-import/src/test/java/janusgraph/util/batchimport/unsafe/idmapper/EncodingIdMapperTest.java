@@ -8,26 +8,35 @@ import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.raddix.Rad
 import janusgraph.util.batchimport.unsafe.input.Collector;
 import janusgraph.util.batchimport.unsafe.input.Group;
 import janusgraph.util.batchimport.unsafe.input.Groups;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.SplittableRandom;
+import java.util.UUID;
 import java.util.function.LongFunction;
 
 import static janusgraph.util.batchimport.unsafe.idmapper.IdMappers.NO_MONITOR;
 import static janusgraph.util.batchimport.unsafe.idmapper.IdMapper.ID_NOT_FOUND;
 import static janusgraph.util.batchimport.unsafe.progress.ProgressListener.NONE;
 import static java.lang.Math.toIntExact;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 @RunWith( Parameterized.class )
 public class EncodingIdMapperTest
 {
     private static final Group GLOBAL = new Group.Adapter(1,"PHONE");
+    private static final IdMapperFile.Layout LAYOUT = new IdMapperFile.Layout( 2, 4, 3, new long[]{100, 0, 7, 1_000_000} );
 
     @Parameters( name = "processors:{0}" )
     public static Collection<Object[]> data()
@@ -43,6 +52,9 @@ public class EncodingIdMapperTest
         return data;
     }
 
+    @Rule
+    public final TemporaryFolder directory = new TemporaryFolder();
+
     private final int processors;
     private final Groups groups = new Groups();
 
@@ -62,7 +74,7 @@ public class EncodingIdMapperTest
         // WHEN
         for ( long nodeId = 0; nodeId < count; nodeId++ )
         {
-            idMapper.put( inputIdLookup.apply( nodeId ), GLOBAL, nodeId << (12) );
+            idMapper.put( inputIdLookup.apply( nodeId ), GLOBAL, nodeId );
             if (nodeId % 100_000 == 0){
                 System.out.println("+100_000");
             }
@@ -94,11 +106,11 @@ public class EncodingIdMapperTest
 
 
 
-        idMapper.put("开元币",GLOBAL,1 << 12);
-        idMapper.put("00002986682",GLOBAL,2 << 12);
-        idMapper.put("00002986683",GLOBAL,3 << 12);
-        idMapper.put("00002986684",GLOBAL,4 << 12);
-        idMapper.put("00002986685",GLOBAL,5 << 12);
+        idMapper.put("开元币",GLOBAL,1);
+        idMapper.put("00002986682",GLOBAL,2);
+        idMapper.put("00002986683",GLOBAL,3);
+        idMapper.put("00002986684",GLOBAL,4);
+        idMapper.put("00002986685",GLOBAL,5);
 
         idMapper.prepare( inputIdLookup, mock( Collector.class ), NONE );
 
@@ -109,6 +121,241 @@ public class EncodingIdMapperTest
         System.out.println(idMapper.get("00002986685",GLOBAL));
     }
 
+    @Test
+    public void shouldResolveCollisionsThroughStoredInputIds() throws Exception
+    {
+        // GIVEN an encoder which only keeps length and 4 bits, so that every id collides
+        StringEncoder real = new StringEncoder();
+        Encoder<String> poor = id -> { long eId = real.encode( id ); return (eId & 0xFF00_0000_0000_0000L) | (eId & 0xF); };
+        long[] reported = new long[3];
+        EncodingIdMapper.Monitor monitor = new EncodingIdMapper.Monitor()
+        {
+            @Override
+            public void numberOfCollisions( long count )
+            {
+                reported[0] = count;
+            }
+
+            @Override
+            public void collisionsResolved( long collisions, long duplicates )
+            {
+                reported[1] = collisions;
+                reported[2] = duplicates;
+            }
+        };
+        Group group = groups.getOrCreate( "PHONE" );
+        IdMapper idMapper = mapper( poor, Radix.STRING, monitor );
+        InputIdStore inputIds = new InputIdStore( NumberArrayFactory.OFF_HEAP );
+        int count = 10_000;
+        for ( long nodeId = 0; nodeId < count; nodeId++ )
+        {
+            String id = String.format( "id-%05d", nodeId );
+            idMapper.put( id, group, nodeId );
+            inputIds.add( nodeId, id );
+        }
+        // and a duplicate of the first one
+        idMapper.put( "id-00000", group, count );
+        inputIds.add( count, "id-00000" );
+        Collector collector = mock( Collector.class );
+
+        // WHEN
+        idMapper.prepare( inputIds, collector, NONE );
+        inputIds.close();
+
+        // THEN
+        for ( long nodeId = 0; nodeId < count; nodeId++ )
+        {
+            assertEquals( nodeId, idMapper.get( String.format( "id-%05d", nodeId ), group ) );
+        }
+        assertEquals( ID_NOT_FOUND, idMapper.get( String.format( "id-%05d", count ), group ) );
+        Object[] keys = new Object[count + 1];
+        Group[] keyGroups = new Group[count + 1];
+        for ( int nodeId = 0; nodeId <= count; nodeId++ )
+        {
+            keys[nodeId] = String.format( "id-%05d", nodeId );
+            keyGroups[nodeId] = group;
+        }
+        long[] nodeIds = new long[count + 1];
+        idMapper.getAll( keys, keyGroups, count + 1, nodeIds );
+        for ( long nodeId = 0; nodeId < count; nodeId++ )
+        {
+            assertEquals( nodeId, nodeIds[(int) nodeId] );
+        }
+        assertEquals( ID_NOT_FOUND, nodeIds[count] );
+        verify( collector ).collectDuplicateNode( "id-00000", count, "PHONE" );
+        assertEquals( count + 1, reported[1] );
+        assertEquals( 1, reported[2] );
+        assertTrue( reported[0] >= reported[1] );
+        idMapper.close();
+    }
+
+    @Test
+    public void shouldLookUpAllLikeOneByOne() throws Exception
+    {
+        // GIVEN every id in two groups, so that there are runs of equal eIds
+        Group a = groups.getOrCreate( "a" );
+        Group b = groups.getOrCreate( "b" );
+        IdMapper idMapper = mapper( new StringEncoder(), Radix.STRING, NO_MONITOR );
+        InputIdStore inputIds = new InputIdStore( NumberArrayFactory.OFF_HEAP );
+        int count = 50_000;
+        for ( long nodeId = 0; nodeId < count; nodeId++ )
+        {
+            String id = String.valueOf( nodeId / 2 );
+            idMapper.put( id, nodeId % 2 == 0 ? a : b, nodeId );
+            inputIds.add( nodeId, id );
+        }
+        idMapper.prepare( inputIds, mock( Collector.class ), NONE );
+        inputIds.close();
+
+        // WHEN
+        SplittableRandom random = new SplittableRandom( 3 );
+        int lookups = 10_000;
+        Object[] keys = new Object[lookups];
+        Group[] keyGroups = new Group[lookups];
+        for ( int i = 0; i < lookups; i++ )
+        {
+            keys[i] = String.valueOf( random.nextInt( count ) );
+            keyGroups[i] = random.nextBoolean() ? a : b;
+        }
+        long[] nodeIds = new long[lookups];
+        idMapper.getAll( keys, keyGroups, lookups, nodeIds );
+
+        // THEN
+        for ( int i = 0; i < lookups; i++ )
+        {
+            assertEquals( idMapper.get( keys[i], keyGroups[i] ), nodeIds[i] );
+        }
+        idMapper.close();
+    }
+
+    @Test
+    public void shouldFindTheSameWithLsdRadixSort() throws Exception
+    {
+        // GIVEN the same random ids, put in random order, in both a quick sorted and a radix sorted mapper
+        Group a = groups.getOrCreate( "a" );
+        Group b = groups.getOrCreate( "b" );
+        IdMapper quick = mapper( new StringEncoder(), Radix.STRING, NO_MONITOR, ParallelSort.Strategy.QUICKSORT );
+        IdMapper lsd = mapper( new StringEncoder(), Radix.STRING, NO_MONITOR, ParallelSort.Strategy.LSD_RADIX );
+        InputIdStore inputIds = new InputIdStore( NumberArrayFactory.OFF_HEAP );
+        SplittableRandom random = new SplittableRandom( 5 );
+        int count = 100_000;
+        String[] ids = new String[count];
+        for ( int nodeId = 0; nodeId < count; nodeId++ )
+        {
+            // some in both groups
+            ids[nodeId] = nodeId % 10 == 1 ? ids[nodeId - 1] : Long.toString( random.nextLong(), random.nextInt( 2, 37 ) );
+            Group group = nodeId % 10 == 1 ? b : a;
+            quick.put( ids[nodeId], group, nodeId );
+            lsd.put( ids[nodeId], group, nodeId );
+            inputIds.add( nodeId, ids[nodeId] );
+        }
+
+        // WHEN
+        quick.prepare( inputIds, mock( Collector.class ), NONE );
+        lsd.prepare( inputIds, mock( Collector.class ), NONE );
+        inputIds.close();
+
+        // THEN
+        for ( int nodeId = 0; nodeId < count; nodeId++ )
+        {
+            Group group = nodeId % 10 == 1 ? b : a;
+            assertEquals( nodeId, lsd.get( ids[nodeId], group ) );
+            assertEquals( quick.get( ids[nodeId], group == a ? b : a ), lsd.get( ids[nodeId], group == a ? b : a ) );
+        }
+        quick.close();
+        lsd.close();
+    }
+
+    @Test
+    public void shouldFindTheSameInSavedMapper() throws Exception
+    {
+        // GIVEN ids in two groups which partly collide, prepared and saved
+        StringEncoder real = new StringEncoder();
+        Encoder<String> poor = id -> { long eId = real.encode( id ); return id.startsWith( "c" ) ? eId & 0xFF00_0000_0000_00FFL : eId; };
+        Group a = groups.getOrCreate( "a" );
+        Group b = groups.getOrCreate( "b" );
+        IdMapper idMapper = mapper( poor, Radix.STRING, NO_MONITOR );
+        InputIdStore inputIds = new InputIdStore( NumberArrayFactory.OFF_HEAP );
+        int count = 20_000;
+        for ( long nodeId = 0; nodeId < count; nodeId++ )
+        {
+            String id = (nodeId % 3 == 0 ? "c" : "n") + nodeId / 2;
+            idMapper.put( id, nodeId % 2 == 0 ? a : b, nodeId );
+            inputIds.add( nodeId, id );
+        }
+        idMapper.prepare( inputIds, mock( Collector.class ), NONE );
+        inputIds.close();
+        File file = new File( directory.getRoot(), "id-mapper" );
+        idMapper.save( file, LAYOUT );
+
+        // WHEN
+        Groups loadedGroups = new Groups();
+        IdMapper loaded = EncodingIdMapper.load( file, poor, Radix.STRING, loadedGroups );
+
+        // THEN
+        assertEquals( a.id(), loadedGroups.get( "a" ).id() );
+        assertEquals( b.id(), loadedGroups.get( "b" ).id() );
+        for ( long nodeId = 0; nodeId < count + 10; nodeId++ )
+        {
+            for ( String prefix : new String[]{"c", "n"} )
+            {
+                String id = prefix + nodeId / 2;
+                assertEquals( idMapper.get( id, a ), loaded.get( id, loadedGroups.get( "a" ) ) );
+                assertEquals( idMapper.get( id, b ), loaded.get( id, loadedGroups.get( "b" ) ) );
+            }
+        }
+        idMapper.close();
+        loaded.close();
+    }
+
+    @Test
+    public void shouldFindUuidsWithHashEncoders() throws Exception
+    {
+        for ( IdEncoder encoder : new IdEncoder[]{IdEncoder.XXHASH64, IdEncoder.WYHASH} )
+        {
+            // GIVEN
+            IdMapper idMapper = mapper( encoder.newEncoder(), Radix.STRING, NO_MONITOR );
+            InputIdStore inputIds = new InputIdStore( NumberArrayFactory.OFF_HEAP );
+            SplittableRandom random = new SplittableRandom( 7 );
+            int count = 50_000;
+            String[] ids = new String[count];
+            for ( int nodeId = 0; nodeId < count; nodeId++ )
+            {
+                ids[nodeId] = new UUID( random.nextLong(), random.nextLong() ).toString();
+                idMapper.put( ids[nodeId], GLOBAL, nodeId );
+                inputIds.add( nodeId, ids[nodeId] );
+            }
+
+            // WHEN
+            idMapper.prepare( inputIds, mock( Collector.class ), NONE );
+            inputIds.close();
+
+            // THEN
+            for ( int nodeId = 0; nodeId < count; nodeId++ )
+            {
+                assertEquals( nodeId, idMapper.get( ids[nodeId], GLOBAL ) );
+            }
+            assertEquals( ID_NOT_FOUND, idMapper.get( new UUID( 1, 2 ).toString(), GLOBAL ) );
+            idMapper.close();
+        }
+    }
+
+    @Test
+    public void shouldStoreInputIdsAcrossChunks() throws Exception
+    {
+        InputIdStore inputIds = new InputIdStore( NumberArrayFactory.OFF_HEAP, 0xFFFF + 2 );
+        String longest = new String( new char[0xFFFF] ).replace( '\0', 'x' );
+        inputIds.add( 0, "开元币" );
+        inputIds.add( 2, longest );
+        inputIds.add( 3, "" );
+
+        assertEquals( "开元币", inputIds.apply( 0 ) );
+        assertEquals( null, inputIds.apply( 1 ) );
+        assertEquals( longest, inputIds.apply( 2 ) );
+        assertEquals( "", inputIds.apply( 3 ) );
+        inputIds.close();
+    }
+
     private LongFunction<Object> values( Object... values )
     {
         return value -> values[toIntExact( value )];
@@ -119,6 +366,12 @@ public class EncodingIdMapperTest
         return mapper( encoder, radix, monitor, ParallelSort.DEFAULT );
     }
 
+    private IdMapper mapper( Encoder encoder, Factory<Radix> radix, EncodingIdMapper.Monitor monitor, ParallelSort.Strategy sortStrategy )
+    {
+        return new EncodingIdMapper( NumberArrayFactory.OFF_HEAP, encoder, radix, monitor, RANDOM_TRACKER_FACTORY, groups,
+                autoDetect( encoder ), 1_000, processors, ParallelSort.DEFAULT, sortStrategy );
+    }
+
     private IdMapper mapper( Encoder encoder, Factory<Radix> radix, EncodingIdMapper.Monitor monitor, ParallelSort.Comparator comparator )
     {
         return mapper( encoder, radix, monitor, comparator, autoDetect( encoder ) );
@@ -0,0 +1,62 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static janusgraph.util.batchimport.unsafe.progress.ProgressListener.NONE;
+import static org.junit.Assert.assertEquals;
+
+public class ExistingNodesTest
+{
+    @Rule
+    public final TemporaryFolder directory = new TemporaryFolder();
+
+    @Test
+    public void shouldLookUpVertexIdsOfWrittenIdMappings() throws Exception
+    {
+        // GIVEN one gzipped file written by an earlier import and one plain file
+        Groups groups = new Groups();
+        Group god = groups.getOrCreate( "god" );
+        try ( IdMappingWriter writer = new IdMappingWriter( directory.getRoot(), "Nodes-0" ) )
+        {
+            writer.write( god, "jupiter", 4096 );
+            writer.write( god, "a,\"quoted\"\nid", 8192 );
+        }
+        File plain = new File( directory.getRoot(), "titans.csv" );
+        Files.write( plain.toPath(), ("group,id,vertexId\r\ntitan,saturn,12288\r\n\r\ngod,neptune,16384\r\n")
+                .getBytes( StandardCharsets.UTF_8 ) );
+
+        // WHEN
+        @SuppressWarnings( "unchecked" )
+        IdMapper<Object> idMapper = (IdMapper) IdMappers.strings( NumberArrayFactory.OFF_HEAP, groups );
+        try ( ExistingNodes existingNodes = new ExistingNodes( idMapper, NumberArrayFactory.OFF_HEAP ) )
+        {
+            existingNodes.read( new File( directory.getRoot(), "Nodes-0" + IdMappingWriter.FILE_SUFFIX ), groups,
+                    id -> id );
+            existingNodes.read( plain, groups, id -> id );
+            existingNodes.prepare( NONE );
+
+            // THEN
+            Group titan = groups.get( "titan" );
+            Object[] keys = {"jupiter", "saturn", "a,\"quoted\"\nid", "neptune", "saturn", "pluto"};
+            Group[] keyGroups = {god, titan, god, god, god, god};
+            long[] vertexIds = new long[keys.length];
+            existingNodes.getAll( keys, keyGroups, keys.length, vertexIds );
+            assertEquals( 4, existingNodes.count() );
+            assertEquals( 4096, vertexIds[0] );
+            assertEquals( 12288, vertexIds[1] );
+            assertEquals( 8192, vertexIds[2] );
+            assertEquals( 16384, vertexIds[3] );
+            assertEquals( IdMapper.ID_NOT_FOUND, vertexIds[4] );
+            assertEquals( IdMapper.ID_NOT_FOUND, vertexIds[5] );
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.LongFunction;
+
+/**
+ * compares the {@link IdEncoder encoders} on distinct keys of a few shapes: encode throughput and the number of keys
+ * encoded into a value another key was encoded into before, each of which the string id mapper has to tell apart by
+ * reading the input id again.
+ *
+ * a main in the test sources, not shipped in the jar:
+ * java -cp target/classes:target/test-classes:<dependencies> janusgraph.util.batchimport.unsafe.idmapper.IdEncoderBenchmark 10000000
+ */
+public class IdEncoderBenchmark
+{
+    // keys are created a block at a time so that only encoding is timed
+    private static final int BLOCK_SIZE = 1_000_000;
+
+    private enum Keys
+    {
+        SEQUENTIAL( String::valueOf ),
+        PREFIXED( i -> String.format( "user_%012d", i ) ),
+        UUID( i -> new UUID( mix( i ), mix( ~i ) ).toString() ),
+        EMAIL( i -> "user." + i + "@mail" + i % 100 + ".example.com" ),
+        URL( i -> "https://www.example.com/items/" + (i % 1000) + "/" + i + "?ref=" + (mix( i ) & 7) );
+
+        private final LongFunction<String> key;
+
+        Keys( LongFunction<String> key )
+        {
+            this.key = key;
+        }
+    }
+
+    public static void main( String[] args )
+    {
+        int count = args.length > 0 ? Integer.parseInt( args[0] ) : 10_000_000;
+        long[] encoded = new long[count];
+        String[] block = new String[Math.min( BLOCK_SIZE, count )];
+        for ( Keys keys : Keys.values() )
+        {
+            for ( IdEncoder idEncoder : IdEncoder.values() )
+            {
+                Encoder<String> encoder = idEncoder.newEncoder();
+                long nanos = 0;
+                for ( int done = 0; done < count; done += block.length )
+                {
+                    int size = Math.min( block.length, count - done );
+                    for ( int i = 0; i < size; i++ )
+                    {
+                        block[i] = keys.key.apply( done + i );
+                    }
+                    long start = System.nanoTime();
+                    for ( int i = 0; i < size; i++ )
+                    {
+                        encoded[done + i] = encoder.encode( block[i] );
+                    }
+                    nanos += System.nanoTime() - start;
+                }
+                System.out.println( "[" + keys + "][" + idEncoder + "][encode]" + nanos / 1_000_000 +
+                        "ms[keys/s]" + (long) (count * 1e9 / Math.max( nanos, 1 )) +
+                        "[collisions]" + collisions( encoded ) );
+            }
+        }
+    }
+
+    private static long collisions( long[] encoded )
+    {
+        Arrays.parallelSort( encoded );
+        long collisions = 0;
+        for ( int i = 1; i < encoded.length; i++ )
+        {
+            if ( encoded[i] == encoded[i - 1] )
+            {
+                collisions++;
+            }
+        }
+        return collisions;
+    }
+
+    // bijective, distinct keys get distinct uuids
+    private static long mix( long x )
+    {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,65 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdEncoderTest
+{
+    private static final long LENGTH_BITS = 0xFE00_0000_0000_0000L;
+    private static final long COLLISION_BIT = 0x0100_0000_0000_0000L;
+
+    @Test
+    public void shouldTagHashesWithLengthAndLeaveCollisionBit() throws Exception
+    {
+        for ( IdEncoder idEncoder : new IdEncoder[]{IdEncoder.XXHASH64, IdEncoder.WYHASH} )
+        {
+            Encoder<String> encoder = idEncoder.newEncoder();
+            for ( String id : new String[]{"", "a", "ab", "abc", "abcd", "开元币", "00002986682",
+                    "0123456789abcdef", "0123456789abcdef0", new String( new char[300] ).replace( '\0', 'x' )} )
+            {
+                long eId = encoder.encode( id );
+                assertNotEquals( 0, eId );
+                assertEquals( 0, eId & COLLISION_BIT );
+                assertEquals( Math.max( Math.min( id.length(), 127 ), 1 ), (eId & LENGTH_BITS) >>> 57 );
+                assertEquals( eId, idEncoder.newEncoder().encode( id ) );
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotCollideOnUuidsAndNumbers() throws Exception
+    {
+        for ( IdEncoder idEncoder : new IdEncoder[]{IdEncoder.XXHASH64, IdEncoder.WYHASH} )
+        {
+            Encoder<String> encoder = idEncoder.newEncoder();
+            int count = 200_000;
+            long[] uuids = new long[count];
+            long[] numbers = new long[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                uuids[i] = encoder.encode( new UUID( 0x1234_5678L, i ).toString() );
+                numbers[i] = encoder.encode( String.valueOf( i ) );
+            }
+            assertTrue( idEncoder + " collided", distinct( uuids ) && distinct( numbers ) );
+        }
+    }
+
+    private static boolean distinct( long[] values )
+    {
+        Arrays.sort( values );
+        for ( int i = 1; i < values.length; i++ )
+        {
+            if ( values[i] == values[i - 1] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongCollections;
+import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongIterator;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.MemoryStatsVisitor;
+import janusgraph.util.batchimport.unsafe.input.Collector;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.progress.ProgressListener;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdLookupCacheTest
+{
+    private final Group groupA = new Group.Adapter( 1, "A" );
+    private final Group groupB = new Group.Adapter( 2, "B" );
+
+    @Test
+    public void shouldLookUpOnlyMissesAndTellGroupsApart() throws Exception
+    {
+        // GIVEN
+        CountingIdMapper idMapper = new CountingIdMapper();
+        IdLookupCache.HitRate hitRate = new IdLookupCache.HitRate();
+        IdLookupCache cache = new IdLookupCache( 64, hitRate );
+        Object[] keys = {"a", "a", "b", "missing", "a"};
+        Group[] groups = {groupA, groupA, groupA, groupA, groupB};
+        long[] into = new long[keys.length];
+
+        // WHEN
+        cache.getAll( idMapper, keys, groups, keys.length, into );
+        cache.getAll( idMapper, keys, groups, keys.length, into );
+
+        // THEN
+        assertEquals( idMapper.id( "a", groupA ), into[0] );
+        assertEquals( idMapper.id( "a", groupA ), into[1] );
+        assertEquals( idMapper.id( "b", groupA ), into[2] );
+        assertEquals( IdMapper.ID_NOT_FOUND, into[3] );
+        assertEquals( idMapper.id( "a", groupB ), into[4] );
+        // all five in the first batch, only the missing one in the second
+        assertEquals( 6, idMapper.lookups );
+        assertEquals( 10, hitRate.lookups() );
+        assertEquals( 4, hitRate.hits() );
+    }
+
+    @Test
+    public void shouldKeepHotIdsOverColdOnes() throws Exception
+    {
+        // GIVEN a cache of 1024 ids, 64 hot ones in every other lookup and a long tail of cold ones
+        CountingIdMapper idMapper = new CountingIdMapper();
+        IdLookupCache.HitRate hitRate = new IdLookupCache.HitRate();
+        IdLookupCache cache = new IdLookupCache( 1024, hitRate );
+        SplittableRandom random = new SplittableRandom( 7 );
+        Object[] keys = new Object[1];
+        Group[] groups = {groupA};
+        long[] into = new long[1];
+        long hotHits = 0;
+        long hotLookups = 0;
+
+        // WHEN
+        for ( int i = 0; i < 200_000; i++ )
+        {
+            boolean hot = i % 2 == 0;
+            keys[0] = hot ? "hot" + random.nextInt( 64 ) : "cold" + random.nextInt( 1_000_000 );
+            long lookupsBefore = idMapper.lookups;
+            cache.getAll( idMapper, keys, groups, 1, into );
+            assertEquals( idMapper.id( keys[0], groupA ), into[0] );
+            if ( hot )
+            {
+                hotLookups++;
+                hotHits += idMapper.lookups - lookupsBefore == 0 ? 1 : 0;
+            }
+        }
+
+        // THEN
+        assertTrue( "hot hit rate " + hotHits / (double) hotLookups, hotHits > hotLookups * 0.99 );
+        assertEquals( hitRate.lookups() - hitRate.hits(), idMapper.lookups );
+    }
+
+    private static class CountingIdMapper implements IdMapper<Object>
+    {
+        private long lookups;
+
+        long id( Object key, Group group )
+        {
+            return key.equals( "missing" ) ? ID_NOT_FOUND : (key.hashCode() & 0xFFFFFFFL) * 10 + group.id();
+        }
+
+        @Override
+        public long get( Object key, Group group )
+        {
+            lookups++;
+            return id( key, group );
+        }
+
+        @Override
+        public void put( Object key, Group group, long id )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean needsPreparation()
+        {
+            return false;
+        }
+
+        @Override
+        public void prepare( LongFunction<Object> inputIdLookup, Collector collector, ProgressListener progress )
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public PrimitiveLongIterator leftOverDuplicateNodesIds()
+        {
+            return PrimitiveLongCollections.emptyIterator();
+        }
+
+        @Override
+        public long calculateMemoryUsage( long numberOfNodes )
+        {
+            return 0;
+        }
+
+        @Override
+        public void acceptMemoryStatsVisitor( MemoryStatsVisitor visitor )
+        {
+        }
+    }
+}
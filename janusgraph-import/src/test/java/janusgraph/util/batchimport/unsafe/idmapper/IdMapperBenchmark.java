@@ -0,0 +1,127 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.StringEncoder;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.longs.LongIdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.EncodingIdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.ParallelSort;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.StringCollisionValues;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.TrackerFactories;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.string.raddix.Radix;
+import janusgraph.util.batchimport.unsafe.input.Collector;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+
+import static janusgraph.util.batchimport.unsafe.idmapper.IdMappers.NO_MONITOR;
+import static janusgraph.util.batchimport.unsafe.progress.ProgressListener.NONE;
+
+/**
+ * compares the string and the long id mapper on the same numeric ids: ids are put in random order, prepared, and
+ * looked up in random order, like edges do, one by one and in batches. The string mapper is prepared with every
+ * {@link ParallelSort.Strategy sort strategy}.
+ *
+ * a main in the test sources, not shipped in the jar:
+ * java -cp target/classes:target/test-classes:<dependencies> janusgraph.util.batchimport.unsafe.idmapper.IdMapperBenchmark 100000000 8
+ */
+public class IdMapperBenchmark
+{
+    private static final int CHUNK_SIZE = 1_000_000;
+    // endpoints of a chunk of edges
+    private static final int BATCH_SIZE = 100_000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int count = args.length > 0 ? Integer.parseInt( args[0] ) : 10_000_000;
+        int processors = args.length > 1 ? Integer.parseInt( args[1] ) : Runtime.getRuntime().availableProcessors() - 1;
+        // the same sparse 64 bit keys for both mappers
+        LongFunction<Long> inputIds = nodeId -> nodeId * 0x9E3779B97F4A7C15L;
+
+        Groups groups = new Groups();
+        Group group = groups.getOrCreate( "PHONE" );
+        for ( ParallelSort.Strategy sortStrategy : ParallelSort.Strategy.values() )
+        {
+            EncodingIdMapper strings = new EncodingIdMapper( NumberArrayFactory.OFF_HEAP, new StringEncoder(), Radix.STRING,
+                    NO_MONITOR, TrackerFactories.dynamic(), groups,
+                    numberOfCollisions -> new StringCollisionValues( NumberArrayFactory.OFF_HEAP, numberOfCollisions ),
+                    CHUNK_SIZE, processors, EncodingIdMapper.DEFAULT, sortStrategy );
+            run( "string:" + sortStrategy, strings, group, count, nodeId -> String.valueOf( inputIds.apply( nodeId ) ) );
+        }
+
+        LongIdMapper longs = new LongIdMapper( NumberArrayFactory.OFF_HEAP, groups, CHUNK_SIZE, processors );
+        run( "long", longs, group, count, inputIds );
+    }
+
+    private static <T> void run( String name, IdMapper<T> idMapper, Group group, int count, LongFunction<T> inputIds )
+            throws Exception
+    {
+        long time1 = System.currentTimeMillis();
+        SplittableRandom random = new SplittableRandom( 42 );
+        long[] order = shuffled( count, random );
+        for ( long nodeId : order )
+        {
+            idMapper.put( inputIds.apply( nodeId ), group, nodeId );
+        }
+        long time2 = System.currentTimeMillis();
+        idMapper.prepare( inputIds, Collector.EMPTY, NONE );
+        long time3 = System.currentTimeMillis();
+        long misses = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            long nodeId = random.nextInt( count );
+            if ( idMapper.get( inputIds.apply( nodeId ), group ) != nodeId )
+            {
+                misses++;
+            }
+        }
+        long time4 = System.currentTimeMillis();
+        // the same amount of lookups, a batch per edge chunk
+        Object[] keys = new Object[BATCH_SIZE];
+        Group[] groups = new Group[BATCH_SIZE];
+        long[] expected = new long[BATCH_SIZE];
+        long[] nodeIds = new long[BATCH_SIZE];
+        for ( int done = 0; done < count; done += BATCH_SIZE )
+        {
+            int batch = Math.min( BATCH_SIZE, count - done );
+            for ( int i = 0; i < batch; i++ )
+            {
+                long nodeId = random.nextInt( count );
+                keys[i] = inputIds.apply( nodeId );
+                groups[i] = group;
+                expected[i] = nodeId;
+            }
+            idMapper.getAll( keys, groups, batch, nodeIds );
+            for ( int i = 0; i < batch; i++ )
+            {
+                if ( nodeIds[i] != expected[i] )
+                {
+                    misses++;
+                }
+            }
+        }
+        long time5 = System.currentTimeMillis();
+        idMapper.close();
+
+        System.out.println( "[" + name + "][put]" + (time2 - time1) + "[prepare]" + (time3 - time2) +
+                "[get]" + (time4 - time3) + "[getAll]" + (time5 - time4) + "[misses]" + misses );
+    }
+
+    private static long[] shuffled( int count, SplittableRandom random )
+    {
+        long[] order = new long[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            order[i] = i;
+        }
+        for ( int i = count - 1; i > 0; i-- )
+        {
+            int j = random.nextInt( i + 1 );
+            long tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,49 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.input.Group;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IdMappingWriterTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteGzippedCsvWithQuotedFields() throws Exception
+    {
+        // GIVEN
+        File dir = new File( folder.getRoot(), IdMappingWriter.DIRECTORY_NAME );
+        Group person = new Group.Adapter( 1, "person" );
+
+        // WHEN
+        try ( IdMappingWriter writer = new IdMappingWriter( dir, "Nodes-0" ) )
+        {
+            writer.write( person, "u1", 4096 );
+            writer.write( person, "a,\"b\"", 8192 );
+            writer.write( Group.GLOBAL, 42L, 12288 );
+        }
+
+        // THEN
+        try ( BufferedReader reader = new BufferedReader( new InputStreamReader( new GZIPInputStream(
+                new FileInputStream( new File( dir, "Nodes-0" + IdMappingWriter.FILE_SUFFIX ) ) ), StandardCharsets.UTF_8 ) ) )
+        {
+            assertEquals( IdMappingWriter.HEADER, reader.readLine() );
+            assertEquals( "person,u1,4096", reader.readLine() );
+            assertEquals( "person,\"a,\"\"b\"\"\",8192", reader.readLine() );
+            assertEquals( ",42,12288", reader.readLine() );
+            assertNull( reader.readLine() );
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package janusgraph.util.batchimport.unsafe.idmapper;
+
+import janusgraph.util.batchimport.unsafe.helps.collection.PrimitiveLongIterator;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.idmapper.impl.unsafe.longs.LongIdMapper;
+import janusgraph.util.batchimport.unsafe.input.Collector;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.SplittableRandom;
+
+import static janusgraph.util.batchimport.unsafe.idmapper.IdMapper.ID_NOT_FOUND;
+import static janusgraph.util.batchimport.unsafe.progress.ProgressListener.NONE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith( Parameterized.class )
+public class LongIdMapperTest
+{
+    private static final IdMapperFile.Layout LAYOUT = new IdMapperFile.Layout( 2, 4, 3, new long[]{100, 0, 7, 1_000_000} );
+
+    @Parameters( name = "processors:{0}" )
+    public static Collection<Object[]> data()
+    {
+        Collection<Object[]> data = new ArrayList<>();
+        data.add( new Object[]{1} );
+        data.add( new Object[]{4} );
+        return data;
+    }
+
+    @Rule
+    public final TemporaryFolder directory = new TemporaryFolder();
+
+    private final int processors;
+    private final Groups groups = new Groups();
+
+    public LongIdMapperTest( int processors )
+    {
+        this.processors = processors;
+    }
+
+    @Test
+    public void shouldFindEveryIdPutInAnyOrder() throws Exception
+    {
+        // GIVEN
+        Group group = groups.getOrCreate( "PHONE" );
+        IdMapper<Long> idMapper = mapper();
+        int count = 1_000_000;
+        SplittableRandom random = new SplittableRandom( 7 );
+        long[] inputIds = new long[count];
+        for ( int nodeId = 0; nodeId < count; nodeId++ )
+        {
+            // negative and positive, sparse
+            inputIds[nodeId] = random.nextLong();
+            idMapper.put( inputIds[nodeId], group, nodeId );
+        }
+
+        // WHEN
+        idMapper.prepare( null, mock( Collector.class ), NONE );
+
+        // THEN
+        for ( int nodeId = 0; nodeId < count; nodeId++ )
+        {
+            assertEquals( nodeId, idMapper.get( inputIds[nodeId], group ) );
+        }
+        assertEquals( ID_NOT_FOUND, idMapper.get( 0L, group ) );
+        idMapper.close();
+    }
+
+    @Test
+    public void shouldKeepFirstOfDuplicatesWithinGroup() throws Exception
+    {
+        // GIVEN
+        Group a = groups.getOrCreate( "a" );
+        Group b = groups.getOrCreate( "b" );
+        IdMapper<Long> idMapper = mapper();
+        idMapper.put( 42L, a, 0 );
+        idMapper.put( 42L, b, 1 );
+        idMapper.put( 7L, a, 2 );
+        idMapper.put( 42L, a, 3 );
+        // a gap at 4
+        idMapper.put( -1L, b, 5 );
+        Collector collector = mock( Collector.class );
+
+        // WHEN
+        idMapper.prepare( null, collector, NONE );
+
+        // THEN
+        assertEquals( 0, idMapper.get( 42L, a ) );
+        assertEquals( 1, idMapper.get( 42L, b ) );
+        assertEquals( 2, idMapper.get( 7L, a ) );
+        assertEquals( ID_NOT_FOUND, idMapper.get( 7L, b ) );
+        assertEquals( 5, idMapper.get( -1L, b ) );
+        verify( collector ).collectDuplicateNode( 42L, 3, "a" );
+        PrimitiveLongIterator duplicates = idMapper.leftOverDuplicateNodesIds();
+        assertEquals( 3, duplicates.next() );
+        assertFalse( duplicates.hasNext() );
+        idMapper.close();
+    }
+
+    @Test
+    public void shouldLookUpAllLikeOneByOne() throws Exception
+    {
+        // GIVEN
+        Group a = groups.getOrCreate( "a" );
+        Group b = groups.getOrCreate( "b" );
+        IdMapper<Long> idMapper = mapper();
+        SplittableRandom random = new SplittableRandom( 11 );
+        int count = 100_000;
+        for ( int nodeId = 0; nodeId < count; nodeId++ )
+        {
+            // few distinct ids, so that there are runs of equal ids in both groups
+            idMapper.put( random.nextLong( 30_000 ) - 15_000, nodeId % 3 == 0 ? b : a, nodeId );
+        }
+        idMapper.prepare( null, mock( Collector.class ), NONE );
+
+        // WHEN
+        int lookups = 10_000;
+        Object[] keys = new Object[lookups];
+        Group[] keyGroups = new Group[lookups];
+        for ( int i = 0; i < lookups; i++ )
+        {
+            keys[i] = random.nextLong( 40_000 ) - 20_000;
+            keyGroups[i] = random.nextBoolean() ? a : b;
+        }
+        long[] nodeIds = new long[lookups];
+        idMapper.getAll( keys, keyGroups, lookups, nodeIds );
+
+        // THEN
+        for ( int i = 0; i < lookups; i++ )
+        {
+            assertEquals( idMapper.get( (Long) keys[i], keyGroups[i] ), nodeIds[i] );
+        }
+        idMapper.close();
+    }
+
+    @Test
+    public void shouldSaveTheLayoutOfTheVertexIdsWithTheMapper() throws Exception
+    {
+        // GIVEN
+        IdMapper<Long> idMapper = mapper();
+        idMapper.put( 1L, groups.getOrCreate( "a" ), 0 );
+        idMapper.prepare( null, mock( Collector.class ), NONE );
+        File file = new File( directory.getRoot(), "id-mapper" );
+
+        // WHEN
+        idMapper.save( file, LAYOUT );
+
+        // THEN
+        IdMapperFile.Layout saved = IdMapperFile.layout( file );
+        assertEquals( LAYOUT, saved );
+        assertEquals( 2, saved.partitionBits() );
+        assertEquals( 4, saved.uniqueIdBits() );
+        assertEquals( 3, saved.uniqueId() );
+        assertArrayEquals( new long[]{100, 0, 7, 1_000_000}, saved.firstCounts() );
+        assertNotEquals( new IdMapperFile.Layout( 2, 4, 3, new long[]{100, 0, 8, 1_000_000} ), saved );
+        idMapper.close();
+    }
+
+    @Test
+    public void shouldFindTheSameInSavedMapper() throws Exception
+    {
+        // GIVEN
+        Group a = groups.getOrCreate( "a" );
+        Group b = groups.getOrCreate( "b" );
+        IdMapper<Long> idMapper = mapper();
+        for ( int nodeId = 0; nodeId < 10_000; nodeId++ )
+        {
+            // every other data index left empty
+            idMapper.put( (long) nodeId / 3, nodeId % 2 == 0 ? a : b, (long) nodeId * 2 );
+        }
+        idMapper.prepare( null, mock( Collector.class ), NONE );
+        File file = new File( directory.getRoot(), "id-mapper" );
+        idMapper.save( file, LAYOUT );
+
+        // WHEN
+        Groups loadedGroups = new Groups();
+        IdMapper<Long> loaded = LongIdMapper.load( file, loadedGroups );
+
+        // THEN
+        for ( long id = -1; id < 4_000; id++ )
+        {
+            assertEquals( idMapper.get( id, a ), loaded.get( id, loadedGroups.get( "a" ) ) );
+            assertEquals( idMapper.get( id, b ), loaded.get( id, loadedGroups.get( "b" ) ) );
+        }
+        idMapper.close();
+        loaded.close();
+    }
+
+    private IdMapper<Long> mapper()
+    {
+        return new LongIdMapper( NumberArrayFactory.OFF_HEAP, groups, 1_000, processors );
+    }
+}
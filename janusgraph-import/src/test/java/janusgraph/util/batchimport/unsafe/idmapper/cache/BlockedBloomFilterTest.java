@@ -0,0 +1,45 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockedBloomFilterTest
+{
+    @Test
+    public void shouldFindAllAddedAndRejectMostOthers() throws Exception
+    {
+        // GIVEN
+        int count = 1_000_000;
+        try ( BlockedBloomFilter filter = new BlockedBloomFilter( NumberArrayFactory.OFF_HEAP, count, 10 ) )
+        {
+            SplittableRandom random = new SplittableRandom( 11 );
+            long[] added = new long[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                added[i] = random.nextLong();
+                filter.add( added[i] );
+            }
+
+            // WHEN
+            long falsePositives = 0;
+            for ( int i = 0; i < count; i++ )
+            {
+                assertTrue( filter.mightContain( added[i] ) );
+                if ( filter.mightContain( random.nextLong() ) )
+                {
+                    falsePositives++;
+                }
+            }
+
+            // THEN about 1% false positives, as estimated
+            double rate = falsePositives / (double) count;
+            assertTrue( "false positive rate " + rate, rate < 0.02 );
+            assertEquals( rate, filter.falsePositiveRate(), 0.002 );
+            assertEquals( BlockedBloomFilter.calculateMemoryUsage( count, 10 ), filter.sizeInBytes() );
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package janusgraph.util.batchimport.unsafe.idmapper.cache;
+
+import janusgraph.util.batchimport.unsafe.stage.GatheringMemoryStatsVisitor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TieredNumberArrayFactoryTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldOverflowChunksIntoMappedFiles() throws Exception
+    {
+        // GIVEN room for two chunks off-heap
+        int chunkSize = 100_000;
+        File directory = folder.newFolder( "cache" );
+        NumberArrayFactory factory = NumberArrayFactory.auto( 2L * chunkSize * Long.BYTES, directory );
+        LongArray array = factory.newDynamicLongArray( chunkSize, -1 );
+
+        // WHEN
+        long count = 5L * chunkSize;
+        for ( long i = 0; i < count; i += 2 )
+        {
+            array.set( i, i * 31 );
+        }
+
+        // THEN
+        for ( long i = 0; i < count; i++ )
+        {
+            assertEquals( i % 2 == 0 ? i * 31 : -1, array.get( i ) );
+        }
+        GatheringMemoryStatsVisitor stats = new GatheringMemoryStatsVisitor();
+        array.acceptMemoryStatsVisitor( stats );
+        assertEquals( 2L * chunkSize * Long.BYTES, stats.getOffHeapUsage() );
+        assertEquals( 3L * chunkSize * Long.BYTES, stats.getFileUsage() );
+
+        // and closing gives the memory back
+        array.close();
+        LongArray next = factory.newLongArray( 2L * chunkSize, 0 );
+        stats = new GatheringMemoryStatsVisitor();
+        next.acceptMemoryStatsVisitor( stats );
+        assertEquals( 0, stats.getFileUsage() );
+        next.close();
+    }
+
+    @Test
+    public void shouldMapBytesLikeOffHeap() throws Exception
+    {
+        // GIVEN
+        byte[] defaultValue = {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1};
+        File directory = folder.newFolder( "cache" );
+        ByteArray offHeap = NumberArrayFactory.OFF_HEAP.newByteArray( 1_000, defaultValue );
+        ByteArray mapped = new MappedFileNumberArrayFactory( directory ).newByteArray( 1_000, defaultValue );
+
+        // WHEN
+        for ( ByteArray array : new ByteArray[] {offHeap, mapped} )
+        {
+            for ( int i = 0; i < 1_000; i += 3 )
+            {
+                array.set5ByteLong( i, 0, i * 1_000_003L );
+                array.set6ByteLong( i, 5, i * 1_000_000_007L );
+            }
+            array.swap( 3, 4 );
+        }
+
+        // THEN
+        for ( int i = 0; i < 1_000; i++ )
+        {
+            assertEquals( offHeap.get5ByteLong( i, 0 ), mapped.get5ByteLong( i, 0 ) );
+            assertEquals( offHeap.get6ByteLong( i, 5 ), mapped.get6ByteLong( i, 5 ) );
+        }
+        assertEquals( -1, mapped.get5ByteLong( 3, 0 ) );
+        assertEquals( 3 * 1_000_003L, mapped.get5ByteLong( 4, 0 ) );
+        offHeap.close();
+        mapped.close();
+        String[] left = directory.list();
+        assertTrue( left == null || left.length == 0 );
+    }
+}
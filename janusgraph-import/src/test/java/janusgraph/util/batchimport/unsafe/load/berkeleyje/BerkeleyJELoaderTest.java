@@ -0,0 +1,167 @@
+package janusgraph.util.batchimport.unsafe.load.berkeleyje;
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.OperationStatus;
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import janusgraph.util.batchimport.unsafe.graph.store.berkeleyje.BerkeleyJEBulkWriter;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.util.StaticArrayBuffer;
+import org.janusgraph.diskstorage.util.StaticArrayEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BerkeleyJELoaderTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldInsertRunsOfAllWritersInKeyOrder() throws Exception
+    {
+        File nodes = folder.newFolder( "Nodes" );
+        File environment = folder.newFolder( "db" );
+
+        // two writers, like two importer threads, with interleaving keys
+        write( new File( nodes, "0" ), 3, 1 );
+        write( new File( nodes, "1" ), 2 );
+
+        long cells = BerkeleyJELoader.write( environment, 10, false, nodes );
+        assertEquals( 6, cells );
+
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setReadOnly( true );
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setReadOnly( true );
+        Environment env = new Environment( environment, envConfig );
+        try
+        {
+            Database db = env.openDatabase( null, Backend.EDGESTORE_NAME, dbConfig );
+            try ( Cursor cursor = db.openCursor( null, null ) )
+            {
+                DatabaseEntry key = new DatabaseEntry();
+                DatabaseEntry value = new DatabaseEntry();
+                while ( cursor.getNext( key, value, null ) == OperationStatus.SUCCESS )
+                {
+                    keys.add( key.getData() );
+                    values.add( value.getData() );
+                }
+            }
+            finally
+            {
+                db.close();
+            }
+        }
+        finally
+        {
+            env.close();
+        }
+
+        assertEquals( 6, keys.size() );
+        for ( int i = 0; i < keys.size(); i++ )
+        {
+            // 8 bytes of key and a column, no key length for the edgestore
+            long vertex = i / 2 + 1;
+            assertArrayEquals( concat( vertex, (byte) (i % 2) ), keys.get( i ) );
+            assertArrayEquals( new byte[]{(byte) vertex, (byte) (i % 2)}, values.get( i ) );
+        }
+        // runs are gone
+        assertFalse( new File( nodes, "0/runs/edgestore/run-0" ).exists() );
+    }
+
+    @Test
+    public void shouldInsertIntoEnvironmentJanusGraphCreated() throws Exception
+    {
+        File nodes = folder.newFolder( "Nodes" );
+        File directory = folder.newFolder( "graph" );
+        // janusgraph creates its databases transactional, storage.transactions is true by default
+        JanusGraphFactory.build().set( "storage.backend", "berkeleyje" )
+                .set( "storage.directory", directory.getPath() ).open().close();
+
+        write( new File( nodes, "0" ), 1, 2 );
+        assertEquals( 4, BerkeleyJELoader.write( directory, 10, true, nodes ) );
+
+        // opened the way janusgraph opens it
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setTransactional( true );
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setTransactional( true );
+        dbConfig.setKeyPrefixing( true );
+        Environment env = new Environment( directory, envConfig );
+        try
+        {
+            Database db = env.openDatabase( null, Backend.EDGESTORE_NAME, dbConfig );
+            try
+            {
+                assertTrue( db.getConfig().getTransactional() );
+                for ( long vertex = 1; vertex <= 2; vertex++ )
+                {
+                    for ( byte column = 0; column <= 1; column++ )
+                    {
+                        DatabaseEntry value = new DatabaseEntry();
+                        assertEquals( OperationStatus.SUCCESS,
+                                db.get( null, new DatabaseEntry( concat( vertex, column ) ), value, null ) );
+                        assertArrayEquals( new byte[]{(byte) vertex, column}, value.getData() );
+                    }
+                }
+            }
+            finally
+            {
+                db.close();
+            }
+        }
+        finally
+        {
+            env.close();
+        }
+
+        // and the graph still opens
+        JanusGraphFactory.build().set( "storage.backend", "berkeleyje" )
+                .set( "storage.directory", directory.getPath() ).open().close();
+    }
+
+    private static void write( File path, long... vertices ) throws Exception
+    {
+        BerkeleyJEBulkWriter writer = new BerkeleyJEBulkWriter( null, path.getPath(), Backend.EDGESTORE_NAME, 1 << 20 );
+        GroupedMutations batch = new GroupedMutations( 8 );
+        for ( long vertex : vertices )
+        {
+            batch.newGroup( StaticArrayBuffer.of( concat( vertex ) ) );
+            for ( byte column = 1; column >= 0; column-- )
+            {
+                batch.add( StaticArrayEntry.of( StaticArrayBuffer.of( new byte[]{column} ),
+                        StaticArrayBuffer.of( new byte[]{(byte) vertex, column} ) ) );
+            }
+        }
+        writer.accept( batch );
+        writer.close();
+    }
+
+    private static byte[] concat( long vertex, byte... column )
+    {
+        byte[] bytes = new byte[8 + column.length];
+        for ( int i = 0; i < 8; i++ )
+        {
+            bytes[i] = (byte) (vertex >>> (56 - 8 * i));
+        }
+        System.arraycopy( column, 0, bytes, 8, column.length );
+        return bytes;
+    }
+}
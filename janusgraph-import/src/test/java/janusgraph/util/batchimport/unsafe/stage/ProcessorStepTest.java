@@ -0,0 +1,242 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessorStepTest
+{
+    private static final int MAX_PROCESSORS = 4;
+    private static final Configuration CONFIG = new Configuration()
+    {
+        @Override
+        public int maxNumberOfProcessors()
+        {
+            return MAX_PROCESSORS;
+        }
+    };
+
+    @Test
+    public void shouldSendEveryBatchDownstreamBeforeTheStageEnds() throws Exception
+    {
+        // GIVEN
+        int batches = 1_000;
+        Stage stage = new Stage( "test", null, CONFIG, Step.ORDER_SEND_DOWNSTREAM );
+        stage.add( new Producer( stage.control(), batches, null ) );
+        Square square = new Square( stage.control(), "SQUARE", null );
+        stage.add( square );
+        Collector collector = new Collector( stage.control() );
+        stage.add( collector );
+        assertEquals( MAX_PROCESSORS, square.processors( MAX_PROCESSORS ) );
+
+        // WHEN
+        awaitCompletion( stage.execute() );
+        stage.close();
+
+        // THEN every batch arrived in order, the last one too, before the collector was done
+        assertEquals( batches, collector.received.size() );
+        for ( int i = 0; i < batches; i++ )
+        {
+            assertEquals( (long) i * i, (long) collector.received.get( i ) );
+        }
+        assertEquals( batches, collector.receivedWhenDone );
+    }
+
+    @Test
+    public void shouldLetProcessorsGoWhenThereAreFewerOfThem() throws Exception
+    {
+        // GIVEN a step with all processors, waiting for the second half of the batches
+        int batches = 100;
+        CountDownLatch secondHalf = new CountDownLatch( 1 );
+        Stage stage = new Stage( "test", null, CONFIG, Step.ORDER_SEND_DOWNSTREAM );
+        stage.add( new Producer( stage.control(), batches, secondHalf ) );
+        Square square = new Square( stage.control(), "LET-GO", null );
+        stage.add( square );
+        Collector collector = new Collector( stage.control() );
+        stage.add( collector );
+        square.processors( MAX_PROCESSORS );
+        StageExecution execution = stage.execute();
+        awaitThreads( "LET-GO-", MAX_PROCESSORS );
+
+        // WHEN
+        assertEquals( 1, square.processors( -MAX_PROCESSORS ) );
+
+        // THEN the surplus threads stop, the one left does the rest
+        awaitThreads( "LET-GO-", 1 );
+        secondHalf.countDown();
+        awaitCompletion( execution );
+        stage.close();
+        assertEquals( batches, collector.received.size() );
+        awaitThreads( "LET-GO-", 0 );
+    }
+
+    @Test
+    public void shouldNotCreateMoreResourcesThanProcessorsAtTheSameTime() throws Exception
+    {
+        // GIVEN
+        int batches = 500;
+        AtomicInteger created = new AtomicInteger();
+        ProcessorResources<int[]> resources = new ProcessorResources<>( rank ->
+        {
+            created.incrementAndGet();
+            return new int[1];
+        } );
+        Stage stage = new Stage( "test", null, CONFIG, Step.ORDER_SEND_DOWNSTREAM );
+        stage.add( new Producer( stage.control(), batches, null ) );
+        Square square = new Square( stage.control(), "RESOURCES", resources );
+        stage.add( square );
+        Collector collector = new Collector( stage.control() );
+        stage.add( collector );
+
+        // WHEN processors come and go while the stage runs
+        StageExecution execution = stage.execute();
+        for ( int i = 0; i < 20 && execution.stillExecuting(); i++ )
+        {
+            square.processors( i % 2 == 0 ? MAX_PROCESSORS : -MAX_PROCESSORS );
+            Thread.sleep( 5 );
+        }
+        awaitCompletion( execution );
+        stage.close();
+
+        // THEN
+        assertEquals( batches, collector.received.size() );
+        assertTrue( "created " + created.get(), created.get() >= 1 && created.get() <= MAX_PROCESSORS );
+        int[] processed = new int[1];
+        resources.forEach( resource -> processed[0] += resource[0] );
+        assertEquals( batches, processed[0] );
+    }
+
+    private static void awaitCompletion( StageExecution execution ) throws InterruptedException
+    {
+        long deadline = currentTimeMillis() + SECONDS.toMillis( 30 );
+        while ( execution.stillExecuting() )
+        {
+            assertTrue( "stage still executing", currentTimeMillis() < deadline );
+            Thread.sleep( 1 );
+        }
+        execution.assertHealthy();
+    }
+
+    private static void awaitThreads( String prefix, int count ) throws InterruptedException
+    {
+        long deadline = currentTimeMillis() + SECONDS.toMillis( 30 );
+        while ( threads( prefix ) != count )
+        {
+            assertTrue( threads( prefix ) + " threads instead of " + count, currentTimeMillis() < deadline );
+            Thread.sleep( 1 );
+        }
+    }
+
+    private static int threads( String prefix )
+    {
+        int count = 0;
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            if ( thread.getName().startsWith( prefix ) && thread.isAlive() )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * sends the numbers below {@code batches}, the second half of them only once {@code secondHalf} is counted down,
+     * if given.
+     */
+    private static class Producer extends ProducerStep
+    {
+        private final int batches;
+        private final CountDownLatch secondHalf;
+
+        Producer( StageControl control, int batches, CountDownLatch secondHalf )
+        {
+            super( control, "PRODUCE", CONFIG );
+            this.batches = batches;
+            this.secondHalf = secondHalf;
+        }
+
+        @Override
+        protected void process() throws Exception
+        {
+            for ( int i = 0; i < batches; i++ )
+            {
+                if ( i == batches / 2 && secondHalf != null )
+                {
+                    secondHalf.await();
+                }
+                sendDownstream( i );
+            }
+        }
+    }
+
+    /**
+     * squares the numbers, counting them in a resource if given.
+     */
+    private static class Square extends ProcessorStep<Integer>
+    {
+        private final ProcessorResources<int[]> resources;
+
+        Square( StageControl control, String name, ProcessorResources<int[]> resources )
+        {
+            super( control, name, CONFIG, 0 );
+            this.resources = resources;
+        }
+
+        @Override
+        protected void process( Integer batch, BatchSender sender )
+        {
+            if ( resources != null )
+            {
+                int[] resource = resources.acquire();
+                try
+                {
+                    resource[0]++;
+                }
+                finally
+                {
+                    resources.release( resource );
+                }
+            }
+            sender.send( (long) batch * batch );
+        }
+    }
+
+    private static class Collector extends ProcessorStep<Long>
+    {
+        private final List<Long> received = new ArrayList<>();
+        private volatile int receivedWhenDone = -1;
+
+        Collector( StageControl control )
+        {
+            super( control, "COLLECT", CONFIG, 1 );
+        }
+
+        @Override
+        protected void process( Long batch, BatchSender sender )
+        {
+            synchronized ( received )
+            {
+                received.add( batch );
+            }
+        }
+
+        @Override
+        protected void done()
+        {
+            synchronized ( received )
+            {
+                receivedWhenDone = received.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package janusgraph.util.batchimport.unsafe.stage;
+
+import janusgraph.util.batchimport.unsafe.Configuration;
+import janusgraph.util.batchimport.unsafe.DataImporter;
+import janusgraph.util.batchimport.unsafe.graph.store.GroupedMutations;
+import janusgraph.util.batchimport.unsafe.graph.store.ImportStore;
+import janusgraph.util.batchimport.unsafe.idassigner.BulkIdAssigner;
+import janusgraph.util.batchimport.unsafe.idmapper.IdEncoder;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMapper;
+import janusgraph.util.batchimport.unsafe.idmapper.IdMappers;
+import janusgraph.util.batchimport.unsafe.idmapper.cache.NumberArrayFactory;
+import janusgraph.util.batchimport.unsafe.input.Collector;
+import janusgraph.util.batchimport.unsafe.input.Group;
+import janusgraph.util.batchimport.unsafe.input.Groups;
+import janusgraph.util.batchimport.unsafe.input.Input;
+import janusgraph.util.batchimport.unsafe.input.InputChunk;
+import janusgraph.util.batchimport.unsafe.input.InputEntity;
+import janusgraph.util.batchimport.unsafe.input.InputEntityVisitor;
+import janusgraph.util.batchimport.unsafe.input.InputIterable;
+import janusgraph.util.batchimport.unsafe.input.InputIterator;
+import janusgraph.util.batchimport.unsafe.input.csv.Value;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyIterator;
+import org.janusgraph.diskstorage.keycolumnvalue.SliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreMetaData;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.diskstorage.util.BufferUtil;
+import org.janusgraph.diskstorage.util.RecordIterator;
+import org.janusgraph.diskstorage.util.StandardBaseTransactionConfig;
+import org.janusgraph.diskstorage.util.time.TimestampProviders;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import static janusgraph.util.batchimport.unsafe.progress.ProgressListener.NONE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class StagedImportTest
+{
+    private static final int NODES = 1_000;
+    private static final int EDGES = 3_000;
+    // a last chunk smaller than the others
+    private static final int CHUNK_SIZE = 64;
+
+    @Rule
+    public final TemporaryFolder directory = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteTheSameEntriesAsImportingWithoutStages() throws Exception
+    {
+        // WHEN the same nodes and edges are imported into an empty graph each, by importer threads and in stages
+        Written unstaged = importInto( false );
+        Written staged = importInto( true );
+
+        // THEN
+        assertEquals( NODES, unstaged.nodes );
+        assertEquals( EDGES, unstaged.edges );
+        assertFalse( unstaged.edgestore.isEmpty() );
+        assertFalse( unstaged.graphindex.isEmpty() );
+        assertEquals( unstaged.nodes, staged.nodes );
+        assertEquals( unstaged.edges, staged.edges );
+        assertEquals( unstaged.edgestore, staged.edgestore );
+        assertEquals( unstaged.graphindex, staged.graphindex );
+    }
+
+    /**
+     * imports {@link #NODES} and {@link #EDGES} with one processor, so that both ways lease the ids in the same order.
+     */
+    private Written importInto( boolean stagedImport ) throws Exception
+    {
+        Configuration config = new Configuration()
+        {
+            @Override
+            public boolean stagedImport()
+            {
+                return stagedImport;
+            }
+
+            @Override
+            public int maxNumberOfProcessors()
+            {
+                return 1;
+            }
+
+            @Override
+            public long mixedIndexBulkSize()
+            {
+                return 0;
+            }
+        };
+        StandardJanusGraph graph = emptyGraph();
+        BulkIdAssigner idAssigner = new BulkIdAssigner( graph );
+        Groups groups = new Groups();
+        Group persons = groups.getOrCreate( "person" );
+        @SuppressWarnings( "unchecked" )
+        IdMapper<Object> idMapper = (IdMapper) IdMappers.longs( NumberArrayFactory.OFF_HEAP, groups );
+        DataImporter.Monitor monitor = new DataImporter.Monitor();
+        try ( ImportStore janusStore = new RootStore( directory.newFolder().getPath() ) )
+        {
+            List<String> edgestore = entries( graph, Backend.EDGESTORE_NAME );
+            List<String> graphindex = entries( graph, Backend.INDEXSTORE_NAME );
+            Input input = new EntitiesInput( i -> node( i, persons ), NODES, i -> edge( i, persons ), EDGES );
+
+            DataImporter.importNodes( config, input, idMapper, null, null, null, Collector.EMPTY,
+                    ExecutionMonitors.invisible(), monitor, graph, idAssigner, janusStore );
+            if ( idMapper.needsPreparation() )
+            {
+                idMapper.prepare( null, Collector.EMPTY, NONE );
+            }
+            DataImporter.importEdges( config, input, idMapper, null, Collector.EMPTY,
+                    ExecutionMonitors.invisible(), monitor, graph, idAssigner, janusStore );
+
+            Written written = new Written();
+            written.nodes = monitor.nodesImported();
+            written.edges = monitor.edgesImported();
+            // the entries of the schema aren't compared
+            written.edgestore = entries( graph, Backend.EDGESTORE_NAME );
+            written.edgestore.removeAll( edgestore );
+            written.graphindex = entries( graph, Backend.INDEXSTORE_NAME );
+            written.graphindex.removeAll( graphindex );
+            return written;
+        }
+        finally
+        {
+            idMapper.close();
+            idAssigner.close();
+            graph.close();
+        }
+    }
+
+    private static InputEntity node( int i, Group group ) throws IOException
+    {
+        InputEntity node = new InputEntity();
+        node.id( (long) i, group );
+        node.property( "name", "person-" + i );
+        node.endOfEntity();
+        return node;
+    }
+
+    private static InputEntity edge( int i, Group group ) throws IOException
+    {
+        InputEntity edge = new InputEntity();
+        edge.startId( (long) (i % NODES), group );
+        edge.endId( (long) (i * 7 % NODES), group );
+        edge.type( "knows" );
+        edge.property( "since", i );
+        edge.endOfEntity();
+        return edge;
+    }
+
+    private static StandardJanusGraph emptyGraph()
+    {
+        StandardJanusGraph graph = (StandardJanusGraph) JanusGraphFactory.build()
+                .set( "storage.backend", "inmemory" )
+                .set( "cluster.max-partitions", 4 )
+                .set( "ids.block-size", 10_000 )
+                .set( "ids.authority.wait-time", Duration.ofMillis( 10 ) )
+                .open();
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.makeVertexLabel( "person" ).make();
+        PropertyKey name = mgmt.makePropertyKey( "name" ).dataType( String.class ).make();
+        mgmt.makePropertyKey( "since" ).dataType( Integer.class ).make();
+        mgmt.makeEdgeLabel( "knows" ).make();
+        // so that index entries are written too
+        mgmt.buildIndex( "byName", Vertex.class ).addKey( name ).buildCompositeIndex();
+        mgmt.commit();
+        return graph;
+    }
+
+    /**
+     * @return every entry of the store, as the bytes of its key, column and value, in order.
+     */
+    private static List<String> entries( StandardJanusGraph graph, String name ) throws BackendException, IOException
+    {
+        KeyColumnValueStoreManager manager = (KeyColumnValueStoreManager) graph.getBackend().getStoreManager();
+        KeyColumnValueStore store = manager.openDatabase( name, StoreMetaData.EMPTY );
+        StoreTransaction tx = manager.beginTransaction( StandardBaseTransactionConfig.of( TimestampProviders.MICRO ) );
+        List<String> entries = new ArrayList<>();
+        try
+        {
+            KeyIterator keys = store.getKeys( new SliceQuery( BufferUtil.zeroBuffer( 1 ), BufferUtil.oneBuffer( 64 ) ),
+                    tx );
+            while ( keys.hasNext() )
+            {
+                String key = bytes( keys.next() );
+                try ( RecordIterator<Entry> row = keys.getEntries() )
+                {
+                    while ( row.hasNext() )
+                    {
+                        Entry entry = row.next();
+                        entries.add( key + " " + bytes( entry.getColumn() ) + " " + bytes( entry.getValue() ) );
+                    }
+                }
+            }
+            keys.close();
+        }
+        finally
+        {
+            tx.commit();
+        }
+        Collections.sort( entries );
+        return entries;
+    }
+
+    private static String bytes( StaticBuffer buffer )
+    {
+        return Arrays.toString( buffer.as( StaticBuffer.ARRAY_FACTORY ) );
+    }
+
+    private static class Written
+    {
+        long nodes;
+        long edges;
+        List<String> edgestore;
+        List<String> graphindex;
+    }
+
+    private interface EntityFactory
+    {
+        InputEntity create( int i ) throws IOException;
+    }
+
+    /**
+     * nodes and edges in chunks of {@link #CHUNK_SIZE}, created anew for every pass.
+     */
+    private static class EntitiesInput implements Input
+    {
+        private final InputIterable nodes;
+        private final InputIterable edges;
+
+        EntitiesInput( EntityFactory nodes, int nodeCount, EntityFactory edges, int edgeCount )
+        {
+            this.nodes = InputIterable.replayable( () -> new Chunks( nodes, nodeCount ) );
+            this.edges = InputIterable.replayable( () -> new Chunks( edges, edgeCount ) );
+        }
+
+        @Override
+        public InputIterable nodes()
+        {
+            return nodes;
+        }
+
+        @Override
+        public InputIterable edges()
+        {
+            return edges;
+        }
+
+        @Override
+        public IdMapper<Object> idMapper( NumberArrayFactory numberArrayFactory, IdEncoder encoder )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collector badCollector()
+        {
+            return Collector.EMPTY;
+        }
+
+        @Override
+        public Estimates calculateEstimates( ToIntFunction<Value[]> valueSizeCalculator )
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Chunks extends InputIterator.Adapter
+    {
+        private final EntityFactory factory;
+        private final int count;
+        private int next;
+        private long ordinal;
+
+        Chunks( EntityFactory factory, int count )
+        {
+            this.factory = factory;
+            this.count = count;
+        }
+
+        @Override
+        public InputChunk newChunk()
+        {
+            return new Chunk();
+        }
+
+        @Override
+        public synchronized boolean next( InputChunk chunk ) throws IOException
+        {
+            if ( next == count )
+            {
+                return false;
+            }
+            int size = Math.min( CHUNK_SIZE, count - next );
+            InputEntity[] entities = new InputEntity[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                entities[i] = factory.create( next++ );
+            }
+            ((Chunk) chunk).reset( entities, ordinal++ );
+            return true;
+        }
+    }
+
+    private static class Chunk implements InputChunk
+    {
+        private InputEntity[] entities;
+        private int cursor;
+        private long ordinal;
+
+        void reset( InputEntity[] entities, long ordinal )
+        {
+            this.entities = entities;
+            this.cursor = 0;
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public boolean next( InputEntityVisitor visitor ) throws IOException
+        {
+            if ( cursor == entities.length )
+            {
+                return false;
+            }
+            entities[cursor++].replayOnto( visitor );
+            return true;
+        }
+
+        @Override
+        public long ordinal()
+        {
+            return ordinal;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /**
+     * the store importers take their path and table from, entries are written by the stores they create of their own.
+     */
+    private static class RootStore implements ImportStore
+    {
+        private final String path;
+
+        RootStore( String path )
+        {
+            this.path = path;
+        }
+
+        @Override
+        public String getPath()
+        {
+            return path;
+        }
+
+        @Override
+        public String getKeySpace()
+        {
+            return "janusgraph";
+        }
+
+        @Override
+        public String getTable()
+        {
+            return Backend.EDGESTORE_NAME;
+        }
+
+        @Override
+        public void mutateEdges( GroupedMutations mutations )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}